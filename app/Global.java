@@ -31,6 +31,9 @@ import java.util.Date;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import actors.JobQueue;
+import actors.MergeCheckScheduler;
+import actors.RepositoryMaintenanceScheduler;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import controllers.AttachmentApp;
@@ -55,6 +58,7 @@ import play.mvc.Http;
 import play.mvc.Http.RequestHeader;
 import play.mvc.Result;
 import play.mvc.Results;
+import playRepository.hooks.PostReceivePipeline;
 
 import scala.concurrent.duration.Duration;
 import utils.AccessLogger;
@@ -112,12 +116,20 @@ public class Global extends GlobalSettings {
 
         PullRequest.changeStateToClosed();
 
+        MergeCheckScheduler.register();
+        PostReceivePipeline.register();
+        JobQueue.startSchedule();
+
         if (notificationEnabled()) {
             NotificationMail.startSchedule();
         }
 
         NotificationEvent.scheduleDeleteOldNotifications();
         cleanupTemporaryUploadFilesWithSchedule();
+
+        if (repositoryMaintenanceEnabled()) {
+            RepositoryMaintenanceScheduler.startSchedule();
+        }
     }
 
     /**
@@ -177,6 +189,11 @@ public class Global extends GlobalSettings {
         return notificationEnabled == null || notificationEnabled;
     }
 
+    private boolean repositoryMaintenanceEnabled() {
+        Boolean enabled = play.Configuration.root().getBoolean("application.git.maintenance.enabled");
+        return enabled == null || enabled;
+    }
+
     private boolean validateSecret() {
         play.Configuration config = play.Configuration.root();
         String secret = config.getString("application.secret");
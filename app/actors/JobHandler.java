@@ -0,0 +1,32 @@
+/**
+ * Yobi, Project Hosting SW
+ *
+ * Copyright 2014 NAVER Corp.
+ * http://yobi.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package actors;
+
+/**
+ * {@link JobQueue}에서 꺼낸 한 종류의 작업을 처리한다.
+ *
+ * 예외를 던지면 작업은 나중에 다시 실행되므로, 같은 작업을 여러 번 처리해도 괜찮아야 한다.
+ */
+public interface JobHandler {
+    /**
+     * @param payload 작업을 넣을 때 함께 넣은 내용
+     * @throws Exception 다시 시도해야 할 때
+     */
+    void handle(String payload) throws Exception;
+}
@@ -0,0 +1,552 @@
+/**
+ * Yobi, Project Hosting SW
+ *
+ * Copyright 2014 NAVER Corp.
+ * http://yobi.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package actors;
+
+import com.avaje.ebean.SqlRow;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import models.BackgroundJob;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import play.Configuration;
+import play.libs.Akka;
+import scala.concurrent.duration.Duration;
+
+import javax.persistence.PersistenceException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link BackgroundJob}을 DB 에 넣고, 작업 종류마다 따로 둔 스레드 풀에서 실행한다.
+ *
+ * Akka 메시지로 바로 실행하던 후처리는 재시작하면 사라지고 동시에 몇 개나 실행될지 알 수 없었다. 작업을 DB 에 먼저
+ * 넣어두면 재시작한 뒤에도 이어서 실행하고, 종류마다 {@code application.jobs.<종류>.concurrency}개까지만 동시에
+ * 실행한다.
+ *
+ * 작업을 넣으면 바로 꺼내 실행하며, {@code application.jobs.poll-interval}마다 실행할 때가 된 작업을 다시 찾는다.
+ * 한 번에 {@code application.jobs.batch-size}개까지 함께 꺼낸다.
+ *
+ * 실패한 작업은 {@code retry.base-delay}, 그 두 배, 네 배... 만큼 기다렸다가 다시 실행하며 기다리는 시간은
+ * {@code retry.max-delay}를 넘지 않는다. {@code retry.max-attempts}번 실행해도 실패하면
+ * {@link BackgroundJob.State#FAILED}로 남겨둔다.
+ *
+ * 같은 종류에서 같은 dedupe key 로 기다리고 있는 작업이 있으면 새로 넣지 않고 그 작업의 내용만 바꾼다.
+ *
+ * 작업을 넣을 때 그룹을 정할 수 있다. 같은 그룹의 작업은 {@code application.jobs.<종류>.group-concurrency}개까지만
+ * 동시에 실행하므로, 한 그룹에 작업이 많이 쌓여도 다른 그룹의 작업이 계속 실행된다.
+ *
+ * 여러 노드가 같은 DB 를 쓸 수 있다. 노드는 {@code application.jobs.node-id}(설정이 없으면 호스트 이름)로
+ * 구별하며, 실행 중인 작업의 임대를 {@code application.jobs.lease}의 1/3 마다 갱신한다. 임대가 만료된 작업은 그
+ * 노드가 멈춘 것으로 보고 다시 실행한다. 시작할 때에는 같은 노드가 지난번에 실행하다 멈춘 작업만 바로 되돌린다.
+ *
+ * <pre>
+ * application.jobs.node-id = (호스트 이름)
+ * application.jobs.lease = 10m
+ * application.jobs.poll-interval = 1s
+ * application.jobs.batch-size = 20
+ * application.jobs.retry.max-attempts = 8
+ * application.jobs.retry.base-delay = 10s
+ * application.jobs.retry.max-delay = 1h
+ * application.jobs.post-receive.concurrency = 2
+ * application.jobs.merge-check.concurrency = 2
+ * application.jobs.merge-check.group-concurrency = 1
+ * </pre>
+ */
+public class JobQueue {
+    private static final Map<String, Worker> workers = new TreeMap<>();
+    private static final long startedAt = System.currentTimeMillis();
+
+    private static String nodeId = getDefaultNodeId();
+    private static long leaseMillis = 10 * 60 * 1000L;
+    private static long leaseCheckedAt = 0;
+
+    private static int batchSize = 20;
+    private static int maxAttempts = 8;
+    private static long baseDelayMillis = 10 * 1000L;
+    private static long maxDelayMillis = 60 * 60 * 1000L;
+
+    /**
+     * 한 종류의 작업을 실행하는 스레드 풀과 통계
+     */
+    static class Worker {
+        private final String jobType;
+        private final JobHandler handler;
+        private final int concurrency;
+        private final int groupConcurrency;
+        private final ExecutorService executor;
+        private final AtomicInteger running = new AtomicInteger();
+
+        private final AtomicLong enqueuedCount = new AtomicLong();
+        private final AtomicLong coalescedCount = new AtomicLong();
+        private final AtomicLong completedCount = new AtomicLong();
+        private final AtomicLong retriedCount = new AtomicLong();
+        private final AtomicLong failedCount = new AtomicLong();
+        private final AtomicLong totalLatencyMillis = new AtomicLong();
+
+        Worker(String jobType, JobHandler handler, int concurrency, int groupConcurrency) {
+            this.jobType = jobType;
+            this.handler = handler;
+            this.concurrency = concurrency;
+            this.groupConcurrency = groupConcurrency;
+            this.executor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactoryBuilder().setNameFormat("job-" + jobType + "-%d").setDaemon(true).build());
+        }
+    }
+
+    /**
+     * {@code jobType} 작업을 {@code handler}로 처리하도록 등록한다.
+     *
+     * 동시에 실행하는 수는 {@code application.jobs.<jobType>.concurrency}이며, 설정이 없으면
+     * {@code defaultConcurrency}이다.
+     *
+     * @param jobType
+     * @param defaultConcurrency
+     * @param handler
+     */
+    public static void register(String jobType, int defaultConcurrency, JobHandler handler) {
+        register(jobType, defaultConcurrency, 0, handler);
+    }
+
+    /**
+     * {@code jobType} 작업을 {@code handler}로 처리하도록 등록하고, 같은 그룹의 작업을 동시에 실행하는 수를
+     * 제한한다.
+     *
+     * 그룹마다 동시에 실행하는 수는 {@code application.jobs.<jobType>.group-concurrency}이며, 설정이 없으면
+     * {@code defaultGroupConcurrency}이다. 0 이하이면 제한하지 않는다.
+     *
+     * @param jobType
+     * @param defaultConcurrency
+     * @param defaultGroupConcurrency
+     * @param handler
+     * @see #enqueue(String, String, String, String)
+     */
+    public static void register(String jobType, int defaultConcurrency, int defaultGroupConcurrency,
+                                JobHandler handler) {
+        int concurrency = defaultConcurrency;
+        int groupConcurrency = defaultGroupConcurrency;
+        if (play.api.Play.maybeApplication().isDefined()) {
+            Configuration config = Configuration.root();
+            concurrency = config.getInt("application.jobs." + jobType + ".concurrency", concurrency);
+            groupConcurrency = config.getInt("application.jobs." + jobType + ".group-concurrency",
+                    groupConcurrency);
+        }
+        synchronized (workers) {
+            if (workers.containsKey(jobType)) {
+                throw new IllegalStateException("Job type already registered: " + jobType);
+            }
+            workers.put(jobType, new Worker(jobType, handler, Math.max(1, concurrency), groupConcurrency));
+        }
+    }
+
+    /**
+     * 작업을 꺼내는 스케쥴을 등록한다.
+     *
+     * 이 노드가 지난번에 실행하다 멈춘 작업들을 먼저 기다리는 상태로 돌려놓고, 애플리케이션이 시작되고 나서
+     * {@code application.jobs.poll-interval}마다 임대를 관리하고 실행할 때가 된 작업을 찾는다.
+     */
+    public static void startSchedule() {
+        Configuration config = Configuration.root();
+        String configuredNodeId = config.getString("application.jobs.node-id");
+        if (StringUtils.isNotBlank(configuredNodeId)) {
+            nodeId = configuredNodeId;
+        }
+        leaseMillis = Math.max(1000L, config.getMilliseconds("application.jobs.lease", leaseMillis));
+        Long interval = config.getMilliseconds("application.jobs.poll-interval", 1000L);
+        batchSize = Math.max(1, config.getInt("application.jobs.batch-size", batchSize));
+        maxAttempts = Math.max(1, config.getInt("application.jobs.retry.max-attempts", maxAttempts));
+        baseDelayMillis = config.getMilliseconds("application.jobs.retry.base-delay", baseDelayMillis);
+        maxDelayMillis = config.getMilliseconds("application.jobs.retry.max-delay", maxDelayMillis);
+
+        int reset = BackgroundJob.resetRunning(nodeId);
+        if (reset > 0) {
+            play.Logger.info(reset + " background jobs interrupted by the last shutdown will be run again");
+        }
+
+        Akka.system().scheduler().schedule(
+            Duration.create(0, TimeUnit.MILLISECONDS),
+            Duration.create(interval, TimeUnit.MILLISECONDS),
+            new Runnable() {
+                public void run() {
+                    try {
+                        maintainLeases(System.currentTimeMillis());
+                    } catch (Exception e) {
+                        play.Logger.warn("Failed to maintain background job leases", e);
+                    }
+                    for (Worker worker : getWorkers()) {
+                        try {
+                            poll(worker);
+                        } catch (Exception e) {
+                            play.Logger.warn("Failed to poll " + worker.jobType + " jobs", e);
+                        }
+                    }
+                }
+            },
+            Akka.system().dispatcher()
+        );
+    }
+
+    /**
+     * {@code jobType} 작업을 넣는다.
+     *
+     * {@code dedupeKey}로 기다리고 있는 작업이 있으면 새로 넣지 않고 그 작업의 내용을 {@code payload}로 바꾼다.
+     * 이미 실행 중인 작업과는 합치지 않는다.
+     *
+     * @param jobType
+     * @param dedupeKey 합칠 작업을 찾을 키, 합치지 않으려면 null
+     * @param payload
+     */
+    public static void enqueue(String jobType, String dedupeKey, String payload) {
+        enqueue(jobType, null, dedupeKey, payload);
+    }
+
+    /**
+     * {@code groupKey} 그룹에 속하는 {@code jobType} 작업을 넣는다.
+     *
+     * @param jobType
+     * @param groupKey 함께 실행하는 수를 제한할 그룹, 제한하지 않으려면 null
+     * @param dedupeKey 합칠 작업을 찾을 키, 합치지 않으려면 null
+     * @param payload
+     * @see #register(String, int, int, JobHandler)
+     * @see #enqueue(String, String, String)
+     */
+    public static void enqueue(String jobType, String groupKey, String dedupeKey, String payload) {
+        final Worker worker = getWorker(jobType);
+
+        if (dedupeKey != null && BackgroundJob.updateWaiting(jobType, dedupeKey, payload)) {
+            if (worker != null) {
+                worker.coalescedCount.incrementAndGet();
+            }
+            return;
+        }
+
+        try {
+            new BackgroundJob(jobType, groupKey, dedupeKey, payload).save();
+        } catch (PersistenceException e) {
+            // 그 사이에 다른 쪽이 같은 키로 넣었다면 유일 인덱스에 걸린다. 그 작업과 합친다.
+            if (dedupeKey == null || !BackgroundJob.updateWaiting(jobType, dedupeKey, payload)) {
+                throw e;
+            }
+            if (worker != null) {
+                worker.coalescedCount.incrementAndGet();
+            }
+            return;
+        }
+        if (worker == null) {
+            return;
+        }
+        worker.enqueuedCount.incrementAndGet();
+
+        Akka.system().dispatcher().execute(new Runnable() {
+            @Override
+            public void run() {
+                poll(worker);
+            }
+        });
+    }
+
+    /**
+     * 남은 스레드의 수만큼 실행할 때가 된 작업을 꺼내서 실행한다.
+     */
+    static void poll(final Worker worker) {
+        synchronized (worker) {
+            int idle = worker.concurrency - worker.running.get();
+            if (idle <= 0) {
+                return;
+            }
+
+            List<BackgroundJob> jobs = BackgroundJob.claimDue(worker.jobType, nodeId, new Date(),
+                    Math.min(idle, batchSize), worker.groupConcurrency);
+            for (final BackgroundJob job : jobs) {
+                worker.running.incrementAndGet();
+                worker.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            execute(worker, job);
+                        } finally {
+                            worker.running.decrementAndGet();
+                        }
+                        poll(worker);
+                    }
+                });
+            }
+        }
+    }
+
+    private static void execute(Worker worker, BackgroundJob job) {
+        try {
+            worker.handler.handle(job.payload);
+        } catch (Exception e) {
+            retryOrFail(worker, job, e);
+            return;
+        }
+
+        job.delete();
+        worker.completedCount.incrementAndGet();
+        worker.totalLatencyMillis.addAndGet(System.currentTimeMillis() - job.created.getTime());
+    }
+
+    private static void retryOrFail(Worker worker, BackgroundJob job, Exception e) {
+        job.lastError = StringUtils.abbreviate(ExceptionUtils.getStackTrace(e), 4000);
+        if (job.attempts >= maxAttempts) {
+            play.Logger.error("Gave up " + worker.jobType + " job " + job.id + " after "
+                    + job.attempts + " attempts", e);
+            job.state = BackgroundJob.State.FAILED;
+            worker.failedCount.incrementAndGet();
+        } else {
+            long delay = retryDelayMillis(job.attempts, baseDelayMillis, maxDelayMillis);
+            play.Logger.warn("Failed to run " + worker.jobType + " job " + job.id
+                    + ", retrying in " + delay + "ms", e);
+            job.state = BackgroundJob.State.WAITING;
+            job.waitingDedupeKey = job.dedupeKey;
+            job.claimedBy = null;
+            job.claimedAt = null;
+            job.runAt = new Date(System.currentTimeMillis() + delay);
+            worker.retriedCount.incrementAndGet();
+        }
+        try {
+            job.update();
+        } catch (PersistenceException pe) {
+            // 실행하는 동안 같은 키로 새 작업이 들어와 기다리고 있다. 그 작업이 최신 내용으로 대신 실행된다.
+            job.delete();
+        }
+    }
+
+    /**
+     * 임대 기간의 1/3 이 지날 때마다 이 노드가 실행 중인 작업의 임대를 갱신하고, 만료된 임대의 작업을 다시
+     * 기다리게 한다.
+     *
+     * @param now
+     */
+    static synchronized void maintainLeases(long now) {
+        if (now - leaseCheckedAt < leaseMillis / 3) {
+            return;
+        }
+        leaseCheckedAt = now;
+        BackgroundJob.renewLeases(nodeId, new Date(now));
+        int reclaimed = BackgroundJob.reclaimExpired(new Date(now - leaseMillis));
+        if (reclaimed > 0) {
+            play.Logger.info(reclaimed + " background jobs with expired leases will be run again");
+        }
+    }
+
+    private static String getDefaultNodeId() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    /**
+     * {@code attempts}번째 실패한 뒤 다시 실행하기까지 기다릴 시간
+     *
+     * @param attempts 1부터 시작한다.
+     * @param baseDelayMillis 첫 번째 실패 뒤에 기다릴 시간
+     * @param maxDelayMillis 가장 길게 기다릴 시간
+     * @return
+     */
+    static long retryDelayMillis(int attempts, long baseDelayMillis, long maxDelayMillis) {
+        int shift = Math.min(Math.max(attempts - 1, 0), 62);
+        if (baseDelayMillis > (maxDelayMillis >> shift)) {
+            return maxDelayMillis;
+        }
+        return baseDelayMillis << shift;
+    }
+
+    private static Worker getWorker(String jobType) {
+        synchronized (workers) {
+            return workers.get(jobType);
+        }
+    }
+
+    private static List<Worker> getWorkers() {
+        synchronized (workers) {
+            return new ArrayList<>(workers.values());
+        }
+    }
+
+    /**
+     * 등록된 작업 종류마다의 상태
+     *
+     * @return
+     */
+    public static List<Status> getStatuses() {
+        Map<String, Status> statuses = new TreeMap<>();
+        for (Worker worker : getWorkers()) {
+            statuses.put(worker.jobType, new Status(worker));
+        }
+        for (SqlRow row : BackgroundJob.countByTypeAndState()) {
+            Status status = statuses.get(row.getString("job_type"));
+            if (status == null) {
+                status = new Status(row.getString("job_type"));
+                statuses.put(status.jobType, status);
+            }
+            status.add(BackgroundJob.State.valueOf(row.getString("state")), row.getInteger("cnt"),
+                    row.getDate("oldest"));
+        }
+        return new ArrayList<>(statuses.values());
+    }
+
+    /**
+     * {@code jobType}의 상태
+     *
+     * @param jobType
+     * @return
+     */
+    public static Status getStatus(String jobType) {
+        for (Status status : getStatuses()) {
+            if (status.jobType.equals(jobType)) {
+                return status;
+            }
+        }
+        return new Status(jobType);
+    }
+
+    /**
+     * 한 종류의 작업들의 상태
+     */
+    public static class Status {
+        private final String jobType;
+        private int concurrency;
+        private int running;
+        private int waiting;
+        private int failed;
+        private Date oldestWaiting;
+        private long enqueuedCount;
+        private long coalescedCount;
+        private long completedCount;
+        private long retriedCount;
+        private long failedCount;
+        private long averageLatencyMillis;
+        private double completedPerMinute;
+
+        Status(String jobType) {
+            this.jobType = jobType;
+        }
+
+        Status(Worker worker) {
+            this(worker.jobType);
+            concurrency = worker.concurrency;
+            running = worker.running.get();
+            enqueuedCount = worker.enqueuedCount.get();
+            coalescedCount = worker.coalescedCount.get();
+            completedCount = worker.completedCount.get();
+            retriedCount = worker.retriedCount.get();
+            failedCount = worker.failedCount.get();
+            averageLatencyMillis = completedCount == 0 ? 0 : worker.totalLatencyMillis.get() / completedCount;
+            long elapsed = Math.max(System.currentTimeMillis() - startedAt, 1);
+            completedPerMinute = completedCount * 60000.0 / elapsed;
+        }
+
+        private void add(BackgroundJob.State state, int count, Date oldest) {
+            switch (state) {
+                case WAITING:
+                    waiting = count;
+                    oldestWaiting = oldest;
+                    break;
+                case FAILED:
+                    failed = count;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        public String getJobType() {
+            return jobType;
+        }
+
+        /**
+         * 동시에 실행하는 작업의 최대 수, 등록되지 않은 종류이면 0
+         */
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public int getRunning() {
+            return running;
+        }
+
+        /**
+         * 실행을 기다리는 작업의 수, 다시 시도하려고 기다리는 작업도 포함한다.
+         */
+        public int getWaiting() {
+            return waiting;
+        }
+
+        /**
+         * 재시도를 모두 실패해서 남아있는 작업의 수
+         */
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * 기다리는 작업 중 가장 먼저 들어온 작업이 들어온 시각, 없으면 null
+         */
+        public Date getOldestWaiting() {
+            return oldestWaiting;
+        }
+
+        public long getEnqueuedCount() {
+            return enqueuedCount;
+        }
+
+        /**
+         * 기다리는 작업과 합쳐서 새로 넣지 않은 횟수
+         */
+        public long getCoalescedCount() {
+            return coalescedCount;
+        }
+
+        public long getCompletedCount() {
+            return completedCount;
+        }
+
+        public long getRetriedCount() {
+            return retriedCount;
+        }
+
+        public long getFailedCount() {
+            return failedCount;
+        }
+
+        /**
+         * 작업이 들어온 뒤 끝나기까지 걸린 평균 시간 (ms)
+         */
+        public long getAverageLatencyMillis() {
+            return averageLatencyMillis;
+        }
+
+        /**
+         * 애플리케이션이 시작된 뒤 1분마다 끝낸 작업의 평균 수
+         */
+        public double getCompletedPerMinute() {
+            return completedPerMinute;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Yobi, Project Hosting SW
+ *
+ * Copyright 2014 NAVER Corp.
+ * http://yobi.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package actors;
+
+import models.*;
+import models.enumeration.EventType;
+import models.enumeration.State;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.node.ObjectNode;
+import play.libs.Json;
+
+import java.util.List;
+
+/**
+ * 코드 보내기의 병합 확인을 {@link JobQueue}에 넣고 실행한다.
+ *
+ * 코드 보내기 ID 를 dedupe key 로 하므로 이미 기다리고 있는 코드 보내기는 다시 넣지 않는다. 확인은 실행할 때의
+ * HEAD 로 하므로 여러 번 push 해도 최신 HEAD 로 한 번만 확인하게 된다. 동시에 실행하는 병합 확인의 수는
+ * {@code application.jobs.merge-check.concurrency}를 넘지 않는다.
+ *
+ * 코드 받을 프로젝트를 그룹으로 하므로 한 프로젝트의 병합 확인은
+ * {@code application.jobs.merge-check.group-concurrency}(기본값 1)개까지만 동시에 실행한다. 열린 코드 보내기가
+ * 많은 브랜치에 계속 push 하는 프로젝트가 있어도 다른 프로젝트의 병합 확인이 밀리지 않는다.
+ *
+ * 확인을 기다리는 코드 보내기는 DB 에 남으므로, 재시작해도 병합 중으로 표시된 채 확인되지 않고 남지 않는다.
+ */
+public class MergeCheckScheduler {
+    public static final String JOB_TYPE = "merge-check";
+
+    private static final int DEFAULT_CONCURRENCY = 2;
+    private static final int DEFAULT_CONCURRENCY_PER_PROJECT = 1;
+
+    /**
+     * 병합 확인 작업을 처리하도록 {@link JobQueue}에 등록한다.
+     */
+    public static void register() {
+        JobQueue.register(JOB_TYPE, DEFAULT_CONCURRENCY, DEFAULT_CONCURRENCY_PER_PROJECT, new JobHandler() {
+            @Override
+            public void handle(String payload) {
+                check(Json.parse(payload));
+            }
+        });
+    }
+
+    /**
+     * {@code message}의 프로젝트와 브랜치에 관련된 열린 코드 보내기들의 병합 확인을 예약한다.
+     *
+     * @param message 갱신된 프로젝트와 브랜치를 담은 메시지
+     */
+    public static void scheduleRelated(PullRequestEventMessage message) {
+        List<PullRequest> pullRequests = PullRequest.findRelatedPullRequests(
+                message.getProject(), message.getBranch());
+        for (PullRequest pullRequest : pullRequests) {
+            schedule(pullRequest, message);
+        }
+    }
+
+    /**
+     * {@code pullRequest}의 병합 확인을 예약한다. 이미 기다리고 있다면 다시 넣지 않는다.
+     *
+     * @param pullRequest
+     * @param message 병합 확인을 요청한 사용자를 담은 메시지
+     */
+    public static void schedule(PullRequest pullRequest, PullRequestEventMessage message) {
+        // 확인이 끝날 때까지 병합중으로 보여준다.
+        pullRequest.startMerge();
+        pullRequest.update();
+
+        ObjectNode payload = Json.newObject();
+        payload.put("pullRequestId", pullRequest.id);
+        if (message.getSender() != null) {
+            payload.put("senderId", message.getSender().id);
+        }
+        JobQueue.enqueue(JOB_TYPE, pullRequest.toProject.id.toString(), pullRequest.id.toString(),
+                payload.toString());
+    }
+
+    private static void check(JsonNode payload) {
+        long pullRequestId = payload.get("pullRequestId").asLong();
+        PullRequest pullRequest = PullRequest.findById(pullRequestId);
+        if (pullRequest == null) {
+            return;
+        }
+
+        // 기다리는 동안 닫히거나 병합되었다면 확인하지 않는다.
+        if (pullRequest.isClosed() || pullRequest.isMerged()) {
+            pullRequest.endMerge();
+            pullRequest.update();
+            return;
+        }
+
+        User sender = null;
+        if (payload.has("senderId")) {
+            sender = User.find.byId(payload.get("senderId").asLong());
+        }
+        if (sender == null) {
+            sender = User.anonymous;
+        }
+
+        try {
+            processPullRequestMerging(new PullRequestEventMessage(sender, null, pullRequest), pullRequest);
+        } catch (RuntimeException e) {
+            // 확인하는 동안 지워지거나 닫히거나 병합되었다면 브랜치가 없어서 실패할 수 있다. 다시 시도하지 않는다.
+            PullRequest current = PullRequest.findById(pullRequestId);
+            if (current == null || current.isClosed() || current.isMerged()) {
+                play.Logger.info("Skipped checking merging from " + pullRequest
+                        + " which was deleted, closed or merged while being checked");
+                return;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * PullRequest 병합을 시도하고 병합결과를 저장한다.
+     *
+     * Diff커밋중 신규커밋이 있을경우 커밋이벤트를 등록한다.
+     * Diff커밋이 없을경우 PullRequest 상태를 병합으로 변경하고 알림과 이벤트를 등록한다.
+     * 병합결과가 충돌일 경우 알림과 이벤트를 등록한다.
+     * 병합결과가 충돌해결일 경우 알림과 이벤트를 등록한다.
+     *
+     * 확인하다 실패하면 예외를 그대로 던져서 {@link JobQueue}가 나중에 다시 시도하게 한다.
+     *
+     * @param message
+     * @param pullRequest
+     */
+    private static void processPullRequestMerging(PullRequestEventMessage message, PullRequest pullRequest) {
+        String oldMergeCommitId = pullRequest.mergedCommitIdTo;
+        PullRequestMergeResult mergeResult = pullRequest.attemptMerge();
+
+        if (mergeResult.hasDiffCommits()) {
+            mergeResult.saveCommits();
+            if (!mergeResult.getNewCommits().isEmpty()) {
+                PullRequestEvent.addCommitEvents(message.getSender(), pullRequest,
+                        mergeResult.getNewCommits(),
+                        getCommitEventOldValue(oldMergeCommitId, pullRequest.mergedCommitIdTo));
+                pullRequest.clearReviewers();
+            }
+        } else {
+            mergeResult.setMergedStateOfPullRequest(message.getSender());
+            NotificationEvent notiEvent = NotificationEvent.afterPullRequestUpdated(message.getSender(),
+                    pullRequest, pullRequest.state, State.MERGED);
+            PullRequestEvent.addEvent(notiEvent, pullRequest);
+        }
+
+        if (mergeResult.conflicts()) {
+            mergeResult.setConflictStateOfPullRequest();
+            NotificationEvent notiEvent = NotificationEvent.afterMerge(message.getSender(),
+                    pullRequest, mergeResult.getGitConflicts(), State.CONFLICT);
+            PullRequestEvent.addMergeEvent(notiEvent.getSender(), EventType.PULL_REQUEST_MERGED, State.CONFLICT, pullRequest);
+        }
+
+        if (mergeResult.resolved()) {
+            mergeResult.setResolvedStateOfPullRequest();
+            NotificationEvent notiEvent = NotificationEvent.afterMerge(message.getSender(),
+                    pullRequest, mergeResult.getGitConflicts(), State.RESOLVED);
+            PullRequestEvent.addMergeEvent(notiEvent.getSender(), EventType.PULL_REQUEST_MERGED, State.RESOLVED, pullRequest);
+        }
+
+        mergeResult.save();
+    }
+
+    private static String getCommitEventOldValue(String oldMergeCommitId, String newMergeCommitId) {
+        if (oldMergeCommitId == null) {
+            return null;
+        }
+        return oldMergeCommitId + PullRequest.DELIMETER + newMergeCommitId;
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Yobi, Project Hosting SW
+ *
+ * Copyright 2014 NAVER Corp.
+ * http://yobi.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package actors;
+
+import akka.actor.UntypedActor;
+import playRepository.RepositoryMaintenance;
+
+import java.io.File;
+
+/**
+ * {@link RepositoryMaintenanceScheduler}가 고른 저장소 하나를 정리하고 멈춘다.
+ *
+ * 고른 뒤에 push 를 받기 시작했다면 정리하지 않고 다음 주기로 미룬다.
+ */
+public class RepositoryMaintenanceActor extends UntypedActor {
+    @Override
+    public void onReceive(Object object) {
+        if (!(object instanceof File)) {
+            return;
+        }
+
+        File gitDir = (File) object;
+        Boolean result = null;
+        try {
+            if (!RepositoryMaintenance.isPushing(gitDir)) {
+                RepositoryMaintenance.Stats stats = RepositoryMaintenance.run(gitDir);
+                play.Logger.info("Repository maintenance of " + stats.getName() + " is done in "
+                        + stats.getDurationMillis() + "ms");
+                result = true;
+            }
+        } catch (Exception e) {
+            play.Logger.warn("Failed to maintain the repository: " + gitDir, e);
+            result = false;
+        } finally {
+            RepositoryMaintenanceScheduler.complete(gitDir, result);
+            getContext().stop(getSelf());
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Yobi, Project Hosting SW
+ *
+ * Copyright 2014 NAVER Corp.
+ * http://yobi.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package actors;
+
+import akka.actor.Props;
+import play.Configuration;
+import play.libs.Akka;
+import playRepository.GitRepository;
+import playRepository.RepositoryMaintenance;
+import scala.concurrent.duration.Duration;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 정리가 필요한 Git 저장소를 주기적으로 찾아 {@link RepositoryMaintenanceActor}로 정리한다.
+ *
+ * {@code application.git.maintenance.interval}마다 {@link RepositoryMaintenance#findCandidates(File, int, int)}로
+ * 저장소를 고르고, 동시에 {@code application.git.maintenance.concurrency}개까지만 정리한다. 정리하는 동안 디스크와
+ * CPU 를 많이 쓰므로 전용 dispatcher({@link #DISPATCHER_ID})에서 실행한다. 전용 dispatcher 가 설정되어 있지 않으면
+ * 기본 dispatcher 에서 실행한다.
+ *
+ * <pre>
+ * application.git.maintenance.enabled = true
+ * application.git.maintenance.initdelay = 10m
+ * application.git.maintenance.interval = 1h
+ * application.git.maintenance.concurrency = 1
+ * application.git.maintenance.loose-objects = 6700
+ * application.git.maintenance.packs = 50
+ * </pre>
+ */
+public class RepositoryMaintenanceScheduler {
+    public static final String DISPATCHER_ID = "repository-maintenance-dispatcher";
+    private static final String DEFAULT_DISPATCHER_ID = "akka.actor.default-dispatcher";
+
+    private static final Set<File> running = new HashSet<>();
+
+    private static final AtomicLong startedCount = new AtomicLong();
+    private static final AtomicLong completedCount = new AtomicLong();
+    private static final AtomicLong failedCount = new AtomicLong();
+    private static final AtomicLong skippedCount = new AtomicLong();
+
+    private static String dispatcherId = DISPATCHER_ID;
+    private static int concurrency = 1;
+    private static int looseObjectsLimit = RepositoryMaintenance.DEFAULT_LOOSE_OBJECTS_LIMIT;
+    private static int packsLimit = RepositoryMaintenance.DEFAULT_PACKS_LIMIT;
+
+    /**
+     * 저장소 정리 스케쥴을 등록한다.
+     *
+     * 애플리케이션이 시작되고 {@code application.git.maintenance.initdelay}가 경과한 후 부터,
+     * {@code application.git.maintenance.interval} 만큼의 시간이 지날 때 마다 정리할 저장소를 찾는다.
+     */
+    public static void startSchedule() {
+        Configuration config = Configuration.root();
+        Long initDelay = config.getMilliseconds("application.git.maintenance.initdelay", 10 * 60 * 1000L);
+        Long interval = config.getMilliseconds("application.git.maintenance.interval", 60 * 60 * 1000L);
+        concurrency = Math.max(1, config.getInt("application.git.maintenance.concurrency", concurrency));
+        looseObjectsLimit = config.getInt("application.git.maintenance.loose-objects", looseObjectsLimit);
+        packsLimit = config.getInt("application.git.maintenance.packs", packsLimit);
+        dispatcherId = getDispatcherId();
+
+        Akka.system().scheduler().schedule(
+            Duration.create(initDelay, TimeUnit.MILLISECONDS),
+            Duration.create(interval, TimeUnit.MILLISECONDS),
+            new Runnable() {
+                public void run() {
+                    try {
+                        scheduleCandidates();
+                    } catch (Exception e) {
+                        play.Logger.warn("Failed to schedule repository maintenance", e);
+                    }
+                }
+            },
+            Akka.system().dispatcher()
+        );
+    }
+
+    /**
+     * 정리가 필요한 저장소를 찾아서, 동시에 정리하는 저장소가 {@code concurrency}개를 넘지 않을 만큼 정리를 시작한다.
+     * 나머지는 다음 주기에 다시 고른다.
+     */
+    static void scheduleCandidates() {
+        List<File> candidates = RepositoryMaintenance.findCandidates(
+                new File(GitRepository.getRepoPrefix()), looseObjectsLimit, packsLimit);
+
+        synchronized (running) {
+            for (File gitDir : candidates) {
+                if (running.size() >= concurrency) {
+                    break;
+                }
+                if (!running.add(gitDir)) {
+                    continue;
+                }
+                try {
+                    Akka.system().actorOf(new Props(RepositoryMaintenanceActor.class).withDispatcher(dispatcherId))
+                            .tell(gitDir, null);
+                    startedCount.incrementAndGet();
+                } catch (RuntimeException e) {
+                    // 시작하지 못했으면 자리를 비워서 다음 주기에 다시 고를 수 있게 한다.
+                    running.remove(gitDir);
+                    play.Logger.warn("Failed to start repository maintenance: " + gitDir, e);
+                }
+            }
+        }
+    }
+
+    /*
+     * 전용 dispatcher 가 설정되어 있지 않으면 기본 dispatcher 를 사용한다.
+     */
+    private static String getDispatcherId() {
+        if (Akka.system().settings().config().hasPath(DISPATCHER_ID)) {
+            return DISPATCHER_ID;
+        }
+        play.Logger.info(DISPATCHER_ID + " is not configured. Repository maintenance runs on the default dispatcher.");
+        return DEFAULT_DISPATCHER_ID;
+    }
+
+    /**
+     * {@code gitDir}의 정리가 끝났음을 기록한다.
+     *
+     * @param gitDir
+     * @param result 정리했으면 true, 실패했으면 false, 건너뛰었으면 null
+     */
+    static void complete(File gitDir, Boolean result) {
+        synchronized (running) {
+            running.remove(gitDir);
+        }
+        if (result == null) {
+            skippedCount.incrementAndGet();
+        } else if (result) {
+            completedCount.incrementAndGet();
+        } else {
+            failedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 정리중인 저장소의 수
+     *
+     * @return
+     */
+    public static int getRunningCount() {
+        synchronized (running) {
+            return running.size();
+        }
+    }
+
+    public static long getStartedCount() {
+        return startedCount.get();
+    }
+
+    public static long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public static long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * 정리를 시작하기 직전에 push 를 받고 있어서 건너뛴 횟수
+     *
+     * @return
+     */
+    public static long getSkippedCount() {
+        return skippedCount.get();
+    }
+}
@@ -86,7 +86,11 @@ public class BranchApp extends Controller {
     public static Result deleteBranch(String loginId, String projectName, String branchName) throws GitAPIException {
         Project project = Project.findByOwnerAndProjectName(loginId, projectName);
         Repository repository = GitRepository.buildGitRepository(project);
-        GitRepository.deleteBranch(repository, branchName);
+        try {
+            GitRepository.deleteBranch(repository, branchName);
+        } finally {
+            repository.close();
+        }
         return redirect(routes.BranchApp.branches(loginId, projectName));
     }
 
@@ -4,23 +4,38 @@ import actions.DefaultProjectCheckAction;
 import controllers.annotation.IsAllowed;
 import models.Project;
 import models.enumeration.Operation;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.tika.Tika;
 import org.codehaus.jackson.node.ObjectNode;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
 import org.tmatesoft.svn.core.SVNException;
 import play.mvc.Controller;
 import play.mvc.Http;
 import play.mvc.Result;
 import play.mvc.With;
+import playRepository.GitRepository;
 import playRepository.PlayRepository;
+import playRepository.RepositoryArchive;
 import playRepository.RepositoryService;
+import playRepository.TransportExecutor;
+import utils.ChunkPipe;
 import utils.ErrorViews;
+import utils.HttpUtil;
+import utils.StreamResults;
 import views.html.code.nohead;
 import views.html.code.nohead_svn;
 import views.html.code.view;
 
 import javax.servlet.ServletException;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -153,13 +168,101 @@ public class CodeApp extends Controller {
      */
     @With(DefaultProjectCheckAction.class)
     public static Result showRawFile(String userName, String projectName, String revision, String path) throws Exception{
-        byte[] fileAsRaw = RepositoryService.getFileAsRaw(userName, projectName, revision, path);
+        PlayRepository repository = RepositoryService.getRepository(userName, projectName);
+        if (repository instanceof GitRepository) {
+            GitRepository gitRepository = (GitRepository) repository;
+            ObjectId blobId = gitRepository.getBlobId(revision, path);
+            if (blobId == null) {
+                return redirect(routes.CodeApp.codeBrowserWithBranch(userName, projectName, revision, path));
+            }
+            return sendBlob(gitRepository, blobId, "text/plain");
+        }
+
+        byte[] fileAsRaw = repository.getRawFile(revision, path);
         if(fileAsRaw == null){
             return redirect(routes.CodeApp.codeBrowserWithBranch(userName, projectName, revision, path));
         }
         return ok(fileAsRaw).as("text/plain");
     }
 
+    /**
+     * 지정한 프로젝트의 리비전을 압축 파일로 내려받는다.
+     *
+     * {@code file}은 리비전과 압축 파일 형식의 확장자로 이루어진다. (예: {@code v1.0.zip}, {@code master.tar.gz})
+     * 압축 파일은 만드는 대로 보내고, 같은 트리를 다시 내려받으면 기록해둔 파일을 그대로 보낸다.
+     *
+     * @param userName
+     * @param projectName
+     * @param file
+     * @see RepositoryArchive
+     */
+    @With(DefaultProjectCheckAction.class)
+    public static Result download(String userName, String projectName, String file) throws IOException {
+        Project project = ProjectApp.getProject(userName, projectName);
+        final RepositoryArchive.Format format = RepositoryArchive.Format.fromFileName(file);
+        if (format == null || !RepositoryService.VCS_GIT.equals(project.vcs)) {
+            return notFound(ErrorViews.NotFound.render("error.notfound"));
+        }
+        String revision = file.substring(0, file.length() - format.getExtension().length() - 1);
+
+        final Repository repository = GitRepository.buildGitRepository(project);
+        boolean sending = false;
+        try {
+            final RevCommit commit = GitRepository.resolveCommit(repository, revision);
+            if (commit == null) {
+                return notFound(ErrorViews.NotFound.render("error.notfound"));
+            }
+
+            String name = projectName + "-" + revision.replaceAll("[/\"]", "-");
+            final String prefix = name + "/";
+            response().setHeader("Content-Disposition",
+                    "attachment; " + HttpUtil.encodeContentDisposition(name + "." + format.getExtension()));
+
+            File cached = RepositoryArchive.getCachedFile(repository, commit, prefix, format);
+            if (cached != null) {
+                response().setContentType(format.getContentType());
+                return ok(cached);
+            }
+
+            sending = true;
+            return stream(format.getContentType(), new TransportExecutor.StreamWriter() {
+                @Override
+                public void write(OutputStream output) throws IOException {
+                    RepositoryArchive.send(repository, commit, prefix, format, output);
+                }
+
+                @Override
+                public void done() {
+                    repository.close();
+                }
+            });
+        } finally {
+            if (!sending) {
+                repository.close();
+            }
+        }
+    }
+
+    /**
+     * {@code writer}가 쓰는 내용을 {@link TransportExecutor#fetch()}에서 만들면서 chunked 로 보낸다.
+     *
+     * 스레드 풀이 가득 차 있으면 503 Service Unavailable 로 응답한다.
+     *
+     * @param contentType
+     * @param writer
+     * @return
+     */
+    public static Result stream(String contentType, TransportExecutor.StreamWriter writer) {
+        try {
+            InputStream input = TransportExecutor.fetch().stream(writer);
+            response().setContentType(contentType);
+            return ok(input, ChunkPipe.DEFAULT_CHUNK_SIZE);
+        } catch (TransportExecutor.OverloadedException e) {
+            response().setHeader(RETRY_AFTER, String.valueOf(TransportExecutor.getRetryAfterSeconds()));
+            return status(SERVICE_UNAVAILABLE, e.getMessage());
+        }
+    }
+
     /**
      * 지정판 프로젝트의 지정한 이미지 파일 원본을 보여준다
      *
@@ -169,13 +272,81 @@ public class CodeApp extends Controller {
      */
     @With(DefaultProjectCheckAction.class)
     public static Result showImageFile(String userName, String projectName, String revision, String path) throws Exception{
-        final byte[] fileAsRaw = RepositoryService.getFileAsRaw(userName, projectName, revision, path);
+        PlayRepository repository = RepositoryService.getRepository(userName, projectName);
+        if (repository instanceof GitRepository) {
+            GitRepository gitRepository = (GitRepository) repository;
+            ObjectId blobId = gitRepository.getBlobId(revision, path);
+            if (blobId == null) {
+                return notFound(ErrorViews.NotFound.render("error.notfound"));
+            }
+            return sendBlob(gitRepository, blobId, null);
+        }
+
+        final byte[] fileAsRaw = repository.getRawFile(revision, path);
         String mimeType = tika.detect(fileAsRaw);
         return ok(fileAsRaw).as(mimeType);
     }
 
     private static Tika tika = new Tika();
 
+    /**
+     * Git 저장소의 파일을 메모리에 한꺼번에 올리지 않고 스트림으로 보낸다.
+     *
+     * blob ID 를 ETag 로 사용하므로 If-None-Match 가 일치하면 304 Not Modified 로 응답한다. Range 헤더로
+     * 범위 하나를 요청하면 206 Partial Content 로 그 범위만 보낸다.
+     *
+     * @param repository
+     * @param blobId
+     * @param contentType 보낼 Content-Type, null 이면 {@link playRepository.BlobMetadataCache}로 알아낸다.
+     * @return
+     * @throws IOException
+     */
+    private static Result sendBlob(GitRepository repository, ObjectId blobId, String contentType)
+            throws IOException {
+        String eTag = "\"" + blobId.name() + "\"";
+        response().setHeader("ETag", eTag);
+        response().setHeader("Accept-Ranges", "bytes");
+
+        if (HttpUtil.matchesETag(request().getHeader("If-None-Match"), eTag)) {
+            return status(NOT_MODIFIED);
+        }
+
+        if (contentType == null) {
+            contentType = repository.getBlobMetadata(blobId).getMimeType();
+        }
+        response().setContentType(contentType);
+
+        ObjectLoader loader = repository.openBlob(blobId);
+        long size = loader.getSize();
+
+        long[] range = null;
+        String ifRange = request().getHeader("If-Range");
+        if (ifRange == null || ifRange.equals(eTag)) {
+            range = HttpUtil.parseRange(request().getHeader("Range"), size);
+        }
+
+        if (range == null) {
+            return StreamResults.stream(OK, loader.openStream(), size, ChunkPipe.DEFAULT_CHUNK_SIZE);
+        }
+
+        if (range.length == 0) {
+            response().setHeader("Content-Range", "bytes */" + size);
+            return status(REQUESTED_RANGE_NOT_SATISFIABLE);
+        }
+
+        long length = range[1] - range[0] + 1;
+        InputStream in = loader.openStream();
+        try {
+            IOUtils.skipFully(in, range[0]);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        response().setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + size);
+        return StreamResults.stream(PARTIAL_CONTENT, new BoundedInputStream(in, length), length,
+                ChunkPipe.DEFAULT_CHUNK_SIZE);
+    }
+
     /**
      * 프로젝트의 저장소 URL을 반환하는 함수
      * 화면에 저장소 URL을 표시하기 위해 사용된다
@@ -228,7 +399,17 @@ public class CodeApp extends Controller {
     @IsAllowed(Operation.READ)
     public static Result openFile(String userName, String projectName, String revision,
                            String path) throws Exception{
-        byte[] raw = RepositoryService.getFileAsRaw(userName, projectName, revision, path);
+        PlayRepository repository = RepositoryService.getRepository(userName, projectName);
+        if (repository instanceof GitRepository) {
+            GitRepository gitRepository = (GitRepository) repository;
+            ObjectId blobId = gitRepository.getBlobId(revision, path);
+            if (blobId == null) {
+                return notFound(ErrorViews.NotFound.render("error.notfound"));
+            }
+            return sendBlob(gitRepository, blobId, null);
+        }
+
+        byte[] raw = repository.getRawFile(revision, path);
 
         if(raw == null){
             return notFound(ErrorViews.NotFound.render("error.notfound"));
@@ -10,6 +10,8 @@ import models.enumeration.ResourceType;
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.NoHeadException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
 import org.tmatesoft.svn.core.SVNException;
 import play.data.Form;
 import play.mvc.Call;
@@ -18,8 +20,11 @@ import play.mvc.Result;
 import play.mvc.With;
 import playRepository.Commit;
 import playRepository.FileDiff;
+import playRepository.GitRepository;
+import playRepository.HistoryPage;
 import playRepository.PlayRepository;
 import playRepository.RepositoryService;
+import playRepository.TransportExecutor;
 import utils.AccessControl;
 import utils.ErrorViews;
 import utils.HttpUtil;
@@ -33,6 +38,7 @@ import views.html.error.notfound;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.List;
 
@@ -40,6 +46,11 @@ public class CodeHistoryApp extends Controller {
 
     private static final int HISTORY_ITEM_LIMIT = 25;
 
+    /**
+     * {@code .patch}, {@code .diff} 응답의 Content-Type
+     */
+    public static final String PATCH_CONTENT_TYPE = "text/plain; charset=UTF-8";
+
 
     /**
      * 코드 저장소의 커밋 로그 목록 페이지에 대한 요청에 응답한다.
@@ -71,8 +82,10 @@ public class CodeHistoryApp extends Controller {
      * when: 코드 메뉴의 커밋 탭에서 특정 브랜치를 선택했을 때
      *
      * {@code ownerName}과 {@code projectName}에 대응하는 프로젝트의 코드 저장소에서, 지정한
-     * {@code branch}의 커밋 목록 중, 한 페이지의 크기를 {@link #HISTORY_ITEM_LIMIT}로 했을 때
-     * {@code page}(요청의 쿼리에서 얻음)번째 페이지를 응답 메시지에 담아 반환한다.
+     * {@code branch}의 커밋 목록 중, {@code cursor}(요청의 쿼리에서 얻음)가 가리키는 위치부터
+     * {@link #HISTORY_ITEM_LIMIT}개의 커밋을 응답 메시지에 담아 반환한다. 페이지 링크에는 다음, 이전 페이지의
+     * 커서를 담으므로 몇 번째 페이지를 보든 앞 페이지들의 커밋을 다시 읽지 않는다. 이전 페이지의 커서를 알 수 없는
+     * 저장소에서는 지나온 페이지들의 커서를 모두 {@code prev} 쿼리로 넘겨서 몇 페이지를 되돌아가도 올바른 페이지를 보여준다.
      *
      * 만약 HEAD가 존재하지 않는 경우에는, 저장소를 만들어야 한다는 안내 페이지로 응답한다.
      *
@@ -93,20 +106,18 @@ public class CodeHistoryApp extends Controller {
         Project project = Project.findByOwnerAndProjectName(ownerName, projectName);
         PlayRepository repository = RepositoryService.getRepository(project);
 
-        String pageStr = HttpUtil.getFirstValueFromQuery(request().queryString(), "page");
-        int page = 0;
-        if (pageStr != null) {
-            page = Integer.parseInt(pageStr);
-        }
+        String cursor = StringUtils.defaultIfEmpty(
+                HttpUtil.getFirstValueFromQuery(request().queryString(), "cursor"), null);
 
         try {
-            List<Commit> commits = repository.getHistory(page, HISTORY_ITEM_LIMIT, branch, path);
+            HistoryPage historyPage = repository.getHistoryPage(cursor, HISTORY_ITEM_LIMIT, branch, path);
 
-            if (commits == null) {
+            if (historyPage == null) {
                 return notFound(ErrorViews.NotFound.render("error.notfound", project));
             }
 
-            return ok(history.render(project, commits, page, branch, path));
+            return ok(history.render(project, historyPage.getCommits(), cursor, historyPage.getPrevCursor(),
+                    historyPage.getNextCursor(), branch, path));
         } catch (NoHeadException e) {
             return notFound(nohead.render(project));
         }
@@ -182,6 +193,90 @@ public class CodeHistoryApp extends Controller {
         }
     }
 
+    /**
+     * 커밋을 {@code git format-patch} 형식의 텍스트로 보낸다.
+     *
+     * when: 커밋 주소 뒤에 {@code .patch}를 붙여서 요청했을 때
+     *
+     * @param ownerName
+     * @param projectName
+     * @param commitId
+     * @return
+     * @see GitRepository#writeFormatPatch(org.eclipse.jgit.lib.Repository, org.eclipse.jgit.lib.AnyObjectId,
+     * java.io.OutputStream)
+     */
+    @IsAllowed(Operation.READ)
+    public static Result patch(String ownerName, String projectName, String commitId)
+            throws IOException, SVNException, ServletException {
+        return sendPatch(ownerName, projectName, commitId, true);
+    }
+
+    /**
+     * 커밋의 변경 내역을 unified diff 형식의 텍스트로 보낸다.
+     *
+     * when: 커밋 주소 뒤에 {@code .diff}를 붙여서 요청했을 때
+     *
+     * @param ownerName
+     * @param projectName
+     * @param commitId
+     * @return
+     * @see GitRepository#writeDiff(org.eclipse.jgit.lib.Repository, org.eclipse.jgit.lib.AnyObjectId,
+     * java.io.OutputStream)
+     */
+    @IsAllowed(Operation.READ)
+    public static Result rawDiff(String ownerName, String projectName, String commitId)
+            throws IOException, SVNException, ServletException {
+        return sendPatch(ownerName, projectName, commitId, false);
+    }
+
+    /*
+     * Git 저장소의 변경 내역은 메모리에 모아두지 않고 만드는 대로 보낸다.
+     * Subversion 저장소는 format-patch 형식이 없으므로 어느 쪽이든 diff 를 보낸다.
+     */
+    private static Result sendPatch(String ownerName, String projectName, String commitId,
+                                    final boolean formatPatch) throws IOException, SVNException, ServletException {
+        Project project = Project.findByOwnerAndProjectName(ownerName, projectName);
+
+        if (project.vcs.equals(RepositoryService.VCS_SUBVERSION)) {
+            PlayRepository repository = RepositoryService.getRepository(project);
+            String patch = repository.getPatch(commitId);
+            if (patch == null) {
+                return notFound(ErrorViews.NotFound.render("error.notfound", project));
+            }
+            return ok(patch);
+        }
+
+        final Repository repository = GitRepository.buildGitRepository(project);
+        boolean sending = false;
+        try {
+            final RevCommit commit = GitRepository.resolveCommit(repository, commitId);
+            if (commit == null) {
+                return notFound(ErrorViews.NotFound.render("error.notfound.commit", project));
+            }
+
+            sending = true;
+            return CodeApp.stream(PATCH_CONTENT_TYPE, new TransportExecutor.StreamWriter() {
+                @Override
+                public void write(OutputStream output) throws IOException {
+                    if (formatPatch) {
+                        GitRepository.writeFormatPatch(repository, commit, output);
+                    } else {
+                        GitRepository.writeDiff(repository, commit, output);
+                    }
+                }
+
+                @Override
+                public void done() {
+                    repository.close();
+                }
+            });
+        } finally {
+            if (!sending) {
+                repository.close();
+            }
+        }
+    }
+
     @With(NullProjectCheckAction.class)
     public static Result newSVNComment(String ownerName, String projectName, String commitId)
             throws IOException, ServletException, SVNException {
@@ -20,17 +20,23 @@
  */
 package controllers;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 import controllers.annotation.IsAllowed;
 import models.Project;
 import models.enumeration.Operation;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
 import play.mvc.Controller;
 import play.mvc.Result;
 import playRepository.Commit;
 import playRepository.FileDiff;
+import playRepository.GitRepository;
 import playRepository.PlayRepository;
 import playRepository.RepositoryService;
+import playRepository.TransportExecutor;
 import utils.ErrorViews;
 import views.html.code.compare_svn;
 import views.html.code.compare;
@@ -62,4 +68,84 @@ public class CompareApp extends Controller {
             return ok(compare.render(project, commitA, commitB, diffs));
         }
     }
+
+    /**
+     * {@code revA} 이후부터 {@code revB}까지의 커밋들을 {@code git format-patch} 형식의 텍스트로 보낸다.
+     *
+     * when: 비교 주소 뒤에 {@code .patch}를 붙여서 요청했을 때
+     *
+     * @param ownerName
+     * @param projectName
+     * @param revA
+     * @param revB
+     * @return
+     * @throws Exception
+     */
+    @IsAllowed(Operation.READ)
+    public static Result patch(String ownerName, String projectName, String revA, String revB)
+            throws Exception {
+        return sendPatch(ownerName, projectName, revA, revB, true);
+    }
+
+    /**
+     * {@code revA}와 {@code revB}의 차이를 unified diff 형식의 텍스트로 보낸다.
+     *
+     * when: 비교 주소 뒤에 {@code .diff}를 붙여서 요청했을 때
+     *
+     * @param ownerName
+     * @param projectName
+     * @param revA
+     * @param revB
+     * @return
+     * @throws Exception
+     */
+    @IsAllowed(Operation.READ)
+    public static Result rawDiff(String ownerName, String projectName, String revA, String revB)
+            throws Exception {
+        return sendPatch(ownerName, projectName, revA, revB, false);
+    }
+
+    private static Result sendPatch(String ownerName, String projectName, String revA, String revB,
+                                    final boolean formatPatch) throws Exception {
+        Project project = Project.findByOwnerAndProjectName(ownerName, projectName);
+
+        if (RepositoryService.VCS_SUBVERSION.equals(project.vcs)) {
+            String patch = RepositoryService.getRepository(project).getPatch(revA, revB);
+            if (patch == null) {
+                return notFound(ErrorViews.NotFound.render("error.notfound", project));
+            }
+            return ok(patch);
+        }
+
+        final Repository repository = GitRepository.buildGitRepository(project);
+        boolean sending = false;
+        try {
+            final RevCommit commitA = GitRepository.resolveCommit(repository, revA);
+            final RevCommit commitB = GitRepository.resolveCommit(repository, revB);
+            if (commitA == null || commitB == null) {
+                return notFound(ErrorViews.NotFound.render("error.notfound.commit", project));
+            }
+
+            sending = true;
+            return CodeApp.stream(CodeHistoryApp.PATCH_CONTENT_TYPE, new TransportExecutor.StreamWriter() {
+                @Override
+                public void write(OutputStream output) throws IOException {
+                    if (formatPatch) {
+                        GitRepository.writeFormatPatch(repository, commitA, commitB, output);
+                    } else {
+                        GitRepository.writeDiff(repository, commitA, commitB, output);
+                    }
+                }
+
+                @Override
+                public void done() {
+                    repository.close();
+                }
+            });
+        } finally {
+            if (!sending) {
+                repository.close();
+            }
+        }
+    }
 }
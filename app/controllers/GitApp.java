@@ -7,13 +7,22 @@ import javax.servlet.ServletException;
 import models.Project;
 import models.enumeration.Operation;
 
+import models.User;
+import play.libs.F;
+import play.mvc.BodyParser;
 import play.mvc.Controller;
+import play.mvc.Http;
 import play.mvc.Result;
 import play.mvc.With;
+import playRepository.GitRpc;
 import playRepository.PlayRepository;
 import playRepository.RepositoryService;
+import playRepository.TransportExecutor;
 import utils.AccessControl;
 import utils.BasicAuthAction;
+import utils.ChunkPipe;
+import utils.GitRpcBodyParser;
+import utils.MalformedCredentialsException;
 
 public class GitApp extends Controller {
 
@@ -81,12 +90,46 @@ public class GitApp extends Controller {
     public static Result service(String ownerName, String projectName, String service,
             boolean isAdvertise) throws IOException, UnsupportedOperationException,
             ServletException {
+        Project project = ProjectApp.getProject(ownerName, projectName);
+        Result error = checkService(project, service);
+        if (error != null) {
+            return error;
+        }
+
+        if (isAdvertise) {
+            return ok(RepositoryService
+                    .gitAdvertise(project, service, response()));
+        } else {
+            Http.RequestBody body = request().body();
+            if (body.isMaxSizeExceeded()) {
+                return status(REQUEST_ENTITY_TOO_LARGE);
+            }
+            if (!(body instanceof GitRpcBodyParser.GitRpcBody)) {
+                return badRequest();
+            }
+            UserApp.currentUser().visits(project);
+            GitRpc rpc = ((GitRpcBodyParser.GitRpcBody) body).getRpc();
+            response().setContentType(rpc.getContentType());
+            return ok(rpc.getResponseStream(), ChunkPipe.DEFAULT_CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * 현재 사용자가 {@code project}에 {@code service}를 요청할 수 없다면 그 응답을 반환하고, 요청할 수 있다면
+     * null 을 반환한다.
+     *
+     * @param project
+     * @param service
+     * @return
+     * @throws IOException
+     * @throws ServletException
+     */
+    private static Result checkService(Project project, String service) throws IOException,
+            ServletException {
         if (!isSupportedService(service)) {
             return forbidden(String.format("Unsupported service: '%s'", service));
         }
 
-        Project project = ProjectApp.getProject(ownerName, projectName);
-
         if (project == null) {
             return notFound();
         }
@@ -99,17 +142,52 @@ public class GitApp extends Controller {
             }
         }
 
-        if (isAdvertise) {
-            return ok(RepositoryService
-                    .gitAdvertise(project, service, response()));
-        } else {
-            if (request().body().isMaxSizeExceeded()) {
-                return status(REQUEST_ENTITY_TOO_LARGE);
-            } else {
-                UserApp.currentUser().visits(project);
-                return ok(RepositoryService
-                        .gitRpc(project, service, request(), response()));
-            }
+        return null;
+    }
+
+    /**
+     * 요청 본문을 받기 전에 Git RPC 요청 처리를 시작한다.
+     *
+     * when: {@link GitRpcBodyParser}가 요청 본문을 받기 전에 호출한다.
+     *
+     * 본문을 받는 대로 upload-pack, receive-pack 에 넘겨주려면 action 이 실행되기 전에 처리를 시작해야 하므로,
+     * {@link BasicAuthAction}과 같은 방법으로 사용자를 인증하고 {@link #service(String, String, String, boolean)}와
+     * 같은 권한 검사를 여기서 한다.
+     *
+     * @param ownerName 프로젝트 소유자 이름
+     * @param projectName 프로젝트 이름
+     * @param service 요청하는 서비스
+     * 처리할 스레드가 모자라면 503 Service Unavailable 로 응답한다.
+     *
+     * @return 요청을 처리할 수 없으면 그 응답, 처리를 시작했으면 {@link GitRpc}
+     * @throws IOException
+     * @throws ServletException
+     */
+    public static F.Either<Result, GitRpc> startRpc(String ownerName, String projectName,
+            String service) throws IOException, ServletException {
+        User user;
+        try {
+            user = new BasicAuthAction().authenticate(request());
+        } catch (MalformedCredentialsException e) {
+            return F.Either.<Result, GitRpc>Left(badRequest());
+        }
+
+        if (user != null && !user.isAnonymous()) {
+            UserApp.addUserInfoToSession(user);
+        }
+
+        Project project = ProjectApp.getProject(ownerName, projectName);
+        Result error = checkService(project, service);
+        if (error != null) {
+            return F.Either.<Result, GitRpc>Left(error);
+        }
+
+        try {
+            return F.Either.<Result, GitRpc>Right(RepositoryService.startGitRpc(project, service,
+                    UserApp.currentUser(), request()));
+        } catch (TransportExecutor.OverloadedException e) {
+            response().setHeader(RETRY_AFTER, String.valueOf(TransportExecutor.getRetryAfterSeconds()));
+            return F.Either.<Result, GitRpc>Left(status(SERVICE_UNAVAILABLE, e.getMessage()));
         }
     }
 
@@ -152,6 +230,9 @@ public class GitApp extends Controller {
      *
      * 요청을 처리하기 전에, {@link BasicAuthAction}으로 사용자를 인증한다.
      *
+     * 요청 본문은 {@link GitRpcBodyParser}가 받는 대로 upload-pack, receive-pack 에 넘겨주며, 이 메소드는
+     * 그 결과를 응답으로 돌려준다.
+     *
      * @param ownerName 프로젝트 소유자 이름
      * @param projectName 프로젝트 이름
      * @param service 요청하는 서비스
@@ -161,6 +242,7 @@ public class GitApp extends Controller {
      * @throws ServletException
      */
     @With(BasicAuthAction.class)
+    @BodyParser.Of(GitRpcBodyParser.class)
     public static Result serviceRpc(String ownerName, String projectName, String service)
             throws UnsupportedOperationException, IOException, ServletException {
         return GitApp.service(ownerName, projectName, service, false);
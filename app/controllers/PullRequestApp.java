@@ -21,8 +21,7 @@
 package controllers;
 
 import actions.AnonymousCheckAction;
-import actors.PullRequestMergingActor;
-import akka.actor.Props;
+import actors.MergeCheckScheduler;
 import com.avaje.ebean.Page;
 import controllers.annotation.*;
 import models.*;
@@ -33,6 +32,8 @@ import models.enumeration.State;
 import org.apache.commons.lang3.StringUtils;
 import org.codehaus.jackson.node.ObjectNode;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
 import org.tmatesoft.svn.core.SVNException;
 
 import play.api.mvc.Call;
@@ -52,6 +53,7 @@ import views.html.error.notfound;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.text.MessageFormat;
@@ -334,7 +336,7 @@ public class PullRequestApp extends Controller {
 
         PullRequestEventMessage message = new PullRequestEventMessage(
                 UserApp.currentUser(), request(), pullRequest);
-        Akka.system().actorOf(new Props(PullRequestMergingActor.class)).tell(message, null);
+        MergeCheckScheduler.schedule(pullRequest, message);
 
         return redirect(pullRequestCall);
     }
@@ -428,6 +430,93 @@ public class PullRequestApp extends Controller {
         return ok(view.render(project, pullRequest, canDeleteBranch, canRestoreBranch));
     }
 
+    /**
+     * 코드 요청에 추가된 커밋들을 {@code git format-patch} 형식의 텍스트로 보낸다.
+     *
+     * when: 코드 요청 주소 뒤에 {@code .patch}를 붙여서 요청했을 때
+     *
+     * @param userName
+     * @param projectName
+     * @param pullRequestNumber
+     * @return
+     * @throws IOException
+     */
+    @IsAllowed(Operation.READ)
+    public static Result patch(String userName, String projectName, long pullRequestNumber)
+            throws IOException {
+        return sendPatch(userName, projectName, pullRequestNumber, true);
+    }
+
+    /**
+     * 코드 요청의 변경 내역을 unified diff 형식의 텍스트로 보낸다.
+     *
+     * when: 코드 요청 주소 뒤에 {@code .diff}를 붙여서 요청했을 때
+     *
+     * @param userName
+     * @param projectName
+     * @param pullRequestNumber
+     * @return
+     * @throws IOException
+     */
+    @IsAllowed(Operation.READ)
+    public static Result rawDiff(String userName, String projectName, long pullRequestNumber)
+            throws IOException {
+        return sendPatch(userName, projectName, pullRequestNumber, false);
+    }
+
+    /*
+     * 코드 요청의 변경 내역은 PullRequest#mergedCommitIdFrom 뒤부터 PullRequest#mergedCommitIdTo 까지이다.
+     * 아직 병합을 시도해보지 않은 코드 요청은 빈 내용을 보낸다.
+     *
+     * 주소가 번호로 끝나지 않아서 IsAllowed 로 코드 요청을 찾을 수 없으므로 권한은 여기에서 확인한다.
+     */
+    private static Result sendPatch(String userName, String projectName, long pullRequestNumber,
+                                    final boolean formatPatch) throws IOException {
+        Project project = Project.findByOwnerAndProjectName(userName, projectName);
+        PullRequest pullRequest = PullRequest.findOne(project, pullRequestNumber);
+        if (pullRequest == null) {
+            return notFound(ErrorViews.NotFound.render("error.notfound", project));
+        }
+        if (!AccessControl.isAllowed(UserApp.currentUser(), pullRequest.asResource(), Operation.READ)) {
+            return forbidden(ErrorViews.Forbidden.render("error.forbidden", project));
+        }
+
+        if (pullRequest.mergedCommitIdFrom == null || pullRequest.mergedCommitIdTo == null) {
+            return ok("");
+        }
+
+        final Repository repository = GitRepository.buildGitRepository(pullRequest.toProject);
+        boolean sending = false;
+        try {
+            final ObjectId since = repository.resolve(pullRequest.mergedCommitIdFrom);
+            final ObjectId until = repository.resolve(pullRequest.mergedCommitIdTo);
+            if (since == null || until == null) {
+                return ok("");
+            }
+
+            sending = true;
+            return CodeApp.stream(CodeHistoryApp.PATCH_CONTENT_TYPE, new TransportExecutor.StreamWriter() {
+                @Override
+                public void write(OutputStream output) throws IOException {
+                    if (formatPatch) {
+                        GitRepository.writeFormatPatch(repository, since, until, output);
+                    } else {
+                        GitRepository.writeDiff(repository, since, until, output);
+                    }
+                }
+
+                @Override
+                public void done() {
+                    repository.close();
+                }
+            });
+        } finally {
+            if (!sending) {
+                repository.close();
+            }
+        }
+    }
+
     /**
      * {@code userName}과 {@code projectName}에 해당하는 프로젝트로 들어온
      * {@code pullRequestId}에 해당하는 코드 요청의 상태를 반환한다
@@ -489,6 +578,34 @@ public class PullRequestApp extends Controller {
         return ok(viewChanges.render(project, pullRequest, commitId));
     }
 
+    /**
+     * 코드 요청의 변경내역 중 {@code offset}번째 파일부터 {@code limit}개를 조회한다.
+     *
+     * 변경내역 화면에서 파일이 아주 많을 때 나머지 파일들을 나누어 불러오는데 사용한다.
+     * {@code commitId}가 없으면 코드 요청 전체의 변경내역에서 가져온다.
+     *
+     * @param userName
+     * @param projectName
+     * @param pullRequestNumber
+     * @param commitId
+     * @param offset
+     * @param limit
+     * @return
+     * @throws IOException
+     */
+    @IsAllowed(value = Operation.READ, resourceType = ResourceType.PULL_REQUEST)
+    public static Result changedFiles(String userName, String projectName, long pullRequestNumber,
+                                      String commitId, int offset, int limit) throws IOException {
+        Project project = Project.findByOwnerAndProjectName(userName, projectName);
+        PullRequest pullRequest = PullRequest.findOne(project, pullRequestNumber);
+        if (pullRequest.isMerging || pullRequest.isConflict) {
+            return badRequest();
+        }
+        FileDiffPage page = pullRequest.getDiffPage(StringUtils.defaultIfEmpty(commitId, null),
+                offset, Math.min(Math.max(limit, 1), GitRepository.DIFF_FILE_LIMIT));
+        return ok(partial_diff_page.render(project, pullRequest, commitId, page));
+    }
+
     /**
      * {@code pullRequestId}에 해당하는 코드 요청을 수락한다.
      *
@@ -589,7 +706,7 @@ public class PullRequestApp extends Controller {
 
         PullRequestEventMessage message = new PullRequestEventMessage(
                 UserApp.currentUser(), request(), pullRequest);
-        Akka.system().actorOf(new Props(PullRequestMergingActor.class)).tell(message, null);
+        MergeCheckScheduler.schedule(pullRequest, message);
 
         return redirect(call);
     }
@@ -1,5 +1,8 @@
 package controllers;
 
+import actors.JobQueue;
+import actors.MergeCheckScheduler;
+import actors.RepositoryMaintenanceScheduler;
 import com.avaje.ebean.Page;
 
 import info.schleichardt.play2.mailplugin.Mailer;
@@ -17,6 +20,13 @@ import play.mvc.Controller;
 import play.mvc.Http;
 import play.mvc.Result;
 import play.mvc.With;
+import playRepository.BlobMetadataCache;
+import playRepository.GitRepositoryCache;
+import playRepository.RefAdvertisementCache;
+import playRepository.RepositoryArchive;
+import playRepository.RepositoryMaintenance;
+import playRepository.TransportExecutor;
+import playRepository.UploadPackCache;
 import utils.Constants;
 import utils.SiteManagerAuthAction;
 import utils.ErrorViews;
@@ -35,6 +45,7 @@ public class SiteApp extends Controller {
     private static final int PROJECT_COUNT_PER_PAGE = 25;
     private static final int POSTING_COUNT_PER_PAGE = 30;
     private static final int ISSUE_COUNT_PER_PAGE = 30;
+    private static final int FAILED_JOB_COUNT = 20;
 
     /**
      * 메일을 발송한다.
@@ -310,4 +321,125 @@ public class SiteApp extends Controller {
 
         return ok(toJson(emails));
     }
+
+    /**
+     * 코드 보내기 병합 확인 대기열의 상태를 json 으로 반환한다.
+     *
+     * @return
+     * @see MergeCheckScheduler
+     */
+    public static Result mergeCheckStatus() {
+        return ok(toJson(JobQueue.getStatus(MergeCheckScheduler.JOB_TYPE)));
+    }
+
+    /**
+     * 백그라운드 작업의 종류별 대기열과 처리량, 재시도를 모두 실패한 작업들을 보여준다.
+     *
+     * @return
+     * @see JobQueue
+     */
+    public static Result jobs() {
+        return ok(jobs.render("title.siteSetting", JobQueue.getStatuses(),
+                BackgroundJob.findFailed(FAILED_JOB_COUNT)));
+    }
+
+    /**
+     * Git, SVN 요청을 처리하는 스레드 풀과 ref advertisement, upload-pack 캐시의 상태를 json 으로 반환한다.
+     *
+     * @return
+     * @see TransportExecutor
+     * @see RefAdvertisementCache
+     * @see UploadPackCache
+     */
+    public static Result transportStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        for (TransportExecutor executor : Arrays.asList(TransportExecutor.fetch(), TransportExecutor.push())) {
+            Map<String, Object> pool = new LinkedHashMap<>();
+            pool.put("active", executor.getActiveCount());
+            pool.put("queued", executor.getQueuedCount());
+            pool.put("completed", executor.getCompletedCount());
+            pool.put("rejected", executor.getRejectedCount());
+            status.put(executor.getName(), pool);
+        }
+        Map<String, Object> refAdvertisement = new LinkedHashMap<>();
+        refAdvertisement.put("hit", RefAdvertisementCache.getHitCount());
+        refAdvertisement.put("miss", RefAdvertisementCache.getMissCount());
+        status.put("refAdvertisementCache", refAdvertisement);
+        Map<String, Object> uploadPack = new LinkedHashMap<>();
+        uploadPack.put("hit", UploadPackCache.getHitCount());
+        uploadPack.put("miss", UploadPackCache.getMissCount());
+        uploadPack.put("bypass", UploadPackCache.getBypassCount());
+        uploadPack.put("size", UploadPackCache.getSize());
+        status.put("uploadPackCache", uploadPack);
+        return ok(toJson(status));
+    }
+
+    /**
+     * Git 저장소 정리 상태와 저장소별 마지막 정리 결과를 json 으로 반환한다.
+     *
+     * @return
+     * @see RepositoryMaintenance
+     */
+    public static Result repositoryMaintenanceStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", RepositoryMaintenanceScheduler.getRunningCount());
+        status.put("started", RepositoryMaintenanceScheduler.getStartedCount());
+        status.put("completed", RepositoryMaintenanceScheduler.getCompletedCount());
+        status.put("failed", RepositoryMaintenanceScheduler.getFailedCount());
+        status.put("skipped", RepositoryMaintenanceScheduler.getSkippedCount());
+
+        List<Map<String, Object>> repositories = new ArrayList<>();
+        for (RepositoryMaintenance.Stats stats : RepositoryMaintenance.getStats()) {
+            Map<String, Object> repository = new LinkedHashMap<>();
+            repository.put("name", stats.getName());
+            repository.put("lastRunAt", stats.getLastRunAt().getTime());
+            repository.put("durationMillis", stats.getDurationMillis());
+            repository.put("looseObjectsBefore", stats.getLooseObjectsBefore());
+            repository.put("packsBefore", stats.getPacksBefore());
+            repository.put("looseObjectsAfter", stats.getLooseObjectsAfter());
+            repository.put("packsAfter", stats.getPacksAfter());
+            repository.put("packedObjects", stats.getPackedObjects());
+            repository.put("sizeOfPackedObjects", stats.getSizeOfPackedObjects());
+            repository.put("bitmaps", stats.getBitmaps());
+            repository.put("runCount", stats.getRunCount());
+            repository.put("failureCount", stats.getFailureCount());
+            repository.put("lastError", stats.getLastError());
+            repositories.add(repository);
+        }
+        status.put("repositories", repositories);
+        return ok(toJson(status));
+    }
+
+    /**
+     * 공유하는 Git 저장소, 파일 정보, 압축 파일, 알림 메시지 캐시의 상태를 json 으로 반환한다.
+     *
+     * @return
+     * @see GitRepositoryCache
+     * @see BlobMetadataCache
+     * @see RepositoryArchive
+     * @see NotificationMessageCache
+     */
+    public static Result cacheStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        Map<String, Object> repositories = new LinkedHashMap<>();
+        repositories.put("hit", GitRepositoryCache.getHitCount());
+        repositories.put("miss", GitRepositoryCache.getMissCount());
+        repositories.put("eviction", GitRepositoryCache.getEvictionCount());
+        status.put("gitRepositoryCache", repositories);
+        Map<String, Object> blobMetadata = new LinkedHashMap<>();
+        blobMetadata.put("hit", BlobMetadataCache.getHitCount());
+        blobMetadata.put("miss", BlobMetadataCache.getMissCount());
+        blobMetadata.put("hitRate", BlobMetadataCache.getHitRate());
+        status.put("blobMetadataCache", blobMetadata);
+        Map<String, Object> archive = new LinkedHashMap<>();
+        archive.put("hit", RepositoryArchive.getHitCount());
+        archive.put("miss", RepositoryArchive.getMissCount());
+        archive.put("size", RepositoryArchive.getSize());
+        status.put("archiveCache", archive);
+        Map<String, Object> notificationMessage = new LinkedHashMap<>();
+        notificationMessage.put("hit", NotificationMessageCache.getHitCount());
+        notificationMessage.put("miss", NotificationMessageCache.getMissCount());
+        status.put("notificationMessageCache", notificationMessage);
+        return ok(toJson(status));
+    }
 }
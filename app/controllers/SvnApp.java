@@ -7,11 +7,12 @@ import org.tmatesoft.svn.core.internal.server.dav.handlers.DAVHandlerFactory;
 import play.mvc.*;
 import playRepository.PlayRepository;
 import playRepository.RepositoryService;
+import playRepository.TransportExecutor;
 import utils.*;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
-import java.io.PipedInputStream;
+import java.io.InputStream;
 import java.net.URISyntaxException;
 
 public class SvnApp extends Controller {
@@ -71,7 +72,14 @@ public class SvnApp extends Controller {
         }
 
         // Start DAV Service
-        PlayServletResponse response = startDavService(userName, pathInfo);
+        PlayServletResponse response;
+        try {
+            response = startDavService(userName, pathInfo,
+                    getRequestedOperation(request().method()));
+        } catch (TransportExecutor.OverloadedException e) {
+            response().setHeader(RETRY_AFTER, String.valueOf(TransportExecutor.getRetryAfterSeconds()));
+            return status(SERVICE_UNAVAILABLE, e.getMessage());
+        }
 
         // Wait until the status code is decided by the DAV service.
         // After that, get the status code.
@@ -85,17 +93,24 @@ public class SvnApp extends Controller {
     /**
      * WebDAV 서비스를 시작한다.
      *
+     * 읽기 요청은 {@link TransportExecutor#fetch()}, 쓰기 요청은 {@link TransportExecutor#push()}에서 처리한다.
+     *
      * @param ownerName 저장소 소유자의 이름. 저장소의 부모 경로를 얻기 위해 필요하다.
      * @param pathInfo
+     * @param operation 요청한 작업
+     * @throws TransportExecutor.OverloadedException 처리할 스레드가 모자랄 때
      */
-    private static PlayServletResponse startDavService(final String ownerName, String pathInfo) throws IOException {
+    private static PlayServletResponse startDavService(final String ownerName, String pathInfo,
+            Operation operation) throws IOException, TransportExecutor.OverloadedException {
         // For DavServlet, transform HTTP request and HTTP response in this context to
         // ServletRequest and ServletResponse
         final PlayServletRequest request = new PlayServletRequest(request(),
                 UserApp.currentUser().loginId, pathInfo);
         final PlayServletResponse response = new PlayServletResponse(response());
 
-        new Thread() {
+        TransportExecutor executor = (operation == Operation.READ)
+                ? TransportExecutor.fetch() : TransportExecutor.push();
+        executor.execute(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -108,7 +123,7 @@ public class SvnApp extends Controller {
                     play.Logger.error("Failed to process a SVN request.", e);
                 }
             }
-        }.start();
+        });
 
         return response;
     }
@@ -122,7 +137,7 @@ public class SvnApp extends Controller {
      * @param input
      * @return
      */
-    private static Result sendResponse(int statusCode, PipedInputStream input) {
+    private static Result sendResponse(int statusCode, InputStream input) {
         if (statusCode < 200 || statusCode == 204 || statusCode == 304) {
             // 1xx, 204 and 304 MUST NOT include message body.
             return status(statusCode);
@@ -130,7 +145,7 @@ public class SvnApp extends Controller {
             // 205 MUST include message body of zero length.
             return status(statusCode, "");
         } else {
-            return status(statusCode, input);
+            return status(statusCode, input, ChunkPipe.DEFAULT_CHUNK_SIZE);
         }
     }
 
@@ -12,10 +12,7 @@ import utils.JodaDateUtil;
 
 import javax.persistence.*;
 import javax.validation.constraints.Size;
-import java.util.Date;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 /**
  * {@link Posting}과 {@link Issue}의 공통 속성과 메서드를 모아둔 클래스
@@ -27,6 +24,8 @@ abstract public class AbstractPosting extends Model implements ResourceConvertib
 
     private static final long serialVersionUID = 1L;
 
+    private static final int NUMBERS_PER_QUERY = 1000;
+
     @Id
     public Long id;
 
@@ -146,6 +145,30 @@ abstract public class AbstractPosting extends Model implements ResourceConvertib
         return finder.where().eq("project.id", project.id).eq("number", number).findUnique();
     }
 
+    /**
+     * {@code project}에서 번호가 {@code numbers}에 있는 글들을 번호로 찾을 수 있도록 반환한다.
+     *
+     * 번호가 아무리 많아도 {@link #NUMBERS_PER_QUERY}개씩 IN 으로 묶어서 가져오므로, 번호마다 조회하지 않는다.
+     * 없는 번호는 빠진다.
+     *
+     * @param finder
+     * @param project
+     * @param numbers
+     * @return 번호와 글
+     */
+    public static <T extends AbstractPosting> Map<Long, T> findByNumbers(Finder<Long, T> finder, Project project,
+                                                                         Collection<Long> numbers) {
+        Map<Long, T> postings = new HashMap<>();
+        List<Long> numberList = new ArrayList<>(new HashSet<>(numbers));
+        for (int from = 0; from < numberList.size(); from += NUMBERS_PER_QUERY) {
+            List<Long> chunk = numberList.subList(from, Math.min(from + NUMBERS_PER_QUERY, numberList.size()));
+            for (T posting : finder.where().eq("project.id", project.id).in("number", chunk).findList()) {
+                postings.put(posting.getNumber(), posting);
+            }
+        }
+        return postings;
+    }
+
     /**
      * 현재 글을 쓴지 얼마나 되었는지를 얻어내는 함수
      *
@@ -0,0 +1,366 @@
+/**
+ * Yobi, Project Hosting SW
+ *
+ * Copyright 2014 NAVER Corp.
+ * http://yobi.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package models;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.Expr;
+import com.avaje.ebean.ExpressionList;
+import com.avaje.ebean.SqlRow;
+import play.db.ebean.Model;
+
+import javax.persistence.*;
+import java.util.*;
+
+/**
+ * DB 에 저장해두고 백그라운드에서 실행하는 작업
+ *
+ * 애플리케이션이 재시작되어도 사라지지 않는다. 실행을 시작한 작업에는 가져간 노드와 시각을 기록하고, 실행하는
+ * 동안 그 시각을 주기적으로 갱신한다(임대). 노드가 재시작하면 그 노드가 가져갔던 작업을, 임대가 만료되면 어느
+ * 노드가 가져갔던 작업이든 다시 {@link State#WAITING}으로 돌려놓는다. 다른 노드가 실행 중인 작업은 건드리지 않는다.
+ * 돌려놓은 작업은 처음 넣었을 때처럼 새로 넣는 작업과 합쳐진다.
+ *
+ * @see actors.JobQueue
+ */
+@Entity
+public class BackgroundJob extends Model {
+    private static final long serialVersionUID = 1L;
+
+    public static final Finder<Long, BackgroundJob> find = new Finder<>(Long.class, BackgroundJob.class);
+
+    public enum State {
+        WAITING, RUNNING, FAILED
+    }
+
+    @Id
+    public Long id;
+
+    /**
+     * 작업의 종류, 종류마다 처리하는 쪽과 동시에 실행하는 수가 정해진다.
+     */
+    public String jobType;
+
+    /**
+     * 같은 종류에서 같은 값을 가진 작업이 이미 기다리고 있으면 새로 넣지 않는다. null 이면 항상 넣는다.
+     */
+    public String dedupeKey;
+
+    /**
+     * 같은 종류에서 같은 값을 가진 작업들은 함께 실행하는 수가 제한된다. null 이면 제한하지 않는다.
+     */
+    public String groupKey;
+
+    /**
+     * 처음 넣은 뒤 기다리는 동안만 {@link #dedupeKey}와 같고, 실행을 시작하면 null 이 된다.
+     *
+     * (종류, 이 값)에 유일 인덱스가 있으므로 동시에 넣더라도 같은 키로 기다리는 작업은 하나뿐이다.
+     */
+    public String waitingDedupeKey;
+
+    @Lob
+    public String payload;
+
+    @Enumerated(EnumType.STRING)
+    public State state;
+
+    /**
+     * 실행을 시작한 횟수
+     */
+    public int attempts;
+
+    /**
+     * 이 시각 이후에 실행한다.
+     */
+    public Date runAt;
+
+    public Date created;
+
+    /**
+     * 실행 중인 작업을 가져간 노드
+     */
+    public String claimedBy;
+
+    /**
+     * 실행 중인 작업을 가져가거나 임대를 갱신한 시각
+     */
+    public Date claimedAt;
+
+    @Column(length = 4000)
+    public String lastError;
+
+    public BackgroundJob() {
+    }
+
+    public BackgroundJob(String jobType, String dedupeKey, String payload) {
+        this(jobType, null, dedupeKey, payload);
+    }
+
+    public BackgroundJob(String jobType, String groupKey, String dedupeKey, String payload) {
+        this.jobType = jobType;
+        this.groupKey = groupKey;
+        this.dedupeKey = dedupeKey;
+        this.waitingDedupeKey = dedupeKey;
+        this.payload = payload;
+        this.state = State.WAITING;
+        this.created = new Date();
+        this.runAt = this.created;
+    }
+
+    /**
+     * {@code jobType}에서 {@code dedupeKey}로 기다리고 있는 작업의 내용을 {@code payload}로 바꾼다.
+     *
+     * @param jobType
+     * @param dedupeKey
+     * @param payload
+     * @return 기다리는 작업이 있어서 바꿨으면 true
+     */
+    public static boolean updateWaiting(String jobType, String dedupeKey, String payload) {
+        return Ebean.createSqlUpdate("UPDATE background_job SET payload = :payload"
+                + " WHERE job_type = :jobType AND waiting_dedupe_key = :dedupeKey AND state = :waiting")
+                .setParameter("payload", payload)
+                .setParameter("jobType", jobType)
+                .setParameter("dedupeKey", dedupeKey)
+                .setParameter("waiting", State.WAITING.name())
+                .execute() > 0;
+    }
+
+    /**
+     * {@code jobType}에서 실행할 때가 된 작업을 오래된 순서로 {@code limit}개까지 한 번에 가져와서 {@code node}가
+     * 실행 중인 것으로 바꾼다.
+     *
+     * 그 사이에 다른 쪽이 먼저 가져간 작업은 빠진다. 가져간 작업은 더 이상 새로 넣는 작업과 합치지 않는다.
+     *
+     * @param jobType
+     * @param node 가져가는 노드
+     * @param now
+     * @param limit
+     * @return 실행 중으로 바꾼 작업들
+     */
+    public static List<BackgroundJob> claimDue(String jobType, String node, Date now, int limit) {
+        return claimDue(jobType, node, now, limit, 0);
+    }
+
+    /**
+     * {@link #claimDue(String, String, java.util.Date, int)}와 같지만, 같은 {@link #groupKey}를 가진 작업은 이미
+     * 실행 중인 것을 포함해서 {@code groupLimit}개까지만 가져온다.
+     *
+     * 한 그룹에 기다리는 작업이 많이 쌓여 있어도 그 그룹의 작업을 건너뛰고 다른 그룹의 작업을 가져오므로, 한 그룹이
+     * 모든 스레드를 차지하지 않는다. 여러 노드가 동시에 가져가면 잠시 {@code groupLimit}을 넘을 수 있다.
+     *
+     * @param jobType
+     * @param node 가져가는 노드
+     * @param now
+     * @param limit
+     * @param groupLimit 그룹마다 동시에 실행하는 작업의 최대 수, 0 이하이면 제한하지 않는다.
+     * @return 실행 중으로 바꾼 작업들
+     */
+    public static List<BackgroundJob> claimDue(String jobType, String node, Date now, int limit, int groupLimit) {
+        Map<String, Integer> running = new HashMap<>();
+        if (groupLimit > 0) {
+            running.putAll(countRunningByGroup(jobType));
+        }
+
+        List<BackgroundJob> claimed = new ArrayList<>(limit);
+        while (claimed.size() < limit) {
+            ExpressionList<BackgroundJob> query = find.where()
+                    .eq("jobType", jobType)
+                    .eq("state", State.WAITING)
+                    .le("runAt", now);
+            Set<String> fullGroups = getFullGroups(running, groupLimit);
+            if (!fullGroups.isEmpty()) {
+                query.or(Expr.isNull("groupKey"), Expr.not(Expr.in("groupKey", fullGroups)));
+            }
+            List<BackgroundJob> due = query
+                    .orderBy("runAt ASC, id ASC")
+                    .setMaxRows(limit - claimed.size())
+                    .findList();
+
+            // 이번에 찾은 작업 중 같은 그룹의 작업이 많으면 제한을 넘는 것은 건너뛰고, 다음에 다른 그룹에서 찾는다.
+            int before = claimed.size();
+            for (BackgroundJob job : due) {
+                if (groupLimit > 0 && job.groupKey != null && getCount(running, job.groupKey) >= groupLimit) {
+                    continue;
+                }
+                if (claim(job, node, now)) {
+                    claimed.add(job);
+                    if (job.groupKey != null) {
+                        running.put(job.groupKey, getCount(running, job.groupKey) + 1);
+                    }
+                }
+            }
+            if (claimed.size() == before) {
+                break;
+            }
+        }
+        return claimed;
+    }
+
+    /*
+     * 기다리는 {@code job}을 {@code node}가 실행 중인 것으로 바꾼다. 다른 쪽이 먼저 가져갔으면 false 를 반환한다.
+     */
+    private static boolean claim(BackgroundJob job, String node, Date now) {
+        int updated = Ebean.createSqlUpdate("UPDATE background_job"
+                + " SET state = :running, attempts = attempts + 1, waiting_dedupe_key = NULL,"
+                + " claimed_by = :node, claimed_at = :now WHERE id = :id AND state = :waiting")
+                .setParameter("running", State.RUNNING.name())
+                .setParameter("node", node)
+                .setParameter("now", now)
+                .setParameter("id", job.id)
+                .setParameter("waiting", State.WAITING.name())
+                .execute();
+        if (updated == 0) {
+            return false;
+        }
+        job.state = State.RUNNING;
+        job.attempts++;
+        job.waitingDedupeKey = null;
+        job.claimedBy = node;
+        job.claimedAt = now;
+        return true;
+    }
+
+    /*
+     * {@code jobType}에서 그룹마다 실행 중인 작업의 수
+     */
+    private static Map<String, Integer> countRunningByGroup(String jobType) {
+        Map<String, Integer> counts = new HashMap<>();
+        List<SqlRow> rows = Ebean.createSqlQuery("SELECT group_key, COUNT(*) AS cnt FROM background_job"
+                + " WHERE job_type = :jobType AND state = :running AND group_key IS NOT NULL GROUP BY group_key")
+                .setParameter("jobType", jobType)
+                .setParameter("running", State.RUNNING.name())
+                .findList();
+        for (SqlRow row : rows) {
+            counts.put(row.getString("group_key"), row.getInteger("cnt"));
+        }
+        return counts;
+    }
+
+    private static Set<String> getFullGroups(Map<String, Integer> running, int groupLimit) {
+        Set<String> full = new HashSet<>();
+        if (groupLimit <= 0) {
+            return full;
+        }
+        for (Map.Entry<String, Integer> entry : running.entrySet()) {
+            if (entry.getValue() >= groupLimit) {
+                full.add(entry.getKey());
+            }
+        }
+        return full;
+    }
+
+    private static int getCount(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * {@code node}가 실행 중으로 남겨둔 작업을 모두 기다리는 상태로 돌린다. {@code node}가 시작할 때만 호출한다.
+     *
+     * @param node
+     * @return 돌려놓은 작업의 수
+     * @see #requeue(java.util.List)
+     */
+    public static int resetRunning(String node) {
+        return requeue(find.where()
+                .eq("state", State.RUNNING)
+                .eq("claimedBy", node)
+                .findList());
+    }
+
+    /**
+     * {@code node}가 실행 중인 작업들의 임대를 {@code now}까지 갱신한다.
+     *
+     * @param node
+     * @param now
+     * @return 갱신한 작업의 수
+     */
+    public static int renewLeases(String node, Date now) {
+        return Ebean.createSqlUpdate("UPDATE background_job SET claimed_at = :now"
+                + " WHERE state = :running AND claimed_by = :node")
+                .setParameter("now", now)
+                .setParameter("running", State.RUNNING.name())
+                .setParameter("node", node)
+                .execute();
+    }
+
+    /**
+     * 임대를 {@code expiredBefore} 이후로 갱신하지 않은 실행 중인 작업을 기다리는 상태로 돌린다. 가져간 노드가
+     * 멈춘 것으로 본다.
+     *
+     * @param expiredBefore
+     * @return 돌려놓은 작업의 수
+     * @see #requeue(java.util.List)
+     */
+    public static int reclaimExpired(Date expiredBefore) {
+        return requeue(find.where()
+                .eq("state", State.RUNNING)
+                .lt("claimedAt", expiredBefore)
+                .findList());
+    }
+
+    /*
+     * 실행 중인 작업들을 다시 기다리게 하고 dedupe key 로 합칠 수 있게 한다. 찾은 뒤에 임대를 갱신했거나 다른
+     * 쪽이 먼저 돌려놓은 작업은 건드리지 않는다.
+     *
+     * 그 사이에 같은 키로 새 작업이 들어와 기다리고 있으면 유일 인덱스에 걸린다. 새 작업이 더 최근 내용을 가지고
+     * 있으므로 이 작업은 지우고 새 작업만 남긴다.
+     */
+    private static int requeue(List<BackgroundJob> jobs) {
+        int count = 0;
+        for (BackgroundJob job : jobs) {
+            try {
+                count += Ebean.createSqlUpdate("UPDATE background_job"
+                        + " SET state = :waiting, waiting_dedupe_key = dedupe_key, claimed_by = NULL,"
+                        + " claimed_at = NULL WHERE id = :id AND state = :running AND claimed_at = :claimedAt")
+                        .setParameter("waiting", State.WAITING.name())
+                        .setParameter("id", job.id)
+                        .setParameter("running", State.RUNNING.name())
+                        .setParameter("claimedAt", job.claimedAt)
+                        .execute();
+            } catch (PersistenceException e) {
+                count += Ebean.createSqlUpdate("DELETE FROM background_job"
+                        + " WHERE id = :id AND state = :running AND claimed_at = :claimedAt")
+                        .setParameter("id", job.id)
+                        .setParameter("running", State.RUNNING.name())
+                        .setParameter("claimedAt", job.claimedAt)
+                        .execute();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 작업 종류와 상태별 작업의 수와 가장 오래된 작업이 만들어진 시각
+     *
+     * @return job_type, state, cnt, oldest 를 가진 행들
+     */
+    public static List<SqlRow> countByTypeAndState() {
+        return Ebean.createSqlQuery("SELECT job_type, state, COUNT(*) AS cnt, MIN(created) AS oldest"
+                + " FROM background_job GROUP BY job_type, state").findList();
+    }
+
+    /**
+     * 재시도를 모두 실패한 작업들, 최근에 만들어진 것부터
+     *
+     * @param limit
+     * @return
+     */
+    public static List<BackgroundJob> findFailed(int limit) {
+        return find.where().eq("state", State.FAILED).orderBy("id DESC").setMaxRows(limit).findList();
+    }
+}
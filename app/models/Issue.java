@@ -350,6 +350,10 @@ public class Issue extends AbstractPosting implements LabelOwner {
         return AbstractPosting.findByNumber(finder, project, number);
     }
 
+    public static Map<Long, Issue> findByNumbers(Project project, Collection<Long> numbers) {
+        return AbstractPosting.findByNumbers(finder, project, numbers);
+    }
+
     /**
      * 이 이슈를 지켜보고 있는 모든 사용자와 이슈에 투표를 한 모든 사용자를 얻는다.
      *
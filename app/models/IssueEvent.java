@@ -1,5 +1,7 @@
 package models;
 
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.Transaction;
 import models.enumeration.EventType;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
@@ -32,6 +34,8 @@ public class IssueEvent extends Model implements TimelineItem {
 
     public String newValue;
 
+    private static final int BATCH_SIZE = 100;
+
     private static final int DRAFT_TIME_IN_MILLIS = Configuration.root()
         .getMilliseconds("application.issue-event.draft-time", 30 * 1000L).intValue();
 
@@ -108,18 +112,52 @@ public class IssueEvent extends Model implements TimelineItem {
     }
 
     public static Set<Issue> findReferredIssue(String message, Project project) {
+        return new HashSet<>(Issue.findByNumbers(project, findReferredIssueNumbers(message)).values());
+    }
+
+    /**
+     * {@code message}에서 #123 처럼 언급한 이슈 번호들을 찾는다. 이슈가 있는지는 확인하지 않는다.
+     *
+     * @param message
+     * @return
+     */
+    public static Set<Long> findReferredIssueNumbers(String message) {
         Matcher m = Issue.ISSUE_PATTERN.matcher(message);
-        Set<Issue> referredIssues = new HashSet<>();
+        Set<Long> numbers = new HashSet<>();
 
         while(m.find()) {
-            String issueText = m.group();
-            String issueNumber = issueText.substring(1); // removing the leading char #
-            Issue issue = Issue.findByNumber(project, Long.parseLong(issueNumber));
-            if(issue != null) {
-                referredIssues.add(issue);
+            String issueNumber = m.group().substring(1); // removing the leading char #
+            try {
+                numbers.add(Long.parseLong(issueNumber));
+            } catch (NumberFormatException e) {
+                // 이슈 번호가 될 수 없을 만큼 긴 숫자는 무시한다.
             }
         }
 
-        return referredIssues;
+        return numbers;
+    }
+
+    /**
+     * {@code events}를 트랜잭션 하나에서 {@link #BATCH_SIZE}개씩 묶어서 저장한다.
+     *
+     * {@link #add(IssueEvent)}와 달리 직전 이벤트와 합치지 않으므로, 커밋에서 이슈를 참조한 이벤트처럼 합칠 필요가
+     * 없는 이벤트를 한꺼번에 많이 추가할 때 사용한다.
+     *
+     * @param events
+     */
+    public static void saveAll(List<IssueEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        Transaction transaction = Ebean.beginTransaction();
+        try {
+            transaction.setBatchMode(true);
+            transaction.setBatchSize(BATCH_SIZE);
+            Ebean.save(events);
+            Ebean.commitTransaction();
+        } finally {
+            Ebean.endTransaction();
+        }
     }
 }
@@ -84,9 +84,15 @@ public class NotificationEvent extends Model {
         return oldValue;
     }
 
+    /**
+     * 기본 언어로 만든 메시지, 알림 목록에서 사용한다.
+     *
+     * @return
+     * @see NotificationMessageCache
+     */
     @Transient
     public String getMessage() {
-        return getMessage(Lang.defaultLang());
+        return NotificationMessageCache.get(this, Lang.defaultLang()).getText();
     }
 
     @Transient
@@ -323,7 +329,7 @@ public class NotificationEvent extends Model {
      * @param conflicts
      * @param state
      * @return
-     * @see {@link actors.PullRequestActor#processPullRequestMerging(models.PullRequestEventMessage, models.PullRequest)}
+     * @see {@link actors.MergeCheckScheduler#schedule(models.PullRequest, models.PullRequestEventMessage)}
      */
     public static NotificationEvent afterMerge(User sender, PullRequest pullRequest, GitConflicts conflicts, State state) {
         NotificationEvent notiEvent = createFrom(sender, pullRequest);
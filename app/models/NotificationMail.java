@@ -1,32 +1,30 @@
 package models;
 
-import info.schleichardt.play2.mailplugin.Mailer;
+import com.avaje.ebean.Ebean;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import models.enumeration.ResourceType;
 import models.enumeration.UserState;
+import models.resource.Resource;
 import org.apache.commons.lang.exception.ExceptionUtils;
+import org.apache.commons.mail.EmailException;
 import org.apache.commons.mail.HtmlEmail;
 import org.joda.time.DateTime;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import play.Configuration;
 import play.Logger;
 import play.api.i18n.Lang;
 import play.db.ebean.Model;
-import play.i18n.Messages;
 import play.libs.Akka;
 import scala.concurrent.duration.Duration;
 import utils.Config;
-import utils.Markdown;
+import utils.SmtpTransport;
 import utils.Url;
 
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.OneToOne;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Entity
 public class NotificationMail extends Model {
@@ -46,6 +44,9 @@ public class NotificationMail extends Model {
      *
      * 애플리케이션이 시작되고 {@code application.notification.bymail.initdelay}가 경과한 후 부터,
      * {@code application.notification.bymail.interval} 만큼의 시간이 지날 때 마다 알림 메일 발송 작업이 수행된다.
+     *
+     * 보낼 메일이 많으면 발송이 다음 주기까지 이어질 수 있으므로, 발송은 전용 스레드 하나에서 하고 이전 발송이 끝나지
+     * 않았으면 이번 주기는 건너뛴다.
      */
     public static void startSchedule() {
         final Long MAIL_NOTIFICATION_INITDELAY_IN_MILLIS = Configuration.root()
@@ -54,42 +55,40 @@ public class NotificationMail extends Model {
                 .getMilliseconds("application.notification.bymail.interval", 60 * 1000L);
         final int MAIL_NOTIFICATION_DELAY_IN_MILLIS = Configuration.root()
                 .getMilliseconds("application.notification.bymail.delay", 180 * 1000L).intValue();
+        final int PAGE_SIZE = Math.max(1, Configuration.root()
+                .getInt("application.notification.bymail.page-size", 500));
+        final int RENDER_CONCURRENCY = Math.max(1, Configuration.root()
+                .getInt("application.notification.bymail.render-concurrency", 4));
+        final double MAX_PER_SECOND = Configuration.root()
+                .getInt("application.notification.bymail.max-per-second", 10);
+
+        final ExecutorService sender = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("notification-mail-sender").setDaemon(true).build());
+        final ExecutorService renderer = Executors.newFixedThreadPool(RENDER_CONCURRENCY,
+                new ThreadFactoryBuilder().setNameFormat("notification-mail-renderer-%d").setDaemon(true).build());
+        final AtomicBoolean sending = new AtomicBoolean();
 
         Akka.system().scheduler().schedule(
             Duration.create(MAIL_NOTIFICATION_INITDELAY_IN_MILLIS, TimeUnit.MILLISECONDS),
             Duration.create(MAIL_NOTIFICATION_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS),
             new Runnable() {
                 public void run() {
-                    try {
-                        sendMail();
-                    } catch (Exception e) {
-                        play.Logger.warn("Failed to send notification mail", e);
+                    if (!sending.compareAndSet(false, true)) {
+                        return;
                     }
-                }
-
-                /**
-                 * 알림 메일을 발송한다.
-                 *
-                 * 등록된지 {@code application.notification.bymail.delay} 이상이 경과한 알림에 대한
-                 * 메일들을 모두 가져온 뒤, 알림의 바탕이 되는 resource가 여전히 존재하고 있다면 알림 메일을
-                 * 발송한다. 예를 들어, 댓글 등록에 대한 알림이 있다면, 그 댓글이 현재도 존재해야만 알림을
-                 * 발송한다.
-                 *
-                 * 가져온 메일들은 발송 여부와 상관없이 모두 지운다.
-                 */
-                private void sendMail() {
-                    Date sinceDate = DateTime.now().minusMillis
-                            (MAIL_NOTIFICATION_DELAY_IN_MILLIS).toDate();
-                    List<NotificationMail> mails = find.where()
-                                    .lt("notificationEvent.created", sinceDate)
-                                    .orderBy("notificationEvent.created ASC").findList();
-
-                    for (NotificationMail mail: mails) {
-                        if (mail.notificationEvent.resourceExists()) {
-                            sendNotification(mail.notificationEvent);
+                    sender.execute(new Runnable() {
+                        public void run() {
+                            try {
+                                Date sinceDate = DateTime.now().minusMillis
+                                        (MAIL_NOTIFICATION_DELAY_IN_MILLIS).toDate();
+                                sendMail(sinceDate, PAGE_SIZE, renderer, new SmtpTransport(MAX_PER_SECOND));
+                            } catch (Exception e) {
+                                play.Logger.warn("Failed to send notification mail", e);
+                            } finally {
+                                sending.set(false);
+                            }
                         }
-                        mail.delete();
-                    }
+                    });
                 }
             },
             Akka.system().dispatcher()
@@ -97,13 +96,126 @@ public class NotificationMail extends Model {
     }
 
     /**
-     * {@code event}에 해당하는 알림 이메일을 발송한다.
+     * 알림 메일을 발송한다.
+     *
+     * 등록된지 {@code sinceDate} 이전의 알림에 대한 메일들을 오래된 순서로 {@code pageSize}개씩 가져와서, 알림의
+     * 바탕이 되는 resource가 여전히 존재하고 있다면 알림 메일을 발송한다. 예를 들어, 댓글 등록에 대한 알림이 있다면,
+     * 그 댓글이 현재도 존재해야만 알림을 발송한다.
+     *
+     * resource 는 한 페이지의 메일들에 대해 종류별로 한 번에 확인한다. 메일 내용은 {@code renderer}에서 동시에
+     * 만들고, 만들어진 순서대로 {@code transport}의 연결 하나로 보낸다.
+     *
+     * 가져온 메일들은 발송 여부와 상관없이 페이지마다 한꺼번에 지운다.
+     *
+     * @param sinceDate
+     * @param pageSize
+     * @param renderer
+     * @param transport 다 보낸 뒤에 닫는다.
+     * @throws InterruptedException
+     */
+    static void sendMail(Date sinceDate, int pageSize, ExecutorService renderer,
+                         SmtpTransport transport) throws InterruptedException {
+        try {
+            while (true) {
+                List<NotificationMail> mails = find.fetch("notificationEvent").where()
+                        .lt("notificationEvent.created", sinceDate)
+                        .orderBy("notificationEvent.created ASC, id ASC")
+                        .setMaxRows(pageSize).findList();
+                if (mails.isEmpty()) {
+                    return;
+                }
+
+                List<Future<List<HtmlEmail>>> emails = new ArrayList<>();
+                for (final NotificationEvent event : findEventsToSend(mails)) {
+                    emails.add(renderer.submit(new Callable<List<HtmlEmail>>() {
+                        @Override
+                        public List<HtmlEmail> call() throws Exception {
+                            return createEmails(event);
+                        }
+                    }));
+                }
+
+                for (Future<List<HtmlEmail>> future : emails) {
+                    try {
+                        for (HtmlEmail email : future.get()) {
+                            send(transport, email);
+                        }
+                    } catch (ExecutionException e) {
+                        Logger.warn("Failed to create a notification mail", e.getCause());
+                    }
+                }
+
+                deleteAll(mails);
+
+                if (mails.size() < pageSize) {
+                    return;
+                }
+            }
+        } finally {
+            transport.close();
+        }
+    }
+
+    /**
+     * {@code mails}의 알림 중 바탕이 되는 resource가 여전히 존재하는 것들을 순서대로 반환한다.
+     */
+    private static List<NotificationEvent> findEventsToSend(List<NotificationMail> mails) {
+        Map<ResourceType, Set<String>> idsByType = new HashMap<>();
+        for (NotificationMail mail : mails) {
+            NotificationEvent event = mail.notificationEvent;
+            if (!idsByType.containsKey(event.resourceType)) {
+                idsByType.put(event.resourceType, new HashSet<String>());
+            }
+            idsByType.get(event.resourceType).add(event.resourceId);
+        }
+
+        Map<ResourceType, Set<String>> existingIdsByType = new HashMap<>();
+        for (Map.Entry<ResourceType, Set<String>> entry : idsByType.entrySet()) {
+            existingIdsByType.put(entry.getKey(), Resource.findExistingIds(entry.getKey(), entry.getValue()));
+        }
+
+        List<NotificationEvent> events = new ArrayList<>();
+        for (NotificationMail mail : mails) {
+            NotificationEvent event = mail.notificationEvent;
+            if (existingIdsByType.get(event.resourceType).contains(event.resourceId)) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private static void deleteAll(List<NotificationMail> mails) {
+        List<Long> ids = new ArrayList<>(mails.size());
+        for (NotificationMail mail : mails) {
+            ids.add(mail.id);
+        }
+        Ebean.delete(NotificationMail.class, ids);
+    }
+
+    private static void send(SmtpTransport transport, HtmlEmail email) throws InterruptedException {
+        try {
+            transport.send(email);
+            String escapedTitle = email.getSubject().replace("\"", "\\\"");
+            String logEntry = String.format("\"%s\" %s", escapedTitle, email.getBccAddresses());
+            play.Logger.of("mail").info(logEntry);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            Logger.warn("Failed to send a notification: "
+                    + email + "\n" + ExceptionUtils.getStackTrace(e));
+        }
+    }
+
+    /**
+     * {@code event}에 해당하는 알림 이메일을 받는 사람의 언어별로 만든다.
      *
      * @param event
+     * @return
+     * @throws EmailException
      * @see <a href="https://github.com/nforge/yobi/blob/master/docs/technical/watch.md>watch.md</a>
      */
-    private static void sendNotification(NotificationEvent event) {
-        Set<User> receivers = event.receivers;
+    private static List<HtmlEmail> createEmails(NotificationEvent event) throws EmailException {
+        Set<User> receivers = new HashSet<>(event.receivers);
 
         // Remove inactive users.
         Iterator<User> iterator = receivers.iterator();
@@ -116,8 +228,10 @@ public class NotificationMail extends Model {
 
         receivers.remove(User.anonymous);
 
+        List<HtmlEmail> emails = new ArrayList<>();
+
         if(receivers.isEmpty()) {
-            return;
+            return emails;
         }
 
         HashMap<String, List<User>> usersByLang = new HashMap<>();
@@ -136,75 +250,32 @@ public class NotificationMail extends Model {
             }
         }
 
-        for (String langCode : usersByLang.keySet()) {
-            final HtmlEmail email = new HtmlEmail();
-
-            try {
-                email.setFrom(Config.getEmailFromSmtp(), event.getSender().name);
-                email.addTo(Config.getEmailFromSmtp(), utils.Config.getSiteName());
+        User sender = event.getSender();
+        String reference = Url.removeFragment(event.getUrlToView());
 
-                for (User receiver : usersByLang.get(langCode)) {
-                    email.addBcc(receiver.email, receiver.name);
-                }
+        for (String langCode : usersByLang.keySet()) {
+            HtmlEmail email = new HtmlEmail();
 
-                Lang lang = Lang.apply(langCode);
-
-                String message = event.getMessage(lang);
-                String urlToView = Url.create(event.getUrlToView());
-                String reference = Url.removeFragment(event.getUrlToView());
-
-                email.setSubject(event.title);
-                email.setHtmlMsg(getHtmlMessage(lang, message, urlToView));
-                email.setTextMsg(getPlainMessage(lang, message, urlToView));
-                email.setCharset("utf-8");
-                email.addHeader("References", "<" + reference + "@" + Config.getHostname() + ">");
-                email.setSentDate(event.created);
-                Mailer.send(email);
-                String escapedTitle = email.getSubject().replace("\"", "\\\"");
-                String logEntry = String.format("\"%s\" %s", escapedTitle, email.getBccAddresses());
-                play.Logger.of("mail").info(logEntry);
-            } catch (Exception e) {
-                Logger.warn("Failed to send a notification: "
-                        + email + "\n" + ExceptionUtils.getStackTrace(e));
-            }
-        }
-    }
+            email.setFrom(Config.getEmailFromSmtp(), sender.name);
+            email.addTo(Config.getEmailFromSmtp(), utils.Config.getSiteName());
 
-    private static String getHtmlMessage(Lang lang, String message, String urlToView) {
-        Document doc = Jsoup.parse(Markdown.render(message));
-
-        String[] attrNames = {"src", "href"};
-        for (String attrName : attrNames) {
-            Elements tags = doc.select("*[" + attrName + "]");
-            for (Element tag : tags) {
-                String uri = tag.attr(attrName);
-                try {
-                    if (!new URI(uri).isAbsolute()) {
-                        tag.attr(attrName, Url.create(uri));
-                    }
-                } catch (URISyntaxException e) {
-                    play.Logger.info("A malformed URI is ignored", e);
-                }
+            for (User receiver : usersByLang.get(langCode)) {
+                email.addBcc(receiver.email, receiver.name);
             }
-        }
 
-        if (urlToView != null) {
-            doc.body().append(String.format("<hr><a href=\"%s\">%s</a>", urlToView,
-                    Messages.get(lang, "notification.linkToView", utils.Config.getSiteName())));
-        }
+            Lang lang = Lang.apply(langCode);
 
-        return doc.html();
-    }
-
-    private static String getPlainMessage(Lang lang, String message, String urlToView) {
-        String msg = message;
-        String url = urlToView;
+            NotificationMessageCache.Message message = NotificationMessageCache.get(event, lang);
 
-        if (url != null) {
-            msg += String.format("\n\n--\n" + Messages.get(lang, "notification.linkToView", url));
+            email.setSubject(event.title);
+            email.setHtmlMsg(message.getHtml());
+            email.setTextMsg(message.getPlainText());
+            email.setCharset("utf-8");
+            email.addHeader("References", "<" + reference + "@" + Config.getHostname() + ">");
+            email.setSentDate(event.created);
+            emails.add(email);
         }
 
-        return msg;
+        return emails;
     }
-
 }
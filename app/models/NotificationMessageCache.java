@@ -0,0 +1,220 @@
+/**
+ * Yobi, Project Hosting SW
+ *
+ * Copyright 2014 NAVER Corp.
+ * http://yobi.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package models;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import play.Configuration;
+import play.api.i18n.Lang;
+import play.i18n.Messages;
+import utils.Markdown;
+import utils.Url;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 알림의 메시지를 언어별로 만들어서 (알림 ID, 언어)마다 저장해두는 캐시
+ *
+ * 알림 메일의 HTML 본문을 만들려면 Markdown 을 자바스크립트 엔진으로 렌더링하고 Jsoup 으로 다시 읽어서 상대 URL 을
+ * 고쳐야 하므로 비용이 크다. 같은 알림을 여러 사람에게 보내거나, 메일로 보낸 알림을 알림 목록에서 다시 보여줄 때
+ * 이 캐시에 저장한 것을 다시 사용한다.
+ *
+ * 알림은 만든 뒤에 내용이 바뀌지 않고, 합쳐질 때는 새 ID 로 다시 만들어지므로 캐시를 비울 필요가 없다.
+ *
+ * <pre>
+ * application.notification.message-cache.size = 10000
+ * </pre>
+ *
+ * @see NotificationMail
+ * @see controllers.NotificationApp#notifications(int, int)
+ */
+public class NotificationMessageCache {
+    private static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+
+    private static Cache<String, Message> cache;
+
+    /**
+     * 한 언어로 만든 알림의 메시지
+     *
+     * 알림 목록에는 {@link #getText()}만 필요하므로, 메일 본문은 처음 필요할 때 만들어서 저장해둔다.
+     */
+    public static class Message {
+        private final Lang lang;
+        private final String text;
+        private final String urlToView;
+        private String html;
+        private String plainText;
+
+        public Message(Lang lang, String text, String urlToView) {
+            this.lang = lang;
+            this.text = text;
+            this.urlToView = urlToView;
+        }
+
+        /**
+         * {@link NotificationEvent#getMessage(play.api.i18n.Lang)}
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * 메일로 보낼 HTML 본문, 상대 URL 은 절대 URL 로 바뀌어 있다.
+         */
+        public synchronized String getHtml() {
+            if (html == null) {
+                html = getHtmlMessage(lang, text, urlToView);
+            }
+            return html;
+        }
+
+        /**
+         * 메일로 보낼 텍스트 본문
+         */
+        public synchronized String getPlainText() {
+            if (plainText == null) {
+                plainText = getPlainMessage(lang, text, urlToView);
+            }
+            return plainText;
+        }
+
+        /**
+         * 알림을 볼 수 있는 절대 URL, 없으면 null
+         */
+        public String getUrlToView() {
+            return urlToView;
+        }
+    }
+
+    /**
+     * {@code event}를 {@code lang}으로 만든 메시지를 반환한다. 캐시에 없으면 만들어서 저장한다.
+     *
+     * 아직 저장하지 않은 알림은 ID 가 없으므로 캐시하지 않고 만든다.
+     *
+     * @param event
+     * @param lang
+     * @return
+     */
+    public static Message get(NotificationEvent event, Lang lang) {
+        if (event.id == null) {
+            return render(event, lang);
+        }
+
+        Cache<String, Message> cache = getCache();
+        String key = event.id + "/" + lang.code();
+
+        Message message = cache.getIfPresent(key);
+        if (message != null) {
+            hitCount.incrementAndGet();
+            return message;
+        }
+
+        missCount.incrementAndGet();
+        message = render(event, lang);
+        cache.put(key, message);
+        return message;
+    }
+
+    /**
+     * 캐시를 비운다.
+     */
+    public static void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * 캐시에서 메시지를 찾은 횟수
+     */
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * 캐시에 없어서 메시지를 만든 횟수
+     */
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    private static Message render(NotificationEvent event, Lang lang) {
+        return new Message(lang, event.getMessage(lang), Url.create(event.getUrlToView()));
+    }
+
+    private static String getHtmlMessage(Lang lang, String message, String urlToView) {
+        Document doc = Jsoup.parse(Markdown.render(message));
+
+        String[] attrNames = {"src", "href"};
+        for (String attrName : attrNames) {
+            Elements tags = doc.select("*[" + attrName + "]");
+            for (Element tag : tags) {
+                String uri = tag.attr(attrName);
+                try {
+                    if (!new URI(uri).isAbsolute()) {
+                        tag.attr(attrName, Url.create(uri));
+                    }
+                } catch (URISyntaxException e) {
+                    play.Logger.info("A malformed URI is ignored", e);
+                }
+            }
+        }
+
+        if (urlToView != null) {
+            doc.body().append(String.format("<hr><a href=\"%s\">%s</a>", urlToView,
+                    Messages.get(lang, "notification.linkToView", utils.Config.getSiteName())));
+        }
+
+        return doc.html();
+    }
+
+    private static String getPlainMessage(Lang lang, String message, String urlToView) {
+        String msg = message;
+        String url = urlToView;
+
+        if (url != null) {
+            msg += String.format("\n\n--\n" + Messages.get(lang, "notification.linkToView", url));
+        }
+
+        return msg;
+    }
+
+    private static synchronized Cache<String, Message> getCache() {
+        if (cache == null) {
+            int maximumSize = DEFAULT_MAXIMUM_SIZE;
+            if (play.api.Play.maybeApplication().isDefined()) {
+                maximumSize = Configuration.root().getInt("application.notification.message-cache.size",
+                        maximumSize);
+            }
+            cache = CacheBuilder.newBuilder()
+                    .maximumSize(maximumSize)
+                    .build();
+        }
+        return cache;
+    }
+}
@@ -1,7 +1,6 @@
 package models;
 
-import actors.RelatedPullRequestMergingActor;
-import akka.actor.Props;
+import actors.MergeCheckScheduler;
 import com.avaje.ebean.*;
 import controllers.PullRequestApp.SearchCondition;
 import controllers.UserApp;
@@ -13,13 +12,12 @@ import models.resource.ResourceConvertible;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.MergeResult;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.RepositoryBuilder;
-import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
@@ -28,13 +26,16 @@ import org.joda.time.Duration;
 import play.data.validation.Constraints;
 import play.db.ebean.Model;
 import play.db.ebean.Transactional;
-import play.libs.Akka;
 import playRepository.FileDiff;
+import playRepository.FileDiffPage;
 import playRepository.GitCommit;
 import playRepository.GitConflicts;
 import playRepository.GitRepository;
 import playRepository.GitRepository.AfterCloneAndFetchOperation;
 import playRepository.GitRepository.CloneAndFetch;
+import playRepository.MergeCheckCache;
+import playRepository.RefAdvertisementCache;
+import playRepository.UploadPackCache;
 import utils.Constants;
 import utils.JodaDateUtil;
 
@@ -396,37 +397,35 @@ public class PullRequest extends Model implements ResourceConvertible {
 
     public void merge(final PullRequestEventMessage message) {
         final PullRequest pullRequest = this;
-        GitRepository.cloneAndFetch(pullRequest, new AfterCloneAndFetchOperation() {
+        // 같은 프로젝트로 받는 다른 코드 보내기와 동시에 push 하지 않도록 push 할 때까지 잠근다.
+        GitRepository.cloneAndFetchExclusively(pullRequest, new AfterCloneAndFetchOperation() {
             @Override
             public void invoke(CloneAndFetch cloneAndFetch) throws IOException, GitAPIException {
-                Repository cloneRepository = cloneAndFetch.getRepository();
+                Repository mergingRepository = cloneAndFetch.getRepository();
                 String srcToBranchName = pullRequest.toBranch;
-                String mergeBranchName = cloneAndFetch.getMergingBranchName();
                 User sender = message.getSender();
 
-                String mergedCommitIdFrom;
-                MergeResult mergeResult;
-
-                mergedCommitIdFrom =
-                        cloneRepository.getRef(org.eclipse.jgit.lib.Constants.HEAD).getObjectId().getName();
+                String mergedCommitIdFrom = cloneAndFetch.getToHead().getName();
 
                 // 코드를 보낸 브랜치(fromBranch)의 코드를 merge 한다.
-                mergeResult = GitRepository.merge(cloneRepository, cloneAndFetch.getDestFromBranchName());
+                MergeResult mergeResult = GitRepository.merge(mergingRepository,
+                        cloneAndFetch.getToHead(), cloneAndFetch.getFromHead(),
+                        new PersonIdent(sender.name, sender.email), makeMergeCommitMessage());
 
                 if (mergeResult.getMergeStatus().isSuccessful()) {
-                    // merge 커밋 메시지 수정
-                    RevCommit mergeCommit = writeMergeCommitMessage(cloneRepository, sender);
-                    String mergedCommitIdTo = mergeCommit.getId().getName();
+                    String mergedCommitIdTo = mergeResult.getNewHead().getName();
                     pullRequest.mergedCommitIdFrom = mergedCommitIdFrom;
                     pullRequest.mergedCommitIdTo = mergedCommitIdTo;
 
                     // 코드 보내기에서 변경한 코드의 원작자를 설정한다.
-                    pullRequest.relatedAuthors = GitRepository.getRelatedAuthors(cloneRepository,
+                    pullRequest.relatedAuthors = GitRepository.getRelatedAuthors(mergingRepository,
                             mergedCommitIdFrom, mergedCommitIdTo);
 
-                    // 코드 받을 프로젝트의 코드 받을 브랜치(srcToBranchName)로 clone한 프로젝트의
-                    // merge 브랜치(mergeBranchName)의 코드를 push 한다.
-                    GitRepository.push(cloneRepository, GitRepository.getGitDirectoryURL(pullRequest.toProject), mergeBranchName, srcToBranchName);
+                    // 코드 받을 프로젝트의 코드 받을 브랜치(srcToBranchName)로 merge 커밋을 push 한다.
+                    // push 가 거절되면 예외가 발생하므로 아래에서 완료로 바꾸지 않는다.
+                    GitRepository.push(mergingRepository, GitRepository.getGitDirectoryURL(pullRequest.toProject), mergedCommitIdTo, srcToBranchName);
+                    RefAdvertisementCache.invalidate(pullRequest.toProject);
+                    UploadPackCache.invalidate(pullRequest.toProject);
 
                     // 풀리퀘스트 완료
                     pullRequest.state = State.MERGED;
@@ -437,7 +436,7 @@ public class PullRequest extends Model implements ResourceConvertible {
                     NotificationEvent.afterPullRequestUpdated(sender, pullRequest, State.OPEN, State.MERGED);
                     PullRequestEvent.addStateEvent(sender, pullRequest, State.MERGED);
 
-                    Akka.system().actorOf(new Props(RelatedPullRequestMergingActor.class)).tell(message, null);
+                    MergeCheckScheduler.scheduleRelated(message);
                 }
             }
         });
@@ -463,14 +462,6 @@ public class PullRequest extends Model implements ResourceConvertible {
         return Watch.findActualWatchers(actualWatchers, asResource());
     }
 
-    private RevCommit writeMergeCommitMessage(Repository cloneRepository, User user) throws GitAPIException {
-        return new Git(cloneRepository).commit()
-                .setAmend(true).setAuthor(user.name, user.email)
-                .setMessage(makeMergeCommitMessage())
-                .setCommitter(user.name, user.email)
-                .call();
-    }
-
     private String makeMergeCommitMessage() {
         return "Merge branch '" + this.fromBranch.replace("refs/heads/", "")
                 + "' of " + fromProject.owner + "/" + fromProject.name + "\n\n"
@@ -727,9 +718,16 @@ public class PullRequest extends Model implements ResourceConvertible {
     /**
      * 보낸 코드를 병합해보고 결과 정보를 반환한다.
      *
+     * 두 브랜치의 HEAD 가 이전에 병합해봤을 때와 같다면 {@link MergeCheckCache}에 저장해둔 결과를 반환한다.
+     *
      * @return
      */
     public PullRequestMergeResult attemptMerge() {
+        PullRequestMergeResult cachedResult = getCachedMergeResult();
+        if (cachedResult != null) {
+            return cachedResult;
+        }
+
         final GitConflicts[] conflicts = {null};
         final List<GitCommit> commits = new ArrayList<>();
         final PullRequest pullRequest = this;
@@ -737,29 +735,40 @@ public class PullRequest extends Model implements ResourceConvertible {
         GitRepository.cloneAndFetch(pullRequest, new AfterCloneAndFetchOperation() {
             @Override
             public void invoke(CloneAndFetch cloneAndFetch) throws IOException, GitAPIException {
-                Repository clonedRepository = cloneAndFetch.getRepository();
+                Repository mergingRepository = cloneAndFetch.getRepository();
 
-                List<GitCommit> commitList = GitRepository.diffCommits(clonedRepository,
-                    cloneAndFetch.getDestFromBranchName(), cloneAndFetch.getMergingBranchName());
+                List<GitCommit> commitList = GitRepository.diffCommits(mergingRepository,
+                    cloneAndFetch.getFromHead().getName(), cloneAndFetch.getToHead().getName());
 
                 for (GitCommit gitCommit : commitList) {
                     commits.add(gitCommit);
                 }
 
-                String mergedCommitIdFrom = clonedRepository
-                        .getRef(org.eclipse.jgit.lib.Constants.HEAD).getObjectId().getName();
-                MergeResult mergeResult = GitRepository.merge(clonedRepository,
-                        cloneAndFetch.getDestFromBranchName());
+                // 작업 디렉토리 없이 메모리에서 merge 해본다.
+                String mergedCommitIdFrom = cloneAndFetch.getToHead().getName();
+                MergeResult mergeResult = GitRepository.merge(mergingRepository,
+                        cloneAndFetch.getToHead(), cloneAndFetch.getFromHead(),
+                        new PersonIdent(mergingRepository), makeMergeCommitMessage());
 
+                String mergedCommitIdTo = null;
+                Set<Long> relatedAuthorIds = new LinkedHashSet<>();
                 if (mergeResult.getMergeStatus() == MergeResult.MergeStatus.CONFLICTING) {
-                    conflicts[0] = new GitConflicts(clonedRepository, mergeResult);
+                    conflicts[0] = new GitConflicts(mergingRepository, mergeResult);
                 } else if (mergeResult.getMergeStatus().isSuccessful()) {
-                    String mergedCommitIdTo = mergeResult.getNewHead().getName();
+                    mergedCommitIdTo = mergeResult.getNewHead().getName();
                     pullRequest.mergedCommitIdFrom = mergedCommitIdFrom;
                     pullRequest.mergedCommitIdTo = mergedCommitIdTo;
-                    pullRequest.relatedAuthors = GitRepository.getRelatedAuthors(clonedRepository,
+                    pullRequest.relatedAuthors = GitRepository.getRelatedAuthors(mergingRepository,
                             mergedCommitIdFrom, mergedCommitIdTo);
+                    for (User author : pullRequest.relatedAuthors) {
+                        relatedAuthorIds.add(author.id);
+                    }
                 }
+
+                MergeCheckCache.put(mergingRepository, cloneAndFetch.getToHead(),
+                        cloneAndFetch.getFromHead(), new MergeCheckCache.Entry(conflicts[0], commits,
+                                mergedCommitIdTo != null ? mergedCommitIdFrom : null, mergedCommitIdTo,
+                                relatedAuthorIds));
             }
         });
 
@@ -771,6 +780,61 @@ public class PullRequest extends Model implements ResourceConvertible {
         return pullRequestMergeResult;
     }
 
+    /*
+     * 보내는 브랜치와 받는 브랜치의 현재 HEAD 로 병합해본 결과가 있으면 그 결과를 반환하고, 없으면 null 을 반환한다.
+     */
+    private PullRequestMergeResult getCachedMergeResult() {
+        ObjectId toHead;
+        ObjectId fromHead;
+        Repository toRepository = GitRepository.buildGitRepository(toProject);
+        Repository fromRepository = GitRepository.buildGitRepository(fromProject);
+        try {
+            toHead = toRepository.resolve(toBranch);
+            fromHead = fromRepository.resolve(fromBranch);
+        } catch (IOException e) {
+            play.Logger.warn("Failed to resolve the heads of " + this, e);
+            return null;
+        } finally {
+            toRepository.close();
+            fromRepository.close();
+        }
+
+        if (toHead == null || fromHead == null) {
+            return null;
+        }
+
+        MergeCheckCache.Entry entry;
+        try {
+            entry = MergeCheckCache.get(getMergedRepository(), toHead, fromHead);
+        } catch (IOException e) {
+            play.Logger.warn("Failed to open the merging repository of " + this, e);
+            return null;
+        }
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.getMergedCommitIdTo() != null) {
+            mergedCommitIdFrom = entry.getMergedCommitIdFrom();
+            mergedCommitIdTo = entry.getMergedCommitIdTo();
+            relatedAuthors = new HashSet<>();
+            for (Long authorId : entry.getRelatedAuthorIds()) {
+                User author = User.find.byId(authorId);
+                if (author != null) {
+                    relatedAuthors.add(author);
+                }
+            }
+        }
+
+        PullRequestMergeResult pullRequestMergeResult = new PullRequestMergeResult();
+        pullRequestMergeResult.setGitCommits(new ArrayList<>(entry.getCommits()));
+        pullRequestMergeResult.setGitConflicts(entry.getConflicts());
+        pullRequestMergeResult.setPullRequest(this);
+
+        return pullRequestMergeResult;
+    }
+
     public void startMerge() {
         isMerging = true;
     }
@@ -986,6 +1050,31 @@ public class PullRequest extends Model implements ResourceConvertible {
         return GitRepository.getDiff(getMergedRepository(), commitId);
     }
 
+    /**
+     * 주어진 {@code commitId}의 변경내역 중 {@code offset}번째 파일부터 최대 {@code limit}개를 돌려준다.
+     * {@code commitId}가 null 이면 코드-주고받기 전체의 변경내역 중에서 가져온다.
+     *
+     * 파일 내용은 화면에 보여줄 때 읽으므로, 변경된 파일이 아주 많아도 변경내역을 나누어 보여줄 수 있다.
+     *
+     * @param commitId
+     * @param offset
+     * @param limit
+     * @return
+     * @throws IOException
+     */
+    public FileDiffPage getDiffPage(String commitId, int offset, int limit) throws IOException {
+        Repository mergedRepository = getMergedRepository();
+        if (commitId != null) {
+            return GitRepository.getDiffPage(mergedRepository, commitId + "^", mergedRepository,
+                    commitId, offset, limit);
+        }
+        if (mergedCommitIdFrom == null || mergedCommitIdTo == null) {
+            throw new IllegalStateException("No mergedCommitIdFrom or mergedCommitIdTo");
+        }
+        return GitRepository.getDiffPage(mergedRepository, mergedCommitIdFrom, mergedRepository,
+                mergedCommitIdTo, offset, limit);
+    }
+
     public void removeCommentThread(CommentThread commentThread) {
         this.commentThreads.remove(commentThread);
         commentThread.pullRequest = null;
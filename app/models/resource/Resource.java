@@ -8,69 +8,95 @@ import play.db.ebean.Model;
 import playRepository.Commit;
 import playRepository.RepositoryService;
 
-import java.util.EnumSet;
+import java.util.*;
 
 public abstract class Resource {
+    private static final int IDS_PER_QUERY = 1000;
+
     public static boolean exists(ResourceType type, String id) {
-        Model.Finder<Long, ? extends Model> finder;
+        if (type == ResourceType.COMMIT) {
+            try {
+                String[] pair = id.split(":");
+                Project project = Project.find.byId(Long.valueOf(pair[0]));
+                return RepositoryService.getRepository(project).getCommit(pair[1]) != null;
+            } catch (Exception e) {
+                play.Logger.error("Failed to determine whether the commit exists", e);
+                return false;
+            }
+        }
+
+        return getFinder(type).byId(Long.valueOf(id)) != null;
+    }
+
+    /**
+     * {@code ids} 중에서 지금도 존재하는 {@code type} 리소스의 아이디들을 반환한다.
+     *
+     * 커밋이 아니면 {@link #IDS_PER_QUERY}개씩 묶어서 조회하므로, 아이디마다 {@link #exists(ResourceType, String)}를
+     * 호출하는 것보다 쿼리가 훨씬 적다.
+     *
+     * @param type
+     * @param ids
+     * @return
+     */
+    public static Set<String> findExistingIds(ResourceType type, Collection<String> ids) {
+        Set<String> existing = new HashSet<>();
+
+        if (type == ResourceType.COMMIT) {
+            for (String id : ids) {
+                if (exists(type, id)) {
+                    existing.add(id);
+                }
+            }
+            return existing;
+        }
+
+        Model.Finder<Long, ? extends Model> finder = getFinder(type);
+        List<Long> longIds = new ArrayList<>();
+        for (String id : new HashSet<>(ids)) {
+            longIds.add(Long.valueOf(id));
+        }
+        for (int from = 0; from < longIds.size(); from += IDS_PER_QUERY) {
+            List<Long> chunk = longIds.subList(from, Math.min(from + IDS_PER_QUERY, longIds.size()));
+            for (Object id : finder.where().idIn(chunk).findIds()) {
+                existing.add(id.toString());
+            }
+        }
+        return existing;
+    }
 
+    private static Model.Finder<Long, ? extends Model> getFinder(ResourceType type) {
         switch(type) {
             case ISSUE_POST:
-                finder = Issue.finder;
-                break;
+                return Issue.finder;
             case ISSUE_ASSIGNEE:
-                finder = Assignee.finder;
-                break;
+                return Assignee.finder;
             case ISSUE_COMMENT:
-                finder = IssueComment.find;
-                break;
+                return IssueComment.find;
             case NONISSUE_COMMENT:
-                finder = PostingComment.find;
-                break;
+                return PostingComment.find;
             case LABEL:
-                finder = Label.find;
-                break;
+                return Label.find;
             case BOARD_POST:
-                finder = Posting.finder;
-                break;
+                return Posting.finder;
             case USER:
-                finder = User.find;
-                break;
+                return User.find;
             case PROJECT:
-                finder = Project.find;
-                break;
+                return Project.find;
             case ATTACHMENT:
-                finder = Attachment.find;
-                break;
+                return Attachment.find;
             case MILESTONE:
-                finder = Milestone.find;
-                break;
+                return Milestone.find;
             case COMMIT_COMMENT:
-                finder = CommitComment.find;
-                break;
+                return CommitComment.find;
             case PULL_REQUEST:
-                finder = PullRequest.finder;
-                break;
+                return PullRequest.finder;
             case REVIEW_COMMENT:
-                finder = ReviewComment.find;
-                break;
-            case COMMIT:
-                try {
-                    String[] pair = id.split(":");
-                    Project project = Project.find.byId(Long.valueOf(pair[0]));
-                    return RepositoryService.getRepository(project).getCommit(pair[1]) != null;
-                } catch (Exception e) {
-                    play.Logger.error("Failed to determine whether the commit exists", e);
-                    return false;
-                }
+                return ReviewComment.find;
             case COMMENT_THREAD:
-                finder = CommentThread.find;
-                break;
+                return CommentThread.find;
             default:
                 throw new IllegalArgumentException(getInvalidResourceTypeMessage(type));
         }
-
-        return finder.byId(Long.valueOf(id)) != null;
     }
 
     public static String getInvalidResourceTypeMessage(ResourceType resourceType) {
@@ -0,0 +1,188 @@
+package playRepository;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.tika.Tika;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.Repository;
+import play.Configuration;
+import utils.FileUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 파일 보기에 필요한 blob 의 정보(크기, 바이너리 여부, 문자셋, MIME 타입)를 blob ID 별로 저장해두는 캐시
+ *
+ * blob 은 내용이 바뀌지 않으므로 한 번 알아낸 정보는 계속 사용할 수 있다. 캐시가 없으면 파일을 볼 때마다 바이너리
+ * 여부, 문자셋, MIME 타입을 알아내려고 blob 을 세 번씩 열고 {@link Tika}도 새로 만든다.
+ *
+ * MIME 타입은 파일 이름에 따라 달라질 수 있으므로 (blob ID, 파일 이름)을 키로 한다. 파일 이름 없이 내용만으로
+ * MIME 타입을 알아낼 때는 파일 이름으로 null 을 넘긴다.
+ *
+ * <pre>
+ * application.git.blob-metadata-cache.size = 10000
+ * </pre>
+ *
+ * @see GitRepository#getMetaDataFromPath(String, String)
+ * @see GitRepository#getBlobMetadata(org.eclipse.jgit.lib.AnyObjectId)
+ */
+public class BlobMetadataCache {
+    private static final int DEFAULT_MAXIMUM_SIZE = 10000;
+    private static final int DEFAULT_MAX_FULL_READ_SIZE = 1024 * 1024;
+    private static final int SAMPLE_SIZE = 64 * 1024;
+
+    private static final Tika tika = new Tika();
+
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+
+    private static Cache<String, Metadata> cache;
+    private static int maxFullReadSize = DEFAULT_MAX_FULL_READ_SIZE;
+
+    /**
+     * blob 의 정보
+     */
+    public static class Metadata {
+        private final long size;
+        private final boolean binary;
+        private final String charset;
+        private final String mimeType;
+
+        public Metadata(long size, boolean binary, String charset, String mimeType) {
+            this.size = size;
+            this.binary = binary;
+            this.charset = charset;
+            this.mimeType = mimeType;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isBinary() {
+            return binary;
+        }
+
+        /**
+         * 텍스트 파일의 문자셋, 바이너리 파일이면 null
+         */
+        public String getCharset() {
+            return charset;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+    }
+
+    /**
+     * {@code blobId}의 정보를 반환한다. 캐시에 없으면 blob 을 한 번만 읽어서 알아낸다.
+     *
+     * 크기가 {@code application.codeBrowser.viewer.maxFileSize} 이하이면 blob 전체로, 더 크면 앞부분만으로
+     * 알아낸다.
+     *
+     * @param repository
+     * @param blobId
+     * @param fileName MIME 타입을 알아낼 때 사용할 파일 이름, 내용만으로 알아내려면 null
+     * @return
+     * @throws IOException
+     */
+    public static Metadata get(Repository repository, AnyObjectId blobId, String fileName) throws IOException {
+        Cache<String, Metadata> cache = getCache();
+        String key = blobId.name() + (fileName == null ? "" : "/" + fileName);
+
+        Metadata metadata = cache.getIfPresent(key);
+        if (metadata != null) {
+            hitCount.incrementAndGet();
+            return metadata;
+        }
+
+        missCount.incrementAndGet();
+        metadata = load(repository.open(blobId, Constants.OBJ_BLOB), fileName);
+        cache.put(key, metadata);
+        return metadata;
+    }
+
+    /**
+     * 캐시를 비운다.
+     */
+    public static void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * 캐시에서 정보를 찾은 횟수
+     */
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * 캐시에 없어서 blob 을 읽은 횟수
+     */
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 캐시에서 정보를 찾은 비율 (0 ~ 1)
+     */
+    public static double getHitRate() {
+        long hit = hitCount.get();
+        long total = hit + missCount.get();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    private static Metadata load(ObjectLoader loader, String fileName) throws IOException {
+        long size = loader.getSize();
+        byte[] bytes;
+        if (size <= maxFullReadSize) {
+            bytes = loader.getCachedBytes();
+        } else {
+            bytes = readSample(loader);
+        }
+
+        boolean binary = RawText.isBinary(bytes);
+        String charset = binary ? null : FileUtil.detectCharset(bytes);
+        String mimeType = fileName == null ? tika.detect(bytes) : tika.detect(bytes, fileName);
+        return new Metadata(size, binary, charset, mimeType);
+    }
+
+    private static byte[] readSample(ObjectLoader loader) throws IOException {
+        byte[] sample = new byte[SAMPLE_SIZE];
+        int length = 0;
+        InputStream in = loader.openStream();
+        try {
+            int read;
+            while (length < sample.length && (read = in.read(sample, length, sample.length - length)) != -1) {
+                length += read;
+            }
+        } finally {
+            in.close();
+        }
+        return Arrays.copyOf(sample, length);
+    }
+
+    private static synchronized Cache<String, Metadata> getCache() {
+        if (cache == null) {
+            int maximumSize = DEFAULT_MAXIMUM_SIZE;
+            if (play.api.Play.maybeApplication().isDefined()) {
+                Configuration config = Configuration.root();
+                maximumSize = config.getInt("application.git.blob-metadata-cache.size", maximumSize);
+                maxFullReadSize = config.getInt("application.codeBrowser.viewer.maxFileSize", maxFullReadSize);
+            }
+            cache = CacheBuilder.newBuilder()
+                    .maximumSize(maximumSize)
+                    .build();
+        }
+        return cache;
+    }
+}
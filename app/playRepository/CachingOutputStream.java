@@ -0,0 +1,64 @@
+package playRepository;
+
+import java.io.*;
+
+/**
+ * 응답을 보내면서 파일에도 기록하는 스트림
+ *
+ * 기록한 크기가 {@code limit}을 넘으면 파일 기록을 그만두고 응답만 보낸다. 다 보낸 뒤 {@link #closeCache()}가
+ * true 를 반환할 때만 파일을 캐시로 사용해야 한다.
+ *
+ * @see DiskCache#send(File, OutputStream, long, TransportExecutor.StreamWriter)
+ */
+class CachingOutputStream extends FilterOutputStream {
+    private final long limit;
+    private OutputStream cache;
+    private long written;
+    private boolean overflowed;
+
+    CachingOutputStream(OutputStream out, File file, long limit) throws IOException {
+        super(out);
+        this.cache = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+        this.limit = limit;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        if (cache != null && !overflowed) {
+            written += len;
+            if (written > limit) {
+                overflowed = true;
+            } else {
+                cache.write(b, off, len);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // 응답 스트림은 호출한 쪽에서 닫는다.
+        flush();
+    }
+
+    /**
+     * 파일을 닫고, 빠짐없이 기록했으면 true 를 반환한다.
+     *
+     * @return
+     * @throws IOException
+     */
+    boolean closeCache() throws IOException {
+        if (cache == null) {
+            return false;
+        }
+        OutputStream closing = cache;
+        cache = null;
+        closing.close();
+        return !overflowed;
+    }
+}
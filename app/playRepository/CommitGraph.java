@@ -0,0 +1,701 @@
+package playRepository;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.MapMaker;
+import com.google.common.io.CountingInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * 커밋 그래프 파일
+ *
+ * 커밋마다 부모 커밋, 커밋 시각, generation number 와 첫번째 부모 커밋에 비해 변경된 경로들의 Bloom filter 를
+ * Git 디렉토리 아래에 따로 저장해둔다. Git 의 commit-graph 파일과 같은 목적이지만 JGit 이 이를 지원하지 않으므로
+ * Yobi 가 직접 관리한다.
+ *
+ * - 경로를 지정한 히스토리 조회에서는, Bloom filter 로 그 경로를 변경하지 않았음이 확실한 커밋의 트리 비교를 건너뛴다.
+ * - 조상 커밋인지 확인할 때는 generation number 가 더 작은 커밋에서 탐색을 멈춘다.
+ *
+ * 그래프에 없는 커밋(아직 그래프를 갱신하지 못한 커밋 등)은 저장소에서 직접 읽으므로 결과는 항상 같다.
+ * push 될 때마다 {@link #update(Collection)}로 새 커밋들을 파일 끝에 덧붙인다. 부모 커밋이 항상 자식 커밋보다
+ * 앞에 기록되므로 이미 기록된 내용은 고치지 않는다.
+ *
+ * @see playRepository.hooks.UpdateCommitGraph
+ */
+public class CommitGraph {
+    /**
+     * 한 커밋에서 변경된 경로가 이보다 많으면 Bloom filter 를 만들지 않고 항상 트리를 비교한다.
+     */
+    public static final int MAX_CHANGED_PATHS = 512;
+
+    /**
+     * Git 디렉토리 아래에서 그래프를 저장할 파일
+     */
+    private static final String GRAPH_FILE = "yobi/commit-graph";
+
+    private static final int MAGIC = 0x59434732; // "YCG2"
+    private static final int HEADER_LENGTH = 4;
+
+    private static final int BLOOM_BITS_PER_ENTRY = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    /**
+     * 파일에서 읽어둔 그래프. 파일이 바뀌면 다시 읽는다.
+     */
+    private static final Cache<File, Data> loaded = CacheBuilder.newBuilder()
+            .maximumSize(50)
+            .softValues()
+            .build();
+
+    /**
+     * 그래프 파일별 잠금. 서로 다른 저장소의 그래프는 동시에 갱신할 수 있다.
+     */
+    private static final Map<File, Object> locks = new MapMaker().weakValues().makeMap();
+
+    private final Repository repository;
+    private final File file;
+    private final Data data;
+    private final Map<ObjectId, Entry> entries;
+
+    private CommitGraph(Repository repository, File file, Data data) {
+        this.repository = repository;
+        this.file = file;
+        this.data = data;
+        this.entries = data.entries;
+    }
+
+    /**
+     * {@code repository}의 커밋 그래프를 반환한다. 그래프 파일이 없으면 비어있는 그래프를 반환한다.
+     *
+     * @param repository
+     * @return
+     */
+    public static CommitGraph of(Repository repository) {
+        File file = new File(repository.getDirectory(), GRAPH_FILE).getAbsoluteFile();
+        Data data = loaded.getIfPresent(file);
+        if (data == null || !data.isUpToDate(file)) {
+            data = read(file);
+            loaded.put(file, data);
+        }
+        return new CommitGraph(repository, file, data);
+    }
+
+    /**
+     * 그래프에 들어있는 커밋 수
+     */
+    public int size() {
+        return data.ordered.size();
+    }
+
+    public boolean contains(AnyObjectId commitId) {
+        return entries.containsKey(commitId);
+    }
+
+    /**
+     * {@code tips}에서 도달할 수 있는 커밋 중 그래프에 없는 커밋들을 찾아 파일 끝에 덧붙인다.
+     *
+     * when: push 된 브랜치의 새 커밋들을 그래프에 추가할 때 사용한다. 그래프가 없다면 전체 히스토리로 새로 만든다.
+     *
+     * 같은 저장소의 그래프를 갱신하는 요청들만 서로 기다린다.
+     *
+     * @param tips 브랜치나 태그가 가리키는 객체
+     * @return 새 커밋이 추가된 그래프
+     * @throws IOException
+     */
+    public CommitGraph update(Collection<? extends AnyObjectId> tips) throws IOException {
+        synchronized (lockOf(file)) {
+            CommitGraph current = of(repository);
+            List<Entry> added = current.findNewEntries(tips);
+            if (added.isEmpty()) {
+                return current;
+            }
+
+            List<Entry> all = new ArrayList<>(current.data.ordered.size() + added.size());
+            all.addAll(current.data.ordered);
+            all.addAll(added);
+            long validLength = append(file, current.data, added);
+
+            Data data = new Data(file.lastModified(), file.length(), validLength, all);
+            loaded.put(file, data);
+            return new CommitGraph(repository, file, data);
+        }
+    }
+
+    /**
+     * {@code ancestorId}가 {@code commitId}의 조상 커밋(혹은 같은 커밋)인지 확인한다.
+     *
+     * 두 커밋이 모두 그래프에 있으면 generation number 가 {@code ancestorId}보다 작은 커밋은 더 따라가지 않는다.
+     *
+     * @param ancestorId
+     * @param commitId
+     * @return
+     * @throws IOException
+     */
+    public boolean isAncestor(AnyObjectId ancestorId, AnyObjectId commitId) throws IOException {
+        Entry ancestor = entries.get(ancestorId);
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            Set<ObjectId> seen = new HashSet<>();
+            Deque<ObjectId> queue = new ArrayDeque<>();
+            queue.add(commitId.copy());
+            while (!queue.isEmpty()) {
+                ObjectId id = queue.poll();
+                if (id.equals(ancestorId)) {
+                    return true;
+                }
+                if (!seen.add(id)) {
+                    continue;
+                }
+                Entry entry = entries.get(id);
+                if (entry != null && ancestor != null && entry.generation <= ancestor.generation) {
+                    continue;
+                }
+                Collections.addAll(queue, getParents(revWalk, id));
+            }
+            return false;
+        } finally {
+            revWalk.release();
+        }
+    }
+
+    /**
+     * {@code startId}부터 히스토리를 거슬러 올라가며 {@code path}를 변경한 커밋을 최근 것부터 차례로 찾는다.
+     *
+     * git log -- path 와 마찬가지로, 어떤 커밋의 {@code path}가 부모 커밋 중 하나와 같으면 그 커밋은 건너뛰고
+     * 그 부모 쪽 히스토리만 따라간다. Bloom filter 로 첫번째 부모와 같다는 것이 확실한 커밋은 트리를 비교하지 않는다.
+     *
+     * @param revWalk 찾은 커밋을 읽을 때 사용할 {@link RevWalk}
+     * @param startId
+     * @param path 파일이나 디렉토리 경로
+     * @param skip 건너뛸 커밋 수
+     * @param limit 찾을 커밋 수
+     * @return
+     * @throws IOException
+     */
+    public List<RevCommit> findChangingCommits(RevWalk revWalk, AnyObjectId startId, String path,
+                                               int skip, int limit) throws IOException {
+        ChangingCommitWalk walk = new ChangingCommitWalk(revWalk, startId, path);
+        List<RevCommit> result = new ArrayList<>();
+        int skipped = 0;
+        while (result.size() < limit) {
+            ObjectId id = walk.next();
+            if (id == null) {
+                break;
+            }
+            if (skipped < skip) {
+                skipped++;
+            } else {
+                result.add(revWalk.parseCommit(id));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@code commitId}가 첫번째 부모 커밋에 비해 {@code path}를 변경했을 수도 있는지 확인한다.
+     *
+     * 그래프에 없는 커밋이거나 Bloom filter 가 없는 커밋이면 항상 true 를 반환한다.
+     *
+     * @param commitId
+     * @param path
+     * @return false 이면 변경하지 않은 것이 확실하다.
+     */
+    public boolean mightChange(AnyObjectId commitId, String path) {
+        Entry entry = entries.get(commitId);
+        return entry == null || entry.mightChange(normalize(path));
+    }
+
+    /**
+     * {@code startId}부터 히스토리를 거슬러 올라가며 {@code path}를 변경한 커밋 중 가장 오래된 커밋을 찾는다.
+     *
+     * {@link #findChangingCommits(RevWalk, AnyObjectId, String, int, int)}와 같은 순서로 따라가지만
+     * 찾은 커밋들을 모아두지 않는다.
+     *
+     * @param revWalk 찾은 커밋을 읽을 때 사용할 {@link RevWalk}
+     * @param startId
+     * @param path 파일이나 디렉토리 경로
+     * @return {@code path}를 변경한 커밋이 없으면 null
+     * @throws IOException
+     */
+    public RevCommit findOldestChangingCommit(RevWalk revWalk, AnyObjectId startId, String path)
+            throws IOException {
+        ChangingCommitWalk walk = new ChangingCommitWalk(revWalk, startId, path);
+        ObjectId oldest = null;
+        ObjectId id;
+        while ((id = walk.next()) != null) {
+            oldest = id;
+        }
+        return oldest == null ? null : revWalk.parseCommit(oldest);
+    }
+
+    private ObjectId[] getParents(RevWalk revWalk, AnyObjectId id) throws IOException {
+        Entry entry = entries.get(id);
+        if (entry != null) {
+            return entry.parents;
+        }
+        RevCommit commit = revWalk.parseCommit(id);
+        ObjectId[] parents = new ObjectId[commit.getParentCount()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = commit.getParent(i).copy();
+        }
+        return parents;
+    }
+
+    private int getCommitTime(RevWalk revWalk, AnyObjectId id) throws IOException {
+        Entry entry = entries.get(id);
+        if (entry != null) {
+            return entry.commitTime;
+        }
+        return revWalk.parseCommit(id).getCommitTime();
+    }
+
+    /*
+     * tips 에서 도달할 수 있지만 그래프에 없는 커밋들을 부모가 자식보다 먼저 오는 순서로 찾는다.
+     */
+    private List<Entry> findNewEntries(Collection<? extends AnyObjectId> tips) throws IOException {
+        RevWalk revWalk = new RevWalk(repository);
+        revWalk.setRetainBody(false);
+        try {
+            RevFlag done = revWalk.newFlag("done");
+            Deque<RevCommit> stack = new ArrayDeque<>();
+            for (AnyObjectId tip : tips) {
+                RevCommit commit;
+                try {
+                    commit = revWalk.parseCommit(tip);
+                } catch (org.eclipse.jgit.errors.IncorrectObjectTypeException e) {
+                    // 커밋이 아닌 객체를 가리키는 태그
+                    continue;
+                }
+                if (!entries.containsKey(commit)) {
+                    stack.push(commit);
+                }
+            }
+
+            Map<ObjectId, Entry> added = new LinkedHashMap<>();
+            while (!stack.isEmpty()) {
+                RevCommit commit = stack.peek();
+                if (commit.has(done)) {
+                    stack.pop();
+                    continue;
+                }
+                revWalk.parseHeaders(commit);
+                boolean ready = true;
+                for (RevCommit parent : commit.getParents()) {
+                    if (!parent.has(done) && !entries.containsKey(parent)) {
+                        stack.push(parent);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    commit.add(done);
+                    added.put(commit.copy(), newEntry(revWalk, commit, added));
+                }
+            }
+
+            return new ArrayList<>(added.values());
+        } finally {
+            revWalk.release();
+        }
+    }
+
+    private Entry newEntry(RevWalk revWalk, RevCommit commit, Map<ObjectId, Entry> added)
+            throws IOException {
+        ObjectId[] parents = new ObjectId[commit.getParentCount()];
+        int generation = 0;
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = commit.getParent(i).copy();
+            Entry parent = entries.get(parents[i]);
+            if (parent == null) {
+                parent = added.get(parents[i]);
+            }
+            generation = Math.max(generation, parent.generation);
+        }
+
+        return new Entry(commit.copy(), commit.getCommitTime(), generation + 1, parents,
+                createBloomFilter(revWalk, commit));
+    }
+
+    /*
+     * 첫번째 부모 커밋에 비해 변경된 파일들과 그 상위 디렉토리들로 Bloom filter 를 만든다.
+     * 변경된 경로가 너무 많으면 null 을 반환한다.
+     */
+    private long[] createBloomFilter(RevWalk revWalk, RevCommit commit) throws IOException {
+        Set<String> paths = new HashSet<>();
+        TreeWalk treeWalk = new TreeWalk(revWalk.getObjectReader());
+        try {
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            if (commit.getParentCount() > 0) {
+                RevCommit parent = commit.getParent(0);
+                revWalk.parseHeaders(parent);
+                treeWalk.addTree(parent.getTree());
+            } else {
+                treeWalk.addTree(new EmptyTreeIterator());
+            }
+            treeWalk.addTree(commit.getTree());
+
+            while (treeWalk.next()) {
+                String path = treeWalk.getPathString();
+                while (paths.add(path)) {
+                    int index = path.lastIndexOf('/');
+                    if (index < 0) {
+                        break;
+                    }
+                    path = path.substring(0, index);
+                }
+                if (paths.size() > MAX_CHANGED_PATHS) {
+                    return null;
+                }
+            }
+        } finally {
+            treeWalk.release();
+        }
+
+        int bits = Math.max(64, paths.size() * BLOOM_BITS_PER_ENTRY);
+        long[] bloom = new long[(bits + 63) / 64];
+        for (String path : paths) {
+            long hash = hash(path);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = bloomBit(hash, i, bloom.length * 64);
+                bloom[bit >>> 6] |= 1L << (bit & 63);
+            }
+        }
+        return bloom;
+    }
+
+    /*
+     * 해시 값 하나로 i 번째 해시 함수의 결과를 만든다. (double hashing)
+     */
+    private static int bloomBit(long hash, int i, int bits) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        return ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+    }
+
+    /*
+     * 64-bit FNV-1a
+     */
+    private static long hash(String path) {
+        byte[] bytes = Constants.encode(path);
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static String normalize(String path) {
+        return StringUtils.strip(path, "/");
+    }
+
+    private static ObjectId getObjectIdOfPath(ObjectReader reader, RevCommit commit, String path)
+            throws IOException {
+        TreeWalk treeWalk = TreeWalk.forPath(reader, path, commit.getTree());
+        if (treeWalk == null) {
+            return null;
+        }
+        try {
+            return treeWalk.getObjectId(0);
+        } finally {
+            treeWalk.release();
+        }
+    }
+
+    private static Object lockOf(File file) {
+        synchronized (locks) {
+            Object lock = locks.get(file);
+            if (lock == null) {
+                lock = new Object();
+                locks.put(file, lock);
+            }
+            return lock;
+        }
+    }
+
+    /*
+     * 그래프 파일을 읽는다. 파일이 없거나 읽을 수 없으면 비어있는 그래프를 반환한다.
+     * 덧붙이는 중이던 마지막 커밋처럼 끝까지 기록되지 않은 항목은 무시한다.
+     */
+    private static Data read(File file) {
+        long lastModified = file.lastModified();
+        long length = file.length();
+        long validLength = 0;
+        List<Entry> ordered = new ArrayList<>();
+        if (!file.isFile()) {
+            return new Data(lastModified, length, validLength, ordered);
+        }
+
+        CountingInputStream counter = null;
+        try {
+            counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+            DataInputStream in = new DataInputStream(counter);
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Unknown commit graph format");
+            }
+            validLength = counter.getCount();
+            byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+            while (validLength < length) {
+                in.readFully(raw);
+                ObjectId id = ObjectId.fromRaw(raw);
+                int commitTime = in.readInt();
+                int generation = in.readInt();
+                ObjectId[] parents = new ObjectId[in.readUnsignedShort()];
+                for (int j = 0; j < parents.length; j++) {
+                    parents[j] = ordered.get(in.readInt()).id;
+                }
+                long[] bloom = null;
+                int bloomLength = in.readInt();
+                if (bloomLength >= 0) {
+                    bloom = new long[bloomLength];
+                    for (int j = 0; j < bloomLength; j++) {
+                        bloom[j] = in.readLong();
+                    }
+                }
+                ordered.add(new Entry(id, commitTime, generation, parents, bloom));
+                validLength = counter.getCount();
+            }
+        } catch (EOFException e) {
+            // 끝까지 기록되지 않은 항목 앞까지만 사용한다. 다음에 덧붙일 때 그 자리부터 다시 기록한다.
+        } catch (IOException | IndexOutOfBoundsException e) {
+            play.Logger.warn("Failed to read the commit graph: " + file, e);
+            ordered.clear();
+            validLength = 0;
+        } finally {
+            closeQuietly(counter);
+        }
+
+        return new Data(lastModified, length, validLength, ordered);
+    }
+
+    /*
+     * 새 커밋들을 그래프 파일 끝에 덧붙이고 기록된 내용의 길이를 반환한다.
+     * 읽는 쪽은 끝까지 기록된 항목까지만 사용하므로 덧붙이는 중에 읽어도 된다.
+     * 파일을 읽을 수 없었다면 처음부터 다시 기록한다.
+     */
+    private static long append(File file, Data current, List<Entry> added) throws IOException {
+        List<Entry> existing = current.ordered;
+        List<Entry> toWrite = added;
+        long position = current.validLength;
+        if (position < HEADER_LENGTH) {
+            toWrite = new ArrayList<>(existing.size() + added.size());
+            toWrite.addAll(existing);
+            toWrite.addAll(added);
+            existing = Collections.emptyList();
+            position = 0;
+        }
+
+        Map<ObjectId, Integer> positions = new HashMap<>((existing.size() + added.size()) * 2);
+        for (Entry entry : existing) {
+            positions.put(entry.id, positions.size());
+        }
+
+        file.getParentFile().mkdirs();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            channel.truncate(position);
+            channel.position(position);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            if (position == 0) {
+                out.writeInt(MAGIC);
+            }
+            for (Entry entry : toWrite) {
+                positions.put(entry.id, positions.size());
+                entry.id.copyRawTo(out);
+                out.writeInt(entry.commitTime);
+                out.writeInt(entry.generation);
+                out.writeShort(entry.parents.length);
+                for (ObjectId parent : entry.parents) {
+                    out.writeInt(positions.get(parent));
+                }
+                if (entry.bloom == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(entry.bloom.length);
+                    for (long word : entry.bloom) {
+                        out.writeLong(word);
+                    }
+                }
+            }
+            out.flush();
+            return channel.position();
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            play.Logger.warn("Failed to close the commit graph", e);
+        }
+    }
+
+    private static class Data {
+        private final long lastModified;
+        private final long length;
+        private final long validLength;
+        private final List<Entry> ordered;
+        private final Map<ObjectId, Entry> entries;
+
+        Data(long lastModified, long length, long validLength, List<Entry> ordered) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.validLength = validLength;
+            this.ordered = ordered;
+            this.entries = new HashMap<>(ordered.size() * 2);
+            for (Entry entry : ordered) {
+                entries.put(entry.id, entry);
+            }
+        }
+
+        boolean isUpToDate(File file) {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+    }
+
+    private static class Entry {
+        private final ObjectId id;
+        private final int commitTime;
+        private final int generation;
+        private final ObjectId[] parents;
+        private final long[] bloom;
+
+        Entry(ObjectId id, int commitTime, int generation, ObjectId[] parents, long[] bloom) {
+            this.id = id;
+            this.commitTime = commitTime;
+            this.generation = generation;
+            this.parents = parents;
+            this.bloom = bloom;
+        }
+
+        boolean mightChange(String path) {
+            if (bloom == null || path.isEmpty()) {
+                return true;
+            }
+            long hash = hash(path);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = bloomBit(hash, i, bloom.length * 64);
+                if ((bloom[bit >>> 6] & (1L << (bit & 63))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /*
+     * path 를 변경한 커밋을 최근 것부터 하나씩 찾는다.
+     * git log -- path 와 마찬가지로, 어떤 커밋의 path 가 부모 커밋 중 하나와 같으면 그 부모 쪽 히스토리만 따라간다.
+     */
+    private class ChangingCommitWalk {
+        private final RevWalk revWalk;
+        private final ObjectReader reader;
+        private final String target;
+        private final Set<ObjectId> seen = new HashSet<>();
+        private final PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        private int order = 0;
+
+        ChangingCommitWalk(RevWalk revWalk, AnyObjectId startId, String path) throws IOException {
+            this.revWalk = revWalk;
+            this.reader = revWalk.getObjectReader();
+            this.target = normalize(path);
+            queue.add(new Candidate(startId.copy(), getCommitTime(revWalk, startId), order++));
+            seen.add(startId.copy());
+        }
+
+        /*
+         * 다음으로 path 를 변경한 커밋을 반환한다. 더 없으면 null 을 반환한다.
+         */
+        ObjectId next() throws IOException {
+            while (!queue.isEmpty()) {
+                ObjectId id = queue.poll().id;
+                Entry entry = entries.get(id);
+                ObjectId[] parents = getParents(revWalk, id);
+
+                List<ObjectId> follow = Arrays.asList(parents);
+                boolean changed = false;
+                if (entry != null && parents.length > 0 && !entry.mightChange(target)) {
+                    // 첫번째 부모와 같다는 것이 확실하다.
+                    follow = Collections.singletonList(parents[0]);
+                } else {
+                    RevCommit commit = revWalk.parseCommit(id);
+                    ObjectId objectId = getObjectIdOfPath(reader, commit, target);
+                    if (parents.length == 0) {
+                        changed = objectId != null;
+                    } else {
+                        ObjectId sameParent = null;
+                        for (ObjectId parent : parents) {
+                            ObjectId parentObjectId = getObjectIdOfPath(reader, revWalk.parseCommit(parent), target);
+                            if (objectId == null ? parentObjectId == null : objectId.equals(parentObjectId)) {
+                                sameParent = parent;
+                                break;
+                            }
+                        }
+                        if (sameParent != null) {
+                            follow = Collections.singletonList(sameParent);
+                        } else {
+                            changed = true;
+                        }
+                    }
+                }
+
+                for (ObjectId parent : follow) {
+                    if (seen.add(parent)) {
+                        queue.add(new Candidate(parent, getCommitTime(revWalk, parent), order++));
+                    }
+                }
+
+                if (changed) {
+                    return id;
+                }
+            }
+            return null;
+        }
+    }
+
+    /*
+     * 커밋 시각이 최근인 것부터, 같으면 먼저 들어온 것부터 꺼낸다.
+     */
+    private static class Candidate implements Comparable<Candidate> {
+        private final ObjectId id;
+        private final int commitTime;
+        private final int order;
+
+        Candidate(ObjectId id, int commitTime, int order) {
+            this.id = id;
+            this.commitTime = commitTime;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            if (commitTime != other.commitTime) {
+                return commitTime > other.commitTime ? -1 : 1;
+            }
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+}
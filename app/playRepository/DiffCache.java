@@ -0,0 +1,329 @@
+package playRepository;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import play.Configuration;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 두 트리의 비교 결과({@link FileDiff} 목록) 캐시
+ *
+ * 트리 ID 는 내용이 같으면 같고 한 번 정해지면 바뀌지 않으므로, (트리 A, 트리 B, 비교 옵션)을 키로 하여
+ * 이름 변경 감지와 diff 알고리즘을 다시 실행하지 않는다. 같은 트리를 비교하는 한 커밋, 비교 화면,
+ * 코드 주고받기가 모두 같은 결과를 함께 사용한다. 나누어 보여주는 비교 화면을 위해 파일 내용 없이 변경된 파일
+ * 목록만 저장하기도 한다.
+ *
+ * 메모리에는 파일 내용까지 함께 두고, 디스크 캐시 디렉토리가 설정되어 있으면 파일 내용을 뺀
+ * 비교 결과(경로, blob ID, edit list 등)도 기록해둔다. 메모리에서 밀려난 결과는 디스크에서 읽고
+ * 파일 내용만 저장소에서 다시 읽는다. 디스크에 기록한 파일도 크기의 합이 같은 최대 크기를 넘으면 가장 오래
+ * 사용하지 않은 파일부터 지운다.
+ *
+ * <pre>
+ * application.diff-cache.max-weight = 64m (메모리에 둘 파일 내용의 최대 크기, 디스크에 기록할 파일의 최대 크기)
+ * application.diff-cache.directory = "cache/diff" (설정하지 않으면 디스크에 기록하지 않는다)
+ * </pre>
+ *
+ * 캐시가 반환하는 {@link FileDiff}는 요청마다 새로 만든 복사본이므로 호출하는 쪽에서 고쳐도 된다.
+ */
+public class DiffCache {
+    private static final long DEFAULT_MAX_WEIGHT = 64 * 1024 * 1024;
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * 파일 내용 외에 {@link FileDiff} 하나가 차지하는 메모리의 대략적인 크기.
+     * 파일 내용 없이 변경된 파일 목록만 캐시할 때도 파일 수에 따라 무게가 늘어나도록 한다.
+     */
+    private static final int FILE_DIFF_OVERHEAD = 256;
+
+    private static Cache<Key, List<FileDiff>> cache;
+    private static File directory;
+    private static DiskCache files;
+
+    /**
+     * 비교 결과를 찾을 때 사용하는 키
+     */
+    public static class Key {
+        private final String value;
+
+        /**
+         * @param treeA 비교할 이전 트리, 없으면 null
+         * @param treeB 비교할 이후 트리, 없으면 null
+         * @param options 비교 결과에 영향을 주는 옵션 (diff 알고리즘 등)
+         */
+        public Key(AnyObjectId treeA, AnyObjectId treeB, String options) {
+            this.value = name(treeA) + ".." + name(treeB) + ":" + options
+                    + ":" + GitRepository.DIFF_SIZE_LIMIT + "," + GitRepository.DIFF_LINE_LIMIT
+                    + "," + GitRepository.DIFF_FILE_LIMIT;
+        }
+
+        private static String name(AnyObjectId id) {
+            return id == null ? ObjectId.zeroId().name() : id.name();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof Key && value.equals(((Key) o).value));
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    /**
+     * {@code key}에 해당하는 비교 결과를 반환한다. 없으면 null 을 반환한다.
+     *
+     * @param key
+     * @param repositoryA 디스크 캐시에서 읽었을 때 이전 파일 내용을 읽을 저장소
+     * @param repositoryB 디스크 캐시에서 읽었을 때 이후 파일 내용을 읽을 저장소
+     * @param commitA 반환할 {@link FileDiff#commitA}
+     * @param commitB 반환할 {@link FileDiff#commitB}
+     * @return
+     */
+    public static List<FileDiff> get(Key key, Repository repositoryA, Repository repositoryB,
+                                     String commitA, String commitB) {
+        List<FileDiff> diffs = getCache().getIfPresent(key);
+        if (diffs == null) {
+            diffs = readFromDisk(key, repositoryA, repositoryB);
+            if (diffs == null) {
+                return null;
+            }
+            getCache().put(key, diffs);
+        }
+        return copy(diffs, commitA, commitB);
+    }
+
+    /**
+     * {@code key}에 해당하는 비교 결과를 저장한다.
+     *
+     * @param key
+     * @param diffs
+     */
+    public static void put(Key key, List<FileDiff> diffs) {
+        List<FileDiff> copied = copy(diffs, null, null);
+        getCache().put(key, copied);
+        writeToDisk(key, copied);
+    }
+
+    /**
+     * 메모리에 있는 비교 결과를 모두 지운다.
+     */
+    public static void invalidateAll() {
+        getCache().invalidateAll();
+    }
+
+    private static List<FileDiff> copy(List<FileDiff> diffs, String commitA, String commitB) {
+        List<FileDiff> result = new ArrayList<>(diffs.size());
+        for (FileDiff diff : diffs) {
+            result.add(diff.copy(commitA, commitB));
+        }
+        return result;
+    }
+
+    private static synchronized Cache<Key, List<FileDiff>> getCache() {
+        if (cache == null) {
+            long maxWeight = DEFAULT_MAX_WEIGHT;
+            if (play.api.Play.maybeApplication().isDefined()) {
+                Long configured = Configuration.root().getBytes("application.diff-cache.max-weight");
+                if (configured != null) {
+                    maxWeight = configured;
+                }
+                String path = Configuration.root().getString("application.diff-cache.directory");
+                if (path != null) {
+                    directory = new File(path).getAbsoluteFile();
+                    files = new DiskCache("diff", maxWeight);
+                    files.index(directory);
+                }
+            }
+            cache = CacheBuilder.newBuilder()
+                    .maximumWeight(maxWeight)
+                    .weigher(new Weigher<Key, List<FileDiff>>() {
+                        @Override
+                        public int weigh(Key key, List<FileDiff> diffs) {
+                            long weight = 1;
+                            for (FileDiff diff : diffs) {
+                                weight += diff.rawSize + FILE_DIFF_OVERHEAD;
+                            }
+                            return (int) Math.min(weight, Integer.MAX_VALUE);
+                        }
+                    })
+                    .build();
+        }
+        return cache;
+    }
+
+    /*
+     * 디스크 캐시 파일 경로. 키를 SHA-1 로 바꾸고 앞 두 글자로 디렉토리를 나눈다.
+     */
+    private static File getFile(Key key) {
+        String name = new ObjectInserter.Formatter()
+                .idFor(Constants.OBJ_BLOB, Constants.encode(key.toString())).name();
+        return new File(new File(directory, name.substring(0, 2)), name.substring(2));
+    }
+
+    private static void writeToDisk(final Key key, final List<FileDiff> diffs) {
+        if (files == null) {
+            return;
+        }
+
+        files.write(getFile(key), new TransportExecutor.StreamWriter() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                DataOutputStream out = new DataOutputStream(output);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(key.toString());
+                out.writeInt(diffs.size());
+                for (FileDiff diff : diffs) {
+                    out.writeUTF(diff.changeType.name());
+                    out.writeInt(diff.oldMode.getBits());
+                    out.writeInt(diff.newMode.getBits());
+                    writeString(out, diff.pathA);
+                    writeString(out, diff.pathB);
+                    writeObjectId(out, diff.blobA);
+                    writeObjectId(out, diff.blobB);
+                    out.writeBoolean(diff.isBinaryA);
+                    out.writeBoolean(diff.isBinaryB);
+                    out.writeBoolean(diff.a != null);
+                    out.writeBoolean(diff.b != null);
+                    out.writeInt(diff.getErrors().size());
+                    for (FileDiff.Error error : diff.getErrors()) {
+                        out.writeUTF(error.name());
+                    }
+                    if (diff.editList == null) {
+                        out.writeInt(-1);
+                    } else {
+                        out.writeInt(diff.editList.size());
+                        for (Edit edit : diff.editList) {
+                            out.writeInt(edit.getBeginA());
+                            out.writeInt(edit.getEndA());
+                            out.writeInt(edit.getBeginB());
+                            out.writeInt(edit.getEndB());
+                        }
+                    }
+                }
+                out.flush();
+            }
+        });
+    }
+
+    private static List<FileDiff> readFromDisk(Key key, Repository repositoryA, Repository repositoryB) {
+        if (files == null) {
+            return null;
+        }
+
+        File file = files.get(getFile(key));
+        if (file == null) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FORMAT_VERSION || !in.readUTF().equals(key.toString())) {
+                return null;
+            }
+            int size = in.readInt();
+            List<FileDiff> diffs = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                FileDiff diff = new FileDiff();
+                diff.changeType = DiffEntry.ChangeType.valueOf(in.readUTF());
+                diff.oldMode = FileMode.fromBits(in.readInt());
+                diff.newMode = FileMode.fromBits(in.readInt());
+                diff.pathA = readString(in);
+                diff.pathB = readString(in);
+                diff.blobA = readObjectId(in);
+                diff.blobB = readObjectId(in);
+                diff.isBinaryA = in.readBoolean();
+                diff.isBinaryB = in.readBoolean();
+                boolean hasA = in.readBoolean();
+                boolean hasB = in.readBoolean();
+                int errors = in.readInt();
+                for (int j = 0; j < errors; j++) {
+                    diff.addError(FileDiff.Error.valueOf(in.readUTF()));
+                }
+                int edits = in.readInt();
+                if (edits >= 0) {
+                    diff.editList = new EditList();
+                    for (int j = 0; j < edits; j++) {
+                        diff.editList.add(new Edit(in.readInt(), in.readInt(), in.readInt(), in.readInt()));
+                    }
+                }
+                if (hasA) {
+                    byte[] raw = repositoryA.open(diff.blobA).getBytes();
+                    diff.a = new RawText(raw);
+                    diff.rawSize += raw.length;
+                }
+                if (hasB) {
+                    byte[] raw = repositoryB.open(diff.blobB).getBytes();
+                    diff.b = new RawText(raw);
+                    diff.rawSize += raw.length;
+                }
+                diffs.add(diff);
+            }
+            return diffs;
+        } catch (IOException | IllegalArgumentException e) {
+            play.Logger.warn("Failed to read the diff cache: " + file, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeObjectId(DataOutputStream out, ObjectId id) throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null) {
+            id.copyRawTo(out);
+        }
+    }
+
+    private static ObjectId readObjectId(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+        in.readFully(raw);
+        return ObjectId.fromRaw(raw);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            play.Logger.warn("Failed to close the diff cache", e);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package playRepository;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import play.Configuration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 변경된 파일들의 내용을 읽고 비교하는 엔진
+ *
+ * 파일마다 blob 을 읽고, 바이너리인지 확인하고, diff 알고리즘을 실행하는 일은 서로 독립적이므로 크기가 제한된
+ * fork-join pool 에 나누어 맡긴다. 작업마다 {@link ObjectReader}를 따로 만들어 사용한다.
+ *
+ * 전체 크기와 줄 수 제한({@link GitRepository#DIFF_SIZE_LIMIT}, {@link GitRepository#DIFF_LINE_LIMIT})은
+ * 일정한 개수의 파일을 동시에 비교한 뒤 원래 순서대로 적용하므로, 결과는 순서대로 하나씩 비교했을 때와 항상 같다.
+ * 제한을 넘은 뒤의 파일은 내용을 읽지 않는다. 제한을 확인하기 전에 한꺼번에 메모리에 올리는 양이 너무 커지지 않도록,
+ * 한 번에 비교할 파일들은 개수뿐 아니라 blob 크기의 합({@link #BATCH_BYTES})으로도 자른다.
+ *
+ * <pre>
+ * application.diff.parallelism = 4 (기본값은 CPU 코어 수, 1 이면 순서대로 하나씩 비교한다)
+ * </pre>
+ */
+public class DiffEngine {
+    /**
+     * 한 작업이 맡을 최대 파일 수. 이보다 많으면 둘로 나눈다.
+     */
+    private static final int FILES_PER_TASK = 4;
+
+    /**
+     * 크기 제한을 확인하기 전에 한꺼번에 비교할 파일 수 (동시에 실행할 작업 수의 배수)
+     */
+    private static final int BATCH_FACTOR = 8;
+
+    /**
+     * 크기 제한을 확인하기 전에 한꺼번에 읽을 파일 내용 크기의 합. 파일 하나가 이보다 크면 그 파일만 비교한다.
+     */
+    private static final long BATCH_BYTES = 4L * GitRepository.DIFF_SIZE_LIMIT;
+
+    private static DiffEngine defaultEngine;
+
+    private final ForkJoinPool pool;
+    private final int batchSize;
+
+    /**
+     * @param parallelism 동시에 비교할 스레드 수. 1 이하이면 호출한 스레드에서 순서대로 비교한다.
+     */
+    public DiffEngine(int parallelism) {
+        if (parallelism > 1) {
+            this.pool = new ForkJoinPool(parallelism);
+            this.batchSize = parallelism * FILES_PER_TASK * BATCH_FACTOR;
+        } else {
+            this.pool = null;
+            this.batchSize = 1;
+        }
+    }
+
+    /**
+     * 설정에 따라 만든, 애플리케이션 전체에서 함께 쓰는 엔진을 반환한다.
+     *
+     * @return
+     */
+    public static synchronized DiffEngine getDefault() {
+        if (defaultEngine == null) {
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            if (play.api.Play.maybeApplication().isDefined()) {
+                parallelism = Configuration.root().getInt("application.diff.parallelism", parallelism);
+            }
+            defaultEngine = new DiffEngine(parallelism);
+        }
+        return defaultEngine;
+    }
+
+    public boolean isParallel() {
+        return pool != null;
+    }
+
+    /**
+     * 이 엔진의 스레드를 모두 정리한다. 종료한 엔진은 다시 사용할 수 없다.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * {@code candidates}의 파일 내용을 읽고 비교하여, 크기와 개수 제한을 적용한 결과를 반환한다.
+     *
+     * {@code candidates}는 경로와 blob ID 만 가진 {@link FileDiff}의 목록이어야 하며, 반환하는 목록의 순서는
+     * {@code candidates}의 순서와 같다. 제한을 넘어 생략한 파일은 나중에도 내용을 읽지 않는다.
+     *
+     * @param candidates 변경된 파일 목록
+     * @param repositoryA 이전 파일 내용을 읽을 저장소
+     * @param repositoryB 이후 파일 내용을 읽을 저장소
+     * @param algorithm diff 알고리즘
+     * @return
+     * @throws IOException
+     */
+    public List<FileDiff> diff(List<FileDiff> candidates, Repository repositoryA,
+                               Repository repositoryB,
+                               DiffAlgorithm.SupportedAlgorithm algorithm) throws IOException {
+        List<FileDiff> result = new ArrayList<>();
+        Budget budget = new Budget();
+
+        int next = 0;
+        while (next < candidates.size()) {
+            if (budget.isExceeded()) {
+                // 이미 보여줄 만큼 보여줬다면 나머지 파일은 내용을 읽지 않는다.
+                for (FileDiff fileDiff : candidates.subList(next, candidates.size())) {
+                    fileDiff.unloadContent();
+                    fileDiff.addError(FileDiff.Error.OTHERS_SIZE_EXCEEDED);
+                    result.add(fileDiff);
+                }
+                break;
+            }
+
+            // 파일 개수 제한을 넘어서 버려질 파일까지 비교하지 않도록 한 번에 비교할 수를 줄인다.
+            int size = Math.max(1, Math.min(batchSize, GitRepository.DIFF_FILE_LIMIT + 2 - result.size()));
+            List<FileDiff> batch = candidates.subList(next,
+                    getBatchEnd(candidates, next, size, repositoryA, repositoryB));
+            next += batch.size();
+
+            load(batch, repositoryA, repositoryB, algorithm);
+
+            for (FileDiff fileDiff : batch) {
+                if (budget.isExceeded()) {
+                    fileDiff.unloadContent();
+                    fileDiff.addError(FileDiff.Error.OTHERS_SIZE_EXCEEDED);
+                    result.add(fileDiff);
+                    continue;
+                }
+
+                budget.add(fileDiff);
+
+                // Stop if exceeds the limit for total number of files
+                if (result.size() > GitRepository.DIFF_FILE_LIMIT) {
+                    return result;
+                }
+
+                result.add(fileDiff);
+            }
+        }
+
+        return result;
+    }
+
+    /*
+     * start 부터 최대 size 개의 파일 중, 내용 크기의 합이 BATCH_BYTES 를 넘지 않는 데까지를 한 번에 비교한다.
+     * 첫 파일은 크기와 상관없이 포함한다.
+     */
+    private int getBatchEnd(List<FileDiff> candidates, int start, int size, Repository repositoryA,
+                            Repository repositoryB) throws IOException {
+        int limit = Math.min(candidates.size(), start + size);
+        if (limit - start <= 1) {
+            return limit;
+        }
+
+        ObjectReader readerA = repositoryA.newObjectReader();
+        ObjectReader readerB = repositoryB.newObjectReader();
+        try {
+            long bytes = 0;
+            for (int end = start; end < limit; end++) {
+                bytes += candidates.get(end).estimateContentSize(readerA, readerB);
+                if (end > start && bytes > BATCH_BYTES) {
+                    return end;
+                }
+            }
+            return limit;
+        } finally {
+            readerA.release();
+            readerB.release();
+        }
+    }
+
+    private void load(List<FileDiff> batch, Repository repositoryA, Repository repositoryB,
+                      DiffAlgorithm.SupportedAlgorithm algorithm) throws IOException {
+        if (pool == null) {
+            LoadTask.loadAll(batch, repositoryA, repositoryB, algorithm);
+            return;
+        }
+
+        try {
+            pool.invoke(new LoadTask(batch, repositoryA, repositoryB, algorithm));
+        } catch (LoadException e) {
+            throw e.getCause();
+        }
+    }
+
+    /*
+     * 순서대로 더해가는 전체 크기와 줄 수
+     */
+    private static class Budget {
+        private int size = 0;
+        private int lines = 0;
+
+        boolean isExceeded() {
+            return size > GitRepository.DIFF_SIZE_LIMIT || lines > GitRepository.DIFF_LINE_LIMIT;
+        }
+
+        void add(FileDiff fileDiff) {
+            if (fileDiff.editList != null) {
+                size += fileDiff.getHunks().size;
+                lines += fileDiff.getHunks().lines;
+            }
+
+            if (fileDiff.b != null && fileDiff.changeType == DiffEntry.ChangeType.ADD) {
+                lines += fileDiff.b.size();
+                size += fileDiff.rawSize;
+            }
+
+            if (fileDiff.a != null && fileDiff.changeType == DiffEntry.ChangeType.DELETE) {
+                lines += fileDiff.a.size();
+                size += fileDiff.rawSize;
+            }
+        }
+    }
+
+    /*
+     * 파일 목록을 반으로 나누어가며 비교한다. 나누지 않고 직접 비교하는 작업은 자신만의 ObjectReader 를 사용한다.
+     */
+    private static class LoadTask extends RecursiveAction {
+        private static final long serialVersionUID = 4713867015523816702L;
+
+        private final List<FileDiff> diffs;
+        private final Repository repositoryA;
+        private final Repository repositoryB;
+        private final DiffAlgorithm.SupportedAlgorithm algorithm;
+
+        LoadTask(List<FileDiff> diffs, Repository repositoryA, Repository repositoryB,
+                 DiffAlgorithm.SupportedAlgorithm algorithm) {
+            this.diffs = diffs;
+            this.repositoryA = repositoryA;
+            this.repositoryB = repositoryB;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        protected void compute() {
+            if (diffs.size() <= FILES_PER_TASK) {
+                try {
+                    loadAll(diffs, repositoryA, repositoryB, algorithm);
+                } catch (IOException e) {
+                    throw new LoadException(e);
+                }
+                return;
+            }
+
+            int half = diffs.size() / 2;
+            invokeAll(new LoadTask(diffs.subList(0, half), repositoryA, repositoryB, algorithm),
+                    new LoadTask(diffs.subList(half, diffs.size()), repositoryA, repositoryB, algorithm));
+        }
+
+        static void loadAll(List<FileDiff> diffs, Repository repositoryA, Repository repositoryB,
+                            DiffAlgorithm.SupportedAlgorithm algorithm) throws IOException {
+            ObjectReader readerA = repositoryA.newObjectReader();
+            ObjectReader readerB = repositoryB.newObjectReader();
+            try {
+                for (FileDiff fileDiff : diffs) {
+                    fileDiff.loadContent(readerA, readerB, algorithm);
+                }
+            } finally {
+                readerA.release();
+                readerB.release();
+            }
+        }
+    }
+
+    /*
+     * fork-join 작업 밖으로 IOException 을 전달하기 위한 예외
+     */
+    private static class LoadException extends RuntimeException {
+        private static final long serialVersionUID = -6286360431593853466L;
+
+        LoadException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
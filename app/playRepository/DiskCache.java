@@ -0,0 +1,326 @@
+package playRepository;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * 응답이나 계산 결과를 파일로 기록해두는 캐시들이 함께 사용하는 디스크 캐시
+ *
+ * 기록한 파일들을 파일 크기를 무게로 하는 {@link Cache}로 관리해서, 합한 크기가 {@code maxSize}를 넘으면 가장 오래
+ * 사용하지 않은 파일부터 지운다. 재시작하기 전에 기록한 파일은 {@link #index(File)}로 다시 등록하므로 재시작한
+ * 뒤에도 크기가 제한된다.
+ *
+ * 파일은 임시 파일에 다 쓴 뒤 옮겨서 기록한다. 쓰는 동안 그 디렉토리를 {@link #invalidate(File)}로 무효화했다면
+ * 다 쓴 파일을 버린다. 무효화하기 전의 내용으로 만든 파일이 무효화한 뒤에 기록되면 안 되기 때문이다.
+ *
+ * @see UploadPackCache
+ * @see RepositoryArchive
+ * @see DiffCache
+ * @see MergeCheckCache
+ */
+class DiskCache {
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final String name;
+    private final Cache<File, Long> files;
+
+    /**
+     * 디렉토리별 세대. 디렉토리를 무효화할 때마다 1 씩 늘어난다.
+     */
+    private final Map<File, Long> generations = new HashMap<>();
+
+    /**
+     * @param name 임시 파일 이름과 로그에 사용할 이름
+     * @param maxSize 기록한 파일 크기의 합의 최대값
+     */
+    DiskCache(String name, long maxSize) {
+        this.name = name;
+        this.files = CacheBuilder.newBuilder()
+                .maximumWeight(maxSize)
+                .weigher(new Weigher<File, Long>() {
+                    @Override
+                    public int weigh(File file, Long length) {
+                        return (int) Math.min(length, Integer.MAX_VALUE);
+                    }
+                })
+                .removalListener(new RemovalListener<File, Long>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<File, Long> notification) {
+                        if (notification.getCause() != RemovalCause.REPLACED) {
+                            notification.getKey().delete();
+                        }
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * 기록해둔 {@code file}이 있으면 사용한 것으로 기록하고 반환한다. 없으면 null 을 반환한다.
+     *
+     * @param file
+     * @return
+     */
+    File get(File file) {
+        file = file.getAbsoluteFile();
+        if (!file.isFile()) {
+            return null;
+        }
+        if (files.getIfPresent(file) == null) {
+            synchronized (generations) {
+                if (file.isFile()) {
+                    files.put(file, file.length());
+                }
+            }
+        }
+        return file;
+    }
+
+    /**
+     * {@code writer}가 쓴 내용을 {@code file}로 기록한다.
+     *
+     * @param file
+     * @param writer
+     * @return 기록했으면 true, 쓰는 동안 무효화되었거나 쓰지 못했으면 false
+     */
+    boolean write(File file, TransportExecutor.StreamWriter writer) {
+        file = file.getAbsoluteFile();
+        long generation = getGeneration(file.getParentFile());
+        File tmp = null;
+        OutputStream out = null;
+        try {
+            tmp = createTemporaryFile(file);
+            out = new BufferedOutputStream(new FileOutputStream(tmp));
+            writer.write(out);
+            out.close();
+            out = null;
+            if (publish(tmp, file, generation)) {
+                tmp = null;
+                return true;
+            }
+            return false;
+        } catch (IOException e) {
+            play.Logger.warn("Failed to write the " + name + " cache: " + file, e);
+            return false;
+        } finally {
+            closeQuietly(out);
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * {@code writer}가 쓴 내용을 {@code output}으로 보내면서 {@code file}로도 기록한다.
+     *
+     * 내용이 {@code maxEntrySize}보다 크면 기록하지 않고 보내기만 한다. 보내다가 실패하면 예외를 그대로 던진다.
+     *
+     * @param file
+     * @param output
+     * @param maxEntrySize
+     * @param writer
+     * @return 기록했으면 true
+     * @throws IOException
+     */
+    boolean send(File file, OutputStream output, long maxEntrySize, TransportExecutor.StreamWriter writer)
+            throws IOException {
+        file = file.getAbsoluteFile();
+        long generation = getGeneration(file.getParentFile());
+        File tmp = createTemporaryFile(file);
+        CachingOutputStream caching = null;
+        try {
+            caching = new CachingOutputStream(output, tmp, maxEntrySize);
+            writer.write(caching);
+            caching.flush();
+
+            if (caching.closeCache() && publish(tmp, file, generation)) {
+                tmp = null;
+                return true;
+            }
+            return false;
+        } finally {
+            if (caching != null) {
+                try {
+                    caching.closeCache();
+                } catch (IOException e) {
+                    play.Logger.warn("Failed to close the " + name + " cache file: " + tmp, e);
+                }
+            }
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * {@code directory}에 기록한 파일을 모두 지우고, 지금 쓰고 있는 파일도 기록하지 않게 한다.
+     *
+     * @param directory
+     */
+    void invalidate(File directory) {
+        File target = directory.getAbsoluteFile();
+        synchronized (generations) {
+            generations.put(target, getGeneration(target) + 1);
+        }
+
+        for (File file : files.asMap().keySet()) {
+            if (target.equals(file.getParentFile())) {
+                files.invalidate(file);
+            }
+        }
+
+        File[] remains = target.listFiles();
+        if (remains != null) {
+            for (File file : remains) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * 재시작하기 전에 {@code directory}와 그 하위 디렉토리에 기록한 파일들을 오래된 것부터 등록한다.
+     * 합한 크기가 최대 크기를 넘으면 오래된 파일부터 지워진다. 끝까지 쓰지 못한 임시 파일은 지운다.
+     *
+     * @param directory
+     */
+    void index(File directory) {
+        index(Collections.singletonList(directory));
+    }
+
+    /**
+     * 모든 프로젝트 저장소의 Git 디렉토리 아래 {@code cacheDirectory}에 기록해둔 파일들을 등록한다.
+     *
+     * @param cacheDirectory Git 디렉토리에 대한 상대 경로
+     * @see #index(File)
+     */
+    void indexRepositories(String cacheDirectory) {
+        List<File> directories = new ArrayList<>();
+        File[] owners = new File(GitRepository.getRepoPrefix()).listFiles();
+        if (owners != null) {
+            for (File owner : owners) {
+                File[] gitDirs = owner.listFiles();
+                if (gitDirs == null) {
+                    continue;
+                }
+                for (File gitDir : gitDirs) {
+                    if (gitDir.getName().endsWith(".git")) {
+                        directories.add(new File(gitDir, cacheDirectory));
+                    }
+                }
+            }
+        }
+        index(directories);
+    }
+
+    /**
+     * {@code directories}와 그 하위 디렉토리에 기록한 파일들을 한꺼번에 오래된 것부터 등록한다.
+     *
+     * @param directories
+     * @see #index(File)
+     */
+    void index(Collection<File> directories) {
+        long startTime = ManagementFactory.getRuntimeMXBean().getStartTime();
+        List<File> found = new ArrayList<>();
+        for (File directory : directories) {
+            collect(directory.getAbsoluteFile(), found, startTime);
+        }
+
+        Collections.sort(found, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+
+        for (File file : found) {
+            if (files.getIfPresent(file) == null) {
+                files.put(file, file.length());
+            }
+        }
+    }
+
+    /**
+     * 기록해둔 파일 크기의 합
+     */
+    long getSize() {
+        long size = 0;
+        for (Long length : files.asMap().values()) {
+            size += length;
+        }
+        return size;
+    }
+
+    private long getGeneration(File directory) {
+        synchronized (generations) {
+            Long generation = generations.get(directory);
+            return generation == null ? 0 : generation;
+        }
+    }
+
+    private File createTemporaryFile(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        return File.createTempFile(name, TEMPORARY_SUFFIX, file.getParentFile());
+    }
+
+    /*
+     * 쓰기 시작한 뒤로 디렉토리가 무효화되지 않았을 때만 임시 파일을 옮기고 등록한다.
+     */
+    private boolean publish(File tmp, File file, long generation) {
+        synchronized (generations) {
+            if (getGeneration(file.getParentFile()) != generation) {
+                return false;
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                play.Logger.warn("Failed to write the " + name + " cache: " + file, e);
+                return false;
+            }
+            files.put(file, file.length());
+            return true;
+        }
+    }
+
+    /*
+     * 실행하기 전에 만들어진 임시 파일은 쓰다가 멈춘 것이므로 지운다.
+     */
+    private static void collect(File directory, List<File> found, long startTime) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collect(child, found, startTime);
+            } else if (child.getName().endsWith(TEMPORARY_SUFFIX)) {
+                if (child.lastModified() < startTime) {
+                    child.delete();
+                }
+            } else {
+                found.add(child);
+            }
+        }
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            play.Logger.warn("Failed to close the " + name + " cache file", e);
+        }
+    }
+}
@@ -1,12 +1,22 @@
 package playRepository;
 
 import models.CodeRange;
+import org.eclipse.jgit.diff.DiffAlgorithm;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.Edit;
 import org.eclipse.jgit.diff.EditList;
 import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.errors.LargeObjectException;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.ObjectStream;
+import org.eclipse.jgit.lib.Repository;
 
+import java.io.IOException;
 import java.util.*;
 
 
@@ -34,8 +44,38 @@ public class FileDiff {
     public CodeRange.Side interestSide = null;
     public FileMode oldMode;
     public FileMode newMode;
+    public ObjectId blobA;
+    public ObjectId blobB;
     private Hunks hunks;
 
+    /**
+     * 양쪽 파일 내용의 크기를 합한 값. {@link DiffCache}가 캐시할 메모리 양을 가늠할 때 사용한다.
+     */
+    long rawSize;
+
+    /**
+     * 파일 내용을 아직 읽지 않은 경우, 나중에 내용을 읽을 저장소와 diff 알고리즘
+     *
+     * @see #load()
+     */
+    private Repository repositoryA;
+    private Repository repositoryB;
+    private DiffAlgorithm.SupportedAlgorithm algorithm;
+    private boolean loaded = true;
+
+    /**
+     * 이 크기(byte)보다 큰 파일은 diff 없이 통째로 보여줄 때 내용을 읽지 않는다.
+     *
+     * UTF-8 에서 한 글자는 최대 4 byte 이고 줄바꿈 문자는 {@link #getRawTextSize(RawText)}에서 세지
+     * 않으므로, 이보다 크면 {@link #isRawTextSizeExceeds(RawText)}도 항상 참이다.
+     */
+    private static final long RAW_SIZE_LIMIT = 4L * SIZE_LIMIT + LINE_LIMIT;
+
+    /**
+     * 바이너리 파일인지 판단할 때 읽는 앞부분의 크기. {@link RawText#isBinary(byte[])}와 같다.
+     */
+    private static final int BINARY_CHECK_SIZE = 8000;
+
     public static class Hunks extends ArrayList<Hunk> {
         private static final long serialVersionUID = -2359650678446017697L;
         public int size;
@@ -66,6 +106,8 @@ public class FileDiff {
             return hunks;
         }
 
+        load();
+
         if (editList == null) {
             return null;
         }
@@ -189,6 +231,8 @@ public class FileDiff {
      * @param lineB
      */
     public void updateRange(Integer lineA, Integer lineB) {
+        load();
+
         if (editList == null) {
             return;
         }
@@ -243,6 +287,8 @@ public class FileDiff {
     }
 
     private void refreshErrors() {
+        load();
+
         if (getHunks() instanceof SizeExceededHunks) {
             addError(Error.DIFF_SIZE_EXCEEDED);
         }
@@ -257,6 +303,234 @@ public class FileDiff {
         }
     }
 
+    /**
+     * 같은 비교 결과를 다른 커밋 쌍에 대해 보여줄 수 있도록 복사한다.
+     *
+     * 파일 내용과 edit list 는 읽기만 하므로 공유하고, 요청마다 바뀔 수 있는 hunk 와 오류 목록은 새로 만든다.
+     *
+     * @param commitA
+     * @param commitB
+     * @return
+     */
+    FileDiff copy(String commitA, String commitB) {
+        FileDiff copy = new FileDiff();
+        copy.errors.addAll(errors);
+        copy.a = a;
+        copy.b = b;
+        copy.editList = editList;
+        copy.commitA = commitA;
+        copy.commitB = commitB;
+        copy.pathA = pathA;
+        copy.pathB = pathB;
+        copy.context = context;
+        copy.isBinaryA = isBinaryA;
+        copy.isBinaryB = isBinaryB;
+        copy.changeType = changeType;
+        copy.oldMode = oldMode;
+        copy.newMode = newMode;
+        copy.blobA = blobA;
+        copy.blobB = blobB;
+        copy.rawSize = rawSize;
+        copy.repositoryA = repositoryA;
+        copy.repositoryB = repositoryB;
+        copy.algorithm = algorithm;
+        copy.loaded = loaded;
+        return copy;
+    }
+
+    /**
+     * 파일 내용을 읽지 않고 blob ID 만 가진 상태로 만든다. 내용은 {@link #load()}를 호출하거나
+     * {@link #getHunks()}처럼 내용이 필요한 메소드를 호출할 때 읽는다.
+     *
+     * @param repositoryA {@link #blobA}를 읽을 저장소
+     * @param repositoryB {@link #blobB}를 읽을 저장소
+     * @param algorithm diff 알고리즘
+     */
+    void setLazy(Repository repositoryA, Repository repositoryB,
+                 DiffAlgorithm.SupportedAlgorithm algorithm) {
+        this.repositoryA = repositoryA;
+        this.repositoryB = repositoryB;
+        this.algorithm = algorithm;
+        this.loaded = false;
+    }
+
+    /**
+     * 파일 내용을 읽었는지 여부
+     *
+     * @return
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * 아직 파일 내용을 읽지 않았다면 읽고 비교한다. 이미 읽었다면 아무것도 하지 않는다.
+     *
+     * 화면에서는 {@link #isBinaryA}처럼 내용을 읽어야 알 수 있는 필드를 보기 전에 호출해야 한다.
+     *
+     * @return 이 객체
+     */
+    public FileDiff load() {
+        if (loaded) {
+            return this;
+        }
+        loaded = true;
+        try {
+            loadContent(repositoryA, repositoryB, algorithm);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            repositoryA = null;
+            repositoryB = null;
+        }
+        return this;
+    }
+
+    /**
+     * {@link #blobA}와 {@link #blobB}의 내용을 읽고, 둘 다 텍스트이면 edit list 를 구한다.
+     *
+     * diff 없이 통째로 보여줄 파일이 너무 크면 앞부분만 읽어 바이너리 여부만 판단하고 크기 초과 오류를 남긴다.
+     *
+     * @param repositoryA
+     * @param repositoryB
+     * @param algorithm
+     * @throws IOException
+     */
+    void loadContent(Repository repositoryA, Repository repositoryB,
+                     DiffAlgorithm.SupportedAlgorithm algorithm) throws IOException {
+        ObjectReader readerA = repositoryA.newObjectReader();
+        ObjectReader readerB = repositoryB.newObjectReader();
+        try {
+            loadContent(readerA, readerB, algorithm);
+        } finally {
+            readerA.release();
+            readerB.release();
+        }
+    }
+
+    /**
+     * 주어진 {@link ObjectReader}로 {@link #blobA}와 {@link #blobB}의 내용을 읽고 비교한다.
+     *
+     * {@link ObjectReader}는 thread-safe 하지 않으므로 여러 스레드에서 동시에 읽을 때는 스레드마다 따로 만들어
+     * 넘겨야 한다.
+     *
+     * @param readerA {@link #blobA}를 읽을 reader
+     * @param readerB {@link #blobB}를 읽을 reader
+     * @param algorithm
+     * @throws IOException
+     */
+    void loadContent(ObjectReader readerA, ObjectReader readerB,
+                     DiffAlgorithm.SupportedAlgorithm algorithm) throws IOException {
+        loaded = true;
+
+        boolean willDiff = changeType == DiffEntry.ChangeType.MODIFY
+                || changeType == DiffEntry.ChangeType.RENAME;
+
+        if (blobA != null) {
+            byte[] rawA = read(readerA, blobA, willDiff, Error.A_SIZE_EXCEEDED);
+            if (rawA != null) {
+                isBinaryA = RawText.isBinary(rawA);
+                a = isBinaryA || errors.contains(Error.A_SIZE_EXCEEDED) ? null : new RawText(rawA);
+                rawSize += a != null ? rawA.length : 0;
+            }
+        }
+
+        if (blobB != null) {
+            byte[] rawB = read(readerB, blobB, willDiff, Error.B_SIZE_EXCEEDED);
+            if (rawB != null) {
+                isBinaryB = RawText.isBinary(rawB);
+                b = isBinaryB || errors.contains(Error.B_SIZE_EXCEEDED) ? null : new RawText(rawB);
+                rawSize += b != null ? rawB.length : 0;
+            }
+        }
+
+        if (willDiff && a != null && b != null) {
+            editList = DiffAlgorithm.getAlgorithm(algorithm).diff(RawTextComparator.DEFAULT, a, b);
+        }
+    }
+
+    /**
+     * {@link #loadContent(ObjectReader, ObjectReader, DiffAlgorithm.SupportedAlgorithm)}가 메모리에 올릴 파일
+     * 내용의 크기를 blob 을 읽지 않고 가늠한다.
+     *
+     * @param readerA {@link #blobA}의 크기를 읽을 reader
+     * @param readerB {@link #blobB}의 크기를 읽을 reader
+     * @return
+     * @throws IOException
+     */
+    long estimateContentSize(ObjectReader readerA, ObjectReader readerB) throws IOException {
+        boolean willDiff = changeType == DiffEntry.ChangeType.MODIFY
+                || changeType == DiffEntry.ChangeType.RENAME;
+        return estimateSize(readerA, blobA, willDiff) + estimateSize(readerB, blobB, willDiff);
+    }
+
+    private static long estimateSize(ObjectReader reader, ObjectId blobId, boolean willDiff)
+            throws IOException {
+        if (blobId == null) {
+            return 0;
+        }
+        long size = reader.getObjectSize(blobId, Constants.OBJ_BLOB);
+        if (!willDiff && size > RAW_SIZE_LIMIT) {
+            return BINARY_CHECK_SIZE;
+        }
+        return size;
+    }
+
+    /*
+     * blob 을 읽는다. diff 하지 않을 파일이 너무 크면 바이너리 여부를 알 수 있을 만큼만 읽고 sizeError 를 남긴다.
+     * JGit 이 메모리에 올릴 수 없을 만큼 크면 null 을 반환한다.
+     */
+    private byte[] read(ObjectReader reader, ObjectId blobId, boolean willDiff,
+                        Error sizeError) throws IOException {
+        ObjectLoader loader = reader.open(blobId, Constants.OBJ_BLOB);
+        if (!willDiff && loader.getSize() > RAW_SIZE_LIMIT) {
+            addError(sizeError);
+            return readHead(loader);
+        }
+        try {
+            return loader.getBytes();
+        } catch (LargeObjectException e) {
+            addError(sizeError);
+            return null;
+        }
+    }
+
+    private static byte[] readHead(ObjectLoader loader) throws IOException {
+        byte[] head = new byte[BINARY_CHECK_SIZE];
+        int length = 0;
+        ObjectStream in = loader.openStream();
+        try {
+            int n;
+            while (length < head.length && (n = in.read(head, length, head.length - length)) > 0) {
+                length += n;
+            }
+        } finally {
+            in.close();
+        }
+        return Arrays.copyOf(head, length);
+    }
+
+    /**
+     * 읽은 파일 내용과 비교 결과를 버린다. 이후에는 내용이 필요해도 다시 읽지 않는다.
+     */
+    void unloadContent() {
+        loaded = true;
+        repositoryA = null;
+        repositoryB = null;
+        a = null;
+        b = null;
+        editList = null;
+        isBinaryA = false;
+        isBinaryB = false;
+        rawSize = 0;
+        hunks = null;
+        errors.clear();
+    }
+
+    Set<Error> getErrors() {
+        return errors;
+    }
+
     public boolean hasError(Error error) {
         refreshErrors();
         return this.errors.contains(error);
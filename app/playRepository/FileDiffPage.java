@@ -0,0 +1,53 @@
+package playRepository;
+
+import java.util.List;
+
+/**
+ * 두 커밋 사이의 변경 파일 중 일부분(한 페이지)의 비교 결과
+ *
+ * 페이지에 담긴 {@link FileDiff}는 파일 내용을 읽지 않은 상태이며, 화면에 보여줄 때 읽는다.
+ *
+ * @see GitRepository#getDiffPage(org.eclipse.jgit.lib.Repository, String, org.eclipse.jgit.lib.Repository, String, int, int)
+ */
+public class FileDiffPage {
+    private final List<FileDiff> diffs;
+    private final int offset;
+    private final int totalCount;
+
+    /**
+     * @param diffs 이 페이지의 비교 결과
+     * @param offset 이 페이지의 첫 파일이 전체 변경 파일 중 몇 번째인지 (0부터 시작)
+     * @param totalCount 전체 변경 파일 수
+     */
+    public FileDiffPage(List<FileDiff> diffs, int offset, int totalCount) {
+        this.diffs = diffs;
+        this.offset = offset;
+        this.totalCount = totalCount;
+    }
+
+    public List<FileDiff> getDiffs() {
+        return diffs;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * 다음 페이지가 있으면 다음 페이지의 첫 파일 순서를, 없으면 -1 을 반환한다.
+     *
+     * @return
+     */
+    public int getNextOffset() {
+        int next = offset + diffs.size();
+        return next < totalCount ? next : -1;
+    }
+
+    public boolean hasNext() {
+        return getNextOffset() >= 0;
+    }
+}
@@ -0,0 +1,206 @@
+package playRepository;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.util.QuotedString;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 바이너리 파일의 변경 내역을 {@code git diff --binary} 형식(GIT binary patch)으로 쓴다.
+ *
+ * {@link org.eclipse.jgit.diff.DiffFormatter}는 바이너리 파일에 "Binary files differ"만 쓰므로 그 패치는
+ * {@code git am}, {@code git apply}로 적용할 수 없다. 여기서는 바뀐 뒤의 내용과 바뀌기 전의 내용을 모두 literal 로
+ * 쓴다. 내용은 zlib 으로 압축하고 base85 로 인코딩해서 한 줄에 원래 52 바이트씩 쓰며, 적용할 때 확인할 수 있도록
+ * index 줄에는 전체 객체 ID 를 쓴다.
+ *
+ * @see GitRepository#writeFormatPatch(org.eclipse.jgit.lib.Repository, org.eclipse.jgit.lib.AnyObjectId,
+ * java.io.OutputStream)
+ */
+class GitBinaryPatch {
+    /**
+     * {@link org.eclipse.jgit.diff.DiffFormatter}가 바이너리로 보는 크기
+     */
+    private static final long BIG_FILE_THRESHOLD = 50 * 1024 * 1024;
+    private static final int FIRST_FEW_BYTES = 8000;
+    private static final int BYTES_PER_LINE = 52;
+    private static final byte[] EN85 = Constants.encodeASCII(
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz!#$%&()*+-;<=>?@^_`{|}~");
+
+    /**
+     * {@code entry}의 어느 한쪽이라도 바이너리 파일이면 true 를 반환한다.
+     *
+     * @param reader
+     * @param entry
+     * @return
+     * @throws IOException
+     */
+    static boolean isBinary(ObjectReader reader, DiffEntry entry) throws IOException {
+        return isBinary(reader, entry.getOldMode(), entry.getOldId())
+                || isBinary(reader, entry.getNewMode(), entry.getNewId());
+    }
+
+    /**
+     * {@code entry}를 GIT binary patch 형식으로 {@code out}에 쓴다. 이름 바꾸기와 복사는 다루지 않는다.
+     *
+     * @param reader
+     * @param entry
+     * @param out 다 쓴 뒤에도 닫지 않는다.
+     * @throws IOException
+     */
+    static void format(ObjectReader reader, DiffEntry entry, OutputStream out) throws IOException {
+        String oldPath = entry.getChangeType() == DiffEntry.ChangeType.ADD ? entry.getNewPath() : entry.getOldPath();
+        String newPath = entry.getChangeType() == DiffEntry.ChangeType.DELETE ? entry.getOldPath() : entry.getNewPath();
+        String oldId = entry.getOldId().name();
+        String newId = entry.getNewId().name();
+
+        StringBuilder header = new StringBuilder();
+        header.append("diff --git ").append(QuotedString.GIT_PATH.quote("a/" + oldPath))
+                .append(" ").append(QuotedString.GIT_PATH.quote("b/" + newPath)).append("\n");
+        switch (entry.getChangeType()) {
+            case ADD:
+                header.append("new file mode ").append(mode(entry.getNewMode())).append("\n");
+                header.append("index ").append(oldId).append("..").append(newId).append("\n");
+                break;
+            case DELETE:
+                header.append("deleted file mode ").append(mode(entry.getOldMode())).append("\n");
+                header.append("index ").append(oldId).append("..").append(newId).append("\n");
+                break;
+            default:
+                if (entry.getOldMode().equals(entry.getNewMode())) {
+                    header.append("index ").append(oldId).append("..").append(newId)
+                            .append(" ").append(mode(entry.getNewMode())).append("\n");
+                } else {
+                    header.append("old mode ").append(mode(entry.getOldMode())).append("\n");
+                    header.append("new mode ").append(mode(entry.getNewMode())).append("\n");
+                    header.append("index ").append(oldId).append("..").append(newId).append("\n");
+                }
+        }
+        header.append("GIT binary patch\n");
+        out.write(Constants.encode(header.toString()));
+
+        // 앞으로 적용할 때 쓰는 내용 다음에 되돌릴 때 쓰는 내용을 쓴다.
+        writeLiteral(reader, entry.getNewId(), out);
+        writeLiteral(reader, entry.getOldId(), out);
+    }
+
+    private static boolean isBinary(ObjectReader reader, FileMode mode, AbbreviatedObjectId id)
+            throws IOException {
+        if (mode == FileMode.GITLINK || id.toObjectId().equals(ObjectId.zeroId())) {
+            return false;
+        }
+        ObjectLoader loader = reader.open(id.toObjectId(), Constants.OBJ_BLOB);
+        if (loader.getSize() > BIG_FILE_THRESHOLD) {
+            return true;
+        }
+
+        byte[] head = new byte[FIRST_FEW_BYTES];
+        int length = 0;
+        InputStream in = loader.openStream();
+        try {
+            int n;
+            while (length < head.length && (n = in.read(head, length, head.length - length)) > 0) {
+                length += n;
+            }
+        } finally {
+            in.close();
+        }
+        return RawText.isBinary(head, length);
+    }
+
+    /*
+     * "literal <크기>" 다음에 압축한 내용을 base85 로 쓰고 빈 줄로 끝낸다. 없는 쪽은 크기가 0 인 내용으로 쓴다.
+     */
+    private static void writeLiteral(ObjectReader reader, AbbreviatedObjectId id, OutputStream out)
+            throws IOException {
+        ObjectLoader loader = null;
+        long size = 0;
+        if (!id.toObjectId().equals(ObjectId.zeroId())) {
+            loader = reader.open(id.toObjectId(), Constants.OBJ_BLOB);
+            size = loader.getSize();
+        }
+        out.write(Constants.encodeASCII("literal " + size + "\n"));
+
+        Base85Lines lines = new Base85Lines(out);
+        Deflater deflater = new Deflater();
+        try {
+            DeflaterOutputStream deflate = new DeflaterOutputStream(lines, deflater);
+            if (loader != null) {
+                loader.copyTo(deflate);
+            }
+            deflate.finish();
+            lines.finish();
+        } finally {
+            deflater.end();
+        }
+        out.write('\n');
+    }
+
+    private static String mode(FileMode mode) {
+        return Integer.toOctalString(mode.getBits());
+    }
+
+    /*
+     * 받은 내용을 52 바이트씩 나눠서 한 줄씩 쓴다. 줄의 첫 글자는 그 줄의 바이트 수(1-26 은 A-Z, 27-52 는 a-z)이다.
+     */
+    private static class Base85Lines extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[BYTES_PER_LINE];
+        private int count;
+
+        Base85Lines(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            buffer[count++] = (byte) b;
+            if (count == buffer.length) {
+                writeLine();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            for (int i = 0; i < len; i++) {
+                write(b[off + i]);
+            }
+        }
+
+        void finish() throws IOException {
+            if (count > 0) {
+                writeLine();
+            }
+        }
+
+        private void writeLine() throws IOException {
+            byte[] line = new byte[1 + (count + 3) / 4 * 5 + 1];
+            line[0] = (byte) (count <= 26 ? 'A' + count - 1 : 'a' + count - 27);
+            int position = 1;
+            for (int i = 0; i < count; i += 4) {
+                long value = 0;
+                for (int j = 0; j < 4; j++) {
+                    value = (value << 8) | (i + j < count ? buffer[i + j] & 0xff : 0);
+                }
+                for (int j = 4; j >= 0; j--) {
+                    line[position + j] = EN85[(int) (value % 85)];
+                    value /= 85;
+                }
+                position += 5;
+            }
+            line[position] = '\n';
+            out.write(line);
+            count = 0;
+        }
+    }
+}
@@ -27,6 +27,14 @@ public class GitConflicts {
      */
     public List<Conflict> conflictDetails = new ArrayList<>();
 
+    /**
+     * 저장해둔 충돌 정보를 다시 채울 때 사용한다.
+     *
+     * @see MergeCheckCache
+     */
+    GitConflicts() {
+    }
+
     /**
      * MergeResult에서 #conflictFiles 데이터와 #conflicts 데이터를 뽑아낸다.
      *
@@ -13,8 +13,6 @@ import models.support.ModelLock;
 import org.apache.commons.collections.IteratorUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.tika.Tika;
-import org.apache.tika.metadata.Metadata;
 import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.node.ObjectNode;
 import org.eclipse.jgit.api.*;
@@ -23,15 +21,21 @@ import org.eclipse.jgit.api.errors.NoHeadException;
 import org.eclipse.jgit.blame.BlameResult;
 import org.eclipse.jgit.diff.*;
 import org.eclipse.jgit.diff.Edit.Type;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.errors.RevisionSyntaxException;
 import org.eclipse.jgit.lib.*;
 import org.eclipse.jgit.lib.RefUpdate.Result;
+import org.eclipse.jgit.merge.MergeStrategy;
+import org.eclipse.jgit.merge.ResolveMerger;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.eclipse.jgit.transport.PushResult;
 import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.EmptyTreeIterator;
@@ -49,8 +53,10 @@ import utils.GravatarUtil;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
 import java.util.*;
 
 import static org.eclipse.jgit.diff.DiffEntry.ChangeType.*;
@@ -121,25 +127,23 @@ public class GitRepository implements PlayRepository {
     }
 
     /**
-     * {@code ownerName}과 {@code projectName}을 받아서 {@link Repository} 객체를 생성한다.
+     * {@code ownerName}과 {@code projectName}을 받아서 {@link Repository} 객체를 반환한다.
      *
-     * 실제 저장소를 생성하는건 아니고, Git 저장소를 참조할 수 있는 {@link Repository} 객체를 생성한다.
-     * 생성된 {@link Repository} 객체를 사용해서 기존에 만들어져있는 Git 저장소를 참조할 수도 있고, 새 저장소를 생성할 수도 있다.
+     * 실제 저장소를 생성하는건 아니고, Git 저장소를 참조할 수 있는 {@link Repository} 객체를 반환한다.
+     * 반환된 {@link Repository} 객체를 사용해서 기존에 만들어져있는 Git 저장소를 참조할 수도 있고, 새 저장소를 생성할 수도 있다.
+     *
+     * {@link Repository} 객체는 {@link GitRepositoryCache}에서 가져오므로 여러 요청이 함께 사용한다.
+     * 저장소는 캐시가 닫으므로 {@link Repository#close()}를 호출하지 않아도 된다.
      *
      * @param ownerName
      * @param projectName
      * @return
-     * @throws IOException
+     * @see GitRepositoryCache#get(File, File)
      */
     public static Repository buildGitRepository(String ownerName, String projectName) {
-        try {
-            return new RepositoryBuilder()
-                .setGitDir(new File(getGitDirectory(ownerName, projectName)))
-                .addAlternateObjectDirectory(new File(getDirectoryForMergingObjects(ownerName, projectName)))
-                .build();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        return GitRepositoryCache.get(
+                new File(getGitDirectory(ownerName, projectName)),
+                new File(getDirectoryForMergingObjects(ownerName, projectName)));
     }
 
     /**
@@ -295,14 +299,15 @@ public class GitRepository implements PlayRepository {
      * @see <a href="https://www.kernel.org/pub/software/scm/git/docs/git-log.html">git log until</a>
      */
     private ObjectNode fileAsJson(TreeWalk treeWalk, AnyObjectId untilCommitId) throws IOException, GitAPIException {
-        Git git = new Git(repository);
-
-        GitCommit commit = new GitCommit(git.log()
-            .add(untilCommitId)
-            .addPath(treeWalk.getPathString())
-            .call()
-            .iterator()
-            .next());
+        RevWalk revWalk = new RevWalk(repository);
+        GitCommit commit;
+        try {
+            List<RevCommit> commits = CommitGraph.of(repository)
+                    .findChangingCommits(revWalk, untilCommitId, treeWalk.getPathString(), 0, 1);
+            commit = new GitCommit(commits.isEmpty() ? revWalk.parseCommit(untilCommitId) : commits.get(0));
+        } finally {
+            revWalk.release();
+        }
 
         ObjectNode result = Json.newObject();
         long commitTime = commit.getCommitTime() * 1000L;
@@ -319,19 +324,16 @@ public class GitRepository implements PlayRepository {
         result.put("commiter", commit.getCommitterName());
         result.put("commitDate", commitTime);
         result.put("commitId", untilCommitId.getName());
-        ObjectLoader file = repository.open(treeWalk.getObjectId(0));
-        result.put("size", file.getSize());
-
-        boolean isBinary = RawText.isBinary(file.openStream());
-        result.put("isBinary", isBinary);
-        if (!isBinary && file.getSize() < MAX_FILE_SIZE_CAN_BE_VIEWED) {
-            byte[] bytes = file.getBytes();
-            String str = new String(bytes, FileUtil.detectCharset(bytes));
-            result.put("data", str);
+        ObjectId blobId = treeWalk.getObjectId(0);
+        BlobMetadataCache.Metadata metadata = BlobMetadataCache.get(repository, blobId,
+                treeWalk.getNameString());
+        result.put("size", metadata.getSize());
+        result.put("isBinary", metadata.isBinary());
+        if (!metadata.isBinary() && metadata.getSize() < MAX_FILE_SIZE_CAN_BE_VIEWED) {
+            byte[] bytes = repository.open(blobId).getBytes();
+            result.put("data", new String(bytes, metadata.getCharset()));
         }
-        Metadata meta = new Metadata();
-        meta.add(Metadata.RESOURCE_NAME_KEY, treeWalk.getNameString());
-        result.put("mimeType", new Tika().detect(file.openStream(), meta));
+        result.put("mimeType", metadata.getMimeType());
 
         return result;
     }
@@ -369,9 +371,8 @@ public class GitRepository implements PlayRepository {
         private Map<String, JsonNode> targets = new HashMap<>();
         private String basePath;
         private AnyObjectId untilCommitId;
-        private Iterator<RevCommit> commitIterator;
 
-        public ObjectFinder(String basePath, TreeWalk treeWalk, AnyObjectId untilCommitId) throws IOException, GitAPIException {
+        public ObjectFinder(String basePath, TreeWalk treeWalk, AnyObjectId untilCommitId) throws IOException {
             while (treeWalk.next()) {
                 String path = treeWalk.getNameString();
                 ObjectNode object = Json.newObject();
@@ -380,168 +381,49 @@ public class GitRepository implements PlayRepository {
             }
             this.basePath = basePath;
             this.untilCommitId = untilCommitId;
-            this.commitIterator = getCommitIterator();
-        }
-
-        public SortedMap<String, JsonNode> find() throws IOException {
-            while (shouldFindMore()) {
-                RevCommit commit = commitIterator.next();
-                Map<String, ObjectId> objects = findObjects(commit);
-                found(commit, objects);
-            }
-            return found;
         }
 
         /*
-         * get commit logs with untilCommitId and basePath
+         * Get the latest commit for each of `targets` from the last commit index. The index walks
+         * the history only if neither `untilCommitId` nor its parents have been indexed yet.
          */
-        private Iterator<RevCommit> getCommitIterator() throws IOException, GitAPIException {
-            Git git = new Git(repository);
-            LogCommand logCommand = git.log().add(untilCommitId);
-            if (StringUtils.isNotEmpty(basePath)) {
-                logCommand.addPath(basePath);
-             }
-            final Iterator<RevCommit> iterator = logCommand.call().iterator();
-            return new Iterator<RevCommit>() {
-                @Override
-                public void remove() {
-                    iterator.remove();
-                }
-
-                @Override
-                public RevCommit next() {
-                    return fixRevCommitNoParents(iterator.next());
-                }
-
-                @Override
-                public boolean hasNext() {
-                    return iterator.hasNext();
-                }
-            };
-        }
-
-        private boolean shouldFindMore() {
-            // If targets is empty, it means we have found every interested objects and no need to continue.
-            if (targets.isEmpty()) {
-                return false;
-            }
-            return commitIterator.hasNext();
-        }
-
-        private Map<String, ObjectId> findObjects(RevCommit commit) throws IOException {
-            final Map<String, ObjectId> objects = new HashMap<>();
-
-            // We want to find the latest commit for each of `targets`. We already know they have
-            // same `basePath`. So get every blobs and trees match one of `targets`, under the
-            // `basePath`, and put them into `objects`.
-            TreeWalkHandler objectCollector = new TreeWalkHandler() {
-                @Override
-                public void handle(TreeWalk treeWalk) {
-                    if (targets.containsKey(treeWalk.getNameString())) {
-                        objects.put(treeWalk.getNameString(), treeWalk.getObjectId(0));
-                    }
-                }
-            };
-
-            // Remove every blob and tree from `objects` if any of parent commits have a
-            // object whose path and id is identical with the blob or the tree. It means the
-            // blob or tree is not changed so we are not interested in it.
-            TreeWalkHandler objectRemover = new TreeWalkHandler() {
-                @Override
-                public void handle(TreeWalk treeWalk) {
-                    if (treeWalk.getObjectId(0).equals(objects.get(treeWalk.getNameString()))) {
-                        objects.remove(treeWalk.getNameString());
-                    }
-                }
-            };
-
-            // Choose only "interest" objects from the blobs and trees. We are interested in
-            // blobs and trees which has change between the last commit and the current commit.
-            traverseTree(commit, objectCollector);
-            for(RevCommit parent : commit.getParents()) {
-                RevCommit fixedParent = fixRevCommitNoTree(parent);
-                traverseTree(fixedParent, objectRemover);
-            }
-            return objects;
-        }
-
-        private void traverseTree(RevCommit commit, TreeWalkHandler handler) throws IOException {
-            TreeWalk treeWalk;
-            if (StringUtils.isEmpty(basePath)) {
-                treeWalk = new TreeWalk(repository);
-                treeWalk.addTree(commit.getTree());
-            } else {
-                treeWalk = TreeWalk.forPath(repository, basePath, commit.getTree());
-                if (treeWalk == null) {
-                    return;
-                }
-                treeWalk.enterSubtree();
-            }
-            while (treeWalk.next()) {
-                handler.handle(treeWalk);
-            }
-        }
-
-        /*
-         * JGit 의 LogCommand 를 사용하여 commit 조회를 할 때 path 정보를 이용하였을 경우
-         * commit 객체가 부모 commit 에 대한 정보를 가지고 있지 않을 수 있다.
-         * 이러한 현상은 아래의 JGit version 에서 확인 되었다.
-         * 3.1.0.201310021548-r ~ 3.2.0.201312181205-r
-         */
-        private RevCommit fixRevCommitNoParents(RevCommit commit) {
-            if (commit.getParentCount() == 0) {
-                return fixRevCommit(commit);
-            }
-            return commit;
-        }
-
-        /*
-         * fixRevCommitNoParents 를 통해서 가져온 커밋의 parents 는 tree 정보가 없을 수 있다
-         */
-        private RevCommit fixRevCommitNoTree(RevCommit commit) {
-            if (commit.getTree() == null) {
-                return fixRevCommit(commit);
-            }
-            return commit;
-        }
-
-        private RevCommit fixRevCommit(RevCommit commit) {
+        public SortedMap<String, JsonNode> find() throws IOException, GitAPIException {
+            Map<String, ObjectId> lastCommits =
+                    new LastCommitIndex(repository).find(untilCommitId, basePath);
             RevWalk revWalk = new RevWalk(repository);
             try {
-                return revWalk.parseCommit(commit);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+                for (Map.Entry<String, ObjectId> entry : lastCommits.entrySet()) {
+                    if (targets.containsKey(entry.getKey())) {
+                        found(revWalk.parseCommit(entry.getValue()), entry.getKey());
+                    }
+                }
+            } finally {
+                revWalk.dispose();
             }
+            return found;
         }
 
         /*
-         * Now, every objects in `objects` are interested. Get metadata from the objects, put
-         * them into `found` and remove from `targets`.
+         * Get metadata from the commit, put them into `found` and remove the path from `targets`.
          */
-        private void found(RevCommit revCommit, Map<String, ObjectId> objects) {
-            for (String path : objects.keySet()) {
-                GitCommit commit = new GitCommit(revCommit);
-                ObjectNode data = (ObjectNode) targets.get(path);
-                data.put("msg", commit.getShortMessage());
-                String emailAddress = commit.getAuthorEmail();
-                User user = User.findByEmail(emailAddress);
-                data.put("avatar", getAvatar(user));
-                data.put("userName", user.name);
-                data.put("userLoginId", user.loginId);
-                data.put("createdDate", revCommit.getCommitTime() * 1000l);
-                data.put("author", commit.getAuthorName());
-                data.put("commitId", commit.getShortId());
-                data.put("commitUrl", routes.CodeHistoryApp.show(ownerName, projectName, commit.getShortId()).url());
-                found.put(path, data);
-                targets.remove(path);
-            }
+        private void found(RevCommit revCommit, String path) {
+            GitCommit commit = new GitCommit(revCommit);
+            ObjectNode data = (ObjectNode) targets.get(path);
+            data.put("msg", commit.getShortMessage());
+            String emailAddress = commit.getAuthorEmail();
+            User user = User.findByEmail(emailAddress);
+            data.put("avatar", getAvatar(user));
+            data.put("userName", user.name);
+            data.put("userLoginId", user.loginId);
+            data.put("createdDate", revCommit.getCommitTime() * 1000l);
+            data.put("author", commit.getAuthorName());
+            data.put("commitId", commit.getShortId());
+            data.put("commitUrl", routes.CodeHistoryApp.show(ownerName, projectName, commit.getShortId()).url());
+            found.put(path, data);
+            targets.remove(path);
         }
     }
 
-    public static interface TreeWalkHandler {
-        void handle(TreeWalk treeWalk);
-    }
-
     /**
      * {@link Constants#HEAD}에서 {@code path}에 해당하는 파일을 반환한다.
      *
@@ -561,14 +443,72 @@ public class GitRepository implements PlayRepository {
         }
     }
 
+    /**
+     * {@code revision}에서 {@code path}에 해당하는 파일의 blob ID 를 반환한다.
+     *
+     * @param revision
+     * @param path
+     * @return {@code revision}이나 {@code path}가 없거나 {@code path}가 디렉토리일 경우에는 null
+     * @throws IOException
+     */
+    public ObjectId getBlobId(String revision, String path) throws IOException {
+        ObjectId revisionId = repository.resolve(revision);
+        if (revisionId == null) {
+            return null;
+        }
+
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            TreeWalk treeWalk = TreeWalk.forPath(repository, path, revWalk.parseTree(revisionId));
+            if (treeWalk == null || treeWalk.isSubtree()) {
+                return null;
+            }
+            return treeWalk.getObjectId(0);
+        } finally {
+            revWalk.release();
+        }
+    }
+
+    /**
+     * {@code blobId}의 내용을 읽을 {@link ObjectLoader}를 반환한다.
+     *
+     * 큰 파일은 {@link ObjectLoader#openStream()}으로 읽어야 메모리에 한꺼번에 올리지 않는다.
+     *
+     * @param blobId
+     * @return
+     * @throws IOException
+     */
+    public ObjectLoader openBlob(AnyObjectId blobId) throws IOException {
+        return repository.open(blobId, Constants.OBJ_BLOB);
+    }
+
+    /**
+     * {@code blobId}의 정보를 반환한다.
+     *
+     * MIME 타입은 내용을 그대로 보낼 때 사용하므로 파일 이름 없이 내용만으로 알아낸다.
+     *
+     * @param blobId
+     * @return
+     * @throws IOException
+     * @see BlobMetadataCache
+     */
+    public BlobMetadataCache.Metadata getBlobMetadata(AnyObjectId blobId) throws IOException {
+        return BlobMetadataCache.get(repository, blobId, null);
+    }
+
     /**
      * Git 저장소 디렉토리를 삭제한다.
-     * 변경전 {@code repository.close()}를 통해 open된 repository의 리소스를 반환하고
+     * 변경전 {@code repository.close()}와 {@link GitRepositoryCache#invalidate(File)}를 통해 open된 repository의 리소스를 반환하고
      * repository 내부에서 사용하는 {@code Cache}를 초기화하여 packFile의 참조를 제거한다.
      */
     @Override
     public void delete() {
         repository.close();
+        GitRepositoryCache.invalidate(repository.getDirectory());
+        RefAdvertisementCache.invalidate(repository);
+        UploadPackCache.invalidate(repository);
+        RepositoryArchive.invalidate(repository);
+        MergeCheckCache.invalidate(new File(getDirectoryForMerging(ownerName, projectName) + "/.git"));
         WindowCacheConfig config = new WindowCacheConfig();
         config.install();
         FileUtil.rm_rf(repository.getDirectory());
@@ -617,24 +557,240 @@ public class GitRepository implements PlayRepository {
      * Render the difference from treeWalk which has two trees.
      */
     private String getPatch(RevCommit commitA, RevCommit commitB) throws IOException {
-        TreeWalk treeWalk = new TreeWalk(repository);
-        addTree(treeWalk, commitA);
-        addTree(treeWalk, commitB);
-        treeWalk.setRecursive(true);
-
         ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeDiff(repository, commitA, commitB, out);
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * {@code from}에서 {@code to}까지의 변경 내역을 unified diff 형식으로 {@code out}에 쓴다.
+     *
+     * 파일별로 만드는 대로 쓰므로 변경 내역이 커도 메모리에 모아두지 않는다.
+     *
+     * @param repository
+     * @param from 비교할 커밋이나 트리, 없으면 null 을 넘겨서 비어있는 트리와 비교한다.
+     * @param to
+     * @param out 다 쓴 뒤에도 닫지 않는다.
+     * @throws IOException
+     */
+    public static void writeDiff(Repository repository, AnyObjectId from, AnyObjectId to, OutputStream out)
+            throws IOException {
+        writeDiff(repository, from, to, out, false);
+    }
+
+    /*
+     * binary 가 true 이면 git diff --binary 처럼 바이너리 파일도 적용할 수 있는 GIT binary patch 로 쓰고,
+     * 모든 index 줄에 전체 객체 ID 를 쓴다.
+     */
+    private static void writeDiff(Repository repository, AnyObjectId from, AnyObjectId to, OutputStream out,
+                                  boolean binary) throws IOException {
+        RevWalk revWalk = new RevWalk(repository);
+        TreeWalk treeWalk = new TreeWalk(repository);
         DiffFormatter diffFormatter = new DiffFormatter(out);
-        diffFormatter.setRepository(repository);
-        diffFormatter.format(DiffEntry.scan(treeWalk));
+        ObjectReader reader = repository.newObjectReader();
+        try {
+            addTree(treeWalk, from == null ? null : revWalk.parseTree(from));
+            addTree(treeWalk, revWalk.parseTree(to));
+            treeWalk.setRecursive(true);
 
-        return out.toString("UTF-8");
+            diffFormatter.setRepository(repository);
+            if (!binary) {
+                diffFormatter.format(DiffEntry.scan(treeWalk));
+            } else {
+                diffFormatter.setAbbreviationLength(Constants.OBJECT_ID_STRING_LENGTH);
+                for (DiffEntry entry : DiffEntry.scan(treeWalk)) {
+                    if (GitBinaryPatch.isBinary(reader, entry)) {
+                        diffFormatter.flush();
+                        GitBinaryPatch.format(reader, entry, out);
+                    } else {
+                        diffFormatter.format(entry);
+                    }
+                }
+            }
+            diffFormatter.flush();
+        } finally {
+            reader.release();
+            diffFormatter.release();
+            treeWalk.release();
+            revWalk.release();
+        }
     }
 
-    private void addTree(TreeWalk treeWalk, RevCommit commit) throws IOException {
-        if (commit == null) {
+    /**
+     * {@code commitId}에 해당하는 커밋의 변경 내역을 unified diff 형식으로 {@code out}에 쓴다.
+     *
+     * 첫 번째 부모 커밋과 비교하며, 부모 커밋이 없을 때는 비어있는 트리와 비교한다.
+     *
+     * @param repository
+     * @param commitId
+     * @param out 다 쓴 뒤에도 닫지 않는다.
+     * @throws IOException
+     * @see #writeDiff(Repository, AnyObjectId, AnyObjectId, OutputStream)
+     */
+    public static void writeDiff(Repository repository, AnyObjectId commitId, OutputStream out)
+            throws IOException {
+        RevCommit commit = parseCommit(repository, commitId);
+        writeDiff(repository, commit.getParentCount() > 0 ? commit.getParent(0) : null, commit, out);
+    }
+
+    /**
+     * {@code commitId}에 해당하는 커밋을 {@code git format-patch --binary} 형식으로 {@code out}에 쓴다.
+     *
+     * 바이너리 파일의 변경 내역도 {@link GitBinaryPatch}로 쓰므로 {@code git am}으로 적용할 수 있다. 작성자 이름과
+     * 제목에 ASCII 가 아닌 글자가 있으면 RFC 2047 로 인코딩한다.
+     *
+     * @param repository
+     * @param commitId
+     * @param out 다 쓴 뒤에도 닫지 않는다.
+     * @throws IOException
+     * @see <a href="https://www.kernel.org/pub/software/scm/git/docs/git-format-patch.html">git-format-patch</a>
+     */
+    public static void writeFormatPatch(Repository repository, AnyObjectId commitId, OutputStream out)
+            throws IOException {
+        writeFormatPatch(repository, parseCommit(repository, commitId), "[PATCH]", out);
+    }
+
+    /**
+     * {@code since} 이후부터 {@code until}까지의 커밋들을 오래된 것부터 {@code git format-patch --binary} 형식으로
+     * {@code out}에 쓴다. {@code git format-patch}처럼 머지 커밋은 뺀다.
+     *
+     * 커밋 목록만 먼저 구하고, 변경 내역은 커밋별로 만드는 대로 쓴다.
+     *
+     * @param repository
+     * @param since 이 커밋과 그 조상 커밋은 쓰지 않는다.
+     * @param until
+     * @param out 다 쓴 뒤에도 닫지 않는다.
+     * @throws IOException
+     * @see <a href="https://www.kernel.org/pub/software/scm/git/docs/git-format-patch.html">git-format-patch</a>
+     */
+    public static void writeFormatPatch(Repository repository, AnyObjectId since, AnyObjectId until,
+                                        OutputStream out) throws IOException {
+        List<RevCommit> commits = new ArrayList<>();
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            revWalk.sort(RevSort.TOPO);
+            revWalk.sort(RevSort.REVERSE, true);
+            revWalk.markStart(revWalk.parseCommit(until));
+            revWalk.markUninteresting(revWalk.parseCommit(since));
+            for (RevCommit commit : revWalk) {
+                if (commit.getParentCount() <= 1) {
+                    commits.add(commit);
+                }
+            }
+        } finally {
+            revWalk.release();
+        }
+
+        for (int i = 0; i < commits.size(); i++) {
+            String subjectPrefix = commits.size() == 1
+                    ? "[PATCH]" : "[PATCH " + (i + 1) + "/" + commits.size() + "]";
+            writeFormatPatch(repository, commits.get(i), subjectPrefix, out);
+        }
+    }
+
+    private static void writeFormatPatch(Repository repository, RevCommit commit, String subjectPrefix,
+                                         OutputStream out) throws IOException {
+        PersonIdent author = commit.getAuthorIdent();
+        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss Z", Locale.US);
+        dateFormat.setTimeZone(author.getTimeZone());
+
+        String message = commit.getFullMessage();
+        int bodyStart = message.indexOf("\n\n");
+        String body = bodyStart < 0 ? "" : message.substring(bodyStart + 2).trim();
+
+        StringBuilder header = new StringBuilder();
+        header.append("From ").append(commit.name()).append(" Mon Sep 17 00:00:00 2001\n");
+        header.append("From: ").append(encodeHeaderWord(author.getName()))
+                .append(" <").append(author.getEmailAddress()).append(">\n");
+        header.append("Date: ").append(dateFormat.format(author.getWhen())).append("\n");
+        header.append("Subject: ").append(subjectPrefix).append(" ")
+                .append(encodeHeaderWord(commit.getShortMessage())).append("\n");
+        if (!isAscii(message)) {
+            header.append("MIME-Version: 1.0\n");
+            header.append("Content-Type: text/plain; charset=UTF-8\n");
+            header.append("Content-Transfer-Encoding: 8bit\n");
+        }
+        header.append("\n");
+        if (!body.isEmpty()) {
+            header.append(body).append("\n");
+        }
+        header.append("---\n");
+        out.write(Constants.encode(header.toString()));
+
+        RevCommit parent = null;
+        if (commit.getParentCount() > 0) {
+            parent = commit.getParent(0);
+        }
+        writeDiff(repository, parent, commit, out, true);
+        out.write(Constants.encode("\n"));
+    }
+
+    /*
+     * ASCII 가 아닌 글자가 있으면 git format-patch 처럼 RFC 2047 의 Q encoding 으로 인코딩한다.
+     */
+    private static String encodeHeaderWord(String text) {
+        if (isAscii(text)) {
+            return text;
+        }
+        StringBuilder encoded = new StringBuilder("=?UTF-8?q?");
+        for (byte b : Constants.encode(text)) {
+            int c = b & 0xff;
+            if (c == ' ') {
+                encoded.append('_');
+            } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || "!*+-/".indexOf(c) >= 0) {
+                encoded.append((char) c);
+            } else {
+                encoded.append(String.format("=%02X", c));
+            }
+        }
+        return encoded.append("?=").toString();
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@code revision}에 해당하는 커밋을 반환한다.
+     *
+     * @param repository
+     * @param revision 커밋 ID, 브랜치, 태그 등
+     * @return {@code revision}이 없거나 커밋이 아니면 null
+     * @throws IOException
+     */
+    public static RevCommit resolveCommit(Repository repository, String revision) throws IOException {
+        ObjectId commitId;
+        try {
+            commitId = repository.resolve(revision + "^{commit}");
+        } catch (RevisionSyntaxException | IncorrectObjectTypeException | MissingObjectException e) {
+            return null;
+        }
+        if (commitId == null) {
+            return null;
+        }
+        return parseCommit(repository, commitId);
+    }
+
+    private static RevCommit parseCommit(Repository repository, AnyObjectId commitId) throws IOException {
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            return revWalk.parseCommit(commitId);
+        } finally {
+            revWalk.release();
+        }
+    }
+
+    private static void addTree(TreeWalk treeWalk, RevTree tree) throws IOException {
+        if (tree == null) {
             treeWalk.addTree(new EmptyTreeIterator());
         } else {
-            treeWalk.addTree(commit.getTree());
+            treeWalk.addTree(tree);
         }
     }
 
@@ -692,52 +848,271 @@ public class GitRepository implements PlayRepository {
         if (commit.getParentCount() > 0) {
             commitIdA = commit.getParent(0).getId();
         }
-
-        return getFileDiffs(repository, repository, commitIdA, commit.getId());
+
+        return getFileDiffs(repository, repository, commitIdA, commit.getId());
+    }
+
+
+    /**
+     * {@code untilRevName}에 해당하는 리비전까지의 커밋 목록을 반환한다.
+     * {@code untilRevName}이 null이면 HEAD 까지의 커밋 목록을 반환한다.
+     *
+     * @param pageNumber 0부터 시작
+     * @param pageSize
+     * @param untilRevName
+     * @return
+     * @throws IOException
+     * @throws GitAPIException
+     */
+    @Override
+    public List<Commit> getHistory(int pageNumber, int pageSize, String untilRevName, String path)
+            throws IOException, GitAPIException {
+        RevCommit start = getRevCommit(untilRevName);
+        if (start == null) {
+            return null;
+        }
+
+        if (path != null) {
+            // 커밋 그래프를 이용해서 path 를 변경하지 않은 커밋의 트리 비교를 건너뛴다.
+            RevWalk revWalk = new RevWalk(repository);
+            try {
+                List<Commit> result = new ArrayList<>();
+                for (RevCommit commit : CommitGraph.of(repository).findChangingCommits(
+                        revWalk, start, path, pageNumber * pageSize, pageSize)) {
+                    result.add(new GitCommit(commit));
+                }
+                return result;
+            } finally {
+                revWalk.release();
+            }
+        }
+
+        // Get the list of commits from HEAD to the given pageNumber.
+        LogCommand logCommand = new Git(repository).log();
+        logCommand.add(start);
+
+        Iterable<RevCommit> iter = logCommand.setMaxCount(pageNumber * pageSize + pageSize).call();
+        List<RevCommit> list = new LinkedList<>();
+        for (RevCommit commit : iter) {
+            if (list.size() >= pageSize) {
+                list.remove(0);
+            }
+            list.add(commit);
+        }
+
+        List<Commit> result = new ArrayList<>();
+        for (RevCommit commit : list) {
+            result.add(new GitCommit(commit));
+        }
+
+        return result;
+    }
+
+    /**
+     * {@code cursor}가 가리키는 위치부터 {@code pageSize}개의 커밋 목록을 반환한다.
+     *
+     * 커서는 "첫 페이지의 시작 커밋 ID:그 커밋부터 훑은 커밋의 수:아직 방문하지 않은 커밋들의 ID" 형식이다.
+     * 브랜치가 갈라졌다가 합쳐진 히스토리에서도 커밋을 빠뜨리지 않도록 마지막 커밋 하나가 아니라
+     * 방문 예정인 커밋을 모두 기록하며, 다음 페이지는 이 커밋들에서부터 다시 시작하므로 앞 페이지들을 다시 훑지 않는다.
+     *
+     * {@code path}가 주어지면 부모 커밋 중 어느 것과도 {@code path}의 내용이 다른 커밋만 반환한다.
+     *
+     * 부모 커밋에서 자식 커밋 방향으로는 따라갈 수 없으므로, 이전 페이지의 커서는 시작 커밋부터 이 페이지 앞까지
+     * 다시 훑어서 알아낸다. 시작 커밋을 기록해두므로 그 사이에 브랜치가 바뀌어도 같은 페이지로 돌아간다.
+     *
+     * @param cursor 이전에 받은 {@link HistoryPage#getNextCursor()}나 {@link HistoryPage#getPrevCursor()},
+     *               이 값이 null이면 {@code untilRevName}부터 조회한다
+     * @param pageSize
+     * @param untilRevName
+     * @param path
+     * @return {@code untilRevName}이나 {@code cursor}에 해당하는 커밋이 없으면 null
+     * @throws IOException
+     */
+    @Override
+    public HistoryPage getHistoryPage(String cursor, int pageSize, String untilRevName, String path)
+            throws IOException {
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            RevCommit tip;
+            int offset = 0;
+            Set<RevCommit> pending = new LinkedHashSet<>();
+            Set<RevCommit> walked = new HashSet<>();
+            if (cursor == null) {
+                ObjectId start = getObjectId(untilRevName);
+                if (start == null) {
+                    return null;
+                }
+                tip = revWalk.parseCommit(start);
+                pending.add(tip);
+            } else {
+                String[] parts = cursor.split(":");
+                if (parts.length != 3) {
+                    return null;
+                }
+                try {
+                    offset = Integer.parseInt(parts[1]);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                tip = parseCommit(revWalk, parts[0]);
+                if (tip == null || offset < 0) {
+                    return null;
+                }
+                for (String id : parts[2].split(",")) {
+                    RevCommit commit = parseCommit(revWalk, id);
+                    if (commit == null) {
+                        return null;
+                    }
+                    pending.add(commit);
+                }
+            }
+            revWalk.markStart(new ArrayList<>(pending));
+
+            CommitGraph graph = path == null ? null : CommitGraph.of(repository);
+            List<Commit> commits = new ArrayList<>();
+            while (commits.size() < pageSize) {
+                RevCommit commit = revWalk.next();
+                if (commit == null) {
+                    break;
+                }
+
+                walked.add(commit);
+                pending.remove(commit);
+                for (RevCommit parent : commit.getParents()) {
+                    if (!walked.contains(parent)) {
+                        pending.add(parent);
+                    }
+                }
+
+                if (path == null || isChangedPath(revWalk, graph, commit, path)) {
+                    commits.add(new GitCommit(commit));
+                }
+            }
+
+            String nextCursor = null;
+            if (!pending.isEmpty()) {
+                nextCursor = makeHistoryCursor(tip, offset + walked.size(), pending);
+            }
+
+            String prevCursor = null;
+            if (offset > 0) {
+                prevCursor = findPrevHistoryCursor(tip, offset, pageSize, path);
+            }
+
+            return new HistoryPage(commits, nextCursor, prevCursor);
+        } finally {
+            revWalk.release();
+        }
+    }
+
+    /*
+     * tip 부터 offset 개의 커밋을 훑은 위치에서 끝나는 페이지의 바로 앞 페이지를 가리키는 커서를 반환한다.
+     * 페이지는 앞 페이지의 마지막 커밋 바로 다음부터 시작하므로, offset 앞에서부터 거꾸로 세어 pageSize + 1 번째로
+     * 보여줄 커밋의 다음 위치가 앞 페이지의 시작이다.
+     */
+    private String findPrevHistoryCursor(RevCommit tip, int offset, int pageSize, String path) throws IOException {
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            RevCommit start = revWalk.parseCommit(tip);
+            revWalk.markStart(start);
+            List<RevCommit> walked = new ArrayList<>(offset);
+            while (walked.size() < offset) {
+                RevCommit commit = revWalk.next();
+                if (commit == null) {
+                    break;
+                }
+                walked.add(commit);
+            }
+
+            CommitGraph graph = path == null ? null : CommitGraph.of(repository);
+            int prevOffset = 0;
+            int found = 0;
+            for (int i = walked.size() - 1; i >= 0; i--) {
+                if (path == null || isChangedPath(revWalk, graph, walked.get(i), path)) {
+                    if (++found > pageSize) {
+                        prevOffset = i + 1;
+                        break;
+                    }
+                }
+            }
+
+            // 앞 페이지를 시작할 때 방문할 예정이었던 커밋들을 다시 계산한다.
+            Set<RevCommit> pending = new LinkedHashSet<>();
+            Set<RevCommit> visited = new HashSet<>();
+            pending.add(start);
+            for (RevCommit commit : walked.subList(0, prevOffset)) {
+                visited.add(commit);
+                pending.remove(commit);
+                for (RevCommit parent : commit.getParents()) {
+                    if (!visited.contains(parent)) {
+                        pending.add(parent);
+                    }
+                }
+            }
+            return makeHistoryCursor(start, prevOffset, pending);
+        } finally {
+            revWalk.release();
+        }
+    }
+
+    private static String makeHistoryCursor(RevCommit tip, int offset, Collection<RevCommit> pending) {
+        List<String> ids = new ArrayList<>();
+        for (RevCommit commit : pending) {
+            ids.add(commit.name());
+        }
+        return tip.name() + ":" + offset + ":" + StringUtils.join(ids, ",");
+    }
+
+    /*
+     * id 에 해당하는 커밋, 올바른 ID 가 아니거나 커밋이 없으면 null
+     */
+    private static RevCommit parseCommit(RevWalk revWalk, String id) throws IOException {
+        if (!ObjectId.isId(id)) {
+            return null;
+        }
+        try {
+            return revWalk.parseCommit(ObjectId.fromString(id));
+        } catch (MissingObjectException e) {
+            return null;
+        } catch (IncorrectObjectTypeException e) {
+            return null;
+        }
     }
 
-
-    /**
-     * {@code untilRevName}에 해당하는 리비전까지의 커밋 목록을 반환한다.
-     * {@code untilRevName}이 null이면 HEAD 까지의 커밋 목록을 반환한다.
-     *
-     * @param pageNumber 0부터 시작
-     * @param pageSize
-     * @param untilRevName
-     * @return
-     * @throws IOException
-     * @throws GitAPIException
+    /*
+     * commit 이 모든 부모 커밋과 비교해서 path 의 내용을 바꾸었는지 확인한다
+     * 커밋 그래프로 첫번째 부모와 같다는 것이 확실하면 트리를 비교하지 않는다
      */
-    @Override
-    public List<Commit> getHistory(int pageNumber, int pageSize, String untilRevName, String path)
-            throws IOException, GitAPIException {
-        // Get the list of commits from HEAD to the given pageNumber.
-        LogCommand logCommand = new Git(repository).log();
-        if (path != null) {
-            logCommand.addPath(path);
+    private static boolean isChangedPath(RevWalk revWalk, CommitGraph graph, RevCommit commit, String path)
+            throws IOException {
+        if (commit.getParentCount() > 0 && !graph.mightChange(commit, path)) {
+            return false;
         }
-
-        RevCommit start = getRevCommit(untilRevName);
-        if (start == null) {
-            return null;
+        ObjectId objectId = getObjectIdOfPath(revWalk.getObjectReader(), commit, path);
+        if (commit.getParentCount() == 0) {
+            return objectId != null;
         }
-        logCommand.add(start);
-
-        Iterable<RevCommit> iter = logCommand.setMaxCount(pageNumber * pageSize + pageSize).call();
-        List<RevCommit> list = new LinkedList<>();
-        for (RevCommit commit : iter) {
-            if (list.size() >= pageSize) {
-                list.remove(0);
+        for (RevCommit parent : commit.getParents()) {
+            revWalk.parseHeaders(parent);
+            ObjectId parentObjectId = getObjectIdOfPath(revWalk.getObjectReader(), parent, path);
+            if (objectId == null ? parentObjectId == null : objectId.equals(parentObjectId)) {
+                return false;
             }
-            list.add(commit);
         }
+        return true;
+    }
 
-        List<Commit> result = new ArrayList<>();
-        for (RevCommit commit : list) {
-            result.add(new GitCommit(commit));
+    private static ObjectId getObjectIdOfPath(ObjectReader reader, RevCommit commit, String path)
+            throws IOException {
+        TreeWalk treeWalk = TreeWalk.forPath(reader, path, commit.getTree());
+        if (treeWalk == null) {
+            return null;
+        }
+        try {
+            return treeWalk.getObjectId(0);
+        } finally {
+            treeWalk.release();
         }
-
-        return result;
     }
 
     @Override
@@ -859,7 +1234,7 @@ public class GitRepository implements PlayRepository {
      * {@code project}의 Git 저장소를 반환한다.
      * <p/>
      * when: {@link RepositoryService#gitAdvertise(models.Project, String, play.mvc.Http.Response)}와
-     * {@link RepositoryService#gitRpc(models.Project, String, play.mvc.Http.Request, play.mvc.Http.Response)}에서 사용한다.
+     * {@link RepositoryService#startGitRpc(models.Project, String, models.User, play.mvc.Http.Request)}에서 사용한다.
      * <p/>
      * {@link GitRepository#buildGitRepository(models.Project)}를 사용하여 Git 저장소를 참조할 객체를 생성한다.
      *
@@ -896,6 +1271,7 @@ public class GitRepository implements PlayRepository {
     public static void deleteMergingDirectory(PullRequest pullRequest) {
         Project toProject = pullRequest.toProject;
         String directoryForMerging = GitRepository.getDirectoryForMerging(toProject.owner, toProject.name);
+        MergeCheckCache.invalidate(new File(directoryForMerging + "/.git"));
         FileUtil.rm_rf(new File(directoryForMerging));
     }
 
@@ -903,6 +1279,8 @@ public class GitRepository implements PlayRepository {
      * {@code repository}에 있는 {@code src} 브랜치에 있는 코드를
      * {@code remote}의 {@code dest} 브랜치로 push 한다.
      *
+     * fast-forward 가 아니라서 거절되는 등 {@code dest}를 갱신하지 못하면 {@link IllegalStateException}을 던진다.
+     *
      * @param repository
      * @param remote
      * @param src
@@ -910,43 +1288,20 @@ public class GitRepository implements PlayRepository {
      * @throws GitAPIException
      */
     public static void push(Repository repository, String remote, String src, String dest) throws GitAPIException {
-        new Git(repository).push()
+        Iterable<PushResult> results = new Git(repository).push()
                 .setRemote(remote)
                 .setRefSpecs(new RefSpec(src + ":" + dest))
                 .call();
-    }
-
-    /**
-     * {@code repository}에서 {@code branchName}에 해당하는 브랜치를 merge 한다.
-     *
-     * Fast forward 일 경우에도 머지 커밋을 기록하도록 --no-ff 옵션을 추가한다.
-     *
-     * @param repository
-     * @param branchName
-     * @return
-     * @throws GitAPIException
-     * @throws IOException
-     */
-    public static MergeResult merge(Repository repository, String branchName) throws GitAPIException, IOException {
-        ObjectId branch = repository.resolve(branchName);
-        return new Git(repository).merge()
-                .setFastForward(MergeCommand.FastForwardMode.NO_FF)
-                .include(branch)
-                .call();
-    }
-
-    /**
-     * {@code repository}에서 {@code branchName}에 해당하는 브랜치로 checkout 한다.
-     *
-     * @param repository
-     * @param branchName
-     * @throws GitAPIException
-     */
-    public static void checkout(Repository repository, String branchName) throws GitAPIException {
-        new Git(repository).checkout()
-                .setName(branchName)
-                .setCreateBranch(false)
-                .call();
+        for (PushResult result : results) {
+            for (RemoteRefUpdate update : result.getRemoteUpdates()) {
+                if (update.getStatus() != RemoteRefUpdate.Status.OK
+                        && update.getStatus() != RemoteRefUpdate.Status.UP_TO_DATE) {
+                    throw new IllegalStateException("Failed to push " + src + " to " + update.getRemoteName()
+                            + " of " + remote + ": " + update.getStatus()
+                            + (update.getMessage() != null ? " (" + update.getMessage() + ")" : ""));
+                }
+            }
+        }
     }
 
     /**
@@ -972,6 +1327,12 @@ public class GitRepository implements PlayRepository {
             ObjectId from = repository.resolve(fromBranch);
             ObjectId to = repository.resolve(toBranch);
 
+            // 이미 합쳐진 브랜치라면 커밋 그래프의 generation number 로 빠르게 확인할 수 있다.
+            CommitGraph graph = CommitGraph.of(repository);
+            if (graph.contains(from) && graph.contains(to) && graph.isAncestor(from, to)) {
+                return new ArrayList<>();
+            }
+
             walk.markStart(walk.parseCommit(from));
             walk.markUninteresting(walk.parseCommit(to));
 
@@ -1123,10 +1484,7 @@ public class GitRepository implements PlayRepository {
         RevWalk revWalk = null;
         try {
             revWalk = new RevWalk(repository);
-            revWalk.markStart(start);
-            revWalk.setTreeFilter(PathFilter.create(path));
-            revWalk.sort(RevSort.REVERSE);
-            RevCommit commit = revWalk.next();
+            RevCommit commit = CommitGraph.of(repository).findOldestChangingCommit(revWalk, start, path);
             // 어떤 파일이 처음 생성된 commit 은 반드시 존재해야 한다.
             // 하지만 어떤 이유에선지 위와 같이 RevWalk 를 이용했을 때 그 commit 을 찾지 못할 때가 있다.
             // 아래 commit 이 null 일 경우의 처리는 임시적인 것이며 추후 원인을 분석해서 특정 path 의
@@ -1167,6 +1525,8 @@ public class GitRepository implements PlayRepository {
                 .setBranchNames(branchName)
                 .setForce(true)
                 .call();
+        RefAdvertisementCache.invalidate(repository);
+        UploadPackCache.invalidate(repository);
     }
 
     /**
@@ -1193,82 +1553,148 @@ public class GitRepository implements PlayRepository {
      *
      * when: {@link models.PullRequest#merge}, {@link models.PullRequest#attemptMerge()}에서 사용한다.
      *
-     * 1. merge용 저장소를 성성한다.
-     *   {@code pullRequest}의 toProject에 해당하는 저장소를 clone.
+     * 1. merge용 저장소를 준비한다.
+     *   {@code pullRequest}의 toProject 용 merge 저장소가 없으면 bare 저장소로 생성한다.
      * 2. 코드 보내는 브랜치를 가져온다.
      *   {@code pullRequest}의 fromProject 저장소에서 fromBranch fetch.
      * 3. 코드 받을 브랜치를 가져온다.
      *   {@code pullRequest}의 toProject 저장소에서 toBranch fetch.
-     * 4. 코드 받을 브랜치에서 merge할 때 사용할 새로운 브랜치를 생성한다.
-     *   git checkout -b 현재시간 destToBranchName
+     * 4. 가져온 두 브랜치의 커밋 ID 를 넘겨 {@code operation}을 실행한다.
+     *
+     * 작업 디렉토리를 사용하지 않으므로 checkout, reset, clean 은 하지 않는다. merge 는
+     * {@link #merge(Repository, ObjectId, ObjectId, PersonIdent, String)}로 메모리에서 하면 된다.
+     * 같은 저장소의 ref 를 동시에 갱신하지 않도록 fetch 하는 동안만 프로젝트 단위로 잠그고, {@code operation}은
+     * 잠그지 않은 채로 실행하므로 같은 프로젝트로 보낸 여러 코드 보내기를 동시에 확인할 수 있다.
+     * merge 한 결과를 push 해야 한다면 {@link #cloneAndFetchExclusively}를 사용한다.
      *
      * @param pullRequest
      * @param operation
      * @see models.PullRequest#attemptMerge()
-     * @see models.PullRequest#merge(models.PullRequestEventMessage)
      */
     public static void cloneAndFetch(PullRequest pullRequest, AfterCloneAndFetchOperation operation) {
-        Repository cloneRepository = null;
-        String mergingBranch = null;
-        String destFromBranchName = null;
+        Repository mergingRepository = null;
         try {
-            synchronized (PROJECT_LOCK.get(pullRequest.toProject)) {
-                cloneRepository = buildMergingRepository(pullRequest);
+            String srcToBranchName = pullRequest.toBranch;
+            String destToBranchName = makeDestToBranchName(pullRequest);
+            String srcFromBranchName = pullRequest.fromBranch;
+            String destFromBranchName = makeDestFromBranchName(pullRequest);
+            ObjectId toHead;
+            ObjectId fromHead;
 
-                String srcToBranchName = pullRequest.toBranch;
-                String destToBranchName = makeDestToBranchName(pullRequest);
-                String srcFromBranchName = pullRequest.fromBranch;
-                destFromBranchName = makeDestFromBranchName(pullRequest);
-                mergingBranch = "" + System.currentTimeMillis();
+            synchronized (PROJECT_LOCK.get(pullRequest.toProject)) {
+                mergingRepository = buildBareMergingRepository(pullRequest.toProject);
 
                 // 코드를 보내는 브랜치를 가져온다.
-                new Git(cloneRepository).fetch()
+                new Git(mergingRepository).fetch()
                         .setRemote(GitRepository.getGitDirectoryURL(pullRequest.fromProject))
                         .setRefSpecs(new RefSpec("+" + srcFromBranchName + ":" + destFromBranchName))
                         .call();
 
                 // 코드 받을 브랜치를 가져온다.
-                new Git(cloneRepository).fetch()
+                new Git(mergingRepository).fetch()
                         .setRemote(GitRepository.getGitDirectoryURL(pullRequest.toProject))
                         .setRefSpecs(new RefSpec("+" + srcToBranchName + ":" + destToBranchName))
                         .call();
 
-                // 현재 위치 정리.
-                new Git(cloneRepository).reset().setMode(ResetCommand.ResetType.HARD).setRef(Constants.HEAD).call();
-                new Git(cloneRepository).clean().setIgnore(true).setCleanDirectories(true).call();
-
-                // mergingBranch 생성 및 이동
-                new Git(cloneRepository).checkout()
-                        .setCreateBranch(true)
-                        .setName(mergingBranch)
-                        .setStartPoint(destToBranchName)
-                        .call();
-
-                // Operation 실행. (현재 위치는 mergingBranch)
-                CloneAndFetch cloneAndFetch = new CloneAndFetch(cloneRepository, destToBranchName, destFromBranchName, mergingBranch);
-                operation.invoke(cloneAndFetch);
+                // 잠금을 푼 뒤에 다른 코드 보내기가 ref 를 바꾸더라도 영향을 받지 않도록 커밋 ID 를 사용한다.
+                toHead = mergingRepository.resolve(destToBranchName);
+                fromHead = mergingRepository.resolve(destFromBranchName);
             }
+
+            // Operation 실행.
+            CloneAndFetch cloneAndFetch = new CloneAndFetch(mergingRepository, destToBranchName,
+                    destFromBranchName, toHead, fromHead);
+            operation.invoke(cloneAndFetch);
         } catch (GitAPIException e) {
             throw new IllegalStateException(e);
         } catch (IOException e) {
             throw new IllegalStateException(e);
         } finally {
-            if(cloneRepository != null) {
-                try {
-                    if(destFromBranchName != null) {
-                        // 코드 보내는 브랜치로 이동
-                        new Git(cloneRepository).checkout().setName(destFromBranchName).call();
-                    }
-                    if(mergingBranch != null) {
-                        // merge 브랜치 삭제
-                        new Git(cloneRepository).branchDelete().setForce(true).setBranchNames(mergingBranch).call();
-                    }
-                } catch (GitAPIException e) {
-                    Logger.error("failed to delete merging branch", e);
-                }
+            if(mergingRepository != null) {
+                mergingRepository.close();
+            }
+        }
+    }
+
+    /**
+     * {@link #cloneAndFetch}와 같지만 {@code operation}이 끝날 때까지 코드 받을 프로젝트를 잠근다.
+     *
+     * 두 코드 보내기를 같은 브랜치로 동시에 받으면 나중에 push 한 쪽이 fast-forward 가 아니라서 거절된다.
+     * fetch 한 뒤 merge 해서 push 할 때까지 잠가두면 같은 프로젝트로 받는 코드 보내기는 하나씩 merge 된다.
+     *
+     * @param pullRequest
+     * @param operation
+     * @see models.PullRequest#merge(models.PullRequestEventMessage)
+     */
+    public static void cloneAndFetchExclusively(PullRequest pullRequest, AfterCloneAndFetchOperation operation) {
+        synchronized (PROJECT_LOCK.get(pullRequest.toProject)) {
+            cloneAndFetch(pullRequest, operation);
+        }
+    }
+
+    /**
+     * {@code ours}에 {@code theirs}를 merge 한 결과를 작업 디렉토리 없이 메모리에서 만든다.
+     *
+     * 충돌이 없으면 두 커밋을 부모로 하는 merge 커밋을 {@code repository}에 기록하고, 그 커밋 ID 를
+     * {@link MergeResult#getNewHead()}로 반환한다. fast-forward 할 수 있는 경우에도 merge 커밋을 만든다.
+     * {@code theirs}가 이미 {@code ours}에 포함되어 있으면 {@link MergeResult.MergeStatus#ALREADY_UP_TO_DATE}를
+     * 반환한다. 충돌이 있으면 아무것도 기록하지 않고 충돌 정보를 담아 {@link MergeResult.MergeStatus#CONFLICTING}을
+     * 반환한다.
+     *
+     * 브랜치나 HEAD 는 바꾸지 않으므로 필요하면 반환된 커밋 ID 를 직접 push 해야 한다.
+     *
+     * @param repository 두 커밋이 모두 들어있는 저장소
+     * @param ours merge 받을 커밋
+     * @param theirs merge 할 커밋
+     * @param author merge 커밋의 author 와 committer
+     * @param message merge 커밋 메시지
+     * @return
+     * @throws IOException
+     */
+    public static MergeResult merge(Repository repository, ObjectId ours, ObjectId theirs,
+                                    PersonIdent author, String message) throws IOException {
+        ObjectId[] mergedCommits = new ObjectId[] { ours, theirs };
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            RevCommit oursCommit = revWalk.parseCommit(ours);
+            RevCommit theirsCommit = revWalk.parseCommit(theirs);
+
+            if (revWalk.isMergedInto(theirsCommit, oursCommit)) {
+                return new MergeResult(oursCommit, theirsCommit, mergedCommits,
+                        MergeResult.MergeStatus.ALREADY_UP_TO_DATE, MergeStrategy.RECURSIVE, null, null);
+            }
+
+            ResolveMerger merger = (ResolveMerger) MergeStrategy.RECURSIVE.newMerger(repository, true);
+            boolean merged = merger.merge(oursCommit, theirsCommit);
+            ObjectId base = merger.getBaseCommitId();
+
+            if (!merged) {
+                Map<String, org.eclipse.jgit.merge.MergeResult<?>> lowLevelResults = new HashMap<>();
+                lowLevelResults.putAll(merger.getMergeResults());
+                return new MergeResult(null, base, mergedCommits,
+                        MergeResult.MergeStatus.CONFLICTING, MergeStrategy.RECURSIVE, lowLevelResults, null);
+            }
 
-                cloneRepository.close();
+            CommitBuilder commit = new CommitBuilder();
+            commit.setTreeId(merger.getResultTreeId());
+            commit.setParentIds(oursCommit, theirsCommit);
+            commit.setAuthor(author);
+            commit.setCommitter(author);
+            commit.setMessage(message);
+
+            ObjectInserter inserter = repository.newObjectInserter();
+            ObjectId mergeCommitId;
+            try {
+                mergeCommitId = inserter.insert(commit);
+                inserter.flush();
+            } finally {
+                inserter.release();
             }
+
+            return new MergeResult(mergeCommitId, base, mergedCommits,
+                    MergeResult.MergeStatus.MERGED, MergeStrategy.RECURSIVE, null, null);
+        } finally {
+            revWalk.release();
         }
     }
 
@@ -1316,6 +1742,26 @@ public class GitRepository implements PlayRepository {
         }
     }
 
+    /**
+     * {@code project}로 보낸 코드를 merge 할 때 사용할 저장소를 반환한다. 없으면 bare 저장소로 생성한다.
+     *
+     * 예전에 non-bare 모드로 clone 해둔 저장소가 있으면 그 저장소를 그대로 사용하되 작업 디렉토리는 건드리지 않는다.
+     * 어느 쪽이든 merge 결과 커밋은 {@link #getDirectoryForMergingObjects(String, String)}에 기록되므로
+     * {@link #buildGitRepository(String, String)}로 만든 저장소에서도 읽을 수 있다.
+     *
+     * @param project
+     * @return
+     * @throws IOException
+     */
+    private static Repository buildBareMergingRepository(Project project) throws IOException {
+        File gitDir = new File(getDirectoryForMerging(project.owner, project.name) + "/.git");
+        Repository repository = new RepositoryBuilder().setGitDir(gitDir).build();
+        if (!gitDir.exists()) {
+            repository.create(true);
+        }
+        return repository;
+    }
+
     /**
      * {@link Project}의 Git 저장소를 {@code workingTreePath}에
      * non-bare 모드로 clone 한다.
@@ -1365,9 +1811,13 @@ public class GitRepository implements PlayRepository {
 
                     // check whether the target repository has the commit witch is the fromBranch's head commit.
                     Repository toRepo = buildGitRepository(pullRequest.toProject);
-                    ObjectId toBranch = toRepo.resolve(commitName);
-                    if(toBranch != null) {
-                        return true;
+                    try {
+                        ObjectId toBranch = toRepo.resolve(commitName);
+                        if(toBranch != null) {
+                            return true;
+                        }
+                    } finally {
+                        toRepo.close();
                     }
                 }
             }
@@ -1434,6 +1884,7 @@ public class GitRepository implements PlayRepository {
                     .setName(pullRequest.fromBranch.replaceAll("refs/heads/", ""))
                     .setStartPoint(pullRequest.lastCommitId)
                     .call();
+            RefAdvertisementCache.invalidate(repo);
         } catch (Exception e) {
             throw new RuntimeException(e);
         } finally {
@@ -1478,7 +1929,7 @@ public class GitRepository implements PlayRepository {
             return commits;
         }
 
-        Repository repo;
+        Repository repo = null;
         try {
             if(pullRequest.isClosed()) {
                 repo = buildGitRepository(pullRequest.toProject);
@@ -1503,32 +1954,24 @@ public class GitRepository implements PlayRepository {
             return commits;
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            if(repo != null) {
+                repo.close();
+            }
         }
     }
 
     public static String getPatch(Repository repository, String fromBranch, String toBranch) {
-        TreeWalk treeWalk = new TreeWalk(repository);
-        RevWalk walk = new RevWalk(repository);
         try {
             ObjectId from = repository.resolve(fromBranch);
             ObjectId to = repository.resolve(toBranch);
-            RevTree fromTree = walk.parseTree(from);
-            RevTree toTree = walk.parseTree(to);
-
-            treeWalk.addTree(toTree);
-            treeWalk.addTree(fromTree);
 
             ByteArrayOutputStream out = new ByteArrayOutputStream();
-            DiffFormatter diffFormatter = new DiffFormatter(out);
-            diffFormatter.setRepository(repository);
-            treeWalk.setRecursive(true);
-            diffFormatter.format(DiffEntry.scan(treeWalk));
+            writeDiff(repository, to, from, out);
 
             return out.toString("UTF-8");
         } catch (Exception e) {
             throw new RuntimeException(e);
-        } finally {
-            walk.dispose();
         }
     }
 
@@ -1537,7 +1980,7 @@ public class GitRepository implements PlayRepository {
             return "";
         }
 
-        Repository repo;
+        Repository repo = null;
         try {
             repo = buildGitRepository(pullRequest.toProject);
 
@@ -1553,6 +1996,10 @@ public class GitRepository implements PlayRepository {
             return getPatch(repo, untilId.getName(), sinceId.getName());
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            if(repo != null) {
+                repo.close();
+            }
         }
     }
 
@@ -1573,6 +2020,141 @@ public class GitRepository implements PlayRepository {
     }
 
     private static List<FileDiff> getFileDiffs(final Repository repositoryA, Repository repositoryB, ObjectId commitA, ObjectId commitB) throws IOException {
+        RevTree treeA = null, treeB = null;
+        if (commitA != null) {
+            treeA = new RevWalk(repositoryA).parseTree(commitA);
+        }
+        if (commitB != null) {
+            treeB = new RevWalk(repositoryB).parseTree(commitB);
+        }
+
+        DiffAlgorithm.SupportedAlgorithm algorithm = repositoryB.getConfig().getEnum(
+                ConfigConstants.CONFIG_DIFF_SECTION, null,
+                ConfigConstants.CONFIG_KEY_ALGORITHM,
+                DiffAlgorithm.SupportedAlgorithm.HISTOGRAM);
+
+        // 트리가 같으면 비교 결과도 같으므로 캐시된 결과를 사용한다.
+        DiffCache.Key cacheKey = new DiffCache.Key(treeA, treeB, algorithm.name());
+        List<FileDiff> cached = DiffCache.get(cacheKey, repositoryA, repositoryB,
+                commitA != null ? commitA.getName() : null,
+                commitB != null ? commitB.getName() : null);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<FileDiff> candidates = getChangedFiles(repositoryA, repositoryB, treeA, treeB, commitA, commitB);
+
+        List<FileDiff> result = DiffEngine.getDefault().diff(candidates, repositoryA, repositoryB,
+                algorithm);
+
+        DiffCache.put(cacheKey, result);
+
+        return result;
+    }
+
+    /**
+     * {@code commitA}와 {@code commitB} 사이의 변경 파일 중 {@code offset}번째부터 최대 {@code limit}개의 비교
+     * 결과를 가져온다.
+     *
+     * 이름 변경 감지를 위해 변경된 파일 목록은 모두 구하지만, 반환하는 {@link FileDiff}는 blob ID 만 가지고 있고
+     * 파일 내용은 {@link FileDiff#load()}나 {@link FileDiff#getHunks()}를 호출할 때 읽는다. 변경 파일이 아주 많은
+     * 경우에도 화면에 보여줄 파일의 내용만 메모리에 올릴 수 있다. 변경된 파일 목록은 {@link DiffCache}에 두므로
+     * 다음 페이지를 요청할 때는 이름 변경 감지를 다시 하지 않는다.
+     *
+     * @param repositoryA
+     * @param revA
+     * @param repositoryB
+     * @param revB
+     * @param offset 가져올 첫 파일의 순서 (0부터 시작)
+     * @param limit 가져올 최대 파일 수
+     * @return
+     * @throws IOException
+     */
+    public static FileDiffPage getDiffPage(Repository repositoryA, String revA,
+                                           Repository repositoryB, String revB,
+                                           int offset, int limit) throws IOException {
+        ObjectId commitA = repositoryA.resolve(revA);
+        ObjectId commitB = repositoryB.resolve(revB);
+
+        RevTree treeA = null, treeB = null;
+        if (commitA != null) {
+            treeA = new RevWalk(repositoryA).parseTree(commitA);
+        }
+        if (commitB != null) {
+            treeB = new RevWalk(repositoryB).parseTree(commitB);
+        }
+
+        DiffAlgorithm.SupportedAlgorithm algorithm = repositoryB.getConfig().getEnum(
+                ConfigConstants.CONFIG_DIFF_SECTION, null,
+                ConfigConstants.CONFIG_KEY_ALGORITHM,
+                DiffAlgorithm.SupportedAlgorithm.HISTOGRAM);
+
+        List<FileDiff> entries = getChangedFiles(repositoryA, repositoryB, treeA, treeB, commitA, commitB);
+        List<FileDiff> diffs = new ArrayList<>();
+        for (int i = Math.max(0, offset); i < entries.size() && diffs.size() < limit; i++) {
+            FileDiff fileDiff = entries.get(i);
+            fileDiff.setLazy(repositoryA, repositoryB, algorithm);
+            diffs.add(fileDiff);
+        }
+
+        return new FileDiffPage(diffs, Math.max(0, offset), entries.size());
+    }
+
+    /*
+     * 두 트리 사이에서 변경된 파일 목록을 파일 내용 없이 구한다.
+     * 이름 변경 감지는 트리 쌍마다 한 번만 하도록 결과를 DiffCache 에 둔다.
+     */
+    private static List<FileDiff> getChangedFiles(Repository repositoryA, Repository repositoryB,
+                                                  RevTree treeA, RevTree treeB,
+                                                  ObjectId commitA, ObjectId commitB) throws IOException {
+        DiffCache.Key cacheKey = new DiffCache.Key(treeA, treeB, "entries");
+        List<FileDiff> cached = DiffCache.get(cacheKey, repositoryA, repositoryB,
+                commitA != null ? commitA.getName() : null,
+                commitB != null ? commitB.getName() : null);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<FileDiff> entries = new ArrayList<>();
+        for (DiffEntry diff : scanDiffEntries(repositoryA, repositoryB, treeA, treeB)) {
+            entries.add(newFileDiff(diff, commitA, commitB));
+        }
+        DiffCache.put(cacheKey, entries);
+        return entries;
+    }
+
+    /*
+     * 파일 내용 없이 경로, 모드, blob ID 만 가진 FileDiff 를 만든다.
+     */
+    private static FileDiff newFileDiff(DiffEntry diff, ObjectId commitA, ObjectId commitB) {
+        FileDiff fileDiff = new FileDiff();
+        fileDiff.commitA = commitA != null ? commitA.getName() : null;
+        fileDiff.commitB = commitB != null ? commitB.getName() : null;
+
+        fileDiff.changeType = diff.getChangeType();
+
+        fileDiff.oldMode = diff.getOldMode();
+        fileDiff.newMode = diff.getNewMode();
+
+        if (Arrays.asList(DELETE, MODIFY, RENAME, COPY).contains(diff.getChangeType())) {
+            fileDiff.pathA = diff.getPath(DiffEntry.Side.OLD);
+            fileDiff.blobA = diff.getOldId().toObjectId();
+        }
+
+        if (Arrays.asList(ADD, MODIFY, RENAME, COPY).contains(diff.getChangeType())) {
+            fileDiff.pathB = diff.getPath(DiffEntry.Side.NEW);
+            fileDiff.blobB = diff.getNewId().toObjectId();
+        }
+
+        return fileDiff;
+    }
+
+    /*
+     * 두 트리 사이의 변경 목록을 이름 변경을 감지하여 구한다. 두 트리는 서로 다른 저장소에 있을 수 있다.
+     */
+    private static List<DiffEntry> scanDiffEntries(final Repository repositoryA,
+                                                   Repository repositoryB, RevTree treeA,
+                                                   RevTree treeB) throws IOException {
         class MultipleRepositoryObjectReader extends ObjectReader {
             Collection<ObjectReader> readers = new HashSet<>();
 
@@ -1675,116 +2257,22 @@ public class GitRepository implements PlayRepository {
         formatter.setDetectRenames(true);
 
         AbstractTreeIterator treeParserA, treeParserB;
-        RevTree treeA = null, treeB = null;
 
-        if (commitA != null) {
-            treeA = new RevWalk(repositoryA).parseTree(commitA);
+        if (treeA != null) {
             treeParserA = new CanonicalTreeParser();
             ((CanonicalTreeParser) treeParserA).reset(reader, treeA);
         } else {
             treeParserA = new EmptyTreeIterator();
         }
 
-        if (commitB != null) {
-            treeB = new RevWalk(repositoryB).parseTree(commitB);
+        if (treeB != null) {
             treeParserB = new CanonicalTreeParser();
             ((CanonicalTreeParser) treeParserB).reset(reader, treeB);
         } else {
             treeParserB = new EmptyTreeIterator();
         }
 
-        List<FileDiff> result = new ArrayList<>();
-        int size = 0;
-        int lines = 0;
-
-        for (DiffEntry diff : formatter.scan(treeParserA, treeParserB)) {
-            FileDiff fileDiff = new FileDiff();
-            fileDiff.commitA = commitA != null ? commitA.getName() : null;
-            fileDiff.commitB = commitB != null ? commitB.getName() : null;
-
-            fileDiff.changeType = diff.getChangeType();
-
-            fileDiff.oldMode = diff.getOldMode();
-            fileDiff.newMode = diff.getNewMode();
-
-            String pathA = diff.getPath(DiffEntry.Side.OLD);
-            String pathB = diff.getPath(DiffEntry.Side.NEW);
-
-            byte[] rawA = null;
-            if (treeA != null
-                    && Arrays.asList(DELETE, MODIFY, RENAME, COPY).contains(diff.getChangeType())) {
-                TreeWalk t1 = TreeWalk.forPath(repositoryA, pathA, treeA);
-                ObjectId blobA = t1.getObjectId(0);
-                fileDiff.pathA = pathA;
-
-                try {
-                    rawA = repositoryA.open(blobA).getBytes();
-                    fileDiff.isBinaryA = RawText.isBinary(rawA);
-                    fileDiff.a = fileDiff.isBinaryA ? null : new RawText(rawA);
-                } catch (org.eclipse.jgit.errors.LargeObjectException e) {
-                    fileDiff.addError(FileDiff.Error.A_SIZE_EXCEEDED);
-                }
-            }
-
-            byte[] rawB = null;
-            if (treeB != null
-                    && Arrays.asList(ADD, MODIFY, RENAME, COPY).contains(diff.getChangeType())) {
-                TreeWalk t2 = TreeWalk.forPath(repositoryB, pathB, treeB);
-                ObjectId blobB = t2.getObjectId(0);
-                fileDiff.pathB = pathB;
-
-                try {
-                    rawB = repositoryB.open(blobB).getBytes();
-                    fileDiff.isBinaryB = RawText.isBinary(rawB);
-                    fileDiff.b = fileDiff.isBinaryB ? null : new RawText(rawB);
-                } catch (org.eclipse.jgit.errors.LargeObjectException e) {
-                    fileDiff.addError(FileDiff.Error.B_SIZE_EXCEEDED);
-                }
-            }
-
-            if (size > DIFF_SIZE_LIMIT || lines > DIFF_LINE_LIMIT) {
-                fileDiff.addError(FileDiff.Error.OTHERS_SIZE_EXCEEDED);
-                result.add(fileDiff);
-                continue;
-            }
-
-            // Get diff if necessary
-            if (fileDiff.a != null
-                    && fileDiff.b != null
-                    && !(fileDiff.isBinaryA || fileDiff.isBinaryB)
-                    && Arrays.asList(MODIFY, RENAME).contains(diff.getChangeType())) {
-                DiffAlgorithm diffAlgorithm = DiffAlgorithm.getAlgorithm(
-                        repositoryB.getConfig().getEnum(
-                                ConfigConstants.CONFIG_DIFF_SECTION, null,
-                                ConfigConstants.CONFIG_KEY_ALGORITHM,
-                                DiffAlgorithm.SupportedAlgorithm.HISTOGRAM));
-                fileDiff.editList = diffAlgorithm.diff(RawTextComparator.DEFAULT, fileDiff.a,
-                        fileDiff.b);
-                size += fileDiff.getHunks().size;
-                lines += fileDiff.getHunks().lines;
-            }
-
-            // update lines and sizes
-            if (fileDiff.b != null && !fileDiff.isBinaryB && diff.getChangeType().equals(ADD)) {
-                lines += fileDiff.b.size();
-                size += rawB.length;
-            }
-
-            // update lines and sizes
-            if (fileDiff.a != null && !fileDiff.isBinaryA && diff.getChangeType().equals(DELETE)) {
-                lines += fileDiff.a.size();
-                size += rawA.length;
-            }
-
-            // Stop if exceeds the limit for total number of files
-            if (result.size() > DIFF_FILE_LIMIT) {
-                break;
-            }
-
-            result.add(fileDiff);
-        }
-
-        return result;
+        return formatter.scan(treeParserA, treeParserB);
     }
 
     /**
@@ -1799,6 +2287,15 @@ public class GitRepository implements PlayRepository {
                                                     Project forkProject) throws IOException {
         Repository origin = GitRepository.buildGitRepository(originalProject);
         Repository forked = GitRepository.buildGitRepository(forkProject);
+        try {
+            cloneHardLinkedRepository(origin, forked);
+        } finally {
+            origin.close();
+            forked.close();
+        }
+    }
+
+    private static void cloneHardLinkedRepository(Repository origin, Repository forked) throws IOException {
         forked.create();
 
         final Path originObjectsPath =
@@ -1836,6 +2333,7 @@ public class GitRepository implements PlayRepository {
                 updateRef.update();
             }
         }
+        RefAdvertisementCache.invalidate(forked);
     }
 
     public GitBranch getHeadBranch() {
@@ -1859,7 +2357,7 @@ public class GitRepository implements PlayRepository {
     public static class CloneAndFetch {
 
         /**
-         * 코드 받을 저장소의 코드를 non-bare 모드로 clone 받은 Git 저장소
+         * 코드 받을 저장소와 코드 보내는 저장소의 브랜치를 fetch 받은 merge 용 Git 저장소
          */
         private Repository repository;
 
@@ -1874,10 +2372,14 @@ public class GitRepository implements PlayRepository {
         private String destFromBranchName;
 
         /**
-         * 코드 받을 브랜치에서 생성한 브랜치로 실제 merge를 수행할 브랜치 이름
-         * 겹치지 않도록 현재 시간을 이름으로 사용한다.
+         * fetch 받은 코드 받을 브랜치의 커밋 ID
+         */
+        private ObjectId toHead;
+
+        /**
+         * fetch 받은 코드 보내는 브랜치의 커밋 ID
          */
-        private String mergingBranchName;
+        private ObjectId fromHead;
 
         public Repository getRepository() {
             return repository;
@@ -1891,15 +2393,21 @@ public class GitRepository implements PlayRepository {
             return destFromBranchName;
         }
 
-        public String getMergingBranchName() {
-            return mergingBranchName;
+        public ObjectId getToHead() {
+            return toHead;
+        }
+
+        public ObjectId getFromHead() {
+            return fromHead;
         }
 
-        private CloneAndFetch(Repository repository, String destToBranchName, String destFromBranchName, String mergingBranchName) {
+        private CloneAndFetch(Repository repository, String destToBranchName, String destFromBranchName,
+                              ObjectId toHead, ObjectId fromHead) {
             this.repository = repository;
             this.destToBranchName = destToBranchName;
             this.destFromBranchName = destFromBranchName;
-            this.mergingBranchName = Constants.R_HEADS + mergingBranchName;
+            this.toHead = toHead;
+            this.fromHead = fromHead;
         }
     }
 
@@ -1919,7 +2427,7 @@ public class GitRepository implements PlayRepository {
     /**
      * 코드저장소 프로젝트명을 변경하고 결과를 반환한다.
      *
-     * 변경전 {@code repository.close()}를 통해 open된 repository의 리소스를 반환하고
+     * 변경전 {@code repository.close()}와 {@link GitRepositoryCache#invalidate(File)}를 통해 open된 repository의 리소스를 반환하고
      * repository 내부에서 사용하는 {@code WindowCache}를 초기화하여 packFile의 참조를 제거한다.
      *
      * @param projectName
@@ -1930,10 +2438,19 @@ public class GitRepository implements PlayRepository {
     public boolean renameTo(String projectName) {
 
         repository.close();
-        WindowCacheConfig config = new WindowCacheConfig();
-        config.install();
         File src = new File(getGitDirectory(this.ownerName, this.projectName));
         File dest = new File(getGitDirectory(this.ownerName, projectName));
+        GitRepositoryCache.invalidate(src);
+        GitRepositoryCache.invalidate(dest);
+        RefAdvertisementCache.invalidate(src);
+        RefAdvertisementCache.invalidate(dest);
+        UploadPackCache.invalidate(src);
+        UploadPackCache.invalidate(dest);
+        RepositoryArchive.invalidate(src);
+        RepositoryArchive.invalidate(dest);
+        MergeCheckCache.invalidate(new File(getDirectoryForMerging(this.ownerName, this.projectName) + "/.git"));
+        WindowCacheConfig config = new WindowCacheConfig();
+        config.install();
 
         src.setWritable(true);
 
@@ -1956,6 +2473,7 @@ public class GitRepository implements PlayRepository {
         default:
             throw new IOException("Failed to update symbolic ref, got: " + result);
         }
+        RefAdvertisementCache.invalidate(repository);
     }
 
     /**
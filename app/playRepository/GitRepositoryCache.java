@@ -0,0 +1,274 @@
+package playRepository;
+
+import com.google.common.cache.*;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.eclipse.jgit.storage.file.FileRepository;
+import play.Configuration;
+import play.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 프로세스 전체에서 공유하는 열린 Git 저장소({@link Repository}) 캐시
+ *
+ * 요청마다 {@link Repository}를 새로 열면 JGit이 읽어둔 pack index, ref 정보 등을 매번 버리게 되므로,
+ * Git 디렉토리 경로별로 {@link Repository} 하나를 열어두고 함께 사용한다.
+ *
+ * 저장소를 닫는 것은 캐시만 한다. {@link #get(File, File)}로 얻어간 저장소는 {@link Repository#close()}를 호출해도
+ * 닫히지 않으므로, 얻어간 쪽은 닫지 않아도 되고 이미 닫고 있는 코드도 그대로 두어도 된다. 캐시에서 밀려나거나
+ * 무효화된 저장소는 그때 닫는다. 닫힌 뒤에도 아직 사용중인 쪽이 있다면 JGit이 필요한 pack 을 다시 열어서 읽는다.
+ *
+ * 같은 저장소를 처음 여는 요청들만 서로 기다리고, 이미 열린 저장소를 얻는 요청은 잠금 없이 가져간다.
+ *
+ * 캐시 크기와 유지 시간은 다음 설정으로 바꿀 수 있다.
+ * <pre>
+ * application.git.repository-cache.size = 100
+ * application.git.repository-cache.expire-after-access = 10m
+ * </pre>
+ */
+public class GitRepositoryCache {
+    private static final int DEFAULT_MAXIMUM_SIZE = 100;
+    private static final long DEFAULT_EXPIRE_AFTER_ACCESS_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+    private static final AtomicLong evictionCount = new AtomicLong();
+
+    private static volatile LoadingCache<Key, CachedRepository> cache;
+
+    /**
+     * {@code gitDir}에 있는 Git 저장소를 캐시에서 찾아 반환한다. 캐시에 없으면 새로 열어서 캐시에 넣는다.
+     *
+     * 반환된 저장소는 캐시가 닫으므로 {@link Repository#close()}를 호출하지 않아도 된다.
+     * 아직 만들어지지 않은 저장소도 얻을 수 있으며, 이 경우 {@link Repository#create(boolean)}로 생성할 수 있다.
+     *
+     * @param gitDir Git 디렉토리
+     * @param alternateObjectDir 함께 참조할 object 디렉토리
+     * @return 캐시가 가지고 있는 {@link Repository}
+     */
+    public static Repository get(File gitDir, File alternateObjectDir) {
+        Key key = new Key(gitDir, alternateObjectDir);
+        LoadingCache<Key, CachedRepository> cache = getCache();
+
+        CachedRepository cached = cache.getIfPresent(key);
+        if (cached != null && !cached.isValid()) {
+            // 캐시에 넣은 뒤에 디렉토리가 지워지거나 새로 만들어졌다면 예전 상태를 들고 있으므로 다시 연다.
+            cache.asMap().remove(key, cached);
+            cached = null;
+        }
+
+        if (cached != null) {
+            hitCount.incrementAndGet();
+            return cached;
+        }
+
+        try {
+            return cache.get(key);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * {@code gitDir}에 있는 Git 저장소를 캐시에서 제거하고 닫는다.
+     *
+     * 저장소 디렉토리를 지우거나 옮기기 전에 호출한다.
+     *
+     * @param gitDir Git 디렉토리
+     */
+    public static void invalidate(File gitDir) {
+        LoadingCache<Key, CachedRepository> cache = GitRepositoryCache.cache;
+        if (cache == null) {
+            return;
+        }
+
+        File target = gitDir.getAbsoluteFile();
+        for (Key key : cache.asMap().keySet()) {
+            if (key.gitDir.equals(target)) {
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * 캐시에 있는 모든 저장소를 닫고 캐시를 비운다.
+     */
+    public static void invalidateAll() {
+        LoadingCache<Key, CachedRepository> cache = GitRepositoryCache.cache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * 캐시에서 저장소를 찾은 횟수
+     */
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * 캐시에 저장소가 없어서 새로 연 횟수
+     */
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 캐시에서 밀려나거나 무효화되어 저장소를 닫은 횟수
+     */
+    public static long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * 현재 캐시가 열어두고 있는 저장소의 수
+     */
+    public static long getOpenCount() {
+        LoadingCache<Key, CachedRepository> cache = GitRepositoryCache.cache;
+        return cache == null ? 0 : cache.size();
+    }
+
+    private static LoadingCache<Key, CachedRepository> getCache() {
+        LoadingCache<Key, CachedRepository> cache = GitRepositoryCache.cache;
+        if (cache != null) {
+            return cache;
+        }
+        synchronized (GitRepositoryCache.class) {
+            if (GitRepositoryCache.cache == null) {
+                GitRepositoryCache.cache = build();
+            }
+            return GitRepositoryCache.cache;
+        }
+    }
+
+    private static LoadingCache<Key, CachedRepository> build() {
+        return CacheBuilder.newBuilder()
+                .maximumSize(getMaximumSize())
+                .expireAfterAccess(getExpireAfterAccessMillis(), TimeUnit.MILLISECONDS)
+                .removalListener(new RemovalListener<Key, CachedRepository>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<Key, CachedRepository> notification) {
+                        evictionCount.incrementAndGet();
+                        CachedRepository cached = notification.getValue();
+                        if (cached != null) {
+                            cached.release();
+                        }
+                        Logger.debug("GitRepositoryCache : closed " + notification.getKey().gitDir
+                                + " (" + notification.getCause() + ")");
+                    }
+                })
+                .build(new CacheLoader<Key, CachedRepository>() {
+                    @Override
+                    public CachedRepository load(Key key) throws IOException {
+                        missCount.incrementAndGet();
+                        RepositoryBuilder builder = new RepositoryBuilder()
+                                .setGitDir(key.gitDir)
+                                .addAlternateObjectDirectory(key.alternateObjectDir);
+                        builder.setup();
+                        return new CachedRepository(builder);
+                    }
+                });
+    }
+
+    /**
+     * 애플리케이션이 실행중이 아닐 때(단위 테스트 등)는 기본값을 사용한다.
+     */
+    private static int getMaximumSize() {
+        if (play.api.Play.maybeApplication().isEmpty()) {
+            return DEFAULT_MAXIMUM_SIZE;
+        }
+        return Configuration.root().getInt("application.git.repository-cache.size", DEFAULT_MAXIMUM_SIZE);
+    }
+
+    private static long getExpireAfterAccessMillis() {
+        if (play.api.Play.maybeApplication().isEmpty()) {
+            return DEFAULT_EXPIRE_AFTER_ACCESS_MILLIS;
+        }
+        return Configuration.root().getMilliseconds("application.git.repository-cache.expire-after-access",
+                DEFAULT_EXPIRE_AFTER_ACCESS_MILLIS);
+    }
+
+    /**
+     * 캐시가 닫기 전에는 {@link #close()}를 호출해도 닫히지 않는 저장소
+     */
+    private static class CachedRepository extends FileRepository {
+        private final Object directoryKey;
+
+        CachedRepository(RepositoryBuilder builder) throws IOException {
+            super(builder);
+            this.directoryKey = directoryKeyOf(getDirectory());
+        }
+
+        /**
+         * 아무것도 하지 않는다. 저장소는 캐시에서 제거될 때 {@link #release()}로 닫는다.
+         */
+        @Override
+        public void close() {
+        }
+
+        void release() {
+            super.close();
+        }
+
+        /**
+         * 저장소를 연 뒤로 Git 디렉토리가 그대로 있는지 확인한다.
+         *
+         * 디렉토리를 지웠다가 같은 경로에 다시 만든 경우도 알아낼 수 있도록 파일 시스템의 식별자(inode 등)를 비교한다.
+         * 잠금 없이 확인하므로 여러 요청이 동시에 확인해도 서로 기다리지 않는다.
+         */
+        boolean isValid() {
+            if (directoryKey != null) {
+                return directoryKey.equals(directoryKeyOf(getDirectory()));
+            }
+            return !getDirectory().exists();
+        }
+
+        private static Object directoryKeyOf(File directory) {
+            try {
+                Object fileKey = Files.readAttributes(directory.toPath(), BasicFileAttributes.class).fileKey();
+                // 식별자를 제공하지 않는 파일 시스템에서는 디렉토리가 있는지만 비교한다.
+                return fileKey != null ? fileKey : Boolean.TRUE;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    private static class Key {
+        private final File gitDir;
+        private final File alternateObjectDir;
+
+        Key(File gitDir, File alternateObjectDir) {
+            this.gitDir = gitDir.getAbsoluteFile();
+            this.alternateObjectDir = alternateObjectDir.getAbsoluteFile();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return gitDir.equals(key.gitDir) && alternateObjectDir.equals(key.alternateObjectDir);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * gitDir.hashCode() + alternateObjectDir.hashCode();
+        }
+    }
+}
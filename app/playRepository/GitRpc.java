@@ -0,0 +1,64 @@
+package playRepository;
+
+import utils.ChunkPipe;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 실행중인 Git smart HTTP RPC(git-upload-pack, git-receive-pack) 요청
+ *
+ * 요청 본문을 모두 받은 뒤에 처리를 시작하지 않고, 받는 대로 {@link #getRequestStream()}에 써서
+ * {@link org.eclipse.jgit.transport.UploadPack}, {@link org.eclipse.jgit.transport.ReceivePack}이 바로 읽게 한다.
+ * 처리가 쓰기를 따라잡지 못하면 {@link #getRequestStream()}에 쓰는 쪽이 기다린다.
+ *
+ * @see RepositoryService#startGitRpc(models.Project, String, models.User, play.mvc.Http.Request)
+ * @see utils.GitRpcBodyParser
+ */
+public class GitRpc {
+    private final String service;
+    private final ChunkPipe requestPipe;
+    private final ChunkPipe responsePipe;
+
+    GitRpc(String service, ChunkPipe requestPipe, ChunkPipe responsePipe) {
+        this.service = service;
+        this.requestPipe = requestPipe;
+        this.responsePipe = responsePipe;
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    /**
+     * 요청 본문을 쓸 스트림. 본문을 모두 쓰면 닫아야 한다.
+     *
+     * @return
+     */
+    public OutputStream getRequestStream() {
+        return requestPipe.sink();
+    }
+
+    /**
+     * 응답을 읽을 스트림
+     *
+     * @return
+     */
+    public InputStream getResponseStream() {
+        return responsePipe.source();
+    }
+
+    public String getContentType() {
+        return "application/x-" + service + "-result";
+    }
+
+    /**
+     * 요청 본문을 더 보내지 않고 처리를 중단한다.
+     *
+     * 두 파이프를 모두 중단하므로, 요청을 읽거나 응답을 쓰려고 기다리던 처리 스레드도 바로 끝난다.
+     */
+    public void abort() {
+        requestPipe.abort();
+        responsePipe.abort();
+    }
+}
@@ -0,0 +1,39 @@
+package playRepository;
+
+import java.util.List;
+
+/**
+ * 커서로 조회한 커밋 히스토리의 한 페이지
+ *
+ * 커서는 저장소마다 의미가 다르며, 화면에서는 다음 페이지나 이전 페이지를 요청할 때 그대로 되돌려주기만 한다.
+ *
+ * @see PlayRepository#getHistoryPage(String, int, String, String)
+ */
+public class HistoryPage {
+    private final List<Commit> commits;
+    private final String nextCursor;
+    private final String prevCursor;
+
+    /**
+     * @param commits 이 페이지의 커밋 목록
+     * @param nextCursor 다음(더 오래된) 페이지의 커서, 더 오래된 커밋이 없으면 null
+     * @param prevCursor 이전(더 최근) 페이지의 커서, 첫 페이지이면 null
+     */
+    public HistoryPage(List<Commit> commits, String nextCursor, String prevCursor) {
+        this.commits = commits;
+        this.nextCursor = nextCursor;
+        this.prevCursor = prevCursor;
+    }
+
+    public List<Commit> getCommits() {
+        return commits;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public String getPrevCursor() {
+        return prevCursor;
+    }
+}
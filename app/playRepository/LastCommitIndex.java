@@ -0,0 +1,571 @@
+package playRepository;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.LogCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * 디렉토리에 들어있는 각 파일과 디렉토리를 마지막으로 변경한 커밋을 저장해두는 디스크 인덱스
+ *
+ * (커밋, 디렉토리 경로) 쌍마다 파일을 하나씩 만들어 항목 이름과 그 항목을 마지막으로 변경한 커밋 ID를
+ * 기록한다. 커밋은 변하지 않으므로 한 번 기록한 내용은 무효화할 필요가 없다.
+ *
+ * 어떤 커밋의 부모 커밋들이 모두 인덱스에 있다면 부모의 기록과 트리만 비교해서 새 기록을 만들 수 있으므로,
+ * push 될 때마다 새 커밋들을 오래된 것부터 차례로 인덱싱해두면 코드 브라우저가 히스토리를 다시 훑지 않아도 된다.
+ * 이때 최상위 디렉토리와 그 커밋에서 바뀐 디렉토리들을 인덱싱한다. 부모 커밋에 어떤 디렉토리의 기록이 없으면,
+ * 그 디렉토리가 바뀌지 않은 조상 커밋들을 거슬러 올라가 가장 가까운 기록을 그대로 쓴다.
+ *
+ * 브랜치가 삭제되거나 강제로 덮어써져서 어느 브랜치에서도 닿을 수 없게 된 커밋의 기록은
+ * {@link #prune(AnyObjectId)}로 지운다.
+ *
+ * @see GitRepository.ObjectFinder
+ * @see playRepository.hooks.UpdateLastCommitIndex
+ */
+public class LastCommitIndex {
+    /**
+     * 한 번에 인덱싱할 최대 커밋 수. 이보다 많은 커밋이 push 되면 최근 커밋들만 인덱싱한다.
+     */
+    public static final int MAX_COMMITS_TO_UPDATE = 1000;
+
+    /**
+     * 커밋 하나마다 인덱싱할 최대 디렉토리 수. 이보다 많은 디렉토리를 바꾼 커밋은 앞쪽 디렉토리들만 인덱싱한다.
+     */
+    public static final int MAX_DIRECTORIES_PER_COMMIT = 100;
+
+    /**
+     * 디렉토리가 바뀌지 않은 조상 커밋의 기록을 찾을 때 거슬러 올라갈 최대 커밋 수
+     */
+    public static final int MAX_UNCHANGED_COMMITS = 1000;
+
+    /**
+     * Git 디렉토리 아래에서 인덱스를 저장할 디렉토리
+     */
+    private static final String INDEX_DIRECTORY = "yobi/last-commits";
+
+    private final Repository repository;
+    private final File indexDirectory;
+
+    public LastCommitIndex(Repository repository) {
+        this.repository = repository;
+        this.indexDirectory = new File(repository.getDirectory(), INDEX_DIRECTORY);
+    }
+
+    /**
+     * {@code commitId}에서 {@code path} 디렉토리에 있는 항목마다 그 항목을 마지막으로 변경한 커밋을 반환한다.
+     *
+     * 인덱스에 기록이 있으면 그대로 사용하고, 없으면 부모 커밋들의 기록으로부터 계산한다.
+     * 부모 커밋의 기록이 없으면 그 디렉토리가 바뀌지 않은 조상 커밋의 기록을 쓰고, 그것도 없을 때만 히스토리를
+     * 거슬러 올라가며 찾는다. 계산한 결과는 인덱스에 저장한다.
+     *
+     * @param commitId
+     * @param path 디렉토리 경로. 최상위 디렉토리는 빈 문자열
+     * @return 항목 이름과 마지막으로 변경한 커밋 ID의 Map
+     * @throws IOException
+     * @throws GitAPIException
+     */
+    public Map<String, ObjectId> find(AnyObjectId commitId, String path)
+            throws IOException, GitAPIException {
+        Map<String, ObjectId> lastCommits = read(commitId, path);
+        if (lastCommits != null) {
+            return lastCommits;
+        }
+
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            RevCommit commit = revWalk.parseCommit(commitId);
+            lastCommits = findFromParents(revWalk, commit, path);
+            if (lastCommits == null) {
+                lastCommits = findFromHistory(commit, path);
+            }
+        } finally {
+            revWalk.dispose();
+        }
+
+        write(commitId, path, lastCommits);
+        return lastCommits;
+    }
+
+    /**
+     * {@code oldId}부터 {@code newId}까지 새로 추가된 커밋들의 최상위 디렉토리와 각 커밋에서 바뀐 디렉토리들을
+     * 인덱싱한다.
+     *
+     * when: push 된 브랜치의 인덱스를 미리 만들어 둘 때 사용한다.
+     *
+     * 오래된 커밋부터 인덱싱해야 부모 커밋의 기록을 이용할 수 있으므로 역순으로 처리한다.
+     *
+     * @param oldId 브랜치가 새로 생성되었다면 {@link ObjectId#zeroId()}
+     * @param newId
+     * @throws IOException
+     * @throws GitAPIException
+     */
+    public void update(AnyObjectId oldId, AnyObjectId newId) throws IOException, GitAPIException {
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            for (RevCommit commit : getNewCommits(revWalk, oldId, newId)) {
+                for (String path : getChangedDirectories(revWalk, commit)) {
+                    find(commit, path);
+                }
+            }
+        } finally {
+            revWalk.release();
+        }
+    }
+
+    /**
+     * {@code oldId}부터 {@code newId}까지 새로 추가된 커밋들의 {@code path} 디렉토리를 인덱싱한다.
+     *
+     * @param oldId 브랜치가 새로 생성되었다면 {@link ObjectId#zeroId()}
+     * @param newId
+     * @param path
+     * @throws IOException
+     * @throws GitAPIException
+     * @see #update(AnyObjectId, AnyObjectId)
+     */
+    public void update(AnyObjectId oldId, AnyObjectId newId, String path)
+            throws IOException, GitAPIException {
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            for (RevCommit commit : getNewCommits(revWalk, oldId, newId)) {
+                find(commit, path);
+            }
+        } finally {
+            revWalk.release();
+        }
+    }
+
+    /**
+     * {@code oldId}에서 닿을 수 있지만 지금은 어느 ref 에서도 닿을 수 없는 커밋들의 기록을 모두 지운다.
+     *
+     * when: 브랜치가 삭제되거나 강제로 덮어써진 뒤에 호출한다. ref 는 이미 바뀌어 있어야 한다.
+     *
+     * @param oldId 삭제되거나 덮어써진 ref 가 가리키던 객체
+     * @return 지운 기록 파일의 수
+     * @throws IOException
+     */
+    public int prune(AnyObjectId oldId) throws IOException {
+        if (!indexDirectory.isDirectory()) {
+            return 0;
+        }
+
+        int deleted = 0;
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            RevCommit old = parseCommit(revWalk, oldId);
+            if (old == null) {
+                return 0;
+            }
+            revWalk.markStart(old);
+            for (Ref ref : repository.getAllRefs().values()) {
+                RevCommit reachable = parseCommit(revWalk, ref.getObjectId());
+                if (reachable != null) {
+                    revWalk.markUninteresting(reachable);
+                }
+            }
+            for (RevCommit commit : revWalk) {
+                deleted += delete(commit);
+            }
+        } finally {
+            revWalk.release();
+        }
+        return deleted;
+    }
+
+    /*
+     * {@code oldId}부터 {@code newId}까지 새로 추가된 커밋들, 오래된 것부터
+     */
+    private List<RevCommit> getNewCommits(RevWalk revWalk, AnyObjectId oldId, AnyObjectId newId)
+            throws IOException {
+        List<RevCommit> commits = new ArrayList<>();
+        revWalk.sort(RevSort.TOPO);
+        revWalk.markStart(revWalk.parseCommit(newId));
+        if (!ObjectId.zeroId().equals(oldId)) {
+            revWalk.markUninteresting(revWalk.parseCommit(oldId));
+        }
+        for (RevCommit commit : revWalk) {
+            commits.add(commit);
+            if (commits.size() >= MAX_COMMITS_TO_UPDATE) {
+                break;
+            }
+        }
+        Collections.reverse(commits);
+        return commits;
+    }
+
+    /*
+     * 최상위 디렉토리와 {@code commit}에서 첫 번째 부모와 달라진 디렉토리들의 경로. 삭제된 디렉토리는 빠진다.
+     */
+    private List<String> getChangedDirectories(RevWalk revWalk, RevCommit commit) throws IOException {
+        List<String> directories = new ArrayList<>();
+        directories.add("");
+
+        TreeWalk treeWalk = new TreeWalk(repository);
+        try {
+            if (commit.getParentCount() > 0) {
+                treeWalk.addTree(revWalk.parseCommit(commit.getParent(0)).getTree());
+            } else {
+                treeWalk.addTree(new EmptyTreeIterator());
+            }
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            while (directories.size() < MAX_DIRECTORIES_PER_COMMIT && treeWalk.next()) {
+                if ((treeWalk.getRawMode(1) & FileMode.TYPE_MASK) == FileMode.TYPE_TREE) {
+                    directories.add(treeWalk.getPathString());
+                    treeWalk.enterSubtree();
+                }
+            }
+        } finally {
+            treeWalk.release();
+        }
+        return directories;
+    }
+
+    /*
+     * {@code id}가 가리키는 커밋, 태그이면 태그가 가리키는 커밋. 커밋이 아니거나 없으면 null
+     */
+    private static RevCommit parseCommit(RevWalk revWalk, AnyObjectId id) throws IOException {
+        if (id == null) {
+            return null;
+        }
+        try {
+            RevObject object = revWalk.peel(revWalk.parseAny(id));
+            return object instanceof RevCommit ? (RevCommit) object : null;
+        } catch (MissingObjectException e) {
+            return null;
+        }
+    }
+
+    /*
+     * 부모 커밋들의 인덱스 기록을 이용해서 계산한다.
+     * 부모 커밋의 기록이 없으면 {@link #findFromUnchangedAncestors}로 찾고, 그래도 없는 부모가 하나라도 있으면
+     * null 을 반환한다.
+     *
+     * 어떤 항목이 부모 커밋의 것과 같다면 그 부모에서 마지막으로 변경한 커밋을 물려받고, 어느 부모와도 다르다면
+     * 이 커밋에서 변경한 것이다. 같은 부모가 여럿이면 git log 순서와 마찬가지로 가장 최근 커밋을 택한다.
+     */
+    private Map<String, ObjectId> findFromParents(RevWalk revWalk, RevCommit commit, String path)
+            throws IOException {
+        List<Map<String, ObjectId>> parentObjects = new ArrayList<>();
+        List<Map<String, ObjectId>> parentLastCommits = new ArrayList<>();
+        for (RevCommit parent : commit.getParents()) {
+            revWalk.parseHeaders(parent);
+            Map<String, ObjectId> lastCommits = read(parent, path);
+            if (lastCommits == null) {
+                lastCommits = findFromUnchangedAncestors(revWalk, parent, path);
+            }
+            if (lastCommits == null) {
+                return null;
+            }
+            parentObjects.add(getObjects(parent, path));
+            parentLastCommits.add(lastCommits);
+        }
+
+        Map<String, ObjectId> result = new HashMap<>();
+        for (Map.Entry<String, ObjectId> entry : getObjects(commit, path).entrySet()) {
+            String name = entry.getKey();
+            RevCommit last = null;
+            for (int i = 0; i < parentObjects.size(); i++) {
+                if (!entry.getValue().equals(parentObjects.get(i).get(name))) {
+                    continue;
+                }
+                ObjectId lastCommitId = parentLastCommits.get(i).get(name);
+                if (lastCommitId == null) {
+                    // 부모의 기록이 불완전하다. 히스토리에서 다시 찾는다.
+                    return null;
+                }
+                RevCommit candidate = revWalk.parseCommit(lastCommitId);
+                if (last == null || candidate.getCommitTime() > last.getCommitTime()) {
+                    last = candidate;
+                }
+            }
+            result.put(name, (last != null ? last : commit).copy());
+        }
+        return result;
+    }
+
+    /*
+     * {@code commit}부터 부모가 하나이고 {@code path} 디렉토리가 부모와 같은 커밋들을 거슬러 올라가서, 가장 가까운
+     * 조상 커밋의 기록을 찾는다. 디렉토리가 같으면 그 안의 항목을 마지막으로 변경한 커밋도 같으므로, 찾은 기록을
+     * 지나온 커밋들의 기록으로도 저장한다.
+     *
+     * 디렉토리가 바뀐 커밋이나 merge 커밋에 닿거나 {@link #MAX_UNCHANGED_COMMITS}개를 넘게 거슬러 올라가도 기록이
+     * 없으면 null 을 반환한다.
+     */
+    private Map<String, ObjectId> findFromUnchangedAncestors(RevWalk revWalk, RevCommit commit, String path)
+            throws IOException {
+        List<RevCommit> unchanged = new ArrayList<>();
+        RevCommit current = commit;
+        ObjectId treeId = getTreeId(current, path);
+        Map<String, ObjectId> lastCommits = null;
+        while (lastCommits == null) {
+            if (current.getParentCount() != 1 || unchanged.size() >= MAX_UNCHANGED_COMMITS) {
+                return null;
+            }
+            RevCommit parent = current.getParent(0);
+            revWalk.parseHeaders(parent);
+            ObjectId parentTreeId = getTreeId(parent, path);
+            if (treeId == null ? parentTreeId != null : !treeId.equals(parentTreeId)) {
+                return null;
+            }
+            unchanged.add(current);
+            lastCommits = read(parent, path);
+            current = parent;
+        }
+
+        for (RevCommit commitWithSameTree : unchanged) {
+            write(commitWithSameTree, path, lastCommits);
+        }
+        return lastCommits;
+    }
+
+    /*
+     * {@code commit}의 {@code path} 디렉토리의 tree id, 디렉토리가 없으면 null
+     */
+    private ObjectId getTreeId(RevCommit commit, String path) throws IOException {
+        if (StringUtils.isEmpty(path)) {
+            return commit.getTree().copy();
+        }
+        TreeWalk treeWalk = TreeWalk.forPath(repository, path, commit.getTree());
+        if (treeWalk == null) {
+            return null;
+        }
+        try {
+            return treeWalk.isSubtree() ? treeWalk.getObjectId(0) : null;
+        } finally {
+            treeWalk.release();
+        }
+    }
+
+    /*
+     * {@code until}부터 히스토리를 거슬러 올라가면서 각 항목을 마지막으로 변경한 커밋을 찾는다.
+     */
+    private Map<String, ObjectId> findFromHistory(RevCommit until, String path)
+            throws IOException, GitAPIException {
+        Map<String, ObjectId> result = new HashMap<>();
+        Set<String> targets = new HashSet<>(getObjects(until, path).keySet());
+
+        LogCommand logCommand = new Git(repository).log().add(until);
+        if (StringUtils.isNotEmpty(path)) {
+            logCommand.addPath(path);
+        }
+        Iterator<RevCommit> iterator = logCommand.call().iterator();
+
+        // If targets is empty, it means we have found every interested objects and no need to
+        // continue.
+        while (!targets.isEmpty() && iterator.hasNext()) {
+            RevCommit commit = fixRevCommitNoParents(iterator.next());
+
+            // Choose only "interest" objects, which has changed between the parent commits and
+            // the current commit.
+            Map<String, ObjectId> objects = getObjects(commit, path);
+            objects.keySet().retainAll(targets);
+            for (RevCommit parent : commit.getParents()) {
+                Map<String, ObjectId> parentObjects = getObjects(fixRevCommitNoTree(parent), path);
+                Iterator<Map.Entry<String, ObjectId>> it = objects.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, ObjectId> entry = it.next();
+                    if (entry.getValue().equals(parentObjects.get(entry.getKey()))) {
+                        it.remove();
+                    }
+                }
+            }
+
+            for (String name : objects.keySet()) {
+                result.put(name, commit.copy());
+                targets.remove(name);
+            }
+        }
+
+        return result;
+    }
+
+    /*
+     * {@code commit}의 {@code path} 디렉토리에 있는 항목들의 이름과 object id 를 가져온다.
+     */
+    private Map<String, ObjectId> getObjects(RevCommit commit, String path) throws IOException {
+        Map<String, ObjectId> objects = new HashMap<>();
+        TreeWalk treeWalk;
+        if (StringUtils.isEmpty(path)) {
+            treeWalk = new TreeWalk(repository);
+            treeWalk.addTree(commit.getTree());
+        } else {
+            treeWalk = TreeWalk.forPath(repository, path, commit.getTree());
+            if (treeWalk == null || !treeWalk.isSubtree()) {
+                return objects;
+            }
+            treeWalk.enterSubtree();
+        }
+        try {
+            while (treeWalk.next()) {
+                objects.put(treeWalk.getNameString(), treeWalk.getObjectId(0));
+            }
+        } finally {
+            treeWalk.release();
+        }
+        return objects;
+    }
+
+    /*
+     * JGit 의 LogCommand 를 사용하여 commit 조회를 할 때 path 정보를 이용하였을 경우
+     * commit 객체가 부모 commit 에 대한 정보를 가지고 있지 않을 수 있다.
+     * 이러한 현상은 아래의 JGit version 에서 확인 되었다.
+     * 3.1.0.201310021548-r ~ 3.2.0.201312181205-r
+     */
+    private RevCommit fixRevCommitNoParents(RevCommit commit) throws IOException {
+        if (commit.getParentCount() == 0) {
+            return fixRevCommit(commit);
+        }
+        return commit;
+    }
+
+    /*
+     * fixRevCommitNoParents 를 통해서 가져온 커밋의 parents 는 tree 정보가 없을 수 있다
+     */
+    private RevCommit fixRevCommitNoTree(RevCommit commit) throws IOException {
+        if (commit.getTree() == null) {
+            return fixRevCommit(commit);
+        }
+        return commit;
+    }
+
+    private RevCommit fixRevCommit(RevCommit commit) throws IOException {
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            return revWalk.parseCommit(commit);
+        } finally {
+            revWalk.release();
+        }
+    }
+
+    /*
+     * 인덱스 파일 경로. 커밋 ID 앞 두 글자로 디렉토리를 나누고, 경로는 SHA-1 로 바꿔서 파일 이름에 붙인다.
+     */
+    private File getIndexFile(AnyObjectId commitId, String path) {
+        String pathId;
+        try {
+            pathId = new ObjectInserter.Formatter()
+                    .idFor(Constants.OBJ_BLOB, path.getBytes("UTF-8")).getName();
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        String name = commitId.getName();
+        return new File(new File(indexDirectory, name.substring(0, 2)),
+                name.substring(2) + "-" + pathId);
+    }
+
+    /*
+     * {@code commitId}의 기록을 경로에 상관없이 모두 지운다.
+     */
+    private int delete(AnyObjectId commitId) {
+        String name = commitId.getName();
+        File directory = new File(indexDirectory, name.substring(0, 2));
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int deleted = 0;
+        String prefix = name.substring(2) + "-";
+        for (File file : files) {
+            if (file.getName().startsWith(prefix) && file.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * {@code commitId}의 {@code path} 디렉토리 기록이 인덱스에 있는지 확인한다.
+     *
+     * @param commitId
+     * @param path
+     * @return
+     */
+    boolean contains(AnyObjectId commitId, String path) {
+        return getIndexFile(commitId, path).isFile();
+    }
+
+    /*
+     * 인덱스에 기록된 내용을 읽는다. 기록이 없거나 읽을 수 없으면 null 을 반환한다.
+     */
+    private Map<String, ObjectId> read(AnyObjectId commitId, String path) {
+        File file = getIndexFile(commitId, path);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            int size = in.readInt();
+            Map<String, ObjectId> lastCommits = new HashMap<>(size * 2);
+            byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+            for (int i = 0; i < size; i++) {
+                String name = in.readUTF();
+                in.readFully(raw);
+                lastCommits.put(name, ObjectId.fromRaw(raw));
+            }
+            return lastCommits;
+        } catch (IOException e) {
+            play.Logger.warn("Failed to read the last commit index: " + file, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /*
+     * 인덱스에 기록한다. 동시에 같은 파일을 읽는 요청이 있을 수 있으므로 임시 파일에 쓴 뒤 옮긴다.
+     * 인덱스는 캐시일 뿐이므로 기록하지 못해도 요청은 실패하지 않는다.
+     */
+    private void write(AnyObjectId commitId, String path, Map<String, ObjectId> lastCommits) {
+        File file = getIndexFile(commitId, path);
+        DataOutputStream out = null;
+        File tmp = null;
+        try {
+            file.getParentFile().mkdirs();
+            tmp = File.createTempFile("index", ".tmp", file.getParentFile());
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(lastCommits.size());
+            for (Map.Entry<String, ObjectId> entry : lastCommits.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().copyRawTo(out);
+            }
+            out.close();
+            out = null;
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            play.Logger.warn("Failed to write the last commit index: " + file, e);
+            if (tmp != null) {
+                tmp.delete();
+            }
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            play.Logger.warn("Failed to close the last commit index", e);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package playRepository;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import play.Configuration;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 코드 보내기를 병합해본 결과를 (받는 브랜치의 HEAD, 보내는 브랜치의 HEAD) 쌍을 키로 저장해두는 캐시
+ *
+ * 두 브랜치의 HEAD 가 그대로라면 병합 결과(충돌 파일, merge 커밋 ID, 커밋 목록, 관련 작성자)도 같으므로,
+ * 코드 보내기 화면, push 후의 병합 확인 등에서 같은 병합을 되풀이하지 않는다. 어느 한쪽이라도 바뀌면 키가
+ * 달라지므로 따로 무효화할 필요가 없다.
+ *
+ * 결과는 merge 용 저장소의 {@code yobi/merge-checks} 디렉토리에 파일로 기록하고, 최근에 사용한 결과는
+ * 메모리에도 둔다. 커밋은 ID 만 기록하고 읽을 때 merge 용 저장소에서 다시 읽는다. 파일은 {@link DiskCache}로
+ * 관리해서, 모든 저장소의 파일을 합한 크기가 최대 크기를 넘으면 가장 오래 사용하지 않은 것부터 지운다.
+ * 프로젝트 저장소를 지우거나 이름을 바꿀 때와 merge 용 저장소를 지울 때는 {@link #invalidate(File)}로 그 merge 용
+ * 저장소의 결과를 모두 지운다.
+ *
+ * @see models.PullRequest#attemptMerge()
+ */
+public class MergeCheckCache {
+    private static final String CACHE_DIRECTORY = "yobi/merge-checks";
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_ENTRIES_IN_MEMORY = 256;
+    private static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    private static final Cache<String, Entry> cache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_ENTRIES_IN_MEMORY)
+            .build();
+
+    private static DiskCache files;
+
+    /**
+     * 병합해본 결과
+     */
+    public static class Entry {
+        private final GitConflicts conflicts;
+        private final List<GitCommit> commits;
+        private final String mergedCommitIdFrom;
+        private final String mergedCommitIdTo;
+        private final Set<Long> relatedAuthorIds;
+
+        /**
+         * @param conflicts 충돌 정보, 충돌이 없으면 null
+         * @param commits 받는 브랜치에 없는 보내는 브랜치의 커밋 목록
+         * @param mergedCommitIdFrom 병합한 받는 브랜치의 커밋 ID, 병합하지 못했으면 null
+         * @param mergedCommitIdTo 병합 결과 커밋 ID, 병합하지 못했으면 null
+         * @param relatedAuthorIds 변경된 코드의 원작자 ID 목록
+         */
+        public Entry(GitConflicts conflicts, List<GitCommit> commits, String mergedCommitIdFrom,
+                     String mergedCommitIdTo, Set<Long> relatedAuthorIds) {
+            this.conflicts = conflicts;
+            this.commits = Collections.unmodifiableList(new ArrayList<>(commits));
+            this.mergedCommitIdFrom = mergedCommitIdFrom;
+            this.mergedCommitIdTo = mergedCommitIdTo;
+            this.relatedAuthorIds = Collections.unmodifiableSet(new LinkedHashSet<>(relatedAuthorIds));
+        }
+
+        public GitConflicts getConflicts() {
+            return conflicts;
+        }
+
+        public List<GitCommit> getCommits() {
+            return commits;
+        }
+
+        public String getMergedCommitIdFrom() {
+            return mergedCommitIdFrom;
+        }
+
+        public String getMergedCommitIdTo() {
+            return mergedCommitIdTo;
+        }
+
+        public Set<Long> getRelatedAuthorIds() {
+            return relatedAuthorIds;
+        }
+    }
+
+    /**
+     * {@code toHead}에 {@code fromHead}를 병합해본 결과를 반환한다. 없으면 null 을 반환한다.
+     *
+     * @param mergingRepository merge 용 저장소
+     * @param toHead 코드 받을 브랜치의 HEAD
+     * @param fromHead 코드 보내는 브랜치의 HEAD
+     * @return
+     */
+    public static Entry get(Repository mergingRepository, AnyObjectId toHead, AnyObjectId fromHead) {
+        String key = key(mergingRepository, toHead, fromHead);
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            entry = readFromDisk(mergingRepository, toHead, fromHead);
+            if (entry != null) {
+                cache.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * {@code toHead}에 {@code fromHead}를 병합해본 결과를 저장한다.
+     *
+     * @param mergingRepository merge 용 저장소
+     * @param toHead 코드 받을 브랜치의 HEAD
+     * @param fromHead 코드 보내는 브랜치의 HEAD
+     * @param entry
+     */
+    public static void put(Repository mergingRepository, AnyObjectId toHead, AnyObjectId fromHead,
+                           Entry entry) {
+        cache.put(key(mergingRepository, toHead, fromHead), entry);
+        writeToDisk(mergingRepository, toHead, fromHead, entry);
+    }
+
+    /**
+     * 메모리에 있는 결과를 모두 지운다.
+     */
+    public static void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * {@code gitDir}을 Git 디렉토리로 하는 merge 용 저장소의 결과를 메모리와 디스크에서 모두 지운다.
+     *
+     * @param gitDir
+     */
+    public static void invalidate(File gitDir) {
+        final String prefix = gitDir.getAbsolutePath() + ":";
+        for (String key : cache.asMap().keySet()) {
+            if (key.startsWith(prefix)) {
+                cache.invalidate(key);
+            }
+        }
+        getFiles().invalidate(new File(gitDir, CACHE_DIRECTORY));
+    }
+
+    /**
+     * 디스크에 기록해둔 결과 파일 크기의 합
+     */
+    public static long getDiskSize() {
+        return getFiles().getSize();
+    }
+
+    private static String key(Repository repository, AnyObjectId toHead, AnyObjectId fromHead) {
+        return repository.getDirectory().getAbsolutePath() + ":" + toHead.name() + ".." + fromHead.name();
+    }
+
+    private static File getFile(Repository repository, AnyObjectId toHead, AnyObjectId fromHead) {
+        return new File(new File(repository.getDirectory(), CACHE_DIRECTORY),
+                toHead.name() + "-" + fromHead.name());
+    }
+
+    private static void writeToDisk(Repository repository, AnyObjectId toHead, AnyObjectId fromHead,
+                                    final Entry entry) {
+        getFiles().write(getFile(repository, toHead, fromHead), new TransportExecutor.StreamWriter() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                DataOutputStream out = new DataOutputStream(output);
+                out.writeInt(FORMAT_VERSION);
+
+                GitConflicts conflicts = entry.getConflicts();
+                out.writeBoolean(conflicts != null);
+                if (conflicts != null) {
+                    out.writeInt(conflicts.conflictFiles.size());
+                    for (String path : conflicts.conflictFiles) {
+                        out.writeUTF(path);
+                    }
+                    out.writeInt(conflicts.conflictDetails.size());
+                    for (GitConflicts.Conflict conflict : conflicts.conflictDetails) {
+                        out.writeUTF(conflict.fileName);
+                        out.writeInt(conflict.commitAndLines.size());
+                        for (GitConflicts.CommitAndLine commitAndLine : conflict.commitAndLines) {
+                            ObjectId.fromString(commitAndLine.gitCommit.getId()).copyRawTo(out);
+                            out.writeInt(commitAndLine.lineNumber);
+                        }
+                    }
+                }
+
+                out.writeInt(entry.getCommits().size());
+                for (GitCommit commit : entry.getCommits()) {
+                    ObjectId.fromString(commit.getId()).copyRawTo(out);
+                }
+
+                writeString(out, entry.getMergedCommitIdFrom());
+                writeString(out, entry.getMergedCommitIdTo());
+
+                out.writeInt(entry.getRelatedAuthorIds().size());
+                for (Long id : entry.getRelatedAuthorIds()) {
+                    out.writeLong(id);
+                }
+                out.flush();
+            }
+        });
+    }
+
+    private static Entry readFromDisk(Repository repository, AnyObjectId toHead, AnyObjectId fromHead) {
+        File file = getFiles().get(getFile(repository, toHead, fromHead));
+        if (file == null) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            GitConflicts conflicts = null;
+            if (in.readBoolean()) {
+                conflicts = new GitConflicts();
+                int files = in.readInt();
+                for (int i = 0; i < files; i++) {
+                    conflicts.conflictFiles.add(in.readUTF());
+                }
+                int details = in.readInt();
+                for (int i = 0; i < details; i++) {
+                    GitConflicts.Conflict conflict = new GitConflicts.Conflict();
+                    conflict.fileName = in.readUTF();
+                    int lines = in.readInt();
+                    for (int j = 0; j < lines; j++) {
+                        GitConflicts.CommitAndLine commitAndLine = new GitConflicts.CommitAndLine();
+                        commitAndLine.gitCommit = new GitCommit(revWalk.parseCommit(readObjectId(in)));
+                        commitAndLine.lineNumber = in.readInt();
+                        conflict.commitAndLines.add(commitAndLine);
+                    }
+                    conflicts.conflictDetails.add(conflict);
+                }
+            }
+
+            int size = in.readInt();
+            List<GitCommit> commits = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                commits.add(new GitCommit(revWalk.parseCommit(readObjectId(in))));
+            }
+
+            String mergedCommitIdFrom = readString(in);
+            String mergedCommitIdTo = readString(in);
+
+            int authors = in.readInt();
+            Set<Long> relatedAuthorIds = new LinkedHashSet<>();
+            for (int i = 0; i < authors; i++) {
+                relatedAuthorIds.add(in.readLong());
+            }
+
+            return new Entry(conflicts, commits, mergedCommitIdFrom, mergedCommitIdTo,
+                    relatedAuthorIds);
+        } catch (IOException e) {
+            // 커밋이 gc 로 지워졌거나 파일이 깨졌으면 다시 병합해본다.
+            play.Logger.warn("Failed to read the merge check result: " + file, e);
+            return null;
+        } finally {
+            revWalk.release();
+            closeQuietly(in);
+        }
+    }
+
+    private static synchronized DiskCache getFiles() {
+        if (files == null) {
+            long maxSize = DEFAULT_MAX_SIZE;
+            if (play.api.Play.maybeApplication().isDefined()) {
+                Long configured = Configuration.root().getBytes("application.merge-check-cache.max-size");
+                if (configured != null) {
+                    maxSize = configured;
+                }
+            }
+            files = new DiskCache("merge-check", maxSize);
+            files.index(getCacheDirectories());
+        }
+        return files;
+    }
+
+    /*
+     * 모든 merge 용 저장소의 결과 디렉토리. merge 용 저장소는 {@code <소유자>/<프로젝트>.git/.git}에 있다.
+     */
+    private static List<File> getCacheDirectories() {
+        List<File> directories = new ArrayList<>();
+        File[] owners = new File(GitRepository.getRepoForMergingPrefix()).listFiles();
+        if (owners != null) {
+            for (File owner : owners) {
+                File[] workingTrees = owner.listFiles();
+                if (workingTrees == null) {
+                    continue;
+                }
+                for (File workingTree : workingTrees) {
+                    directories.add(new File(workingTree, ".git/" + CACHE_DIRECTORY));
+                }
+            }
+        }
+        return directories;
+    }
+
+    private static ObjectId readObjectId(DataInputStream in) throws IOException {
+        byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+        in.readFully(raw);
+        return ObjectId.fromRaw(raw);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            play.Logger.warn("Failed to close the merge check result", e);
+        }
+    }
+}
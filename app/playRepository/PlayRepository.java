@@ -91,6 +91,23 @@ public interface PlayRepository {
      */
     public abstract List<Commit> getHistory(int pageNum, int pageSize, String untilRev, String path) throws IOException, GitAPIException, SVNException;
 
+    /**
+     * {@code cursor}가 가리키는 위치부터 {@code pageSize}개의 커밋 목록을 반환한다.
+     *
+     * {@link #getHistory(int, int, String, String)}와 달리 다음 페이지를 조회할 때 앞 페이지의 커밋들을 다시
+     * 훑지 않는다. 이전 페이지의 커서도 함께 알려주므로 화면에서는 지나온 커서들을 들고 다니지 않아도 된다.
+     *
+     * @param cursor 이전에 받은 {@link HistoryPage}의 커서, 이 값이 null이면 {@code untilRev}부터 조회한다
+     * @param pageSize 조회할 커밋 개수
+     * @param untilRev 조회할 커밋 중 가장 최근 커밋을 가리키는 리비전, 이 값이 null이면 HEAD
+     * @param path Show only commits that affect the specified path
+     * @return {@code untilRev}에 해당하는 리비전이 없으면 null
+     * @throws IOException
+     * @throws GitAPIException
+     * @throws SVNException
+     */
+    public abstract HistoryPage getHistoryPage(String cursor, int pageSize, String untilRev, String path) throws IOException, GitAPIException, SVNException;
+
     public abstract Commit getCommit(String rev) throws IOException, SVNException;
 
     /**
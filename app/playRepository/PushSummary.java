@@ -0,0 +1,218 @@
+package playRepository;
+
+import models.Project;
+import models.User;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import playRepository.hooks.ReceiveCommandUtil;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * push 한 번으로 바뀐 내용
+ *
+ * 성공한 {@link ReceiveCommand}들의 새 커밋을 RevWalk 하나로 한 번만 훑어서 만든다. 예전에는 후처리마다 명령별로
+ * 커밋을 따로 훑었으므로, 같은 커밋을 후처리의 수와 push 한 브랜치의 수만큼 반복해서 읽었다.
+ *
+ * 만든 뒤에는 바뀌지 않으므로 여러 후처리가 동시에 읽어도 된다.
+ *
+ * @see playRepository.hooks.PostReceivePipeline
+ */
+public class PushSummary {
+    private final Project project;
+    private final User user;
+    private final List<ReceiveCommand> commands;
+    private final List<RevCommit> commits;
+    private final List<String> messages;
+    private final List<String> refNames;
+    private final List<ObjectId> newTips;
+    private final Set<String> pushedBranches;
+    private final Set<String> updatedBranches;
+    private final Set<String> deletedBranches;
+
+    private PushSummary(Project project, User user, List<ReceiveCommand> commands,
+                        List<RevCommit> commits, List<String> messages, List<String> refNames,
+                        List<ObjectId> newTips) {
+        this.project = project;
+        this.user = user;
+        this.commands = Collections.unmodifiableList(commands);
+        this.commits = Collections.unmodifiableList(commits);
+        this.messages = Collections.unmodifiableList(messages);
+        this.refNames = Collections.unmodifiableList(refNames);
+        this.newTips = Collections.unmodifiableList(newTips);
+        this.pushedBranches = Collections.unmodifiableSet(ReceiveCommandUtil.getPushedBranches(commands));
+        this.updatedBranches = Collections.unmodifiableSet(ReceiveCommandUtil.getUpdatedBranches(commands));
+        this.deletedBranches = Collections.unmodifiableSet(ReceiveCommandUtil.getDeletedBranches(commands));
+    }
+
+    /**
+     * {@code commands}로 새로 들어온 커밋들을 한 번에 훑어서 요약을 만든다.
+     *
+     * 만들거나 갱신한 ref 의 새 커밋에서 시작해서 갱신한 ref 의 예전 커밋에 닿으면 멈춘다. 여러 ref 에 함께 push 한
+     * 커밋은 한 번만 들어간다. 새로 만든 ref 는 어디까지가 새 커밋인지 알 수 없으므로 (태그이거나 부모가 없는 브랜치일
+     * 수도 있다) 가리키는 커밋 하나만 넣는다. 커밋이 아닌 것을 가리키는 ref 는 건너뛴다.
+     *
+     * @param repository push 를 받은 저장소
+     * @param project
+     * @param user push 한 사용자
+     * @param commands 성공한 명령들
+     * @return
+     * @throws IOException
+     */
+    public static PushSummary create(Repository repository, Project project, User user,
+                                     Collection<ReceiveCommand> commands) throws IOException {
+        List<ReceiveCommand> commandList = new ArrayList<>(commands);
+        List<RevCommit> commits = new ArrayList<>();
+        List<String> refNames = new ArrayList<>();
+        List<ObjectId> newTips = new ArrayList<>();
+
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            RevFlag added = revWalk.newFlag("added");
+            List<RevCommit> createdTips = new ArrayList<>();
+            boolean walking = false;
+
+            for (ReceiveCommand command : commandList) {
+                if (!isNewOrUpdateCommand(command)) {
+                    continue;
+                }
+                refNames.add(command.getRefName());
+                newTips.add(command.getNewId());
+
+                RevCommit tip = parseCommit(revWalk, command.getNewId());
+                if (tip == null) {
+                    continue;
+                }
+                if (command.getOldId().equals(ObjectId.zeroId())) {
+                    createdTips.add(tip);
+                    continue;
+                }
+                revWalk.markStart(tip);
+                RevCommit old = parseCommit(revWalk, command.getOldId());
+                if (old != null) {
+                    revWalk.markUninteresting(old);
+                }
+                walking = true;
+            }
+
+            if (walking) {
+                for (RevCommit commit : revWalk) {
+                    commit.add(added);
+                    commits.add(commit);
+                }
+            }
+            for (RevCommit tip : createdTips) {
+                if (!tip.has(added)) {
+                    tip.add(added);
+                    commits.add(tip);
+                }
+            }
+        } finally {
+            revWalk.release();
+        }
+
+        List<String> messages = new ArrayList<>(commits.size());
+        for (RevCommit commit : commits) {
+            messages.add(new GitCommit(commit).getMessage());
+        }
+
+        return new PushSummary(project, user, commandList, commits, messages, refNames, newTips);
+    }
+
+    private static boolean isNewOrUpdateCommand(ReceiveCommand command) {
+        return ReceiveCommandUtil.isTypeMatching(command, ReceiveCommand.Type.CREATE,
+                ReceiveCommand.Type.UPDATE, ReceiveCommand.Type.UPDATE_NONFASTFORWARD);
+    }
+
+    /*
+     * {@code id}가 가리키는 커밋, 태그이면 태그가 가리키는 커밋을 반환한다. 커밋이 아니면 null 을 반환한다.
+     */
+    private static RevCommit parseCommit(RevWalk revWalk, AnyObjectId id) throws IOException {
+        RevObject object = revWalk.peel(revWalk.parseAny(id));
+        if (object.getType() != Constants.OBJ_COMMIT) {
+            return null;
+        }
+        return revWalk.parseCommit(object);
+    }
+
+    public Project getProject() {
+        return project;
+    }
+
+    /**
+     * push 한 사용자
+     */
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * 성공한 명령들
+     */
+    public List<ReceiveCommand> getCommands() {
+        return commands;
+    }
+
+    /**
+     * 새로 들어온 커밋들, 중복은 없다.
+     */
+    public List<RevCommit> getCommits() {
+        return commits;
+    }
+
+    /**
+     * {@link #getCommits()}의 각 커밋의 전체 메시지, 순서가 같다.
+     */
+    public List<String> getMessages() {
+        return messages;
+    }
+
+    /**
+     * 만들거나 갱신한 ref 이름들, 명령의 순서와 같다.
+     */
+    public List<String> getRefNames() {
+        return refNames;
+    }
+
+    /**
+     * 만들거나 갱신한 ref 가 새로 가리키는 객체들
+     */
+    public List<ObjectId> getNewTips() {
+        return newTips;
+    }
+
+    /**
+     * 만들거나 갱신한 ref 이름들
+     *
+     * @see ReceiveCommandUtil#getPushedBranches(java.util.Collection)
+     */
+    public Set<String> getPushedBranches() {
+        return pushedBranches;
+    }
+
+    /**
+     * 갱신한 ref 이름들
+     *
+     * @see ReceiveCommandUtil#getUpdatedBranches(java.util.Collection)
+     */
+    public Set<String> getUpdatedBranches() {
+        return updatedBranches;
+    }
+
+    /**
+     * 삭제한 ref 이름들
+     *
+     * @see ReceiveCommandUtil#getDeletedBranches(java.util.Collection)
+     */
+    public Set<String> getDeletedBranches() {
+        return deletedBranches;
+    }
+}
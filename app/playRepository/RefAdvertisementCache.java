@@ -0,0 +1,193 @@
+package playRepository;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import models.Project;
+import org.eclipse.jgit.lib.Repository;
+import play.Configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Git smart HTTP 의 ref advertisement(info/refs 응답)를 (Git 디렉토리, 서비스) 별로 저장해두는 캐시
+ *
+ * CI 서버 등이 주기적으로 fetch 하면 바뀐 것이 없어도 매번 저장소를 열고 모든 ref 를 읽어 응답을 만들게 되므로,
+ * 만들어둔 응답을 그대로 돌려준다. ref 가 바뀌는 곳(push 후처리, 브랜치 삭제/복구, 기본 브랜치 변경, 코드 보내기
+ * 병합, 저장소 삭제/이름 변경)에서는 {@link #invalidate(File)}로 해당 저장소의 응답을 지운다.
+ *
+ * 응답을 만드는 동안 무효화되었다면 만든 응답은 돌려주기만 하고 캐시에 넣지 않는다. 바뀌기 전의 ref 로 만든
+ * 응답일 수 있기 때문이다.
+ *
+ * Yobi 를 거치지 않고 저장소를 직접 바꾸는 경우에 대비해 일정 시간이 지난 응답은 다시 만든다.
+ * <pre>
+ * application.git.ref-advertisement-cache.size = 1000
+ * application.git.ref-advertisement-cache.expire-after-write = 1m
+ * </pre>
+ *
+ * @see RepositoryService#gitAdvertise(models.Project, String, play.mvc.Http.Response)
+ */
+public class RefAdvertisementCache {
+    private static final int DEFAULT_MAXIMUM_SIZE = 1000;
+    private static final long DEFAULT_EXPIRE_AFTER_WRITE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+
+    private static Cache<Key, byte[]> cache;
+
+    /**
+     * Git 디렉토리별 세대. 무효화할 때마다 1 씩 늘어난다.
+     */
+    private static final Map<File, Long> generations = new HashMap<>();
+
+    /**
+     * {@code gitDir}의 {@code service} 응답을 반환한다. 캐시에 없으면 {@code loader}로 만들어서 캐시에 넣는다.
+     *
+     * @param gitDir Git 디렉토리
+     * @param service git-upload-pack 또는 git-receive-pack
+     * @param loader 응답을 만드는 작업
+     * @return
+     * @throws IOException
+     */
+    public static byte[] get(File gitDir, String service, Callable<byte[]> loader) throws IOException {
+        Key key = new Key(gitDir, service);
+        Cache<Key, byte[]> cache = getCache();
+
+        byte[] advertisement = cache.getIfPresent(key);
+        if (advertisement != null) {
+            hitCount.incrementAndGet();
+            return advertisement;
+        }
+
+        missCount.incrementAndGet();
+        long generation = getGeneration(key.gitDir);
+        try {
+            advertisement = loader.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        synchronized (generations) {
+            if (getGeneration(key.gitDir) == generation) {
+                cache.put(key, advertisement);
+            }
+        }
+        return advertisement;
+    }
+
+    /**
+     * {@code gitDir}의 응답을 모두 지운다.
+     *
+     * when: {@code gitDir}의 ref 가 바뀌었을 때
+     *
+     * @param gitDir Git 디렉토리
+     */
+    public static void invalidate(File gitDir) {
+        File target = gitDir.getAbsoluteFile();
+        synchronized (generations) {
+            generations.put(target, getGeneration(target) + 1);
+        }
+
+        if (cache == null) {
+            return;
+        }
+
+        for (Key key : cache.asMap().keySet()) {
+            if (key.gitDir.equals(target)) {
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    public static void invalidate(Repository repository) {
+        invalidate(repository.getDirectory());
+    }
+
+    public static void invalidate(Project project) {
+        invalidate(new File(GitRepository.getGitDirectory(project)));
+    }
+
+    /**
+     * 캐시를 비운다.
+     */
+    public static void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * 캐시에서 응답을 찾은 횟수
+     */
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * 캐시에 없어서 응답을 새로 만든 횟수
+     */
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    private static long getGeneration(File gitDir) {
+        synchronized (generations) {
+            Long generation = generations.get(gitDir);
+            return generation == null ? 0 : generation;
+        }
+    }
+
+    private static synchronized Cache<Key, byte[]> getCache() {
+        if (cache == null) {
+            int maximumSize = DEFAULT_MAXIMUM_SIZE;
+            long expireAfterWrite = DEFAULT_EXPIRE_AFTER_WRITE_MILLIS;
+
+            if (play.api.Play.maybeApplication().isDefined()) {
+                Configuration config = Configuration.root();
+                maximumSize = config.getInt("application.git.ref-advertisement-cache.size", maximumSize);
+                expireAfterWrite = config.getMilliseconds(
+                        "application.git.ref-advertisement-cache.expire-after-write", expireAfterWrite);
+            }
+
+            cache = CacheBuilder.newBuilder()
+                    .maximumSize(maximumSize)
+                    .expireAfterWrite(expireAfterWrite, TimeUnit.MILLISECONDS)
+                    .build();
+        }
+        return cache;
+    }
+
+    private static class Key {
+        private final File gitDir;
+        private final String service;
+
+        Key(File gitDir, String service) {
+            this.gitDir = gitDir.getAbsoluteFile();
+            this.service = service;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return gitDir.equals(key.gitDir) && service.equals(key.service);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * gitDir.hashCode() + service.hashCode();
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package playRepository;
+
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import play.Configuration;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 리비전의 파일들을 zip 이나 tar.gz 으로 묶어서 보내는 저장소 압축 파일
+ *
+ * {@link TreeWalk}로 트리를 돌면서 blob 을 하나씩 스트림으로 읽어 바로 압축해서 보내므로, 저장소가 커도 파일을
+ * 메모리나 임시 디렉토리에 모아두지 않는다.
+ *
+ * 만든 압축 파일은 저장소의 {@code yobi/archives} 디렉토리에 (트리 ID, 디렉토리 이름, 형식)별로 기록해두고,
+ * 같은 압축 파일을 다시 요청하면 {@link #getCachedFile(Repository, RevCommit, String, Format)}로 찾아서 파일을
+ * 그대로 보낸다. 트리 ID 가 같으면 내용도 같으므로 ref 가 바뀌어도 지울 필요가 없다. 다만 파일의 수정 시각은
+ * 처음 압축 파일을 만들 때 사용한 커밋의 시각이다. 모든 저장소를 합한 크기가 정해진 크기를 넘으면 가장 오래 사용하지
+ * 않은 파일부터 지운다. 파일 관리는 {@link UploadPackCache}와 같은 {@link DiskCache}가 맡는다.
+ *
+ * <pre>
+ * application.git.archive-cache.enabled = true
+ * application.git.archive-cache.max-size = 1g (모든 저장소를 합한 최대 크기)
+ * application.git.archive-cache.max-entry-size = 256m (이보다 큰 압축 파일은 기록하지 않는다)
+ * </pre>
+ */
+public class RepositoryArchive {
+    private static final String CACHE_DIRECTORY = "yobi/archives";
+    private static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+    private static final long DEFAULT_MAX_ENTRY_SIZE = 256L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+
+    private static DiskCache files;
+    private static boolean enabled = true;
+    private static long maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+
+    /**
+     * 압축 파일 형식
+     */
+    public enum Format {
+        ZIP("zip", "application/zip"),
+        TAR_GZ("tar.gz", "application/x-gzip");
+
+        private final String extension;
+        private final String contentType;
+
+        Format(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * {@code fileName}의 확장자에 해당하는 형식을 반환한다.
+         *
+         * @param fileName
+         * @return 지원하지 않는 확장자이면 null
+         */
+        public static Format fromFileName(String fileName) {
+            for (Format format : values()) {
+                if (fileName.endsWith("." + format.extension)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * {@code commit}의 트리를 {@code format}으로 묶은 압축 파일을 기록해두었으면 그 파일을, 아니면 null 을 반환한다.
+     *
+     * @param repository
+     * @param commit
+     * @param prefix 압축 파일 안의 최상위 디렉토리 이름 (예: {@code yobi-v1.0/})
+     * @param format
+     * @return
+     */
+    public static File getCachedFile(Repository repository, RevCommit commit, String prefix, Format format) {
+        DiskCache files = getFiles();
+        if (!enabled) {
+            return null;
+        }
+
+        File file = files.get(getFile(repository, commit, prefix, format));
+        if (file != null) {
+            hitCount.incrementAndGet();
+        }
+        return file;
+    }
+
+    /**
+     * {@code commit}의 트리를 {@code format}으로 묶어서 {@code output}으로 보내면서 파일로도 기록한다.
+     *
+     * @param repository
+     * @param commit
+     * @param prefix 압축 파일 안의 최상위 디렉토리 이름 (예: {@code yobi-v1.0/})
+     * @param format
+     * @param output
+     * @throws IOException
+     */
+    public static void send(final Repository repository, final RevCommit commit, final String prefix,
+                            final Format format, OutputStream output) throws IOException {
+        DiskCache files = getFiles();
+        missCount.incrementAndGet();
+        if (!enabled) {
+            write(repository, commit, prefix, format, output);
+            return;
+        }
+
+        files.send(getFile(repository, commit, prefix, format), output, maxEntrySize,
+                new TransportExecutor.StreamWriter() {
+                    @Override
+                    public void write(OutputStream output) throws IOException {
+                        RepositoryArchive.write(repository, commit, prefix, format, output);
+                    }
+                });
+    }
+
+    /**
+     * {@code commit}의 트리를 {@code format}으로 묶어서 {@code output}에 쓴다.
+     *
+     * 하위 모듈(gitlink)은 넣지 않는다. zip 에서는 심볼릭 링크를 링크 대상 경로를 내용으로 하는 파일로 넣는다.
+     *
+     * @param repository
+     * @param commit
+     * @param prefix 압축 파일 안의 최상위 디렉토리 이름 (예: {@code yobi-v1.0/})
+     * @param format
+     * @param output 다 쓴 뒤에도 닫지 않는다.
+     * @throws IOException
+     */
+    public static void write(Repository repository, RevCommit commit, String prefix, Format format,
+                             OutputStream output) throws IOException {
+        long modified = commit.getCommitTime() * 1000L;
+        ObjectReader reader = repository.newObjectReader();
+        try {
+            TreeWalk treeWalk = new TreeWalk(reader);
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setRecursive(true);
+
+            switch (format) {
+                case ZIP:
+                    writeZip(reader, treeWalk, prefix, modified, output);
+                    break;
+                case TAR_GZ:
+                    writeTarGz(reader, treeWalk, prefix, modified, output);
+                    break;
+                default:
+                    throw new UnsupportedOperationException(format.name());
+            }
+        } finally {
+            reader.release();
+        }
+    }
+
+    /**
+     * {@code gitDir}에 기록해둔 압축 파일을 모두 지운다.
+     *
+     * when: 저장소를 지우거나 이름을 바꿀 때
+     *
+     * @param gitDir Git 디렉토리
+     */
+    public static void invalidate(File gitDir) {
+        getFiles().invalidate(new File(gitDir, CACHE_DIRECTORY));
+    }
+
+    public static void invalidate(Repository repository) {
+        invalidate(repository.getDirectory());
+    }
+
+    /**
+     * 기록해둔 압축 파일을 보낸 횟수
+     */
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * 압축 파일을 새로 만든 횟수
+     */
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 기록해둔 압축 파일 크기의 합
+     */
+    public static long getSize() {
+        return getFiles().getSize();
+    }
+
+    private static void writeZip(ObjectReader reader, TreeWalk treeWalk, String prefix, long modified,
+                                 OutputStream output) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(output, UTF_8);
+        zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+        while (treeWalk.next()) {
+            FileMode mode = treeWalk.getFileMode(0);
+            if (mode == FileMode.GITLINK) {
+                continue;
+            }
+            ZipEntry entry = new ZipEntry(prefix + treeWalk.getPathString());
+            entry.setTime(modified);
+            zip.putNextEntry(entry);
+            reader.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).copyTo(zip);
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    private static void writeTarGz(ObjectReader reader, TreeWalk treeWalk, String prefix, long modified,
+                                   OutputStream output) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(output, BUFFER_SIZE);
+        TarWriter tar = new TarWriter(gzip, modified / 1000);
+        while (treeWalk.next()) {
+            FileMode mode = treeWalk.getFileMode(0);
+            if (mode == FileMode.GITLINK) {
+                continue;
+            }
+            String path = prefix + treeWalk.getPathString();
+            ObjectLoader loader = reader.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB);
+            if (mode == FileMode.SYMLINK) {
+                tar.writeSymlink(path, new String(loader.getCachedBytes(), UTF_8));
+            } else {
+                tar.writeFile(path, mode == FileMode.EXECUTABLE_FILE ? 0755 : 0644, loader);
+            }
+        }
+        tar.finish();
+        gzip.finish();
+        gzip.flush();
+    }
+
+    private static File getFile(Repository repository, RevCommit commit, String prefix, Format format) {
+        String prefixId = new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, Constants.encode(prefix))
+                .abbreviate(8).name();
+        String name = commit.getTree().name() + "-" + prefixId + "." + format.getExtension();
+        return new File(new File(repository.getDirectory(), CACHE_DIRECTORY), name).getAbsoluteFile();
+    }
+
+    private static synchronized DiskCache getFiles() {
+        if (files == null) {
+            long maxSize = DEFAULT_MAX_SIZE;
+            if (play.api.Play.maybeApplication().isDefined()) {
+                Configuration config = Configuration.root();
+                enabled = config.getBoolean("application.git.archive-cache.enabled", true);
+                Long configured = config.getBytes("application.git.archive-cache.max-size");
+                if (configured != null) {
+                    maxSize = configured;
+                }
+                configured = config.getBytes("application.git.archive-cache.max-entry-size");
+                if (configured != null) {
+                    maxEntrySize = configured;
+                }
+            }
+            maxEntrySize = Math.min(maxEntrySize, Integer.MAX_VALUE);
+            files = new DiskCache("archive", maxSize);
+            files.indexRepositories(CACHE_DIRECTORY);
+        }
+        return files;
+    }
+
+    /*
+     * POSIX ustar 형식으로 쓴다. 100 바이트보다 긴 경로는 pax 확장 헤더에 넣는다.
+     *
+     * @see <a href="http://pubs.opengroup.org/onlinepubs/9699919799/utilities/pax.html">pax</a>
+     */
+    static class TarWriter {
+        private static final int BLOCK_SIZE = 512;
+        private static final int NAME_SIZE = 100;
+        private static final byte[] MAGIC = {'u', 's', 't', 'a', 'r', 0, '0', '0'};
+
+        private final OutputStream out;
+        private final long modified;
+
+        TarWriter(OutputStream out, long modifiedSeconds) {
+            this.out = out;
+            this.modified = modifiedSeconds;
+        }
+
+        void writeFile(String path, int mode, ObjectLoader loader) throws IOException {
+            long size = loader.getSize();
+            writeHeader(path, mode, size, '0', "");
+            loader.copyTo(out);
+            pad(size);
+        }
+
+        void writeSymlink(String path, String target) throws IOException {
+            writeHeader(path, 0777, 0, '2', target);
+        }
+
+        void finish() throws IOException {
+            out.write(new byte[BLOCK_SIZE * 2]);
+        }
+
+        private void writeHeader(String path, int mode, long size, char type, String linkName)
+                throws IOException {
+            byte[] name = path.getBytes(UTF_8);
+            byte[] link = linkName.getBytes(UTF_8);
+            if (name.length > NAME_SIZE || link.length > NAME_SIZE) {
+                StringBuilder records = new StringBuilder();
+                if (name.length > NAME_SIZE) {
+                    records.append(paxRecord("path", path));
+                }
+                if (link.length > NAME_SIZE) {
+                    records.append(paxRecord("linkpath", linkName));
+                }
+                byte[] extended = records.toString().getBytes(UTF_8);
+                out.write(header(Arrays.copyOf(name, Math.min(name.length, NAME_SIZE)), 0644,
+                        extended.length, 'x', new byte[0]));
+                out.write(extended);
+                pad(extended.length);
+            }
+            out.write(header(name, mode, size, type, link));
+        }
+
+        private byte[] header(byte[] name, int mode, long size, char type, byte[] link) throws IOException {
+            if (size >= 077777777777L) {
+                throw new IOException("Too large file for tar: " + size + " bytes");
+            }
+            byte[] header = new byte[BLOCK_SIZE];
+            System.arraycopy(name, 0, header, 0, Math.min(name.length, NAME_SIZE));
+            putOctal(header, 100, 8, mode);
+            putOctal(header, 108, 8, 0);
+            putOctal(header, 116, 8, 0);
+            putOctal(header, 124, 12, size);
+            putOctal(header, 136, 12, modified);
+            Arrays.fill(header, 148, 156, (byte) ' ');
+            header[156] = (byte) type;
+            System.arraycopy(link, 0, header, 157, Math.min(link.length, NAME_SIZE));
+            System.arraycopy(MAGIC, 0, header, 257, MAGIC.length);
+
+            long checksum = 0;
+            for (byte b : header) {
+                checksum += b & 0xff;
+            }
+            putOctal(header, 148, 7, checksum);
+            return header;
+        }
+
+        /*
+         * 길이 필드가 레코드 자신의 길이를 포함하므로 자릿수가 바뀌지 않을 때까지 다시 계산한다.
+         */
+        private static String paxRecord(String key, String value) {
+            int length = (" " + key + "=" + value + "\n").getBytes(UTF_8).length;
+            int total = length;
+            while (total != length + String.valueOf(total).length()) {
+                total = length + String.valueOf(total).length();
+            }
+            return total + " " + key + "=" + value + "\n";
+        }
+
+        private static void putOctal(byte[] header, int offset, int length, long value) {
+            String octal = Long.toOctalString(value);
+            int digits = length - 1;
+            for (int i = 0; i < digits - octal.length(); i++) {
+                header[offset + i] = '0';
+            }
+            for (int i = 0; i < octal.length(); i++) {
+                header[offset + digits - octal.length() + i] = (byte) octal.charAt(i);
+            }
+            header[offset + digits] = 0;
+        }
+
+        private void pad(long size) throws IOException {
+            int remainder = (int) (size % BLOCK_SIZE);
+            if (remainder > 0) {
+                out.write(new byte[BLOCK_SIZE - remainder]);
+            }
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package playRepository;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Git 저장소 정리(gc, repack, bitmap index 생성)
+ *
+ * push 를 받을 때마다 loose object 와 작은 pack 이 늘어나는데, Yobi 는 저장소를 정리하지 않으므로
+ * 시간이 지나면 객체를 읽을 때마다 수많은 파일과 pack index 를 뒤지게 된다.
+ *
+ * {@link #findCandidates(File, int, int)}는 {@code git gc --auto}와 같은 방법으로 loose object 수와 pack 수를
+ * 어림해서 정리가 필요한 저장소를 고르고, {@link #run(File)}은 JGit 의 gc 로 모든 객체를 pack 하나로 모으고
+ * reachability bitmap 을 만든다. 저장소별 마지막 정리 결과는 {@link #getStats()}로 볼 수 있다.
+ *
+ * push 를 받고 있는 저장소는 정리하지 않는다. push 를 받는 쪽은 {@link #beginPush(File)}와
+ * {@link #endPush(File)}로 알려야 한다.
+ *
+ * @see actors.RepositoryMaintenanceScheduler
+ */
+public class RepositoryMaintenance {
+    /**
+     * 정리할 loose object 수의 기본값 ({@code gc.auto})
+     */
+    public static final int DEFAULT_LOOSE_OBJECTS_LIMIT = 6700;
+
+    /**
+     * 정리할 pack 수의 기본값 ({@code gc.autoPackLimit})
+     */
+    public static final int DEFAULT_PACKS_LIMIT = 50;
+
+    private static final Map<File, AtomicInteger> activePushes = new ConcurrentHashMap<>();
+    private static final Map<File, Stats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * 저장소를 정리한 결과
+     */
+    public static class Stats {
+        private final File gitDir;
+        private final Date lastRunAt;
+        private final long durationMillis;
+        private final int looseObjectsBefore;
+        private final int packsBefore;
+        private final long looseObjectsAfter;
+        private final long packsAfter;
+        private final long packedObjects;
+        private final long sizeOfPackedObjects;
+        private final long bitmaps;
+        private final int runCount;
+        private final int failureCount;
+        private final String lastError;
+
+        Stats(File gitDir, Date lastRunAt, long durationMillis, int looseObjectsBefore, int packsBefore,
+              Properties after, int runCount, int failureCount, String lastError) {
+            this.gitDir = gitDir;
+            this.lastRunAt = lastRunAt;
+            this.durationMillis = durationMillis;
+            this.looseObjectsBefore = looseObjectsBefore;
+            this.packsBefore = packsBefore;
+            this.looseObjectsAfter = getLong(after, "numberOfLooseObjects");
+            this.packsAfter = getLong(after, "numberOfPackFiles");
+            this.packedObjects = getLong(after, "numberOfPackedObjects");
+            this.sizeOfPackedObjects = getLong(after, "sizeOfPackedObjects");
+            this.bitmaps = getLong(after, "numberOfBitmaps");
+            this.runCount = runCount;
+            this.failureCount = failureCount;
+            this.lastError = lastError;
+        }
+
+        /**
+         * 저장소 이름 (owner/project)
+         */
+        public String getName() {
+            String name = gitDir.getName();
+            if (name.endsWith(".git")) {
+                name = name.substring(0, name.length() - ".git".length());
+            }
+            return gitDir.getParentFile().getName() + "/" + name;
+        }
+
+        public File getGitDir() {
+            return gitDir;
+        }
+
+        public Date getLastRunAt() {
+            return lastRunAt;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        /**
+         * 정리하기 전에 어림한 loose object 수
+         */
+        public int getLooseObjectsBefore() {
+            return looseObjectsBefore;
+        }
+
+        public int getPacksBefore() {
+            return packsBefore;
+        }
+
+        public long getLooseObjectsAfter() {
+            return looseObjectsAfter;
+        }
+
+        public long getPacksAfter() {
+            return packsAfter;
+        }
+
+        public long getPackedObjects() {
+            return packedObjects;
+        }
+
+        public long getSizeOfPackedObjects() {
+            return sizeOfPackedObjects;
+        }
+
+        public long getBitmaps() {
+            return bitmaps;
+        }
+
+        public int getRunCount() {
+            return runCount;
+        }
+
+        public int getFailureCount() {
+            return failureCount;
+        }
+
+        /**
+         * 마지막 정리에 실패했다면 그 이유, 성공했다면 null
+         */
+        public String getLastError() {
+            return lastError;
+        }
+
+        private static long getLong(Properties properties, String key) {
+            Object value = properties.get(key);
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            return value == null ? 0 : Long.parseLong(value.toString());
+        }
+    }
+
+    /**
+     * {@code gitDir}이 push 를 받기 시작했음을 기록한다.
+     *
+     * @param gitDir
+     */
+    public static void beginPush(File gitDir) {
+        File key = gitDir.getAbsoluteFile();
+        synchronized (activePushes) {
+            AtomicInteger count = activePushes.get(key);
+            if (count == null) {
+                count = new AtomicInteger();
+                activePushes.put(key, count);
+            }
+            count.incrementAndGet();
+        }
+    }
+
+    /**
+     * {@code gitDir}이 push 를 다 받았음을 기록한다.
+     *
+     * @param gitDir
+     */
+    public static void endPush(File gitDir) {
+        File key = gitDir.getAbsoluteFile();
+        synchronized (activePushes) {
+            AtomicInteger count = activePushes.get(key);
+            if (count != null && count.decrementAndGet() <= 0) {
+                activePushes.remove(key);
+            }
+        }
+    }
+
+    public static boolean isPushing(File gitDir) {
+        return activePushes.containsKey(gitDir.getAbsoluteFile());
+    }
+
+    /**
+     * {@code root} 아래의 저장소({@code owner/project.git}) 중에서 정리가 필요한 저장소를 많이 필요한 순서대로
+     * 반환한다. push 를 받고 있는 저장소는 뺀다.
+     *
+     * @param root 저장소 디렉토리, {@link GitRepository#getRepoPrefix()}
+     * @param looseObjectsLimit loose object 가 이보다 많으면 정리한다.
+     * @param packsLimit pack 이 이보다 많으면 정리한다.
+     * @return
+     */
+    public static List<File> findCandidates(File root, int looseObjectsLimit, int packsLimit) {
+        final Map<File, Double> scores = new HashMap<>();
+        for (File owner : listDirectories(root)) {
+            for (File gitDir : listDirectories(owner)) {
+                if (!gitDir.getName().endsWith(".git") || isPushing(gitDir)) {
+                    continue;
+                }
+                int looseObjects = estimateLooseObjects(gitDir);
+                int packs = countPacks(gitDir);
+                if (looseObjects > looseObjectsLimit || packs > packsLimit) {
+                    scores.put(gitDir, (double) looseObjects / looseObjectsLimit + (double) packs / packsLimit);
+                }
+            }
+        }
+
+        List<File> candidates = new ArrayList<>(scores.keySet());
+        Collections.sort(candidates, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Double.compare(scores.get(b), scores.get(a));
+            }
+        });
+        return candidates;
+    }
+
+    /**
+     * loose object 수를 어림한다.
+     *
+     * {@code git gc --auto}처럼 {@code objects/17} 디렉토리 하나만 세어서 256 을 곱한다. object ID 는 고르게
+     * 퍼져있으므로 저장소 전체를 세지 않아도 충분히 가깝다.
+     *
+     * @param gitDir
+     * @return
+     */
+    public static int estimateLooseObjects(File gitDir) {
+        String[] names = new File(gitDir, "objects/17").list();
+        if (names == null) {
+            return 0;
+        }
+        int count = 0;
+        for (String name : names) {
+            if (name.length() == 38) {
+                count++;
+            }
+        }
+        return count * 256;
+    }
+
+    public static int countPacks(File gitDir) {
+        String[] names = new File(gitDir, "objects/pack").list();
+        if (names == null) {
+            return 0;
+        }
+        int count = 0;
+        for (String name : names) {
+            if (name.endsWith(".pack")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * {@code gitDir}을 정리하고 결과를 기록한다.
+     *
+     * 모든 객체를 pack 하나로 모으고 bitmap index 를 만들며, ref 를 packed-refs 로 모은다. 어디에서도 참조하지
+     * 않는 객체는 JGit 의 기본값(2주)보다 오래된 것만 지우므로, 정리하는 동안 push 된 객체는 지우지 않는다.
+     *
+     * @param gitDir
+     * @return
+     * @throws IOException
+     * @throws GitAPIException
+     */
+    public static Stats run(File gitDir) throws IOException, GitAPIException {
+        File key = gitDir.getAbsoluteFile();
+        Stats previous = stats.get(key);
+        int runCount = previous == null ? 1 : previous.getRunCount() + 1;
+        int failureCount = previous == null ? 0 : previous.getFailureCount();
+
+        int looseObjectsBefore = estimateLooseObjects(gitDir);
+        int packsBefore = countPacks(gitDir);
+        long start = System.currentTimeMillis();
+
+        Repository repository = new RepositoryBuilder().setGitDir(gitDir).build();
+        try {
+            // bitmap index 는 JGit 의 기본값으로도 만들지만, 저장소 설정에 꺼져있더라도 만든다.
+            repository.getConfig().setBoolean("pack", null, "buildbitmaps", true);
+            Properties after = new Git(repository).gc().call();
+
+            Stats result = new Stats(key, new Date(start), System.currentTimeMillis() - start,
+                    looseObjectsBefore, packsBefore, after, runCount, failureCount, null);
+            stats.put(key, result);
+            return result;
+        } catch (GitAPIException | RuntimeException e) {
+            stats.put(key, new Stats(key, new Date(start), System.currentTimeMillis() - start,
+                    looseObjectsBefore, packsBefore, new Properties(), runCount, failureCount + 1,
+                    e.toString()));
+            throw e;
+        } finally {
+            repository.close();
+        }
+    }
+
+    /**
+     * 저장소별 마지막 정리 결과를 최근에 정리한 순서대로 반환한다.
+     *
+     * @return
+     */
+    public static List<Stats> getStats() {
+        List<Stats> result = new ArrayList<>(stats.values());
+        Collections.sort(result, new Comparator<Stats>() {
+            @Override
+            public int compare(Stats a, Stats b) {
+                return b.getLastRunAt().compareTo(a.getLastRunAt());
+            }
+        });
+        return result;
+    }
+
+    private static File[] listDirectories(File parent) {
+        File[] directories = parent.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isDirectory();
+            }
+        });
+        return directories == null ? new File[0] : directories;
+    }
+}
@@ -3,17 +3,15 @@ package playRepository;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
@@ -21,6 +19,7 @@ import javax.servlet.ServletException;
 
 import models.*;
 
+import org.apache.commons.io.IOUtils;
 import org.codehaus.jackson.node.ObjectNode;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.errors.AmbiguousObjectException;
@@ -38,10 +37,10 @@ import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.server.dav.DAVServlet;
 
 import play.Logger;
-import play.mvc.Http.RawBuffer;
 import play.mvc.Http.Request;
 import play.mvc.Http.Response;
 import playRepository.hooks.*;
+import utils.ChunkPipe;
 
 import controllers.ProjectApp;
 import controllers.UserApp;
@@ -279,6 +278,8 @@ public class RepositoryService {
      * Git advertise 요청을 처리한다.
      * <p/>
      * when: {@link controllers.GitApp#service(String, String, String, boolean)}에서 사용한다.
+     * <p/>
+     * 응답은 {@link RefAdvertisementCache}에 저장해두고 ref 가 바뀌기 전까지 다시 사용한다.
      *
      * @param project
      * @param service
@@ -288,9 +289,19 @@ public class RepositoryService {
      * @see <a href="https://www.kernel.org/pub/software/scm/git/docs/git-upload-pack.html">git-upload-pack</a>
      * @see <a href="https://www.kernel.org/pub/software/scm/git/docs/git-receive-pack.html">git-receive-pack</a>
      */
-    public static byte[] gitAdvertise(Project project, String service, Response response) throws IOException {
+    public static byte[] gitAdvertise(final Project project, final String service, Response response) throws IOException {
         response.setContentType("application/x-" + service + "-advertisement");
 
+        return RefAdvertisementCache.get(new File(GitRepository.getGitDirectory(project)), service,
+                new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws IOException {
+                        return createAdvertisement(project, service);
+                    }
+                });
+    }
+
+    private static byte[] createAdvertisement(Project project, String service) throws IOException {
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
         PacketLineOut packetLineOut = new PacketLineOut(byteArrayOutputStream);
         packetLineOut.writeString("# service=" + service + "\n");
@@ -299,13 +310,17 @@ public class RepositoryService {
 
         Repository repository = GitRepository.createGitRepository(project);
 
-        if (service.equals("git-upload-pack")) {
-            UploadPack uploadPack = new UploadPack(repository);
-            uploadPack.setBiDirectionalPipe(false);
-            uploadPack.sendAdvertisedRefs(packetLineOutRefAdvertiser);
-        } else if (service.equals("git-receive-pack")) {
-            ReceivePack receivePack = new ReceivePack(repository);
-            receivePack.sendAdvertisedRefs(packetLineOutRefAdvertiser);
+        try {
+            if (service.equals("git-upload-pack")) {
+                UploadPack uploadPack = new UploadPack(repository);
+                uploadPack.setBiDirectionalPipe(false);
+                uploadPack.sendAdvertisedRefs(packetLineOutRefAdvertiser);
+            } else if (service.equals("git-receive-pack")) {
+                ReceivePack receivePack = new ReceivePack(repository);
+                receivePack.sendAdvertisedRefs(packetLineOutRefAdvertiser);
+            }
+        } finally {
+            repository.close();
         }
 
         byteArrayOutputStream.close();
@@ -314,122 +329,117 @@ public class RepositoryService {
     }
 
     /**
-     * GIT RPC 요청을 처리합니다.
+     * GIT RPC 요청 처리를 시작한다.
      * <p/>
-     * when: {@link controllers.GitApp#service(String, String, String, boolean)}에서 사용한다.
+     * when: {@link utils.GitRpcBodyParser}가 요청 본문을 받기 전에 사용한다.
+     * <p/>
+     * 반환한 {@link GitRpc}의 요청 스트림에 요청 본문을 쓰는 대로 처리하므로, 본문을 모두 받을 때까지
+     * 기다리거나 임시 파일에 저장하지 않는다. 단, upload-pack 은 요청을 모두 읽은 뒤에 응답을 쓰기 시작한다.
+     * 응답은 요청 본문을 다 받은 뒤에야 읽히므로, 요청을 읽는 도중에 쓴 응답이 파이프를 채우면 양쪽이 서로
+     * 기다리게 되기 때문이다. upload-pack 요청은 want, have 목록뿐이라 작고, {@link utils.GitRpcBodyParser}가
+     * 그 크기를 제한한다.
      *
      * @param project
      * @param service
+     * @param user 요청한 사용자
      * @param request
-     * @param response
      * @return
      * @throws IOException
+     * @throws TransportExecutor.OverloadedException 처리할 스레드가 모자랄 때
+     * @see TransportExecutor
      * @see <a href="https://www.kernel.org/pub/software/scm/git/docs/git-upload-pack.html">git-upload-pack</a>
      * @see <a href="https://www.kernel.org/pub/software/scm/git/docs/git-receive-pack.html">git-receive-pack</a>
      */
-    public static PipedInputStream gitRpc(final Project project, String service, Request request, Response response) {
-        response.setContentType("application/x-" + service + "-result");
+    public static GitRpc startGitRpc(final Project project, String service, User user, Request request)
+            throws IOException, TransportExecutor.OverloadedException {
+        ChunkPipe requestPipe = new ChunkPipe();
+        InputStream requestStream = requestPipe.source();
+        ChunkPipe responsePipe = new ChunkPipe();
+        OutputStream responseSink = responsePipe.sink();
 
-        // FIXME 스트림으로..
-        RawBuffer raw = request.body().asRaw();
-        byte[] buf = raw.asBytes();
-        InputStream requestStream = null;
+        Repository repository = GitRepository.createGitRepository(project);
 
         try {
-            // If the content size is bigger than memoryThreshold,
-            // which is defined as 100 * 1024 in play.api.mvc.BodyParsers trait,
-            // the content is stored as a file.
-            if (buf != null) {
-                requestStream = new ByteArrayInputStream(buf);
-            } else {
-                requestStream = new FileInputStream(raw.asFile());
-            }
-
-            Repository repository = GitRepository.createGitRepository(project);
-            PipedInputStream responseStream = new PipedInputStream();
-
             switch (service) {
                 case "git-upload-pack":
-                    uploadPack(requestStream, repository, new PipedOutputStream(responseStream));
+                    uploadPack(requestStream, repository, responseSink);
                     break;
                 case "git-receive-pack":
-                    PostReceiveHook postReceiveHook = createPostReceiveHook(UserApp.currentUser(), project, request);
-                    receivePack(requestStream, repository, new PipedOutputStream(responseStream),
-                            postReceiveHook);
+                    PostReceiveHook postReceiveHook = createPostReceiveHook(user, project);
+                    receivePack(requestStream, repository, responseSink, postReceiveHook);
                     // receivePack.setEchoCommandFailures(true);//git버전에 따라서 불린값 설정필요.
                     break;
                 default:
-                    requestStream.close();
-                    break;
-            }
-
-            return responseStream;
-        } catch (IOException e) {
-            if(requestStream != null) {
-                try { requestStream.close(); } catch (IOException e1) {
-                    Logger.error("failed to close request stream", e1);
-                }
+                    throw new UnsupportedOperationException(service);
             }
-            throw new RuntimeException(e);
+        } catch (TransportExecutor.OverloadedException | RuntimeException e) {
+            closeStreams(service, requestStream, responseSink);
+            repository.close();
+            throw e;
         }
+
+        return new GitRpc(service, requestPipe, responsePipe);
     }
 
     /*
      * receive-pack 후처리 객체 생성
-     * project 의 lastPushedDate 업데이트
-     * 최근 push 된 branch 정보 저장
-     * 커밋에서 언급한 이슈에 이슈 참조 이벤트를 생성
-     * 변경된 branch 와 관련된 pull-request 들 충돌 검사
-     * 삭제된 branch 와 관련된 pull-request 삭제
-     * 새로운 커밋 알림
+     *
+     * push 스레드에서 바로 실행:
+     * 캐시해둔 ref advertisement 삭제
+     * 캐시해둔 upload-pack 응답 삭제
+     *
+     * 나머지는 백그라운드 작업으로 실행 (PostReceivePipeline)
      */
-    private static PostReceiveHook createPostReceiveHook(
-            final User currentUser, final Project project, final Request request) {
+    private static PostReceiveHook createPostReceiveHook(final User currentUser, final Project project) {
         List<PostReceiveHook> hooks = new ArrayList<>();
-        hooks.add(new UpdateLastPushedDate(project));
-        hooks.add(new UpdateRecentlyPushedBranch(project));
-        hooks.add(new IssueReferredFromCommitEvent(project, currentUser));
-        hooks.add(new PullRequestCheck(currentUser, request, project));
-        hooks.add(new NotifyPushedCommits(project, currentUser));
+        hooks.add(new InvalidateRefAdvertisement());
+        hooks.add(new InvalidateUploadPackCache());
+        hooks.add(new PostReceivePipeline(project, currentUser));
         return PostReceiveHookChain.newChain(hooks);
     }
 
-    private static void receivePack(final InputStream input, Repository repository,
+    private static void receivePack(final InputStream input, final Repository repository,
                                     final OutputStream output,
-                                    final PostReceiveHook postReceiveHook) {
+                                    final PostReceiveHook postReceiveHook)
+            throws TransportExecutor.OverloadedException {
         final ReceivePack receivePack = new ReceivePack(repository);
         receivePack.setBiDirectionalPipe(false);
-        new Thread() {
+        TransportExecutor.push().execute(new Runnable() {
             @Override
             public void run() {
+                RepositoryMaintenance.beginPush(repository.getDirectory());
                 try {
                     receivePack.setPostReceiveHook(postReceiveHook);
                     receivePack.receive(input, output, null);
                 } catch (IOException e) {
                     Logger.error("receivePack failed", e);
+                } finally {
+                    RepositoryMaintenance.endPush(repository.getDirectory());
+                    // 스트림을 닫지 않으면 응답을 읽는 쪽이 끝없이 기다린다.
+                    closeStreams("receivePack", input, output);
+                    repository.close();
                 }
-
-                closeStreams("receivePack", input, output);
             }
-        }.start();
+        });
     }
 
-    private static void uploadPack(final InputStream input, Repository repository,
-                                   final OutputStream output) {
-        final UploadPack uploadPack = new UploadPack(repository);
-        uploadPack.setBiDirectionalPipe(false);
-        new Thread() {
+    private static void uploadPack(final InputStream input, final Repository repository,
+                                   final OutputStream output) throws TransportExecutor.OverloadedException {
+        TransportExecutor.fetch().execute(new Runnable() {
             @Override
             public void run() {
                 try {
-                    uploadPack.upload(input, output, null);
+                    // 응답을 쓰기 전에 요청을 모두 읽는다. startGitRpc 의 설명을 보라.
+                    InputStream request = new ByteArrayInputStream(IOUtils.toByteArray(input));
+                    UploadPackCache.upload(repository, request, output);
                 } catch (IOException e) {
                     Logger.error("uploadPack failed", e);
+                } finally {
+                    closeStreams("uploadPack", input, output);
+                    repository.close();
                 }
-
-                closeStreams("uploadPack", input, output);
             }
-        }.start();
+        });
     }
 
     private static void closeStreams(String serviceName, InputStream input, OutputStream output) {
@@ -316,6 +316,68 @@ public class SVNRepository implements PlayRepository {
         return result;
     }
 
+    /**
+     * {@code cursor}에 해당하는 리비전부터 {@code pageSize}개의 커밋 목록을 반환한다.
+     *
+     * 커서는 리비전 번호이며, {@code cursor}가 null이면 최신 리비전부터 조회한다.
+     * 리비전 번호는 차례로 증가하므로 이전 페이지의 커서도 {@code pageSize}개의 리비전만 조회해서 알아낸다.
+     */
+    @Override
+    public HistoryPage getHistoryPage(String cursor, int pageSize, String until, String path) throws
+            IOException, GitAPIException, SVNException {
+        SVNURL svnURL = SVNURL.fromFile(new File(repoPrefix + ownerName + "/" + projectName));
+        org.tmatesoft.svn.core.io.SVNRepository repository = SVNRepositoryFactory.create(svnURL);
+
+        String[] paths = {"/"};
+        if(path != null){
+            paths[0] = "/" + path;
+        }
+
+        long latestRevision = repository.getLatestRevision();
+        long startRevision = latestRevision;
+        if (cursor != null) {
+            try {
+                startRevision = Math.min(Long.parseLong(cursor), latestRevision);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        List<Commit> commits = new ArrayList<>();
+        String nextCursor = null;
+        if (startRevision >= 1) {
+            final List<SVNLogEntry> entries = new ArrayList<>();
+            repository.log(paths, startRevision, 1, false, false, pageSize + 1, new ISVNLogEntryHandler() {
+                @Override
+                public void handleLogEntry(SVNLogEntry logEntry) throws SVNException {
+                    entries.add(logEntry);
+                }
+            });
+            for (SVNLogEntry entry : entries.subList(0, Math.min(pageSize, entries.size()))) {
+                commits.add(new SvnCommit(entry));
+            }
+            if (entries.size() > pageSize) {
+                nextCursor = String.valueOf(entries.get(pageSize).getRevision());
+            }
+        }
+
+        String prevCursor = null;
+        if (startRevision < latestRevision) {
+            final long[] newest = {-1};
+            repository.log(paths, startRevision + 1, latestRevision, false, false, pageSize, new ISVNLogEntryHandler() {
+                @Override
+                public void handleLogEntry(SVNLogEntry logEntry) throws SVNException {
+                    newest[0] = Math.max(newest[0], logEntry.getRevision());
+                }
+            });
+            if (newest[0] > 0) {
+                prevCursor = String.valueOf(newest[0]);
+            }
+        }
+
+        return new HistoryPage(commits, nextCursor, prevCursor);
+    }
+
     @Override
     public Commit getCommit(String revNumber) throws IOException, SVNException {
         long rev = Integer.parseInt(revNumber);
@@ -0,0 +1,225 @@
+package playRepository;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import play.Configuration;
+import play.Logger;
+import utils.ChunkPipe;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Git, SVN 요청(clone, fetch, push 등)을 처리하는 크기가 제한된 스레드 풀
+ *
+ * 요청마다 스레드를 새로 만들면 clone 이 몰릴 때 스레드가 끝없이 늘어나므로, 스레드 수와 기다릴 수 있는 요청 수를
+ * 제한하고 넘치는 요청은 {@link OverloadedException}으로 거절한다. 거절된 요청에는 503 Service Unavailable 과
+ * {@link #getRetryAfterSeconds()}를 담은 Retry-After 로 응답한다.
+ *
+ * 저장소를 읽는 요청({@link #fetch()})과 쓰는 요청({@link #push()})은 따로 처리하므로 clone 이 아무리 많아도
+ * push 는 기다리지 않는다.
+ *
+ * <pre>
+ * application.vcs.fetch.threads = 32
+ * application.vcs.fetch.queue-size = 64
+ * application.vcs.push.threads = 8
+ * application.vcs.push.queue-size = 32
+ * application.vcs.retry-after = 10
+ * </pre>
+ */
+public class TransportExecutor {
+    private static final int DEFAULT_FETCH_THREADS = 32;
+    private static final int DEFAULT_FETCH_QUEUE_SIZE = 64;
+    private static final int DEFAULT_PUSH_THREADS = 8;
+    private static final int DEFAULT_PUSH_QUEUE_SIZE = 32;
+    private static final int DEFAULT_RETRY_AFTER_SECONDS = 10;
+
+    private static TransportExecutor fetch;
+    private static TransportExecutor push;
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * 스레드 풀이 가득 차서 요청을 처리할 수 없을 때 발생한다.
+     */
+    public static class OverloadedException extends Exception {
+        private static final long serialVersionUID = -2164397812906212398L;
+
+        public OverloadedException(String name) {
+            super("Too many " + name + " requests");
+        }
+    }
+
+    /**
+     * @param name 스레드 이름 등에 사용할 이름
+     * @param threads 동시에 처리할 요청 수
+     * @param queueSize 처리를 기다릴 수 있는 요청 수
+     */
+    public TransportExecutor(String name, int threads, int queueSize) {
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)),
+                new ThreadFactoryBuilder().setNameFormat("vcs-" + name + "-%d").setDaemon(true).build());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 저장소를 읽는 요청(git-upload-pack, SVN 읽기)을 처리하는 스레드 풀
+     *
+     * @return
+     */
+    public static synchronized TransportExecutor fetch() {
+        if (fetch == null) {
+            fetch = create("fetch", DEFAULT_FETCH_THREADS, DEFAULT_FETCH_QUEUE_SIZE);
+        }
+        return fetch;
+    }
+
+    /**
+     * 저장소에 쓰는 요청(git-receive-pack, SVN 쓰기)을 처리하는 스레드 풀
+     *
+     * @return
+     */
+    public static synchronized TransportExecutor push() {
+        if (push == null) {
+            push = create("push", DEFAULT_PUSH_THREADS, DEFAULT_PUSH_QUEUE_SIZE);
+        }
+        return push;
+    }
+
+    private static TransportExecutor create(String name, int threads, int queueSize) {
+        if (play.api.Play.maybeApplication().isDefined()) {
+            threads = Configuration.root().getInt("application.vcs." + name + ".threads", threads);
+            queueSize = Configuration.root().getInt("application.vcs." + name + ".queue-size", queueSize);
+        }
+        return new TransportExecutor(name, threads, queueSize);
+    }
+
+    /**
+     * 거절된 요청에 Retry-After 로 알려줄 시간 (초)
+     *
+     * @return
+     */
+    public static int getRetryAfterSeconds() {
+        if (play.api.Play.maybeApplication().isDefined()) {
+            return Configuration.root().getInt("application.vcs.retry-after", DEFAULT_RETRY_AFTER_SECONDS);
+        }
+        return DEFAULT_RETRY_AFTER_SECONDS;
+    }
+
+    /**
+     * {@code task}를 실행한다.
+     *
+     * @param task
+     * @throws OverloadedException 스레드도 대기열도 남아있지 않을 때
+     */
+    public void execute(Runnable task) throws OverloadedException {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            throw new OverloadedException(name);
+        }
+    }
+
+    /**
+     * {@code writer}가 쓰는 내용을 읽을 스트림을 반환한다.
+     *
+     * {@code writer}는 이 풀의 스레드에서 {@link ChunkPipe}에 쓰므로, 읽는 쪽이 느리면 쓰는 쪽이 기다리고 메모리에
+     * 쌓이는 양은 파이프의 크기를 넘지 않는다. 다 쓰거나 실패하면 스트림을 닫고 {@link StreamWriter#done()}을
+     * 호출한다. 실행하지 못했을 때에도 {@link StreamWriter#done()}을 호출한다.
+     *
+     * @param writer
+     * @return
+     * @throws OverloadedException 스레드도 대기열도 남아있지 않을 때
+     */
+    public InputStream stream(final StreamWriter writer) throws OverloadedException {
+        ChunkPipe pipe = new ChunkPipe();
+        final OutputStream output = pipe.sink();
+        try {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        writer.write(output);
+                    } catch (IOException e) {
+                        Logger.error(name + ": Failed to write the response stream", e);
+                    } finally {
+                        try {
+                            output.close();
+                        } catch (IOException e) {
+                            Logger.error(name + ": Failed to close the response stream", e);
+                        }
+                        writer.done();
+                    }
+                }
+            });
+        } catch (OverloadedException e) {
+            writer.done();
+            throw e;
+        }
+        return pipe.source();
+    }
+
+    /**
+     * {@link #stream(StreamWriter)}로 보낼 내용을 쓰는 쪽
+     */
+    public interface StreamWriter {
+        /**
+         * 보낼 내용을 {@code output}에 쓴다. {@code output}은 닫지 않아도 된다.
+         *
+         * @param output
+         * @throws IOException
+         */
+        void write(OutputStream output) throws IOException;
+
+        /**
+         * 다 쓰거나 실패했을 때, 또는 실행하지 못했을 때 호출한다. 사용한 저장소 등을 반환한다.
+         */
+        void done();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 처리중인 요청 수
+     *
+     * @return
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * 처리를 기다리는 요청 수
+     *
+     * @return
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 스레드를 모두 정리한다. 종료한 풀은 다시 사용할 수 없다.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
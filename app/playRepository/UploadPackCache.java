@@ -0,0 +1,246 @@
+package playRepository;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.UploadPack;
+import play.Configuration;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * git-upload-pack 응답(pack)을 요청 본문별로 저장해두는 디스크 캐시
+ *
+ * CI 서버처럼 같은 커밋을 반복해서 clone 하면 매번 보낼 객체를 찾고, 세고, 압축하는 일을 되풀이하게 되므로,
+ * have 없이 want 만 보내는 요청(clone, 처음 fetch 하는 브랜치 등)의 응답을 그대로 파일로 기록해두고 같은 요청이
+ * 오면 파일을 보낸다. want 에는 커밋 ID 가 들어있으므로 요청 본문이 같으면 보낼 pack 도 같다.
+ *
+ * 파일은 저장소의 {@code yobi/upload-packs} 디렉토리에 두고, 모든 저장소를 합한 크기가 정해진 크기를 넘으면
+ * 가장 오래 사용하지 않은 파일부터 지운다. 재시작하기 전에 기록한 파일도 처음 사용할 때 모두 찾아서 크기에 포함한다.
+ * ref 가 바뀌거나 저장소 이름이 바뀌면 {@link #invalidate(File)}로 그 저장소의 파일을 모두 지운다. 응답을 기록하는
+ * 동안 무효화되었다면 다 기록한 응답도 버린다.
+ *
+ * <pre>
+ * application.git.upload-pack-cache.enabled = true
+ * application.git.upload-pack-cache.max-size = 1g (모든 저장소를 합한 최대 크기)
+ * application.git.upload-pack-cache.max-entry-size = 256m (이보다 큰 응답은 저장하지 않는다)
+ * </pre>
+ *
+ * @see RepositoryService#startGitRpc(models.Project, String, models.User, play.mvc.Http.Request)
+ */
+public class UploadPackCache {
+    private static final String CACHE_DIRECTORY = "yobi/upload-packs";
+    private static final int MAX_REQUEST_SIZE = 64 * 1024;
+    private static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+    private static final long DEFAULT_MAX_ENTRY_SIZE = 256L * 1024 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+    private static final AtomicLong bypassCount = new AtomicLong();
+
+    private static DiskCache files;
+    private static boolean enabled = true;
+    private static long maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+
+    /**
+     * {@code repository}에서 git-upload-pack 요청을 처리한다.
+     *
+     * 저장해둔 응답이 있으면 파일을 그대로 보내고, 없으면 {@link UploadPack}으로 처리하면서 응답을 기록한다.
+     * 저장할 수 없는 요청(have 가 있거나 너무 큰 요청)은 기록하지 않고 처리만 한다.
+     *
+     * @param repository
+     * @param input 요청 본문
+     * @param output 응답
+     * @throws IOException
+     */
+    public static void upload(final Repository repository, InputStream input, OutputStream output)
+            throws IOException {
+        DiskCache files = getFiles();
+
+        final byte[] request = readRequest(input);
+        if (!enabled || request.length > MAX_REQUEST_SIZE || !isCacheable(request)) {
+            bypassCount.incrementAndGet();
+            newUploadPack(repository).upload(
+                    new SequenceInputStream(new ByteArrayInputStream(request), input), output, null);
+            return;
+        }
+
+        File file = getFile(repository, request);
+        if (sendFile(files.get(file), output)) {
+            hitCount.incrementAndGet();
+            return;
+        }
+
+        missCount.incrementAndGet();
+        files.send(file, output, maxEntrySize, new TransportExecutor.StreamWriter() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                newUploadPack(repository).upload(new ByteArrayInputStream(request), output, null);
+            }
+        });
+    }
+
+    /**
+     * {@code gitDir}에 저장해둔 응답을 모두 지운다.
+     *
+     * when: {@code gitDir}의 ref 가 바뀌었을 때, 저장소를 지우거나 이름을 바꿀 때
+     *
+     * @param gitDir Git 디렉토리
+     */
+    public static void invalidate(File gitDir) {
+        getFiles().invalidate(new File(gitDir, CACHE_DIRECTORY));
+    }
+
+    public static void invalidate(Repository repository) {
+        invalidate(repository.getDirectory());
+    }
+
+    public static void invalidate(models.Project project) {
+        invalidate(new File(GitRepository.getGitDirectory(project)));
+    }
+
+    /**
+     * 저장해둔 응답을 보낸 횟수
+     */
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * 저장해둔 응답이 없어서 새로 만든 횟수
+     */
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 저장할 수 없는 요청이라서 그냥 처리한 횟수
+     */
+    public static long getBypassCount() {
+        return bypassCount.get();
+    }
+
+    /**
+     * 저장해둔 응답 파일 크기의 합
+     */
+    public static long getSize() {
+        return getFiles().getSize();
+    }
+
+    /*
+     * 요청 본문을 MAX_REQUEST_SIZE 를 넘지 않는 만큼 읽는다. 넘으면 MAX_REQUEST_SIZE 보다 긴 배열을 반환하고
+     * 나머지는 input 에 남겨둔다.
+     */
+    static byte[] readRequest(InputStream input) throws IOException {
+        byte[] buffer = new byte[MAX_REQUEST_SIZE + 1];
+        int length = 0;
+        while (length < buffer.length) {
+            int read = input.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /*
+     * want 와 done 만 있는 요청인지 확인한다. have 가 있으면 클라이언트마다 다르므로 저장하지 않는다.
+     */
+    static boolean isCacheable(byte[] request) {
+        boolean hasWant = false;
+        boolean done = false;
+        int position = 0;
+        while (position < request.length) {
+            if (position + 4 > request.length) {
+                return false;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(new String(request, position, 4, UTF_8), 16);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (length == 0) {
+                position += 4;
+                continue;
+            }
+            if (length < 4 || position + length > request.length) {
+                return false;
+            }
+            String line = new String(request, position + 4, length - 4, UTF_8);
+            if (line.startsWith("want ")) {
+                hasWant = true;
+            } else if (line.startsWith("have ")) {
+                return false;
+            } else if (line.startsWith("done")) {
+                done = true;
+            }
+            position += length;
+        }
+        return hasWant && done;
+    }
+
+    private static UploadPack newUploadPack(Repository repository) {
+        UploadPack uploadPack = new UploadPack(repository);
+        uploadPack.setBiDirectionalPipe(false);
+        return uploadPack;
+    }
+
+    private static File getFile(Repository repository, byte[] request) {
+        String name = new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, request).name();
+        return new File(new File(repository.getDirectory(), CACHE_DIRECTORY), name).getAbsoluteFile();
+    }
+
+    /*
+     * 저장해둔 파일이 있으면 보내고 true 를 반환한다.
+     */
+    private static boolean sendFile(File file, OutputStream output) throws IOException {
+        if (file == null) {
+            return false;
+        }
+        InputStream in;
+        try {
+            in = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            output.flush();
+            return true;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static synchronized DiskCache getFiles() {
+        if (files == null) {
+            long maxSize = DEFAULT_MAX_SIZE;
+            if (play.api.Play.maybeApplication().isDefined()) {
+                Configuration config = Configuration.root();
+                enabled = config.getBoolean("application.git.upload-pack-cache.enabled", true);
+                Long configured = config.getBytes("application.git.upload-pack-cache.max-size");
+                if (configured != null) {
+                    maxSize = configured;
+                }
+                configured = config.getBytes("application.git.upload-pack-cache.max-entry-size");
+                if (configured != null) {
+                    maxEntrySize = configured;
+                }
+            }
+            maxEntrySize = Math.min(maxEntrySize, Integer.MAX_VALUE);
+            files = new DiskCache("upload-pack", maxSize);
+            files.indexRepositories(CACHE_DIRECTORY);
+        }
+        return files;
+    }
+}
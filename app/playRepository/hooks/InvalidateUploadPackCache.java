@@ -0,0 +1,39 @@
+/**
+ * Yobi, Project Hosting SW
+ *
+ * Copyright 2014 NAVER Corp.
+ * http://yobi.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package playRepository.hooks;
+
+import java.util.Collection;
+
+import org.eclipse.jgit.transport.PostReceiveHook;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.ReceivePack;
+
+import playRepository.UploadPackCache;
+
+/**
+ * Push 로 ref 가 바뀌었으므로 저장해둔 upload-pack 응답을 지운다.
+ *
+ * @see playRepository.UploadPackCache
+ */
+public class InvalidateUploadPackCache implements PostReceiveHook {
+    @Override
+    public void onPostReceive(ReceivePack receivePack, Collection<ReceiveCommand> commands) {
+        UploadPackCache.invalidate(receivePack.getRepository());
+    }
+}
@@ -20,36 +20,67 @@
  */
 package playRepository.hooks;
 
-import java.util.Collection;
+import java.util.*;
 
-import models.PostReceiveMessage;
-import models.Project;
+import models.Issue;
+import models.IssueEvent;
 import models.User;
+import models.enumeration.EventType;
 
-import org.eclipse.jgit.transport.PostReceiveHook;
-import org.eclipse.jgit.transport.ReceiveCommand;
-import org.eclipse.jgit.transport.ReceivePack;
+import org.eclipse.jgit.revwalk.RevCommit;
 
-import actors.IssueReferredFromCommitEventActor;
-import akka.actor.Props;
-
-import play.libs.Akka;
+import playRepository.PushSummary;
 
 /**
  * 커밋에서 언급한 이슈에 이슈 참조 이벤트를 생성한다.
+ *
+ * push 한 모든 커밋의 메시지에서 이슈 번호를 먼저 모은 다음, 이슈는 한 번에 조회하고 이벤트는 한 트랜잭션에서
+ * 한꺼번에 저장한다. 커밋이 아주 많은 저장소를 push 해도 커밋이나 이슈 번호마다 쿼리를 보내지 않는다.
  */
-public class IssueReferredFromCommitEvent implements PostReceiveHook {
-    private Project project;
-    private User user;
+public class IssueReferredFromCommitEvent implements PushSummaryHook {
+    @Override
+    public void onPush(PushSummary summary) {
+        List<RevCommit> commits = summary.getCommits();
+        List<String> messages = summary.getMessages();
 
-    public IssueReferredFromCommitEvent(Project project, User user) {
-        this.project = project;
-        this.user = user;
+        List<Set<Long>> referredNumbers = new ArrayList<>(commits.size());
+        Set<Long> allNumbers = new HashSet<>();
+        for (String message : messages) {
+            Set<Long> numbers = IssueEvent.findReferredIssueNumbers(message);
+            referredNumbers.add(numbers.isEmpty() ? Collections.<Long>emptySet() : numbers);
+            allNumbers.addAll(numbers);
+        }
+        if (allNumbers.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Issue> issues = Issue.findByNumbers(summary.getProject(), allNumbers);
+        if (issues.isEmpty()) {
+            return;
+        }
+
+        User user = summary.getUser();
+        List<IssueEvent> events = new ArrayList<>();
+        for (int i = 0; i < commits.size(); i++) {
+            String newValue = commits.get(i).getName();
+            for (Long number : referredNumbers.get(i)) {
+                Issue issue = issues.get(number);
+                if (issue != null) {
+                    events.add(createIssueEvent(issue, user, newValue));
+                }
+            }
+        }
+        IssueEvent.saveAll(events);
     }
 
-    @Override
-    public void onPostReceive(ReceivePack receivePack, Collection<ReceiveCommand> commands) {
-        PostReceiveMessage message = new PostReceiveMessage(commands, project, user);
-        Akka.system().actorOf(new Props(IssueReferredFromCommitEventActor.class)).tell(message, null);
+    private IssueEvent createIssueEvent(Issue issue, User user, String newValue) {
+        IssueEvent issueEvent = new IssueEvent();
+        issueEvent.issue = issue;
+        issueEvent.senderLoginId = user.loginId;
+        issueEvent.senderEmail = user.email;
+        issueEvent.newValue = newValue;
+        issueEvent.created = new Date();
+        issueEvent.eventType = EventType.ISSUE_REFERRED_FROM_COMMIT;
+        return issueEvent;
     }
 }
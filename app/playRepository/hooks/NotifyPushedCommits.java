@@ -20,36 +20,40 @@
  */
 package playRepository.hooks;
 
-import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 
-import models.PostReceiveMessage;
+import models.NotificationEvent;
 import models.Project;
 import models.User;
+import models.Watch;
 
-import org.eclipse.jgit.transport.PostReceiveHook;
-import org.eclipse.jgit.transport.ReceiveCommand;
-import org.eclipse.jgit.transport.ReceivePack;
+import org.eclipse.jgit.revwalk.RevCommit;
 
-import actors.CommitsNotificationActor;
-import akka.actor.Props;
-
-import play.libs.Akka;
+import playRepository.PushSummary;
 
 /**
  * 프로젝트에 Push된 내용을 전달한다.
  */
-public class NotifyPushedCommits implements PostReceiveHook {
-    private Project project;
-    private User user;
+public class NotifyPushedCommits implements PushSummaryHook {
+    @Override
+    public void onPush(PushSummary summary) {
+        List<RevCommit> commits = summary.getCommits();
+        List<String> refNames = summary.getRefNames();
 
-    public NotifyPushedCommits(Project project, User user) {
-        this.project = project;
-        this.user = user;
-    }
+        Project project = summary.getProject();
+        User sender = summary.getUser();
 
-    @Override
-    public void onPostReceive(ReceivePack receivePack, Collection<ReceiveCommand> commands) {
-        PostReceiveMessage message = new PostReceiveMessage(commands, project, user);
-        Akka.system().actorOf(new Props(CommitsNotificationActor.class)).tell(message, null);
+        String title;
+        if(refNames.size() == 1) {
+            title = String.format("[%s] pushed %d commits to %s.", project.name, commits.size(), refNames.get(0));
+        } else {
+            title = String.format("[%s] pushed %d commits.", project.name, commits.size());
+        }
+
+        Set<User> watchers = Watch.findWatchers(project.asResource());
+        watchers.remove(sender);
+
+        NotificationEvent.afterNewCommits(commits, refNames, project, sender, title, watchers);
     }
 }
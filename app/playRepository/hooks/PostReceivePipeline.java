@@ -0,0 +1,181 @@
+/**
+ * Yobi, Project Hosting SW
+ *
+ * Copyright 2014 NAVER Corp.
+ * http://yobi.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package playRepository.hooks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import models.Project;
+import models.User;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.PostReceiveHook;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.ReceivePack;
+
+import playRepository.GitRepository;
+import playRepository.PushSummary;
+
+import actors.JobHandler;
+import actors.JobQueue;
+
+import play.Logger;
+import play.libs.Json;
+
+/**
+ * push 의 후처리들을 백그라운드 작업으로 실행한다.
+ *
+ * ReceivePack 은 후처리가 모두 끝난 뒤에야 응답 스트림을 닫으므로, 후처리를 push 스레드에서 실행하면 그만큼
+ * 클라이언트의 push 가 늦게 끝난다. 이 훅은 성공한 명령들을 {@link JobQueue}에 넣고 바로 돌아간다. 작업을 실행할
+ * 때 새 커밋들을 한 번만 훑어 {@link PushSummary}를 만들고, 그것을 {@link PushSummaryHook}들에 차례로 넘긴다.
+ *
+ * 작업은 DB 에 남으므로 재시작해도 알림이나 이슈 참조가 사라지지 않는다. 요약을 만들지 못하면 작업을 다시
+ * 시도하지만, 후처리 하나가 실패했을 때는 다른 후처리가 두 번 실행되지 않도록 다시 시도하지 않는다.
+ *
+ * 캐시 무효화처럼 push 직후의 요청이 바로 알아야 하는 후처리는 이 훅보다 앞에 두어 push 스레드에서 실행한다.
+ */
+public class PostReceivePipeline implements PostReceiveHook {
+    public static final String JOB_TYPE = "post-receive";
+
+    private static final int DEFAULT_CONCURRENCY = 2;
+
+    private final Project project;
+    private final User user;
+
+    public PostReceivePipeline(Project project, User user) {
+        this.project = project;
+        this.user = user;
+    }
+
+    /**
+     * push 후처리 작업을 처리하도록 {@link JobQueue}에 등록한다.
+     */
+    public static void register() {
+        JobQueue.register(JOB_TYPE, DEFAULT_CONCURRENCY, new JobHandler() {
+            @Override
+            public void handle(String payload) throws IOException {
+                run(Json.parse(payload));
+            }
+        });
+    }
+
+    @Override
+    public void onPostReceive(ReceivePack receivePack, Collection<ReceiveCommand> commands) {
+        if (commands.isEmpty()) {
+            return;
+        }
+
+        ObjectNode payload = Json.newObject();
+        payload.put("projectId", project.id);
+        if (user.id != null) {
+            payload.put("userId", user.id);
+        }
+        ArrayNode commandsNode = payload.putArray("commands");
+        for (ReceiveCommand command : commands) {
+            ObjectNode commandNode = commandsNode.addObject();
+            commandNode.put("ref", command.getRefName());
+            commandNode.put("old", command.getOldId().name());
+            commandNode.put("new", command.getNewId().name());
+            commandNode.put("type", command.getType().name());
+        }
+        JobQueue.enqueue(JOB_TYPE, null, payload.toString());
+    }
+
+    /*
+     * 순서대로 실행할 후처리들
+     * project 의 lastPushedDate 업데이트
+     * 최근 push 된 branch 정보 저장
+     * 커밋에서 언급한 이슈에 이슈 참조 이벤트를 생성
+     * 변경된 branch 와 관련된 pull-request 들 충돌 검사
+     * 삭제된 branch 와 관련된 pull-request 삭제
+     * 새로운 커밋 알림
+     * 코드 브라우저의 마지막 커밋 인덱스 갱신
+     * 커밋 그래프 갱신
+     */
+    private static List<PushSummaryHook> createHooks(Project project, User user) {
+        List<PushSummaryHook> hooks = new ArrayList<>();
+        hooks.add(new UpdateLastPushedDate(project));
+        hooks.add(new UpdateRecentlyPushedBranch(project));
+        hooks.add(new IssueReferredFromCommitEvent());
+        hooks.add(new PullRequestCheck(user, project));
+        hooks.add(new NotifyPushedCommits());
+        hooks.add(new UpdateLastCommitIndex());
+        hooks.add(new UpdateCommitGraph());
+        return hooks;
+    }
+
+    private static void run(JsonNode payload) throws IOException {
+        Project project = Project.find.byId(payload.get("projectId").asLong());
+        if (project == null) {
+            return;
+        }
+
+        User user = null;
+        if (payload.has("userId")) {
+            user = User.find.byId(payload.get("userId").asLong());
+        }
+        if (user == null) {
+            user = User.anonymous;
+        }
+
+        List<ReceiveCommand> commands = new ArrayList<>();
+        for (JsonNode command : payload.get("commands")) {
+            commands.add(new ReceiveCommand(
+                    ObjectId.fromString(command.get("old").asText()),
+                    ObjectId.fromString(command.get("new").asText()),
+                    command.get("ref").asText(),
+                    ReceiveCommand.Type.valueOf(command.get("type").asText())));
+        }
+
+        run(project, user, commands);
+    }
+
+    /**
+     * {@code commands}로 {@link PushSummary}를 만들어 후처리들을 차례로 실행한다. 후처리 하나가 실패해도 나머지는
+     * 실행한다.
+     *
+     * @param project
+     * @param user push 한 사용자
+     * @param commands 성공한 명령들
+     * @throws IOException 요약을 만들지 못했을 때
+     */
+    static void run(Project project, User user, Collection<ReceiveCommand> commands) throws IOException {
+        PushSummary summary;
+        Repository repository = GitRepository.buildGitRepository(project);
+        try {
+            summary = PushSummary.create(repository, project, user, commands);
+        } finally {
+            repository.close();
+        }
+
+        for (PushSummaryHook hook : createHooks(project, user)) {
+            try {
+                hook.onPush(summary);
+            } catch (Exception e) {
+                Logger.warn(hook.getClass().getSimpleName() + " failed after the push to " + project, e);
+            }
+        }
+    }
+}
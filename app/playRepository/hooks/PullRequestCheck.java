@@ -20,7 +20,6 @@
  */
 package playRepository.hooks;
 
-import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -29,40 +28,33 @@ import models.PullRequest;
 import models.PullRequestEventMessage;
 import models.User;
 
-import org.eclipse.jgit.transport.PostReceiveHook;
-import org.eclipse.jgit.transport.ReceiveCommand;
-import org.eclipse.jgit.transport.ReceivePack;
+import playRepository.PushSummary;
 
-import play.libs.Akka;
-import play.mvc.Http.Request;
-import actors.RelatedPullRequestMergingActor;
-import akka.actor.Props;
+import actors.MergeCheckScheduler;
 
 /**
  * 성공한 ReceiveCommand 로 영향받은 branch 에 대해서
  * 관련 있는 오픈된 코드-보내기 요청을 찾아 코드가 안전한지 확인한다.
  * branch가 삭제된 경우 관련 있는 오픈된 코드-보내기 요청을 모두 삭제한다.
  */
-public class PullRequestCheck implements PostReceiveHook {
+public class PullRequestCheck implements PushSummaryHook {
     private User user;
-    private Request request;
     private Project project;
 
-    public PullRequestCheck(User user, Request request, Project project) {
+    public PullRequestCheck(User user, Project project) {
         this.user = user;
-        this.request = request;
         this.project = project;
     }
 
     @Override
-    public void onPostReceive(ReceivePack receivePack, Collection<ReceiveCommand> commands) {
-        Set<String> branches = ReceiveCommandUtil.getUpdatedBranches(commands);
+    public void onPush(PushSummary summary) {
+        Set<String> branches = summary.getUpdatedBranches();
         for (String branch : branches) {
-            PullRequestEventMessage message = new PullRequestEventMessage(user, request, project, branch);
-            Akka.system().actorOf(new Props(RelatedPullRequestMergingActor.class)).tell(message, null);
+            PullRequestEventMessage message = new PullRequestEventMessage(user, null, project, branch);
+            MergeCheckScheduler.scheduleRelated(message);
         }
 
-        Set<String> deletedBranches = ReceiveCommandUtil.getDeletedBranches(commands);
+        Set<String> deletedBranches = summary.getDeletedBranches();
         for (String branch : deletedBranches) {
             List<PullRequest> pullRequests = PullRequest.findRelatedPullRequests(project, branch);
             for (PullRequest pullRequest : pullRequests) {
@@ -0,0 +1,35 @@
+/**
+ * Yobi, Project Hosting SW
+ *
+ * Copyright 2014 NAVER Corp.
+ * http://yobi.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package playRepository.hooks;
+
+import playRepository.PushSummary;
+
+/**
+ * push 가 끝난 뒤 {@link PostReceivePipeline}이 백그라운드에서 실행하는 후처리
+ *
+ * @see PostReceivePipeline
+ */
+public interface PushSummaryHook {
+    /**
+     * push 로 바뀐 내용을 처리한다.
+     *
+     * @param summary 여러 후처리가 함께 읽으므로 바꾸면 안 된다.
+     */
+    void onPush(PushSummary summary);
+}
@@ -0,0 +1,52 @@
+/**
+ * Yobi, Project Hosting SW
+ *
+ * Copyright 2014 NAVER Corp.
+ * http://yobi.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package playRepository.hooks;
+
+import java.util.List;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+import playRepository.CommitGraph;
+import playRepository.GitRepository;
+import playRepository.PushSummary;
+
+/**
+ * Push 된 브랜치와 태그의 새 커밋들을 커밋 그래프에 추가한다.
+ *
+ * @see playRepository.CommitGraph
+ */
+public class UpdateCommitGraph implements PushSummaryHook {
+    @Override
+    public void onPush(PushSummary summary) {
+        List<ObjectId> tips = summary.getNewTips();
+        if (tips.isEmpty()) {
+            return;
+        }
+
+        Repository repository = GitRepository.buildGitRepository(summary.getProject());
+        try {
+            CommitGraph.of(repository).update(tips);
+        } catch (Exception e) {
+            play.Logger.warn("Failed to update the commit graph of " + summary.getProject(), e);
+        } finally {
+            repository.close();
+        }
+    }
+}
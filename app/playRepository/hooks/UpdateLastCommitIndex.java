@@ -0,0 +1,60 @@
+/**
+ * Yobi, Project Hosting SW
+ *
+ * Copyright 2014 NAVER Corp.
+ * http://yobi.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package playRepository.hooks;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+import playRepository.GitRepository;
+import playRepository.LastCommitIndex;
+import playRepository.PushSummary;
+
+/**
+ * Push 된 브랜치의 새 커밋들을 코드 브라우저의 마지막 커밋 인덱스에 추가하고, 브랜치가 삭제되거나 강제로
+ * 덮어써져서 닿을 수 없게 된 커밋들의 기록은 지운다.
+ *
+ * @see playRepository.LastCommitIndex
+ */
+public class UpdateLastCommitIndex implements PushSummaryHook {
+    @Override
+    public void onPush(PushSummary summary) {
+        Repository repository = GitRepository.buildGitRepository(summary.getProject());
+        LastCommitIndex index = new LastCommitIndex(repository);
+
+        try {
+            for (ReceiveCommand command : summary.getCommands()) {
+                if (ReceiveCommandUtil.isTypeMatching(command, ReceiveCommand.Type.DELETE,
+                        ReceiveCommand.Type.UPDATE_NONFASTFORWARD)) {
+                    index.prune(command.getOldId());
+                }
+                if (ReceiveCommandUtil.isTypeMatching(command, ReceiveCommand.Type.CREATE,
+                        ReceiveCommand.Type.UPDATE, ReceiveCommand.Type.UPDATE_NONFASTFORWARD)
+                        && command.getRefName().startsWith(Constants.R_HEADS)) {
+                    index.update(command.getOldId(), command.getNewId());
+                }
+            }
+        } catch (Exception e) {
+            play.Logger.warn("Failed to update the last commit index of "
+                    + summary.getProject(), e);
+        } finally {
+            repository.close();
+        }
+    }
+}
@@ -20,19 +20,16 @@
  */
 package playRepository.hooks;
 
-import java.util.Collection;
 import java.util.Date;
 
 import models.Project;
 
-import org.eclipse.jgit.transport.PostReceiveHook;
-import org.eclipse.jgit.transport.ReceiveCommand;
-import org.eclipse.jgit.transport.ReceivePack;
+import playRepository.PushSummary;
 
 /**
  * project 가 마지막 업데이트된 시점 저장
  */
-public class UpdateLastPushedDate implements PostReceiveHook {
+public class UpdateLastPushedDate implements PushSummaryHook {
     private Project project;
 
     public UpdateLastPushedDate(Project project) {
@@ -40,7 +37,7 @@ public class UpdateLastPushedDate implements PostReceiveHook {
     }
 
     @Override
-    public void onPostReceive(ReceivePack receivePack, Collection<ReceiveCommand> commands) {
+    public void onPush(PushSummary summary) {
         synchronized(project) {
             project.refresh();
             project.lastPushedDate = new Date();
@@ -20,7 +20,6 @@
  */
 package playRepository.hooks;
 
-import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -28,16 +27,14 @@ import models.Project;
 import models.PullRequest;
 import models.PushedBranch;
 
-import org.eclipse.jgit.transport.PostReceiveHook;
-import org.eclipse.jgit.transport.ReceiveCommand;
-import org.eclipse.jgit.transport.ReceivePack;
+import playRepository.PushSummary;
 
 import utils.JodaDateUtil;
 
 /**
  * 프로젝트의 가장 최근 Push된 브랜치 저장
  */
-public class UpdateRecentlyPushedBranch implements PostReceiveHook {
+public class UpdateRecentlyPushedBranch implements PushSummaryHook {
     private Project project;
 
     public UpdateRecentlyPushedBranch(Project project) {
@@ -45,10 +42,10 @@ public class UpdateRecentlyPushedBranch implements PostReceiveHook {
     }
 
     @Override
-    public void onPostReceive(ReceivePack receivePack, Collection<ReceiveCommand> commands) {
+    public void onPush(PushSummary summary) {
         removeOldPushedBranches();
-        saveRecentlyPushedBranch(ReceiveCommandUtil.getPushedBranches(commands));
-        deletePushedBranch(ReceiveCommandUtil.getDeletedBranches(commands));
+        saveRecentlyPushedBranch(summary.getPushedBranches());
+        deletePushedBranch(summary.getDeletedBranches());
     }
 
     /*
@@ -0,0 +1,98 @@
+/**
+ * Yobi, Project Hosting SW
+ *
+ * Copyright 2014 NAVER Corp.
+ * http://yobi.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package utils;
+
+import play.Configuration;
+import play.mvc.BodyParser;
+import play.mvc.Http;
+import playRepository.GitRpc;
+
+/**
+ * Git smart HTTP RPC 요청 본문을 받는 대로 upload-pack, receive-pack 에 넘겨주는 body parser
+ *
+ * 기본 body parser 는 본문을 메모리에 모으거나 임시 파일에 저장한 뒤에 action 을 실행하므로, 큰 push 는 처리를
+ * 시작하기 전에 디스크에 한 번 더 쓰고 읽어야 한다. 이 parser 는 본문을 받기 전에
+ * {@link controllers.GitApp#startRpc(String, String, String)}로 처리를 시작하고 받는 조각을 바로 넘겨준다.
+ * 처리가 따라오지 못하면 다음 조각을 받지 않고 기다린다.
+ *
+ * push 할 수 있는 최대 크기는 다음 설정으로 바꿀 수 있다. 설정하지 않으면 제한하지 않는다.
+ * <pre>
+ * application.git.max-push-size = 2g
+ * </pre>
+ *
+ * upload-pack 은 요청을 모두 메모리에 읽은 뒤에 처리하므로 요청 크기를 따로 제한한다. want, have 목록뿐이라
+ * 작으므로 기본값은 {@link #DEFAULT_MAX_UPLOAD_PACK_REQUEST_SIZE}이다.
+ * <pre>
+ * application.git.max-upload-pack-request-size = 10m
+ * </pre>
+ */
+public class GitRpcBodyParser implements BodyParser {
+    public static final long DEFAULT_MAX_UPLOAD_PACK_REQUEST_SIZE = 10 * 1024 * 1024;
+
+    /**
+     * 처리를 시작한 Git RPC 요청의 본문
+     */
+    public static class GitRpcBody extends Http.RequestBody {
+        private final GitRpc rpc;
+
+        public GitRpcBody(GitRpc rpc) {
+            this.rpc = rpc;
+        }
+
+        public GitRpc getRpc() {
+            return rpc;
+        }
+    }
+
+    @Override
+    public play.api.mvc.BodyParser<Http.RequestBody> parser(int maxLength) {
+        return GitRpcBodyParsers.parser(getMaxPushSize(maxLength), getMaxUploadPackRequestSize());
+    }
+
+    /**
+     * 받을 수 있는 요청 본문의 최대 크기. 제한하지 않으면 -1 을 반환한다.
+     *
+     * @param maxLength {@link BodyParser.Of#maxLength()}
+     * @return
+     */
+    static long getMaxPushSize(int maxLength) {
+        if (play.api.Play.maybeApplication().isDefined()) {
+            Long configured = Configuration.root().getBytes("application.git.max-push-size");
+            if (configured != null) {
+                return configured;
+            }
+        }
+        return maxLength > 0 ? maxLength : -1;
+    }
+
+    /**
+     * 받을 수 있는 upload-pack 요청 본문의 최대 크기
+     *
+     * @return
+     */
+    static long getMaxUploadPackRequestSize() {
+        if (play.api.Play.maybeApplication().isDefined()) {
+            Long configured = Configuration.root().getBytes("application.git.max-upload-pack-request-size");
+            if (configured != null) {
+                return configured;
+            }
+        }
+        return DEFAULT_MAX_UPLOAD_PACK_REQUEST_SIZE;
+    }
+}
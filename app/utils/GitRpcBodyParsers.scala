@@ -0,0 +1,118 @@
+package utils
+
+import java.io.{Closeable, IOException}
+
+import scala.collection.JavaConverters._
+import scala.concurrent.{Future, blocking}
+
+import play.api.Logger
+import play.api.libs.concurrent.Execution.Implicits.defaultContext
+import play.api.libs.iteratee.Iteratee
+import play.api.mvc.{BodyParser, PlainResult, RequestHeader, Result, Results}
+import play.core.j.JavaHelpers
+import play.mvc.Http
+
+import controllers.GitApp
+import playRepository.GitRpc
+
+/**
+ * [[utils.GitRpcBodyParser]]의 구현
+ *
+ * 본문의 조각마다 요청 스트림에 쓰는 Future 를 만들고, 그 Future 가 끝나야 다음 조각을 받으므로 upload-pack,
+ * receive-pack 이 읽는 속도보다 빨리 받지 않는다.
+ */
+object GitRpcBodyParsers {
+
+  private case class Progress(size: Long, exceeded: Boolean, failed: Boolean)
+
+  /**
+   * @param maxPushSize receive-pack 요청 본문의 최대 크기. 음수이면 제한하지 않는다.
+   * @param maxUploadPackRequestSize upload-pack 요청 본문의 최대 크기. 음수이면 제한하지 않는다.
+   */
+  def parser(maxPushSize: Long, maxUploadPackRequestSize: Long): BodyParser[Http.RequestBody] =
+    BodyParser("git-rpc, maxPushSize=" + maxPushSize + ", maxUploadPackRequestSize=" + maxUploadPackRequestSize) { request =>
+      Iteratee.flatten(Future(start(request)).map {
+        case Left(result) =>
+          Iteratee.ignore[Array[Byte]].map(_ => Left(result))
+        case Right(rpc) if rpc.getService == "git-upload-pack" =>
+          // upload-pack 은 요청을 모두 메모리에 읽은 뒤에 처리하므로 push 와 따로 제한한다.
+          stream(rpc, maxUploadPackRequestSize)
+        case Right(rpc) =>
+          stream(rpc, maxPushSize)
+      })
+    }
+
+  private def stream(rpc: GitRpc, maxLength: Long): Iteratee[Array[Byte], Either[Result, Http.RequestBody]] = {
+    Iteratee.foldM[Array[Byte], Progress](Progress(0, exceeded = false, failed = false)) { (progress, bytes) =>
+      val size = progress.size + bytes.length
+      if (progress.exceeded || progress.failed) {
+        // 더 넘겨줄 수 없으면 나머지 본문은 버린다.
+        Future.successful(progress.copy(size = size))
+      } else if (maxLength >= 0 && size > maxLength) {
+        rpc.abort()
+        Future.successful(progress.copy(size = size, exceeded = true))
+      } else {
+        Future {
+          blocking {
+            try {
+              rpc.getRequestStream.write(bytes)
+              progress.copy(size = size)
+            } catch {
+              case e: IOException =>
+                // upload-pack, receive-pack 이 먼저 끝났다. 그 이유는 응답에 담겨있다.
+                Logger.warn("Failed to pass the request body to " + rpc.getService, e)
+                progress.copy(size = size, failed = true)
+            }
+          }
+        }
+      }
+    }.map { progress =>
+      if (progress.exceeded) {
+        Left(Results.EntityTooLarge)
+      } else {
+        closeQuietly(rpc.getRequestStream)
+        Right(new GitRpcBodyParser.GitRpcBody(rpc))
+      }
+    }
+  }
+
+  /*
+   * 요청 경로(/:ownerName/:project/:service)로 처리를 시작한다. action 밖이므로 Java context 를 직접 만든다.
+   */
+  private def start(request: RequestHeader): Either[Result, GitRpc] = {
+    val segments = request.path.split("/").filter(_.nonEmpty)
+    if (segments.length < 3) {
+      return Left(Results.NotFound)
+    }
+    val Array(ownerName, projectName, service) = segments.takeRight(3)
+
+    val context = JavaHelpers.createJavaContext(request)
+    Http.Context.current.set(context)
+    try {
+      val started = GitApp.startRpc(ownerName, projectName, service)
+      if (started.left.isDefined) {
+        val headers = context.response.getHeaders.asScala.toSeq
+        started.left.get.getWrappedResult match {
+          case result: PlainResult => Left(result.withHeaders(headers: _*))
+          case result => Left(result)
+        }
+      } else {
+        Right(started.right.get)
+      }
+    } catch {
+      case e: Exception =>
+        Logger.error("Failed to start " + service + " of " + ownerName + "/" + projectName, e)
+        Left(Results.InternalServerError)
+    } finally {
+      Http.Context.current.remove()
+    }
+  }
+
+  private def closeQuietly(closeable: Closeable) {
+    try {
+      closeable.close()
+    } catch {
+      case e: IOException => Logger.warn("Failed to close the request stream", e)
+    }
+  }
+}
@@ -156,4 +156,79 @@ public class HttpUtil {
     public static Boolean isPJAXRequest(Http.Request request){
         return Boolean.parseBoolean(request.getHeader("X-PJAX"));
     }
+
+    /**
+     * If-None-Match 헤더의 값 {@code ifNoneMatch}가 {@code eTag}와 일치하는지 여부를 반환한다.
+     *
+     * 쉼표로 구분한 여러 ETag 와 {@code *}, 약한 ETag(W/"...")도 처리한다.
+     *
+     * @param ifNoneMatch If-None-Match 헤더의 값, 없으면 null
+     * @param eTag 따옴표로 감싼 ETag
+     * @return
+     */
+    public static boolean matchesETag(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Range 헤더의 값 {@code range}를 해석해서 보낼 범위를 반환한다.
+     *
+     * {@code bytes=first-last}, {@code bytes=first-}, {@code bytes=-suffixLength} 형식의 범위 하나만 처리하며,
+     * 여러 범위를 요청하거나 형식이 잘못되었으면 전체를 보내도록 null 을 반환한다.
+     *
+     * @param range Range 헤더의 값, 없으면 null
+     * @param length 보낼 내용의 전체 길이
+     * @return 전체를 보내야 하면 null, 보낼 수 있는 범위가 없으면 빈 배열, 아니면 {첫 바이트, 마지막 바이트}
+     * @see <a href="http://tools.ietf.org/html/rfc2616#section-14.35">RFC 2616 14.35 Range</a>
+     */
+    public static long[] parseRange(String range, long length) {
+        if (range == null || !range.startsWith("bytes=") || range.contains(",")) {
+            return null;
+        }
+
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        long first;
+        long last;
+        try {
+            if (dash == 0) {
+                long suffixLength = Long.parseLong(spec.substring(1));
+                if (suffixLength <= 0) {
+                    return new long[0];
+                }
+                first = Math.max(0, length - suffixLength);
+                last = length - 1;
+            } else {
+                first = Long.parseLong(spec.substring(0, dash));
+                String lastSpec = spec.substring(dash + 1);
+                last = lastSpec.isEmpty() ? length - 1 : Math.min(Long.parseLong(lastSpec), length - 1);
+                if (last < first) {
+                    return first < length ? null : new long[0];
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        if (first >= length) {
+            return new long[0];
+        }
+        return new long[]{first, last};
+    }
 }
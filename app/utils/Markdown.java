@@ -31,7 +31,17 @@ public class Markdown {
 
     private static final String XSS_JS_FILE = "public/javascripts/lib/xss.js";
     private static final String MARKED_JS_FILE = "public/javascripts/lib/marked.js";
-    private static ScriptEngine engine = buildEngine();
+
+    /*
+     * ScriptEngine 은 여러 스레드에서 동시에 eval 해도 안전하다는 보장이 없고, render 는 전역
+     * scope 에 객체를 만들기 때문에 스레드마다 별도의 엔진을 사용한다.
+     */
+    private static final ThreadLocal<ScriptEngine> engines = new ThreadLocal<ScriptEngine>() {
+        @Override
+        protected ScriptEngine initialValue() {
+            return buildEngine();
+        }
+    };
 
     private static ScriptEngine buildEngine() {
         ScriptEngineManager manager = new ScriptEngineManager();
@@ -62,6 +72,7 @@ public class Markdown {
     }
 
     public static String render(String source) {
+        ScriptEngine engine = engines.get();
         try {
             Object filter = engine.eval("new Filter();");
             Object options = engine.eval("new Object({gfm: true, tables: true, breaks: true, " +
@@ -29,7 +29,7 @@ import java.util.*;
 
 public class PlayServletResponse implements HttpServletResponse {
 
-    private final PipedInputStream inputStream;
+    private final InputStream inputStream;
     private Response response;
     private String characterEncoding;
     private int status = 0;
@@ -105,8 +105,9 @@ public class PlayServletResponse implements HttpServletResponse {
     public PlayServletResponse(Response response) throws IOException {
         this.response = response;
         this.statusLock = new Object();
-        this.inputStream = new PipedInputStream();
-        this.outputStream = new ChunkedOutputStream(new PipedOutputStream(this.inputStream));
+        ChunkPipe pipe = new ChunkPipe();
+        this.inputStream = pipe.source();
+        this.outputStream = new ChunkedOutputStream(pipe.sink());
         this.pw = new PrintWriter(this.outputStream);
     }
 
@@ -140,7 +141,7 @@ public class PlayServletResponse implements HttpServletResponse {
         throw new UnsupportedOperationException();
     }
 
-    public PipedInputStream getInputStream() {
+    public InputStream getInputStream() {
         return this.inputStream;
     }
 
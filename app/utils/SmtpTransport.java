@@ -0,0 +1,156 @@
+/**
+ * Yobi, Project Hosting SW
+ *
+ * Copyright 2014 NAVER Corp.
+ * http://yobi.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package utils;
+
+import info.schleichardt.play2.mailplugin.Mailer;
+import org.apache.commons.mail.Email;
+import org.apache.commons.mail.EmailException;
+import play.Configuration;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * SMTP 연결 하나를 열어두고 여러 메일을 보낸다.
+ *
+ * {@link Mailer#send(Email)}는 메일마다 SMTP 서버에 새로 연결하므로, 많은 메일을 한꺼번에 보낼 때는 연결을 맺는
+ * 시간이 대부분을 차지한다. 이 클래스는 연결을 끊기지 않는 한 계속 사용하고, 보내다가 연결이 끊어졌으면 한 번 다시
+ * 연결해서 보낸다. 초당 {@code maxPerSecond}통보다 빨리 보내지 않는다.
+ *
+ * {@code smtp.mock}이 true 이면 {@link Mailer#send(Email)}로 보낸다.
+ *
+ * 스레드 하나에서만 사용해야 하며, 다 보낸 뒤에는 {@link #close()}를 호출해야 한다.
+ */
+public class SmtpTransport {
+    private final double maxPerSecond;
+    private final boolean mock;
+
+    private Session session;
+    private Transport transport;
+    private long nextSendAt;
+
+    /**
+     * @param maxPerSecond 초당 보낼 수 있는 메일의 수, 0 이하이면 제한하지 않는다.
+     */
+    public SmtpTransport(double maxPerSecond) {
+        this.maxPerSecond = maxPerSecond;
+        Boolean mock = Configuration.root().getBoolean("smtp.mock");
+        this.mock = mock != null && mock;
+    }
+
+    /**
+     * {@code email}을 보낸다.
+     *
+     * @param email
+     * @throws EmailException
+     * @throws MessagingException
+     * @throws InterruptedException
+     */
+    public void send(Email email) throws EmailException, MessagingException, InterruptedException {
+        throttle();
+
+        if (mock) {
+            Mailer.send(email);
+            return;
+        }
+
+        configure(email);
+        email.buildMimeMessage();
+        MimeMessage message = email.getMimeMessage();
+
+        try {
+            getTransport().sendMessage(message, message.getAllRecipients());
+        } catch (MessagingException e) {
+            if (transport == null || transport.isConnected()) {
+                throw e;
+            }
+            // 서버가 연결을 끊었으면 다시 연결해서 한 번 더 보낸다.
+            close();
+            getTransport().sendMessage(message, message.getAllRecipients());
+        }
+    }
+
+    /**
+     * 열어둔 연결을 닫는다.
+     */
+    public void close() {
+        if (transport == null) {
+            return;
+        }
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            play.Logger.debug("Failed to close the SMTP connection", e);
+        }
+        transport = null;
+    }
+
+    private void throttle() throws InterruptedException {
+        if (maxPerSecond <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (nextSendAt > now) {
+            Thread.sleep(nextSendAt - now);
+            now = nextSendAt;
+        }
+        nextSendAt = now + (long) (1000 / maxPerSecond);
+    }
+
+    /*
+     * play-2-mailplugin 과 같은 설정으로 메일을 준비한다. 세션은 처음 메일의 것을 계속 사용한다.
+     */
+    private void configure(Email email) throws EmailException {
+        if (session != null) {
+            email.setMailSession(session);
+            return;
+        }
+
+        Configuration config = Configuration.root();
+        String host = config.getString("smtp.host", "localhost");
+        int port = config.getInt("smtp.port", 25);
+        boolean ssl = Boolean.TRUE.equals(config.getBoolean("smtp.ssl"));
+        boolean tls = Boolean.TRUE.equals(config.getBoolean("smtp.tls"));
+        String user = config.getString("smtp.user");
+        String password = config.getString("smtp.password");
+
+        email.setHostName(host);
+        email.setSmtpPort(port);
+        email.setSSL(ssl);
+        if (ssl) {
+            email.setSslSmtpPort(String.valueOf(port));
+        }
+        email.setTLS(tls);
+        if (user != null && password != null) {
+            email.setAuthentication(user, password);
+        }
+        session = email.getMailSession();
+    }
+
+    private Transport getTransport() throws MessagingException {
+        if (transport == null || !transport.isConnected()) {
+            close();
+            transport = session.getTransport("smtp");
+            transport.connect();
+        }
+        return transport;
+    }
+}
@@ -0,0 +1,31 @@
+package utils
+
+import java.io.InputStream
+
+import play.api.http.HeaderNames
+import play.api.libs.iteratee.Enumerator
+import play.api.mvc.{ResponseHeader, SimpleResult}
+
+/**
+ * 길이를 미리 아는 스트림을 Content-Length 와 함께 보내는 응답
+ *
+ * Java API 의 `ok(InputStream)`은 chunked 로 보내므로 받는 쪽이 전체 크기를 알 수 없다. 이 응답은 스트림을
+ * 조각씩 읽어서 보내되 Content-Length 를 함께 알려준다. `response()`에 설정한 헤더는 그대로 붙는다.
+ */
+object StreamResults {
+
+  /**
+   * @param status 응답 코드
+   * @param input 보낼 내용, 다 보내면 닫는다.
+   * @param length `input`에서 보낼 길이
+   * @param chunkSize 한 번에 읽어서 보낼 크기
+   */
+  def stream(status: Int, input: InputStream, length: Long, chunkSize: Int): play.mvc.Result = {
+    val result = SimpleResult(
+      header = ResponseHeader(status, Map(HeaderNames.CONTENT_LENGTH -> length.toString)),
+      body = Enumerator.fromStream(input, chunkSize))
+    new play.mvc.Result {
+      def getWrappedResult: play.api.mvc.Result = result
+    }
+  }
+}
@@ -0,0 +1,31 @@
+# --- !Ups
+
+create table background_job (
+      id                        bigint not null,
+      job_type                  varchar(255),
+      group_key                 varchar(255),
+      dedupe_key                varchar(255),
+      waiting_dedupe_key        varchar(255),
+      payload                   clob,
+      state                     varchar(7),
+      attempts                  integer,
+      run_at                    timestamp,
+      created                   timestamp,
+      claimed_by                varchar(255),
+      claimed_at                timestamp,
+      last_error                varchar(4000),
+      constraint ck_background_job_state check (state in ('WAITING','RUNNING','FAILED')),
+      constraint pk_background_job primary key (id))
+;
+
+create sequence background_job_seq;
+
+create index ix_background_job_due on background_job (job_type, state, run_at);
+create unique index ux_background_job_dedupe on background_job (job_type, waiting_dedupe_key);
+create index ix_background_job_claimed on background_job (state, claimed_at);
+
+# --- !Downs
+
+drop table if exists background_job;
+
+drop sequence if exists background_job_seq;
@@ -73,7 +73,7 @@
          * _onClickBtnFullDiff 함수를 click 이벤트 핸들러로 지정한다
          */
         function _setButtons(sQuery){
-            $(sQuery).on("click", _onClickBtnFullDiff);
+            $(document).on("click", sQuery, _onClickBtnFullDiff);
         }
 
         /**
@@ -0,0 +1,16 @@
+package actors;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class JobQueueTest {
+    @Test
+    public void retryDelayMillis() {
+        assertThat(JobQueue.retryDelayMillis(1, 1000, 60000)).isEqualTo(1000);
+        assertThat(JobQueue.retryDelayMillis(2, 1000, 60000)).isEqualTo(2000);
+        assertThat(JobQueue.retryDelayMillis(4, 1000, 60000)).isEqualTo(8000);
+        assertThat(JobQueue.retryDelayMillis(7, 1000, 60000)).isEqualTo(60000);
+        assertThat(JobQueue.retryDelayMillis(100, 1000, 60000)).isEqualTo(60000);
+    }
+}
@@ -0,0 +1,200 @@
+package models;
+
+import actors.JobQueue;
+import org.junit.Test;
+
+import javax.persistence.PersistenceException;
+import java.util.Date;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class BackgroundJobTest extends ModelTest<BackgroundJob> {
+    private static final String JOB_TYPE = "test";
+    private static final String NODE = "node-1";
+    private static final String OTHER_NODE = "node-2";
+
+    @Test
+    public void enqueueCoalescesWaitingJobs() {
+        // Given
+        JobQueue.enqueue(JOB_TYPE, "1", "first");
+
+        // When
+        JobQueue.enqueue(JOB_TYPE, "1", "second");
+        JobQueue.enqueue(JOB_TYPE, "2", "other");
+
+        // Then
+        List<BackgroundJob> jobs = BackgroundJob.find.where().eq("jobType", JOB_TYPE).orderBy("id ASC").findList();
+        assertThat(jobs.size()).isEqualTo(2);
+        assertThat(jobs.get(0).payload).isEqualTo("second");
+        assertThat(jobs.get(1).payload).isEqualTo("other");
+    }
+
+    @Test
+    public void claimDue() {
+        // Given
+        JobQueue.enqueue(JOB_TYPE, null, "first");
+        JobQueue.enqueue(JOB_TYPE, null, "second");
+
+        // When
+        List<BackgroundJob> claimed = BackgroundJob.claimDue(JOB_TYPE, NODE, new Date(), 10);
+
+        // Then
+        assertThat(claimed.size()).isEqualTo(2);
+        assertThat(claimed.get(0).payload).isEqualTo("first");
+        assertThat(claimed.get(0).state).isEqualTo(BackgroundJob.State.RUNNING);
+        assertThat(claimed.get(0).attempts).isEqualTo(1);
+        assertThat(claimed.get(0).claimedBy).isEqualTo(NODE);
+        assertThat(BackgroundJob.claimDue(JOB_TYPE, NODE, new Date(), 10)).isEmpty();
+
+        // A running job is not coalesced with a new one.
+        JobQueue.enqueue(JOB_TYPE, null, "third");
+        assertThat(BackgroundJob.claimDue(JOB_TYPE, NODE, new Date(), 10).size()).isEqualTo(1);
+    }
+
+    @Test
+    public void claimDueLimitsRunningJobsPerGroup() {
+        // Given
+        JobQueue.enqueue(JOB_TYPE, "busy", null, "busy 1");
+        JobQueue.enqueue(JOB_TYPE, "busy", null, "busy 2");
+        JobQueue.enqueue(JOB_TYPE, "busy", null, "busy 3");
+        JobQueue.enqueue(JOB_TYPE, "quiet", null, "quiet 1");
+
+        // When
+        List<BackgroundJob> claimed = BackgroundJob.claimDue(JOB_TYPE, NODE, new Date(), 2, 1);
+
+        // Then
+        assertThat(claimed.size()).isEqualTo(2);
+        assertThat(claimed.get(0).payload).isEqualTo("busy 1");
+        assertThat(claimed.get(1).payload).isEqualTo("quiet 1");
+
+        // Jobs without a group are not limited.
+        JobQueue.enqueue(JOB_TYPE, null, null, "free");
+        claimed = BackgroundJob.claimDue(JOB_TYPE, NODE, new Date(), 10, 1);
+        assertThat(claimed.size()).isEqualTo(1);
+        assertThat(claimed.get(0).payload).isEqualTo("free");
+    }
+
+    @Test
+    public void resetRunning() {
+        // Given
+        JobQueue.enqueue(JOB_TYPE, "1", "first");
+        BackgroundJob.claimDue(JOB_TYPE, NODE, new Date(), 10);
+
+        // When
+        int reset = BackgroundJob.resetRunning(NODE);
+
+        // Then
+        assertThat(reset).isEqualTo(1);
+        List<BackgroundJob> claimed = BackgroundJob.claimDue(JOB_TYPE, NODE, new Date(), 10);
+        assertThat(claimed.size()).isEqualTo(1);
+        assertThat(claimed.get(0).attempts).isEqualTo(2);
+    }
+
+    @Test
+    public void resetRunningRestoresDedupeKey() {
+        // Given
+        JobQueue.enqueue(JOB_TYPE, "1", "first");
+        BackgroundJob.claimDue(JOB_TYPE, NODE, new Date(), 10);
+        BackgroundJob.resetRunning(NODE);
+
+        // When
+        JobQueue.enqueue(JOB_TYPE, "1", "second");
+
+        // Then
+        List<BackgroundJob> jobs = BackgroundJob.find.where().eq("jobType", JOB_TYPE).findList();
+        assertThat(jobs.size()).isEqualTo(1);
+        assertThat(jobs.get(0).payload).isEqualTo("second");
+        assertThat(jobs.get(0).waitingDedupeKey).isEqualTo("1");
+    }
+
+    @Test
+    public void resetRunningDeletesJobReplacedByWaitingOne() {
+        // Given
+        JobQueue.enqueue(JOB_TYPE, "1", "first");
+        BackgroundJob.claimDue(JOB_TYPE, NODE, new Date(), 10);
+        JobQueue.enqueue(JOB_TYPE, "1", "second");
+
+        // When
+        int reset = BackgroundJob.resetRunning(NODE);
+
+        // Then
+        assertThat(reset).isEqualTo(1);
+        List<BackgroundJob> jobs = BackgroundJob.find.where().eq("jobType", JOB_TYPE).findList();
+        assertThat(jobs.size()).isEqualTo(1);
+        assertThat(jobs.get(0).payload).isEqualTo("second");
+        assertThat(jobs.get(0).state).isEqualTo(BackgroundJob.State.WAITING);
+    }
+
+    @Test
+    public void resetRunningLeavesOtherNodesJobs() {
+        // Given
+        JobQueue.enqueue(JOB_TYPE, null, "first");
+        BackgroundJob.claimDue(JOB_TYPE, OTHER_NODE, new Date(), 10);
+
+        // When
+        int reset = BackgroundJob.resetRunning(NODE);
+
+        // Then
+        assertThat(reset).isEqualTo(0);
+        assertThat(BackgroundJob.claimDue(JOB_TYPE, NODE, new Date(), 10)).isEmpty();
+    }
+
+    @Test
+    public void reclaimExpired() {
+        // Given
+        Date now = new Date();
+        Date anHourAgo = new Date(now.getTime() - 60 * 60 * 1000L);
+        JobQueue.enqueue(JOB_TYPE, null, "stale");
+        BackgroundJob.claimDue(JOB_TYPE, OTHER_NODE, anHourAgo, 10);
+        JobQueue.enqueue(JOB_TYPE, null, "renewed");
+        BackgroundJob.claimDue(JOB_TYPE, NODE, anHourAgo, 10);
+        BackgroundJob.renewLeases(NODE, now);
+
+        // When
+        int reclaimed = BackgroundJob.reclaimExpired(new Date(now.getTime() - 10 * 60 * 1000L));
+
+        // Then
+        assertThat(reclaimed).isEqualTo(1);
+        List<BackgroundJob> claimed = BackgroundJob.claimDue(JOB_TYPE, NODE, now, 10);
+        assertThat(claimed.size()).isEqualTo(1);
+        assertThat(claimed.get(0).payload).isEqualTo("stale");
+    }
+
+    @Test
+    public void reclaimExpiredRestoresDedupeKey() {
+        // Given
+        Date now = new Date();
+        JobQueue.enqueue(JOB_TYPE, "1", "stale");
+        BackgroundJob.claimDue(JOB_TYPE, OTHER_NODE, new Date(now.getTime() - 60 * 60 * 1000L), 10);
+        BackgroundJob.reclaimExpired(new Date(now.getTime() - 10 * 60 * 1000L));
+
+        // When
+        JobQueue.enqueue(JOB_TYPE, "1", "fresh");
+
+        // Then
+        List<BackgroundJob> jobs = BackgroundJob.find.where().eq("jobType", JOB_TYPE).findList();
+        assertThat(jobs.size()).isEqualTo(1);
+        assertThat(jobs.get(0).payload).isEqualTo("fresh");
+    }
+
+    @Test
+    public void onlyOneWaitingJobPerDedupeKey() {
+        // Given
+        new BackgroundJob(JOB_TYPE, "1", "first").save();
+
+        // When
+        try {
+            new BackgroundJob(JOB_TYPE, "1", "second").save();
+            fail("A second waiting job with the same dedupe key should be rejected");
+        } catch (PersistenceException e) {
+            // Then
+        }
+
+        // A claimed job no longer holds the key.
+        BackgroundJob.claimDue(JOB_TYPE, NODE, new Date(), 10);
+        new BackgroundJob(JOB_TYPE, "1", "third").save();
+        assertThat(BackgroundJob.find.where().eq("jobType", JOB_TYPE).findRowCount()).isEqualTo(2);
+    }
+}
@@ -3,8 +3,7 @@ package models;
 import static org.fest.assertions.Assertions.assertThat;
 
 import java.text.ParseException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -205,6 +204,36 @@ public class IssueTest extends ModelTest<Issue> {
         assertThat(timeline).containsExactly(comment1, event1, comment2, event2);
     }
 
+    @Test
+    public void findByNumbers() {
+        // Given
+        Issue other = new Issue();
+        other.setProject(project);
+        other.setTitle("other");
+        other.setBody("issue");
+        other.setAuthor(author);
+        other.state = State.OPEN;
+        other.save();
+
+        // When
+        Map<Long, Issue> issues = Issue.findByNumbers(project,
+                Arrays.asList(issue.getNumber(), other.getNumber(), other.getNumber(), 100000L));
+
+        // Then
+        assertThat(issues.size()).isEqualTo(2);
+        assertThat(issues.get(issue.getNumber()).id).isEqualTo(issue.id);
+        assertThat(issues.get(other.getNumber()).id).isEqualTo(other.id);
+    }
+
+    @Test
+    public void findReferredIssueNumbers() {
+        // When
+        Set<Long> numbers = IssueEvent.findReferredIssueNumbers("fix #1 and #22, see #1 #99999999999999999999");
+
+        // Then
+        assertThat(numbers).isEqualTo(new HashSet<>(Arrays.asList(1L, 22L)));
+    }
+
     private IssueComment createIssueComment(String str) throws ParseException {
         IssueComment comment = new IssueComment();
         comment.createdDate = DateUtils.parseDate(str, "yyyy-MM-dd");
@@ -0,0 +1,37 @@
+package models;
+
+import models.enumeration.EventType;
+import models.enumeration.ResourceType;
+import org.junit.Test;
+import play.api.i18n.Lang;
+
+import java.util.HashSet;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class NotificationMessageCacheTest extends ModelTest<NotificationMessageCache> {
+    @Test
+    public void get() {
+        // Given
+        NotificationEvent event = new NotificationEvent();
+        event.eventType = EventType.NEW_ISSUE;
+        event.resourceType = ResourceType.ISSUE_POST;
+        event.resourceId = "1";
+        event.newValue = "hello";
+        event.receivers = new HashSet<>();
+        event.save();
+        long missCount = NotificationMessageCache.getMissCount();
+
+        // When
+        NotificationMessageCache.Message en = NotificationMessageCache.get(event, Lang.apply("en"));
+        NotificationMessageCache.Message again = NotificationMessageCache.get(event, Lang.apply("en"));
+        NotificationMessageCache.Message ko = NotificationMessageCache.get(event, Lang.apply("ko"));
+
+        // Then
+        assertThat(en.getText()).isEqualTo("hello");
+        assertThat(en.getPlainText()).startsWith("hello");
+        assertThat(again).isSameAs(en);
+        assertThat(ko).isNotSameAs(en);
+        assertThat(NotificationMessageCache.getMissCount()).isEqualTo(missCount + 2);
+    }
+}
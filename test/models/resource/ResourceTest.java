@@ -0,0 +1,29 @@
+package models.resource;
+
+import models.Issue;
+import models.ModelTest;
+import models.enumeration.ResourceType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ResourceTest extends ModelTest<Resource> {
+    @Test
+    public void findExistingIds() {
+        // Given
+        String id = Issue.finder.byId(1L).id.toString();
+
+        // When
+        Set<String> existing = Resource.findExistingIds(ResourceType.ISSUE_POST,
+                Arrays.asList(id, "100000", id));
+
+        // Then
+        assertThat(existing).isEqualTo(new HashSet<>(Arrays.asList(id)));
+        assertThat(Resource.exists(ResourceType.ISSUE_POST, id)).isTrue();
+        assertThat(Resource.exists(ResourceType.ISSUE_POST, "100000")).isFalse();
+    }
+}
@@ -0,0 +1,97 @@
+package playRepository;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BlobMetadataCacheTest {
+    private static final byte[] PNG = {
+            (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 0x0d, 'I', 'H', 'D', 'R'
+    };
+
+    private Repository repository;
+
+    @Before
+    public void before() throws Exception {
+        GitRepository.setRepoPrefix("resources/test/repo/git/");
+        repository = new RepositoryBuilder()
+                .setGitDir(new File(GitRepository.getGitDirectory("yobi", "blobMetadata"))).setBare().build();
+        repository.create(true);
+        BlobMetadataCache.invalidateAll();
+    }
+
+    @After
+    public void after() {
+        BlobMetadataCache.invalidateAll();
+        repository.close();
+        support.Files.rm_rf(new File(GitRepository.getRepoPrefix()));
+    }
+
+    @Test
+    public void getText() throws Exception {
+        // Given
+        ObjectId blobId = insert(Constants.encode("hello\nworld\n"));
+
+        // When
+        BlobMetadataCache.Metadata metadata = BlobMetadataCache.get(repository, blobId, "README");
+
+        // Then
+        assertThat(metadata.getSize()).isEqualTo(12);
+        assertThat(metadata.isBinary()).isFalse();
+        assertThat(metadata.getCharset()).isNotNull();
+        assertThat(metadata.getMimeType()).isEqualTo("text/plain");
+    }
+
+    @Test
+    public void getBinary() throws Exception {
+        // Given
+        ObjectId blobId = insert(PNG);
+
+        // When
+        BlobMetadataCache.Metadata metadata = BlobMetadataCache.get(repository, blobId, "logo.png");
+
+        // Then
+        assertThat(metadata.getSize()).isEqualTo(PNG.length);
+        assertThat(metadata.isBinary()).isTrue();
+        assertThat(metadata.getCharset()).isNull();
+        assertThat(metadata.getMimeType()).isEqualTo("image/png");
+    }
+
+    @Test
+    public void getFromCache() throws Exception {
+        // Given
+        ObjectId blobId = insert(Constants.encode("hello"));
+        long hitCount = BlobMetadataCache.getHitCount();
+        long missCount = BlobMetadataCache.getMissCount();
+
+        // When
+        BlobMetadataCache.Metadata first = BlobMetadataCache.get(repository, blobId, "README");
+        BlobMetadataCache.Metadata second = BlobMetadataCache.get(repository, blobId, "README");
+        BlobMetadataCache.get(repository, blobId, null);
+
+        // Then
+        assertThat(second).isSameAs(first);
+        assertThat(BlobMetadataCache.getHitCount()).isEqualTo(hitCount + 1);
+        assertThat(BlobMetadataCache.getMissCount()).isEqualTo(missCount + 2);
+    }
+
+    private ObjectId insert(byte[] contents) throws Exception {
+        ObjectInserter inserter = repository.newObjectInserter();
+        try {
+            ObjectId id = inserter.insert(Constants.OBJ_BLOB, contents);
+            inserter.flush();
+            return id;
+        } finally {
+            inserter.release();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package playRepository;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CommitGraphTest {
+    private Repository repository;
+    private String wcPath;
+
+    @Before
+    public void before() throws Exception {
+        GitRepository.setRepoPrefix("resources/test/repo/git/");
+        wcPath = GitRepository.getRepoPrefix() + "yobi/commitGraph";
+        repository = new RepositoryBuilder().setGitDir(new File(wcPath + "/.git")).build();
+        repository.create(false);
+    }
+
+    @After
+    public void after() {
+        repository.close();
+        support.Files.rm_rf(new File(GitRepository.getRepoPrefix()));
+    }
+
+    @Test
+    public void update() throws Exception {
+        // Given
+        RevCommit first = support.Git.commit(repository, wcPath, "a.txt", "a", "commit a");
+        RevCommit second = support.Git.commit(repository, wcPath, "dir/b.txt", "b", "commit b");
+
+        // When
+        CommitGraph graph = CommitGraph.of(repository).update(Arrays.asList(second));
+
+        // Then
+        assertThat(graph.size()).isEqualTo(2);
+        assertThat(graph.contains(first)).isTrue();
+        assertThat(CommitGraph.of(repository).contains(second)).isTrue();
+        assertThat(graph.mightChange(second, "dir")).isTrue();
+        assertThat(graph.mightChange(second, "dir/b.txt")).isTrue();
+        assertThat(graph.mightChange(second, "a.txt")).isFalse();
+    }
+
+    @Test
+    public void updateAppendsNewCommits() throws Exception {
+        // Given
+        RevCommit first = support.Git.commit(repository, wcPath, "a.txt", "a", "commit a");
+        CommitGraph.of(repository).update(Arrays.asList(first));
+        File file = new File(repository.getDirectory(), "yobi/commit-graph");
+        long length = file.length();
+        RevCommit second = support.Git.commit(repository, wcPath, "a.txt", "aa", "modify a");
+
+        // When
+        CommitGraph.of(repository).update(Arrays.asList(second));
+
+        // Then
+        assertThat(file.length()).isGreaterThan(length);
+        CommitGraph graph = CommitGraph.of(repository);
+        assertThat(graph.size()).isEqualTo(2);
+        assertThat(graph.contains(first)).isTrue();
+        assertThat(graph.mightChange(second, "b.txt")).isFalse();
+    }
+
+    @Test
+    public void findChangingCommits() throws Exception {
+        // Given
+        RevCommit first = support.Git.commit(repository, wcPath, "a.txt", "a", "commit a");
+        support.Git.commit(repository, wcPath, "b.txt", "b", "commit b");
+        RevCommit third = support.Git.commit(repository, wcPath, "a.txt", "aa", "modify a");
+        support.Git.commit(repository, wcPath, "b.txt", "bb", "modify b");
+        CommitGraph graph = CommitGraph.of(repository).update(Arrays.asList(repository.resolve("HEAD")));
+
+        // When
+        RevWalk revWalk = new RevWalk(repository);
+        List<RevCommit> commits = graph.findChangingCommits(
+                revWalk, repository.resolve("HEAD"), "a.txt", 0, Integer.MAX_VALUE);
+        revWalk.release();
+
+        // Then
+        assertThat(commits.size()).isEqualTo(2);
+        assertThat(commits.get(0).getId()).isEqualTo(third.getId());
+        assertThat(commits.get(1).getId()).isEqualTo(first.getId());
+    }
+
+    @Test
+    public void findOldestChangingCommit() throws Exception {
+        // Given
+        support.Git.commit(repository, wcPath, "b.txt", "b", "commit b");
+        RevCommit second = support.Git.commit(repository, wcPath, "a.txt", "a", "commit a");
+        support.Git.commit(repository, wcPath, "a.txt", "aa", "modify a");
+        CommitGraph graph = CommitGraph.of(repository);
+
+        // When
+        RevWalk revWalk = new RevWalk(repository);
+        RevCommit oldest = graph.findOldestChangingCommit(revWalk, repository.resolve("HEAD"), "a.txt");
+        RevCommit none = graph.findOldestChangingCommit(revWalk, repository.resolve("HEAD"), "c.txt");
+        revWalk.release();
+
+        // Then
+        assertThat(oldest.getId()).isEqualTo(second.getId());
+        assertThat(none).isNull();
+    }
+
+    @Test
+    public void isAncestor() throws Exception {
+        // Given
+        RevCommit first = support.Git.commit(repository, wcPath, "a.txt", "a", "commit a");
+        RevCommit second = support.Git.commit(repository, wcPath, "b.txt", "b", "commit b");
+        CommitGraph graph = CommitGraph.of(repository).update(Arrays.asList(second));
+
+        // Then
+        assertThat(graph.isAncestor(first, second)).isTrue();
+        assertThat(graph.isAncestor(second, first)).isFalse();
+    }
+}
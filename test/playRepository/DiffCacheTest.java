@@ -0,0 +1,52 @@
+package playRepository;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DiffCacheTest {
+    private Repository repository;
+    private String wcPath;
+
+    @Before
+    public void before() throws Exception {
+        GitRepository.setRepoPrefix("resources/test/repo/git/");
+        wcPath = GitRepository.getRepoPrefix() + "yobi/diffCache";
+        repository = new RepositoryBuilder().setGitDir(new File(wcPath + "/.git")).build();
+        repository.create(false);
+        DiffCache.invalidateAll();
+    }
+
+    @After
+    public void after() {
+        DiffCache.invalidateAll();
+        repository.close();
+        support.Files.rm_rf(new File(GitRepository.getRepoPrefix()));
+    }
+
+    @Test
+    public void getDiffReturnsCopiesOfCachedDiff() throws Exception {
+        // Given
+        RevCommit first = support.Git.commit(repository, wcPath, "a.txt", "a\n", "commit a");
+        RevCommit second = support.Git.commit(repository, wcPath, "a.txt", "a\nb\n", "modify a");
+
+        // When
+        List<FileDiff> computed = GitRepository.getDiff(repository, first.name(), second.name());
+        List<FileDiff> cached = GitRepository.getDiff(repository, first.name(), second.name());
+
+        // Then
+        assertThat(cached).isEqualTo(computed);
+        assertThat(cached.get(0)).isNotSameAs(computed.get(0));
+        assertThat(cached.get(0).commitA).isEqualTo(first.name());
+        assertThat(cached.get(0).commitB).isEqualTo(second.name());
+        assertThat(cached.get(0).blobB).isNotNull();
+    }
+}
@@ -0,0 +1,109 @@
+package playRepository;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * {@link DiffEngine}을 순서대로 하나씩 비교할 때와 동시에 비교할 때의 시간을 비교한다.
+ *
+ * 파일 2000 개가 한 줄씩 바뀐 커밋을 만들고 각 방식으로 여러 번 비교한다. 시간이 오래 걸리므로 평소에는 실행하지
+ * 않는다. {@code @Ignore}를 지우고 실행하면 두 방식의 결과가 같은지 확인하고 걸린 시간을 로그로 남긴다.
+ */
+@Ignore("Benchmark; run manually")
+public class DiffEngineBenchmark {
+    private static final int FILES = GitRepository.DIFF_FILE_LIMIT;
+    private static final int LINES = 300;
+    private static final int ROUNDS = 5;
+
+    private Repository repository;
+    private String wcPath;
+    private DiffEngine serial;
+    private DiffEngine parallel;
+
+    @Before
+    public void before() throws Exception {
+        wcPath = "target/benchmark/diffEngine";
+        support.Files.rm_rf(new File(wcPath));
+        repository = new RepositoryBuilder().setGitDir(new File(wcPath + "/.git")).build();
+        repository.create(false);
+        serial = new DiffEngine(1);
+        parallel = new DiffEngine(Runtime.getRuntime().availableProcessors());
+    }
+
+    @After
+    public void after() {
+        serial.shutdown();
+        parallel.shutdown();
+        repository.close();
+        support.Files.rm_rf(new File(wcPath));
+    }
+
+    @Test
+    public void serialAndParallel() throws Exception {
+        // Given
+        RevCommit a = commitFiles(0);
+        RevCommit b = commitFiles(1);
+
+        // JIT 이 충분히 최적화하도록 한 번씩 먼저 실행한다.
+        List<FileDiff> expected = diff(serial, a, b);
+        List<FileDiff> actual = diff(parallel, a, b);
+
+        // When
+        long serialTime = 0, parallelTime = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            diff(serial, a, b);
+            serialTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            diff(parallel, a, b);
+            parallelTime += System.nanoTime() - start;
+        }
+
+        // Then
+        assertThat(actual).isEqualTo(expected);
+        play.Logger.info(String.format("DiffEngineBenchmark: %d files, %d lines per file, serial %d ms, "
+                + "parallel %d ms, speedup %.2fx", FILES, LINES, serialTime / ROUNDS / 1000000,
+                parallelTime / ROUNDS / 1000000, (double) serialTime / Math.max(1, parallelTime)));
+    }
+
+    private List<FileDiff> diff(DiffEngine engine, RevCommit a, RevCommit b) throws Exception {
+        List<FileDiff> candidates = GitRepository.getDiffPage(repository, a.name(), repository,
+                b.name(), 0, Integer.MAX_VALUE).getDiffs();
+        return engine.diff(candidates, repository, repository, DiffAlgorithm.SupportedAlgorithm.HISTOGRAM);
+    }
+
+    /*
+     * 파일마다 revision 에 따라 한 줄씩 바뀌도록 내용을 만들어 커밋한다. 대부분의 파일이 전체 크기 제한에 걸리지
+     * 않고 비교되도록 바뀌는 줄을 적게 한다.
+     */
+    private RevCommit commitFiles(int revision) throws Exception {
+        for (int i = 0; i < FILES; i++) {
+            File file = new File(wcPath + "/" + (i % 20) + "/" + i + ".txt");
+            file.getParentFile().mkdirs();
+            BufferedWriter out = new BufferedWriter(new FileWriter(file));
+            for (int j = 0; j < LINES; j++) {
+                boolean changed = j == i % LINES;
+                out.write("line " + j + " of file " + i + (changed ? " revision " + revision : "") + "\n");
+            }
+            out.close();
+        }
+        Git git = new Git(repository);
+        git.add().addFilepattern(".").call();
+        return git.commit().setMessage("revision " + revision).call();
+    }
+}
@@ -0,0 +1,107 @@
+package playRepository;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DiffEngineTest {
+    private Repository repository;
+    private String wcPath;
+    private DiffEngine serial;
+    private DiffEngine parallel;
+
+    @Before
+    public void before() throws Exception {
+        GitRepository.setRepoPrefix("resources/test/repo/git/");
+        wcPath = GitRepository.getRepoPrefix() + "yobi/diffEngine";
+        repository = new RepositoryBuilder().setGitDir(new File(wcPath + "/.git")).build();
+        repository.create(false);
+        serial = new DiffEngine(1);
+        parallel = new DiffEngine(4);
+    }
+
+    @After
+    public void after() {
+        serial.shutdown();
+        parallel.shutdown();
+        repository.close();
+        support.Files.rm_rf(new File(GitRepository.getRepoPrefix()));
+    }
+
+    @Test
+    public void parallelDiffIsSameAsSerialDiff() throws Exception {
+        // Given
+        RevCommit first = commitFiles(60, 200, "old");
+        RevCommit second = commitFiles(60, 200, "new");
+
+        // When
+        List<FileDiff> expected = diff(serial, first, second);
+        List<FileDiff> actual = diff(parallel, first, second);
+
+        // Then
+        assertThat(actual).hasSize(expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            FileDiff e = expected.get(i);
+            FileDiff a = actual.get(i);
+            assertThat(a.pathB).isEqualTo(e.pathB);
+            assertThat(a.editList).isEqualTo(e.editList);
+            assertThat(a.b == null).isEqualTo(e.b == null);
+            assertThat(a.hasError(FileDiff.Error.OTHERS_SIZE_EXCEEDED))
+                    .describedAs(a.pathB).isEqualTo(e.hasError(FileDiff.Error.OTHERS_SIZE_EXCEEDED));
+        }
+    }
+
+    @Test
+    public void filesAfterTheBudgetAreNotLoaded() throws Exception {
+        // Given
+        RevCommit first = commitFiles(60, 200, "old");
+        RevCommit second = commitFiles(60, 200, "new");
+
+        // When
+        List<FileDiff> diffs = diff(parallel, first, second);
+
+        // Then
+        FileDiff head = diffs.get(0);
+        FileDiff tail = diffs.get(diffs.size() - 1);
+        assertThat(head.hasError()).isFalse();
+        assertThat(head.editList).isNotNull();
+        assertThat(tail.hasError(FileDiff.Error.OTHERS_SIZE_EXCEEDED)).isTrue();
+        assertThat(tail.a).isNull();
+        assertThat(tail.b).isNull();
+        assertThat(tail.editList).isNull();
+    }
+
+    private List<FileDiff> diff(DiffEngine engine, RevCommit a, RevCommit b) throws IOException {
+        List<FileDiff> candidates = GitRepository.getDiffPage(repository, a.name(), repository,
+                b.name(), 0, Integer.MAX_VALUE).getDiffs();
+        return engine.diff(candidates, repository, repository,
+                DiffAlgorithm.SupportedAlgorithm.HISTOGRAM);
+    }
+
+    private RevCommit commitFiles(int files, int lines, String prefix) throws Exception {
+        for (int i = 0; i < files; i++) {
+            BufferedWriter out = new BufferedWriter(new FileWriter(
+                    wcPath + "/" + String.format("%03d", i) + ".txt"));
+            for (int j = 0; j < lines; j++) {
+                out.write(prefix + " " + i + " " + j + "\n");
+            }
+            out.close();
+        }
+        Git git = new Git(repository);
+        git.add().addFilepattern(".").call();
+        return git.commit().setMessage(prefix).call();
+    }
+}
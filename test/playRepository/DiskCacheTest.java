@@ -0,0 +1,119 @@
+package playRepository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DiskCacheTest {
+    private File directory;
+
+    @Before
+    public void before() {
+        directory = new File("resources/test/diskCache").getAbsoluteFile();
+        directory.mkdirs();
+    }
+
+    @After
+    public void after() {
+        support.Files.rm_rf(directory);
+    }
+
+    @Test
+    public void write() throws Exception {
+        // Given
+        DiskCache cache = new DiskCache("test", 1024);
+        File file = new File(directory, "a");
+
+        // When
+        boolean written = cache.write(file, content(10));
+
+        // Then
+        assertThat(written).isTrue();
+        assertThat(cache.get(file)).isEqualTo(file);
+        assertThat(cache.getSize()).isEqualTo(10);
+    }
+
+    @Test
+    public void writeDiscardsFileInvalidatedWhileWriting() throws Exception {
+        // Given
+        final DiskCache cache = new DiskCache("test", 1024);
+        File file = new File(directory, "a");
+
+        // When
+        boolean written = cache.write(file, new TransportExecutor.StreamWriter() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                output.write(new byte[10]);
+                cache.invalidate(directory);
+            }
+        });
+
+        // Then
+        assertThat(written).isFalse();
+        assertThat(file.exists()).isFalse();
+        assertThat(cache.get(file)).isNull();
+        assertThat(directory.list()).isEmpty();
+    }
+
+    @Test
+    public void evictDeletesFile() throws Exception {
+        // Given
+        DiskCache cache = new DiskCache("test", 15);
+        File first = new File(directory, "a");
+        File second = new File(directory, "b");
+
+        // When
+        cache.write(first, content(10));
+        cache.write(second, content(10));
+
+        // Then
+        assertThat(first.exists()).isFalse();
+        assertThat(second.exists()).isTrue();
+        assertThat(cache.getSize()).isEqualTo(10);
+    }
+
+    @Test
+    public void indexEnforcesMaxSizeAfterRestart() throws Exception {
+        // Given
+        File old = new File(directory, "old");
+        File recent = new File(new File(directory, "sub"), "recent");
+        createFile(old, 10);
+        createFile(recent, 10);
+        old.setLastModified(recent.lastModified() - 60000);
+
+        // When
+        DiskCache cache = new DiskCache("test", 15);
+        cache.index(directory);
+
+        // Then
+        assertThat(old.exists()).isFalse();
+        assertThat(recent.exists()).isTrue();
+        assertThat(cache.getSize()).isEqualTo(10);
+    }
+
+    private TransportExecutor.StreamWriter content(final int size) {
+        return new TransportExecutor.StreamWriter() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                output.write(new byte[size]);
+            }
+        };
+    }
+
+    private void createFile(File file, int size) throws IOException {
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[size]);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package playRepository;
+
+import org.eclipse.jgit.lib.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class GitRepositoryCacheTest {
+    private File gitDir;
+    private File alternateObjectDir;
+
+    @Before
+    public void before() {
+        GitRepository.setRepoPrefix("resources/test/repo/git/");
+        gitDir = new File(GitRepository.getGitDirectory("yobi", "cache"));
+        alternateObjectDir = new File(GitRepository.getDirectoryForMergingObjects("yobi", "cache"));
+    }
+
+    @After
+    public void after() {
+        GitRepositoryCache.invalidateAll();
+        support.Files.rm_rf(new File(GitRepository.getRepoPrefix()));
+    }
+
+    @Test
+    public void getReturnsSharedRepository() throws Exception {
+        // Given
+        createRepository();
+        long hitCount = GitRepositoryCache.getHitCount();
+
+        // When
+        Repository first = GitRepositoryCache.get(gitDir, alternateObjectDir);
+        Repository second = GitRepositoryCache.get(gitDir, alternateObjectDir);
+
+        // Then
+        assertThat(second).isSameAs(first);
+        assertThat(GitRepositoryCache.getHitCount()).isEqualTo(hitCount + 1);
+    }
+
+    @Test
+    public void closeDoesNotCloseCachedRepository() throws Exception {
+        // Given
+        createRepository();
+        Repository first = GitRepositoryCache.get(gitDir, alternateObjectDir);
+
+        // When
+        first.close();
+        first.close();
+        Repository second = GitRepositoryCache.get(gitDir, alternateObjectDir);
+
+        // Then
+        assertThat(second).isSameAs(first);
+        assertThat(second.getObjectDatabase().exists()).isTrue();
+    }
+
+    @Test
+    public void invalidate() throws Exception {
+        // Given
+        createRepository();
+        Repository before = GitRepositoryCache.get(gitDir, alternateObjectDir);
+
+        // When
+        GitRepositoryCache.invalidate(gitDir);
+        Repository after = GitRepositoryCache.get(gitDir, alternateObjectDir);
+
+        // Then
+        assertThat(after).isNotSameAs(before);
+    }
+
+    @Test
+    public void reopenRecreatedRepository() throws Exception {
+        // Given
+        createRepository();
+        Repository before = GitRepositoryCache.get(gitDir, alternateObjectDir);
+        support.Files.rm_rf(gitDir);
+
+        // When
+        Repository after = GitRepositoryCache.get(gitDir, alternateObjectDir);
+
+        // Then
+        assertThat(after).isNotSameAs(before);
+    }
+
+    private void createRepository() throws Exception {
+        Repository repository = GitRepositoryCache.get(gitDir, alternateObjectDir);
+        repository.create(true);
+    }
+}
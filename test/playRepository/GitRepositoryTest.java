@@ -9,6 +9,7 @@ import org.apache.commons.io.FileUtils;
 import org.codehaus.jackson.node.ObjectNode;
 import org.eclipse.jgit.api.CommitCommand;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeResult;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.NoFilepatternException;
 import org.eclipse.jgit.lib.*;
@@ -26,11 +27,14 @@ import play.test.FakeApplication;
 import play.test.Helpers;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.fest.assertions.Fail.fail;
@@ -116,6 +120,78 @@ public class GitRepositoryTest {
         assertThat(patch).contains("+hello 1hello 2");
     }
 
+    @Test
+    public void writeFormatPatch() throws IOException, GitAPIException {
+        // given
+        String wcPath = GitRepository.getRepoPrefix() + "yobi/testProject";
+        Repository repo = new RepositoryBuilder().setGitDir(new File(wcPath + "/.git")).build();
+        repo.create(false);
+
+        Git git = new Git(repo);
+        BufferedWriter out = new BufferedWriter(new FileWriter(wcPath + "/readme.txt"));
+        out.write("hello 1");
+        out.flush();
+        git.add().addFilepattern("readme.txt").call();
+        RevCommit first = git.commit().setMessage("commit 1").call();
+        out.write("hello 2");
+        out.flush();
+        git.add().addFilepattern("readme.txt").call();
+        git.commit().setMessage("commit 2\n\nsecond line").call();
+        out.write("hello 3");
+        out.close();
+        git.add().addFilepattern("readme.txt").call();
+        RevCommit last = git.commit().setMessage("commit 3").call();
+
+        // when
+        ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        GitRepository.writeFormatPatch(repo, first, last, patch);
+        ByteArrayOutputStream diff = new ByteArrayOutputStream();
+        GitRepository.writeDiff(repo, last, diff);
+
+        // then
+        String formatPatch = patch.toString("UTF-8");
+        assertThat(formatPatch).startsWith("From ");
+        assertThat(formatPatch).contains("Subject: [PATCH 1/2] commit 2\n\nsecond line\n---\n");
+        assertThat(formatPatch).contains("Subject: [PATCH 2/2] commit 3");
+        assertThat(formatPatch.indexOf("[PATCH 1/2]")).isLessThan(formatPatch.indexOf("[PATCH 2/2]"));
+        assertThat(formatPatch).doesNotContain("commit 1");
+        assertThat(diff.toString("UTF-8")).contains("-hello 1hello 2");
+        assertThat(diff.toString("UTF-8")).contains("+hello 1hello 2hello 3");
+
+        // cleanup
+        repo.close();
+    }
+
+    @Test
+    public void writeFormatPatchWithBinaryFile() throws Exception {
+        // given
+        String wcPath = GitRepository.getRepoPrefix() + "yobi/testProject";
+        Repository repo = new RepositoryBuilder().setGitDir(new File(wcPath + "/.git")).build();
+        repo.create(false);
+
+        Git git = new Git(repo);
+        RevCommit first = support.Git.commit(repo, wcPath, "readme.txt", "hello", "commit 1");
+        FileUtils.writeByteArrayToFile(new File(wcPath + "/image.bin"), new byte[]{0, 1, 2, 3});
+        git.add().addFilepattern("image.bin").call();
+        RevCommit last = git.commit().setAuthor(new PersonIdent("홍길동", "hong@yobi.io"))
+                .setMessage("이미지 추가").call();
+
+        // when
+        ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        GitRepository.writeFormatPatch(repo, first, last, patch);
+
+        // then
+        String formatPatch = patch.toString("UTF-8");
+        assertThat(formatPatch).contains("From: =?UTF-8?q?=ED=99=8D=EA=B8=B8=EB=8F=99?= <hong@yobi.io>\n");
+        assertThat(formatPatch).contains("Subject: [PATCH] =?UTF-8?q?=EC=9D=B4=EB=AF=B8=EC=A7=80_=EC=B6=94=EA=B0=80?=\n");
+        assertThat(formatPatch).contains("new file mode 100644\nindex " + ObjectId.zeroId().name() + "..");
+        assertThat(formatPatch).contains("GIT binary patch\nliteral 4\n");
+        assertThat(formatPatch).doesNotContain("Binary files differ");
+
+        // cleanup
+        repo.close();
+    }
+
     @Test
     public void getHistory() throws IOException, GitAPIException {
         // given
@@ -171,6 +247,83 @@ public class GitRepositoryTest {
         assertThat(tagHistory2.get(1).getMessage()).isEqualTo("commit 1");
     }
 
+    @Test
+    public void getHistoryPage() throws Exception {
+        // given
+        String userName = "yobi";
+        String projectName = "testProject";
+        String wcPath = GitRepository.getRepoPrefix() + userName + "/" + projectName;
+
+        Repository repo = new RepositoryBuilder().setGitDir(new File(wcPath + "/.git")).build();
+        repo.create(false);
+
+        support.Git.commit(repo, wcPath, "readme.txt", "hello 1", "commit 1");
+        support.Git.commit(repo, wcPath, "other.txt", "hello", "commit 2");
+        support.Git.commit(repo, wcPath, "readme.txt", "hello 3", "commit 3");
+
+        GitRepository gitRepo = new GitRepository(userName, projectName + "/");
+
+        // when
+        HistoryPage first = gitRepo.getHistoryPage(null, 2, null, null);
+        HistoryPage second = gitRepo.getHistoryPage(first.getNextCursor(), 2, null, null);
+        HistoryPage readme = gitRepo.getHistoryPage(null, 5, null, "readme.txt");
+
+        // then
+        assertThat(first.getCommits().size()).isEqualTo(2);
+        assertThat(first.getCommits().get(0).getMessage()).isEqualTo("commit 3");
+        assertThat(first.getCommits().get(1).getMessage()).isEqualTo("commit 2");
+        assertThat(first.getNextCursor()).isNotNull();
+
+        assertThat(second.getCommits().size()).isEqualTo(1);
+        assertThat(second.getCommits().get(0).getMessage()).isEqualTo("commit 1");
+        assertThat(second.getNextCursor()).isNull();
+
+        assertThat(readme.getCommits().size()).isEqualTo(2);
+        assertThat(readme.getCommits().get(0).getMessage()).isEqualTo("commit 3");
+        assertThat(readme.getCommits().get(1).getMessage()).isEqualTo("commit 1");
+    }
+
+    @Test
+    public void getHistoryPage_prevCursor() throws Exception {
+        // given
+        String userName = "yobi";
+        String projectName = "testProject";
+        String wcPath = GitRepository.getRepoPrefix() + userName + "/" + projectName;
+
+        Repository repo = new RepositoryBuilder().setGitDir(new File(wcPath + "/.git")).build();
+        repo.create(false);
+
+        support.Git.commit(repo, wcPath, "readme.txt", "hello 1", "commit 1");
+        support.Git.commit(repo, wcPath, "other.txt", "hello", "commit 2");
+        support.Git.commit(repo, wcPath, "readme.txt", "hello 3", "commit 3");
+        support.Git.commit(repo, wcPath, "other.txt", "hello 4", "commit 4");
+        support.Git.commit(repo, wcPath, "readme.txt", "hello 5", "commit 5");
+
+        GitRepository gitRepo = new GitRepository(userName, projectName + "/");
+
+        // when
+        HistoryPage first = gitRepo.getHistoryPage(null, 2, null, null);
+        HistoryPage second = gitRepo.getHistoryPage(first.getNextCursor(), 2, null, null);
+        HistoryPage third = gitRepo.getHistoryPage(second.getNextCursor(), 2, null, null);
+        HistoryPage backToSecond = gitRepo.getHistoryPage(third.getPrevCursor(), 2, null, null);
+        HistoryPage readme = gitRepo.getHistoryPage(null, 1, null, "readme.txt");
+        HistoryPage readme2 = gitRepo.getHistoryPage(readme.getNextCursor(), 1, null, "readme.txt");
+        HistoryPage readme3 = gitRepo.getHistoryPage(readme2.getNextCursor(), 1, null, "readme.txt");
+        HistoryPage readmeBack = gitRepo.getHistoryPage(readme3.getPrevCursor(), 1, null, "readme.txt");
+
+        // then
+        assertThat(first.getPrevCursor()).isNull();
+        assertThat(third.getCommits().get(0).getMessage()).isEqualTo("commit 1");
+        assertThat(backToSecond.getCommits().size()).isEqualTo(2);
+        assertThat(backToSecond.getCommits().get(0).getMessage()).isEqualTo("commit 3");
+        assertThat(backToSecond.getCommits().get(1).getMessage()).isEqualTo("commit 2");
+        assertThat(backToSecond.getNextCursor()).isEqualTo(second.getNextCursor());
+
+        assertThat(readme3.getCommits().get(0).getMessage()).isEqualTo("commit 1");
+        assertThat(readmeBack.getCommits().size()).isEqualTo(1);
+        assertThat(readmeBack.getCommits().get(0).getMessage()).isEqualTo("commit 3");
+    }
+
     @Test
     public void cloneRepository() throws Exception {
         // Given
@@ -346,7 +499,7 @@ public class GitRepositoryTest {
         String branchName = "refs/heads/master";
         newCommit(original, repository, "readme.md", "Hello World", "Initial commit");
         git.branchCreate().setName("develop").setForce(true).call();
-        GitRepository.checkout(repository, "develop");
+        git.checkout().setName("develop").call();
 
         // When
         GitRepository.deleteBranch(repository, branchName);
@@ -404,63 +557,99 @@ public class GitRepositoryTest {
         return commitCommand.call();
     }
 
+    /*
+     * 작업 디렉토리를 거치지 않고 {@code pathsAndContents}의 파일들로 이루어진 커밋을 만든다. 브랜치는 바꾸지 않는다.
+     */
+    private RevCommit commitInCore(Repository repository, String message, RevCommit parent,
+            String... pathsAndContents) throws IOException {
+        ObjectInserter inserter = repository.newObjectInserter();
+        try {
+            Map<String, ObjectId> blobs = new TreeMap<>();
+            for (int i = 0; i < pathsAndContents.length; i += 2) {
+                blobs.put(pathsAndContents[i], inserter.insert(Constants.OBJ_BLOB,
+                        Constants.encode(pathsAndContents[i + 1])));
+            }
+            TreeFormatter tree = new TreeFormatter();
+            for (Map.Entry<String, ObjectId> blob : blobs.entrySet()) {
+                tree.append(blob.getKey(), FileMode.REGULAR_FILE, blob.getValue());
+            }
+
+            CommitBuilder commit = new CommitBuilder();
+            PersonIdent ident = new PersonIdent("yobi", "yobi@yobi.io");
+            commit.setAuthor(ident);
+            commit.setCommitter(ident);
+            commit.setMessage(message);
+            commit.setTreeId(inserter.insert(tree));
+            if (parent != null) {
+                commit.setParentId(parent);
+            }
+            ObjectId commitId = inserter.insert(commit);
+            inserter.flush();
+            return new RevWalk(repository).parseCommit(commitId);
+        } finally {
+            inserter.release();
+        }
+    }
+
     @Test
-    public void checkout() throws IOException, GitAPIException {
+    public void mergeInCore() throws IOException, GitAPIException {
         // Given
         Project original = createProject("keesun", "test");
         PullRequest pullRequest = createPullRequest(original);
         new GitRepository(original).create();
         Repository repository = GitRepository.buildMergingRepository(pullRequest);
-        // 커밋이 없으면 HEAD도 없어서 브랜치 만들 때 에러가 발생하기 때문에 일단 하나 커밋한다.
-        newCommit(original, repository, "readme.md", "hello 1", "commit 1");
 
-        Git git = new Git(repository);
-        String branchName = "new-branch";
-        git.branchCreate()
-                .setName(branchName)
-                .setForce(true)
-                .call();
+        RevCommit base = commitInCore(repository, "commit 1", null, "readme.md", "hello 1");
+        RevCommit theirs = commitInCore(repository, "commit 2", base, "readme.md", "hello 1", "hello.md", "hello 2");
+        RevCommit ours = commitInCore(repository, "commit 3", base, "readme.md", "hello 3");
+        RefUpdate master = repository.updateRef(Constants.R_HEADS + Constants.MASTER);
+        master.setNewObjectId(ours);
+        master.forceUpdate();
+        ObjectId head = repository.resolve(Constants.HEAD);
 
         // When
-        GitRepository.checkout(repository, branchName);
+        MergeResult result = GitRepository.merge(repository, ours, theirs,
+                new PersonIdent("yobi", "yobi@yobi.io"), "merge");
 
         // Then
-        assertThat(repository.getFullBranch()).isEqualTo("refs/heads/" + branchName);
+        assertThat(result.getMergeStatus()).isEqualTo(MergeResult.MergeStatus.MERGED);
+        RevCommit merged = new RevWalk(repository).parseCommit(result.getNewHead());
+        assertThat(merged.getParents()).containsOnly(ours, theirs);
+        assertThat(merged.getFullMessage()).isEqualTo("merge");
+        assertThat(TreeWalk.forPath(repository, "hello.md", merged.getTree())).isNotNull();
+        assertThat(repository.resolve(Constants.HEAD)).describedAs("HEAD is not moved").isEqualTo(head);
+
+        // When
+        MergeResult upToDate = GitRepository.merge(repository, ours, base,
+                new PersonIdent("yobi", "yobi@yobi.io"), "merge");
+
+        // Then
+        assertThat(upToDate.getMergeStatus()).isEqualTo(MergeResult.MergeStatus.ALREADY_UP_TO_DATE);
+
+        repository.close();
     }
 
     @Test
-    public void merge() throws IOException, GitAPIException {
+    public void mergeInCore_conflict() throws IOException, GitAPIException {
         // Given
         Project original = createProject("keesun", "test");
         PullRequest pullRequest = createPullRequest(original);
-        GitRepository gitRepository = new GitRepository(original);
-        gitRepository.create();
+        new GitRepository(original).create();
         Repository repository = GitRepository.buildMergingRepository(pullRequest);
 
-        // master에 commit 1 추가
-        newCommit(original, repository, "readme.md", "hello 1", "commit 1");
-        // new-branch 생성
-        Git git = new Git(repository);
-        String branchName = "new-branch";
-        git.branchCreate()
-                .setName(branchName)
-                .setForce(true)
-                .call();
-        // new-branch 로 이동
-        GitRepository.checkout(repository, branchName);
-        // new-branch에 commit 2 추가
-        String fileName = "hello.md";
-        String content = "hello 2";
-        newCommit(original, repository, fileName, content, "commit 2");
-
-        // master 로 이동
-        GitRepository.checkout(repository, "master");
+        RevCommit base = commitInCore(repository, "commit 1", null, "readme.md", "hello 1");
+        RevCommit theirs = commitInCore(repository, "commit 2", base, "readme.md", "hello 2");
+        RevCommit ours = commitInCore(repository, "commit 3", base, "readme.md", "hello 3");
+
         // When
-        GitRepository.merge(repository, branchName);
+        MergeResult result = GitRepository.merge(repository, ours, theirs,
+                new PersonIdent("yobi", "yobi@yobi.io"), "merge");
+
         // Then
-        assertThat(new String(getRawFile(repository, fileName))).isEqualTo(content);
+        assertThat(result.getMergeStatus()).isEqualTo(MergeResult.MergeStatus.CONFLICTING);
+        assertThat(result.getNewHead()).isNull();
+        assertThat(new GitConflicts(repository, result).conflictFiles).containsOnly("readme.md");
 
-        gitRepository.close();
         repository.close();
     }
 
@@ -489,6 +678,34 @@ public class GitRepositoryTest {
         originalRepo.close();
     }
 
+    @Test
+    public void push_rejected() throws IOException, GitAPIException {
+        // Given
+        Project original = createProject("keesun", "test");
+        PullRequest pullRequest = createPullRequest(original);
+        new GitRepository(original).create();
+        Repository repository = GitRepository.buildMergingRepository(pullRequest);
+        String remote = GitRepository.getGitDirectoryURL(original);
+        RevCommit pushed = commitInCore(repository, "commit 1", null, "readme.md", "hello 1");
+        RevCommit diverged = commitInCore(repository, "commit 2", null, "readme.md", "hello 2");
+        GitRepository.push(repository, remote, pushed.name(), Constants.R_HEADS + Constants.MASTER);
+
+        // When
+        try {
+            GitRepository.push(repository, remote, diverged.name(), Constants.R_HEADS + Constants.MASTER);
+            fail("non fast-forward push must fail");
+        } catch (IllegalStateException expected) {
+            // Then
+            Repository originalRepo = new RepositoryBuilder()
+                    .setGitDir(new File(GitRepository.getGitDirectory(original)))
+                    .build();
+            assertThat(originalRepo.resolve(Constants.R_HEADS + Constants.MASTER)).isEqualTo(pushed);
+            originalRepo.close();
+        }
+
+        repository.close();
+    }
+
     @Test
     public void isFile() throws Exception {
         // Given
@@ -637,9 +854,6 @@ public class GitRepositoryTest {
             @Override
             public void invoke(GitRepository.CloneAndFetch cloneAndFetch) throws IOException, GitAPIException {
                 Repository repo = cloneAndFetch.getRepository();
-                // 현재 위치가 코드를 merging하는 브랜치 인지 확인한다.
-                String fullBranch = repo.getFullBranch();
-                assertThat(fullBranch).isEqualTo(cloneAndFetch.getMergingBranchName());
 
                 List<Ref> refs = new Git(repo).branchList().call();
                 String fromBranchObjectId = null;
@@ -659,6 +873,8 @@ public class GitRepositoryTest {
                 ObjectId toObjectId = repo.resolve(cloneAndFetch.getDestToBranchName());
                 assertThat(fromObjectId.getName()).isEqualTo(fromBranchObjectId);
                 assertThat(toObjectId.getName()).isEqualTo(toBranchObjectId);
+                assertThat(cloneAndFetch.getFromHead()).isEqualTo(fromObjectId);
+                assertThat(cloneAndFetch.getToHead()).isEqualTo(toObjectId);
             }
         });
     }
@@ -854,4 +1070,56 @@ public class GitRepositoryTest {
         assertThat(diff.hasError(FileDiff.Error.OTHERS_SIZE_EXCEEDED))
             .describedAs("The others exceeds the size limit.").isTrue();
     }
+
+    @Test
+    public void getDiffPage() throws IOException, GitAPIException {
+        // given
+        String userName = "yobi";
+        String projectName = "testProject";
+        String wcPath = GitRepository.getRepoPrefix() + userName + "/" + projectName;
+
+        String repoPath = wcPath + "/.git";
+        File repoDir = new File(repoPath);
+        Repository repo = new RepositoryBuilder().setGitDir(repoDir).build();
+        repo.create(false);
+
+        Git git = new Git(repo);
+        RevCommit first = support.Git.commit(repo, wcPath, "readme.txt", "hello", "commit 1");
+        for(int i = 0; i < 5; i++) {
+            String testFilePath = wcPath + "/" + i + ".txt";
+            BufferedWriter out = new BufferedWriter(new FileWriter(testFilePath));
+            out.write("file " + i + "\n");
+            out.close();
+            git.add().addFilepattern(i + ".txt").call();
+        }
+        RevCommit second = git.commit().setMessage("commit 2").call();
+
+        // When
+        FileDiffPage page = GitRepository.getDiffPage(repo, first.getName(), repo,
+                second.getName(), 2, 2);
+
+        // Then
+        assertThat(page.getTotalCount()).isEqualTo(5);
+        assertThat(page.getOffset()).isEqualTo(2);
+        assertThat(page.getNextOffset()).isEqualTo(4);
+        assertThat(page.getDiffs()).hasSize(2);
+
+        FileDiff diff = page.getDiffs().get(0);
+        assertThat(diff.pathB).isEqualTo("2.txt");
+        assertThat(diff.isLoaded()).describedAs("not loaded until needed").isFalse();
+        assertThat(diff.b).isNull();
+
+        diff.load();
+        assertThat(diff.isLoaded()).isTrue();
+        assertThat(diff.b).isNotNull();
+        assertThat(diff.b.getString(0)).isEqualTo("file 2");
+
+        // When
+        FileDiffPage last = GitRepository.getDiffPage(repo, first.getName(), repo,
+                second.getName(), 4, 2);
+
+        // Then
+        assertThat(last.getDiffs()).hasSize(1);
+        assertThat(last.hasNext()).isFalse();
+    }
 }
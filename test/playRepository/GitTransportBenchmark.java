@@ -0,0 +1,172 @@
+package playRepository;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import play.test.TestServer;
+import utils.ChunkPipe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Git smart HTTP 로 clone 할 때의 처리량을 잰다.
+ *
+ * 내용이 무작위인 1MB 파일들로 이루어진 저장소를 만들고, 테스트 서버를 띄워서 HTTP 로 clone 한다. 응답을 넘겨주는
+ * 파이프만의 처리량도 {@link java.io.PipedInputStream}과 {@link ChunkPipe}로 각각 잰다. 시간이 오래 걸리므로
+ * 평소에는 실행하지 않는다. {@code @Ignore}를 지우고 실행하면 모두 제대로 전달되었는지 확인하고 처리량을 로그로
+ * 남긴다.
+ */
+@Ignore("Benchmark; run manually")
+public class GitTransportBenchmark {
+    private static final int FILE_SIZE = 1024 * 1024;
+    private static final int MEGABYTES = 1024;
+    private static final int PORT = 19001;
+    private static final String PREFIX = "target/benchmark/transport/";
+
+    @Before
+    public void before() {
+        support.Files.rm_rf(new File(PREFIX));
+        GitRepository.setRepoPrefix(PREFIX + "repo/git/");
+    }
+
+    @After
+    public void after() {
+        support.Files.rm_rf(new File(PREFIX));
+    }
+
+    @Test
+    public void pipes() throws Exception {
+        // Given
+        PipedInputStream piped = new PipedInputStream();
+        ChunkPipe chunkPipe = new ChunkPipe();
+
+        // When
+        long pipedTime = transfer(piped, new PipedOutputStream(piped));
+        long chunkTime = transfer(chunkPipe.source(), chunkPipe.sink());
+
+        // Then
+        play.Logger.info(String.format("GitTransportBenchmark: PipedInputStream %.1f MB/s, ChunkPipe %.1f MB/s",
+                MEGABYTES * 1000.0 / pipedTime, MEGABYTES * 1000.0 / chunkTime));
+    }
+
+    @Test
+    public void cloneOverHttp() throws Exception {
+        // Given
+        Repository repository = new RepositoryBuilder()
+                .setGitDir(new File(GitRepository.getGitDirectory("yobi", "projectYobi"))).build();
+        repository.create(true);
+        ObjectId head;
+        try {
+            head = generate(repository);
+        } finally {
+            repository.close();
+        }
+
+        TestServer server = play.test.Helpers.testServer(PORT, support.Helpers.makeTestApplication());
+        server.start();
+        Repository clone = null;
+        try {
+            // When
+            long start = System.currentTimeMillis();
+            clone = Git.cloneRepository()
+                    .setURI("http://127.0.0.1:" + PORT + "/yobi/projectYobi")
+                    .setDirectory(new File(PREFIX + "clone"))
+                    .setBare(true)
+                    .call()
+                    .getRepository();
+            long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+            // Then
+            assertThat(clone.resolve(Constants.R_HEADS + Constants.MASTER)).isEqualTo(head);
+            play.Logger.info(String.format("GitTransportBenchmark: clone %d MB over HTTP in %d ms, %.1f MB/s",
+                    MEGABYTES, elapsed, MEGABYTES * 1000.0 / elapsed));
+        } finally {
+            if (clone != null) {
+                clone.close();
+            }
+            server.stop();
+            TransportExecutor.fetch().shutdown();
+            TransportExecutor.push().shutdown();
+        }
+    }
+
+    /*
+     * 1MB 파일 MEGABYTES 개를 한 커밋으로 만들고 그 커밋의 ID 를 반환한다. 압축되지 않도록 내용은 무작위로 채운다.
+     */
+    private static ObjectId generate(Repository repository) throws IOException {
+        Random random = new Random(0);
+        byte[] content = new byte[FILE_SIZE];
+        ObjectInserter inserter = repository.newObjectInserter();
+        try {
+            TreeFormatter tree = new TreeFormatter();
+            for (int i = 0; i < MEGABYTES; i++) {
+                random.nextBytes(content);
+                tree.append(String.format("file-%06d", i), FileMode.REGULAR_FILE,
+                        inserter.insert(Constants.OBJ_BLOB, content));
+            }
+
+            CommitBuilder commit = new CommitBuilder();
+            PersonIdent ident = new PersonIdent("benchmark", "benchmark@localhost");
+            commit.setAuthor(ident);
+            commit.setCommitter(ident);
+            commit.setMessage("Generated by " + GitTransportBenchmark.class.getSimpleName());
+            commit.setTreeId(inserter.insert(tree));
+            ObjectId commitId = inserter.insert(commit);
+            inserter.flush();
+
+            RefUpdate update = repository.updateRef(Constants.R_HEADS + Constants.MASTER);
+            update.setNewObjectId(commitId);
+            update.forceUpdate();
+            return commitId;
+        } finally {
+            inserter.release();
+        }
+    }
+
+    /*
+     * 한 스레드에서 8KB 씩 MEGABYTES 만큼 쓰고 다른 스레드에서 읽는 데 걸린 시간 (ms). 쓴 만큼 모두 읽었는지 확인한다.
+     */
+    private static long transfer(InputStream in, final OutputStream out) throws Exception {
+        final long total = (long) MEGABYTES * FILE_SIZE;
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[8192];
+                try {
+                    for (long written = 0; written < total; written += buffer.length) {
+                        out.write(buffer);
+                    }
+                    out.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        long start = System.currentTimeMillis();
+        writer.start();
+        byte[] buffer = new byte[ChunkPipe.DEFAULT_CHUNK_SIZE];
+        long read = 0;
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            read += n;
+        }
+        writer.join();
+        in.close();
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+        assertThat(read).isEqualTo(total);
+        return elapsed;
+    }
+}
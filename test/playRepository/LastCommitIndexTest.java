@@ -0,0 +1,134 @@
+package playRepository;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LastCommitIndexTest {
+    private Repository repository;
+    private String wcPath;
+
+    @Before
+    public void before() throws Exception {
+        GitRepository.setRepoPrefix("resources/test/repo/git/");
+        wcPath = GitRepository.getRepoPrefix() + "yobi/lastCommitIndex";
+        repository = new RepositoryBuilder().setGitDir(new File(wcPath + "/.git")).build();
+        repository.create(false);
+    }
+
+    @After
+    public void after() {
+        repository.close();
+        support.Files.rm_rf(new File(GitRepository.getRepoPrefix()));
+    }
+
+    @Test
+    public void find() throws Exception {
+        // Given
+        RevCommit first = support.Git.commit(repository, wcPath, "a.txt", "a", "commit a");
+        RevCommit second = support.Git.commit(repository, wcPath, "b.txt", "b", "commit b");
+
+        // When
+        Map<String, ObjectId> lastCommits = new LastCommitIndex(repository).find(second, "");
+
+        // Then
+        assertThat(lastCommits.get("a.txt")).isEqualTo(first.getId());
+        assertThat(lastCommits.get("b.txt")).isEqualTo(second.getId());
+    }
+
+    @Test
+    public void update() throws Exception {
+        // Given
+        LastCommitIndex index = new LastCommitIndex(repository);
+        RevCommit first = support.Git.commit(repository, wcPath, "a.txt", "a", "commit a");
+        RevCommit second = support.Git.commit(repository, wcPath, "b.txt", "b", "commit b");
+        index.update(ObjectId.zeroId(), second, "");
+        RevCommit third = support.Git.commit(repository, wcPath, "a.txt", "aa", "modify a");
+
+        // When
+        index.update(second, third, "");
+        Map<String, ObjectId> lastCommits = index.find(third, "");
+
+        // Then
+        assertThat(lastCommits.get("a.txt")).isEqualTo(third.getId());
+        assertThat(lastCommits.get("b.txt")).isEqualTo(second.getId());
+        assertThat(index.find(first, "").get("a.txt")).isEqualTo(first.getId());
+    }
+
+    @Test
+    public void updateChangedDirectories() throws Exception {
+        // Given
+        LastCommitIndex index = new LastCommitIndex(repository);
+        new File(wcPath, "src/main").mkdirs();
+        new File(wcPath, "docs").mkdirs();
+        RevCommit first = support.Git.commit(repository, wcPath, "docs/a.txt", "a", "commit a");
+        RevCommit second = support.Git.commit(repository, wcPath, "src/main/b.txt", "b", "commit b");
+
+        // When
+        index.update(ObjectId.zeroId(), second);
+
+        // Then
+        assertThat(index.contains(first, "")).isTrue();
+        assertThat(index.contains(first, "docs")).isTrue();
+        assertThat(index.contains(second, "")).isTrue();
+        assertThat(index.contains(second, "src")).isTrue();
+        assertThat(index.contains(second, "src/main")).isTrue();
+        assertThat(index.contains(second, "docs")).isFalse();
+        assertThat(index.find(second, "src/main").get("b.txt")).isEqualTo(second.getId());
+    }
+
+    @Test
+    public void updateReusesRecordOfUnchangedAncestor() throws Exception {
+        // Given
+        LastCommitIndex index = new LastCommitIndex(repository);
+        new File(wcPath, "src").mkdirs();
+        new File(wcPath, "docs").mkdirs();
+        RevCommit first = support.Git.commit(repository, wcPath, "docs/a.txt", "a", "commit a");
+        RevCommit second = support.Git.commit(repository, wcPath, "src/b.txt", "b", "commit b");
+        index.update(ObjectId.zeroId(), second);
+        RevCommit third = support.Git.commit(repository, wcPath, "src/b.txt", "bb", "modify b");
+        RevCommit fourth = support.Git.commit(repository, wcPath, "docs/c.txt", "c", "commit c");
+
+        // When
+        index.update(second, fourth);
+
+        // Then
+        assertThat(index.contains(second, "docs")).isTrue();
+        assertThat(index.contains(third, "docs")).isTrue();
+        Map<String, ObjectId> lastCommits = index.find(fourth, "docs");
+        assertThat(lastCommits.get("a.txt")).isEqualTo(first.getId());
+        assertThat(lastCommits.get("c.txt")).isEqualTo(fourth.getId());
+    }
+
+    @Test
+    public void prune() throws Exception {
+        // Given
+        LastCommitIndex index = new LastCommitIndex(repository);
+        RevCommit first = support.Git.commit(repository, wcPath, "a.txt", "a", "commit a");
+        RevCommit second = support.Git.commit(repository, wcPath, "b.txt", "b", "commit b");
+        index.update(ObjectId.zeroId(), second);
+        RefUpdate reset = repository.updateRef(Constants.HEAD);
+        reset.setNewObjectId(first);
+        reset.setForceUpdate(true);
+        reset.update();
+
+        // When
+        int deleted = index.prune(second);
+
+        // Then
+        assertThat(deleted).isEqualTo(1);
+        assertThat(index.contains(first, "")).isTrue();
+        assertThat(index.contains(second, "")).isFalse();
+    }
+}
@@ -0,0 +1,129 @@
+package playRepository;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import support.Git;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MergeCheckCacheTest {
+    private Repository repository;
+    private String wcPath;
+
+    @Before
+    public void before() throws Exception {
+        GitRepository.setRepoPrefix("resources/test/repo/git/");
+        wcPath = GitRepository.getRepoPrefix() + "yobi/mergeCheckCache";
+        repository = new RepositoryBuilder().setGitDir(new File(wcPath + "/.git")).build();
+        repository.create(false);
+        MergeCheckCache.invalidateAll();
+    }
+
+    @After
+    public void after() {
+        MergeCheckCache.invalidateAll();
+        repository.close();
+        support.Files.rm_rf(new File(GitRepository.getRepoPrefix()));
+    }
+
+    @Test
+    public void getReturnsNullIfNotChecked() throws Exception {
+        // Given
+        RevCommit to = Git.commit(repository, wcPath, "README", "hello", "to");
+        RevCommit from = Git.commit(repository, wcPath, "README", "world", "from");
+
+        // When
+        MergeCheckCache.Entry entry = MergeCheckCache.get(repository, to, from);
+
+        // Then
+        assertThat(entry).isNull();
+    }
+
+    @Test
+    public void getFromDisk() throws Exception {
+        // Given
+        RevCommit to = Git.commit(repository, wcPath, "README", "hello", "to");
+        RevCommit from = Git.commit(repository, wcPath, "README", "world", "from");
+
+        List<GitCommit> commits = new ArrayList<>();
+        commits.add(new GitCommit(from));
+        Set<Long> authorIds = new LinkedHashSet<>(Arrays.asList(2L, 3L));
+        MergeCheckCache.put(repository, to, from,
+                new MergeCheckCache.Entry(null, commits, to.getName(), from.getName(), authorIds));
+
+        // 메모리에 둔 결과를 지워서 디스크에서 읽게 한다.
+        MergeCheckCache.invalidateAll();
+
+        // When
+        MergeCheckCache.Entry entry = MergeCheckCache.get(repository, to, from);
+
+        // Then
+        assertThat(entry).isNotNull();
+        assertThat(entry.getConflicts()).isNull();
+        assertThat(entry.getCommits()).hasSize(1);
+        assertThat(entry.getCommits().get(0).getId()).isEqualTo(from.getName());
+        assertThat(entry.getMergedCommitIdFrom()).isEqualTo(to.getName());
+        assertThat(entry.getMergedCommitIdTo()).isEqualTo(from.getName());
+        assertThat(entry.getRelatedAuthorIds()).containsOnly(2L, 3L);
+        assertThat(MergeCheckCache.get(repository, from, to)).isNull();
+    }
+
+    @Test
+    public void getConflictsFromDisk() throws Exception {
+        // Given
+        RevCommit to = Git.commit(repository, wcPath, "README", "hello", "to");
+        RevCommit from = Git.commit(repository, wcPath, "README", "world", "from");
+
+        GitConflicts conflicts = new GitConflicts();
+        conflicts.conflictFiles.add("README");
+        GitConflicts.Conflict conflict = new GitConflicts.Conflict();
+        conflict.fileName = "README";
+        GitConflicts.CommitAndLine commitAndLine = new GitConflicts.CommitAndLine();
+        commitAndLine.gitCommit = new GitCommit(to);
+        commitAndLine.lineNumber = 1;
+        conflict.commitAndLines.add(commitAndLine);
+        conflicts.conflictDetails.add(conflict);
+
+        MergeCheckCache.put(repository, to, from, new MergeCheckCache.Entry(conflicts,
+                new ArrayList<GitCommit>(), null, null, new LinkedHashSet<Long>()));
+        MergeCheckCache.invalidateAll();
+
+        // When
+        MergeCheckCache.Entry entry = MergeCheckCache.get(repository, to, from);
+
+        // Then
+        assertThat(entry.getMergedCommitIdTo()).isNull();
+        assertThat(entry.getConflicts().conflictFiles).containsOnly("README");
+        GitConflicts.Conflict actual = entry.getConflicts().conflictDetails.get(0);
+        assertThat(actual.fileName).isEqualTo("README");
+        assertThat(actual.commitAndLines.get(0).gitCommit.getId()).isEqualTo(to.getName());
+        assertThat(actual.commitAndLines.get(0).lineNumber).isEqualTo(1);
+    }
+
+    @Test
+    public void invalidateDeletesFiles() throws Exception {
+        // Given
+        RevCommit to = Git.commit(repository, wcPath, "README", "hello", "to");
+        RevCommit from = Git.commit(repository, wcPath, "README", "world", "from");
+        MergeCheckCache.put(repository, to, from, new MergeCheckCache.Entry(null,
+                new ArrayList<GitCommit>(), null, null, new LinkedHashSet<Long>()));
+
+        // When
+        MergeCheckCache.invalidate(repository.getDirectory());
+
+        // Then
+        assertThat(MergeCheckCache.get(repository, to, from)).isNull();
+        assertThat(new File(repository.getDirectory(), "yobi/merge-checks").list()).isEmpty();
+    }
+}
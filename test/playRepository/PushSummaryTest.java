@@ -0,0 +1,82 @@
+package playRepository;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PushSummaryTest {
+    private Repository repository;
+    private String wcPath;
+
+    @Before
+    public void before() throws Exception {
+        GitRepository.setRepoPrefix("resources/test/repo/git/");
+        wcPath = GitRepository.getRepoPrefix() + "yobi/pushSummary";
+        repository = new RepositoryBuilder().setGitDir(new File(wcPath + "/.git")).build();
+        repository.create(false);
+    }
+
+    @After
+    public void after() {
+        repository.close();
+        support.Files.rm_rf(new File(GitRepository.getRepoPrefix()));
+    }
+
+    @Test
+    public void create() throws Exception {
+        // Given
+        RevCommit first = support.Git.commit(repository, wcPath, "a.txt", "a", "commit a");
+        RevCommit second = support.Git.commit(repository, wcPath, "b.txt", "b", "commit b");
+        RevCommit third = support.Git.commit(repository, wcPath, "c.txt", "c", "commit c\n\nfixes #1");
+        RevCommit fourth = support.Git.commit(repository, wcPath, "d.txt", "d", "commit d");
+
+        List<ReceiveCommand> commands = new ArrayList<>();
+        commands.add(new ReceiveCommand(second, fourth, "refs/heads/master"));
+        commands.add(new ReceiveCommand(ObjectId.zeroId(), fourth, "refs/heads/feature"));
+        commands.add(new ReceiveCommand(ObjectId.zeroId(), third, "refs/tags/v1"));
+        commands.add(new ReceiveCommand(first, ObjectId.zeroId(), "refs/heads/old"));
+
+        // When
+        PushSummary summary = PushSummary.create(repository, null, null, commands);
+
+        // Then
+        assertThat(summary.getCommits()).isEqualTo(Arrays.asList(fourth, third));
+        assertThat(summary.getMessages()).isEqualTo(Arrays.asList("commit d", "commit c\n\nfixes #1"));
+        assertThat(summary.getRefNames())
+                .isEqualTo(Arrays.asList("refs/heads/master", "refs/heads/feature", "refs/tags/v1"));
+        assertThat(summary.getNewTips()).isEqualTo(Arrays.asList(fourth.getId(), fourth.getId(), third.getId()));
+        assertThat(summary.getUpdatedBranches()).containsOnly("refs/heads/master");
+        assertThat(summary.getDeletedBranches()).containsOnly("refs/heads/old");
+        assertThat(summary.getPushedBranches())
+                .containsOnly("refs/heads/master", "refs/heads/feature", "refs/tags/v1");
+    }
+
+    @Test
+    public void createWithNewBranchOnly() throws Exception {
+        // Given
+        support.Git.commit(repository, wcPath, "a.txt", "a", "commit a");
+        RevCommit second = support.Git.commit(repository, wcPath, "b.txt", "b", "commit b");
+
+        List<ReceiveCommand> commands = new ArrayList<>();
+        commands.add(new ReceiveCommand(ObjectId.zeroId(), second, "refs/heads/feature"));
+
+        // When
+        PushSummary summary = PushSummary.create(repository, null, null, commands);
+
+        // Then
+        assertThat(summary.getCommits()).isEqualTo(Arrays.asList(second));
+        assertThat(summary.getUpdatedBranches()).isEmpty();
+    }
+}
@@ -0,0 +1,144 @@
+package playRepository;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RefAdvertisementCacheTest {
+    private static final String UPLOAD_PACK = "git-upload-pack";
+    private static final String RECEIVE_PACK = "git-receive-pack";
+
+    private File gitDir;
+    private File otherGitDir;
+    private AtomicInteger loadCount;
+
+    @Before
+    public void before() {
+        GitRepository.setRepoPrefix("resources/test/repo/git/");
+        gitDir = new File(GitRepository.getGitDirectory("yobi", "refAdvertisement"));
+        otherGitDir = new File(GitRepository.getGitDirectory("yobi", "other"));
+        loadCount = new AtomicInteger();
+        RefAdvertisementCache.invalidateAll();
+    }
+
+    @After
+    public void after() {
+        RefAdvertisementCache.invalidateAll();
+        support.Files.rm_rf(new File(GitRepository.getRepoPrefix()));
+    }
+
+    @Test
+    public void getLoadsOnlyOnce() throws Exception {
+        // When
+        byte[] first = RefAdvertisementCache.get(gitDir, UPLOAD_PACK, loader("refs"));
+        byte[] second = RefAdvertisementCache.get(gitDir, UPLOAD_PACK, loader("refs"));
+
+        // Then
+        assertThat(first).isEqualTo("refs".getBytes());
+        assertThat(second).isSameAs(first);
+        assertThat(loadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void getSeparatesServices() throws Exception {
+        // When
+        byte[] upload = RefAdvertisementCache.get(gitDir, UPLOAD_PACK, loader("upload"));
+        byte[] receive = RefAdvertisementCache.get(gitDir, RECEIVE_PACK, loader("receive"));
+
+        // Then
+        assertThat(upload).isEqualTo("upload".getBytes());
+        assertThat(receive).isEqualTo("receive".getBytes());
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void invalidate() throws Exception {
+        // Given
+        RefAdvertisementCache.get(gitDir, UPLOAD_PACK, loader("old"));
+        RefAdvertisementCache.get(gitDir, RECEIVE_PACK, loader("old"));
+        RefAdvertisementCache.get(otherGitDir, UPLOAD_PACK, loader("other"));
+
+        // When
+        RefAdvertisementCache.invalidate(gitDir);
+
+        // Then
+        assertThat(RefAdvertisementCache.get(gitDir, UPLOAD_PACK, loader("new"))).isEqualTo("new".getBytes());
+        assertThat(RefAdvertisementCache.get(gitDir, RECEIVE_PACK, loader("new"))).isEqualTo("new".getBytes());
+        assertThat(RefAdvertisementCache.get(otherGitDir, UPLOAD_PACK, loader("new"))).isEqualTo("other".getBytes());
+    }
+
+    @Test
+    public void invalidateRepository() throws Exception {
+        // Given
+        Repository repository = new RepositoryBuilder().setGitDir(gitDir).build();
+        RefAdvertisementCache.get(new File(gitDir.getAbsolutePath()), UPLOAD_PACK, loader("old"));
+
+        // When
+        RefAdvertisementCache.invalidate(repository);
+        repository.close();
+
+        // Then
+        assertThat(RefAdvertisementCache.get(gitDir, UPLOAD_PACK, loader("new"))).isEqualTo("new".getBytes());
+    }
+
+    @Test
+    public void getDoesNotCacheInvalidatedWhileLoading() throws Exception {
+        // Given
+        Callable<byte[]> invalidating = new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                loadCount.incrementAndGet();
+                RefAdvertisementCache.invalidate(gitDir);
+                return "old".getBytes();
+            }
+        };
+
+        // When
+        byte[] loaded = RefAdvertisementCache.get(gitDir, UPLOAD_PACK, invalidating);
+
+        // Then
+        assertThat(loaded).isEqualTo("old".getBytes());
+        assertThat(RefAdvertisementCache.get(gitDir, UPLOAD_PACK, loader("new"))).isEqualTo("new".getBytes());
+        assertThat(loadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void getDoesNotCacheFailure() throws Exception {
+        // Given
+        Callable<byte[]> failing = new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                throw new IOException("broken");
+            }
+        };
+
+        // When
+        try {
+            RefAdvertisementCache.get(gitDir, UPLOAD_PACK, failing);
+        } catch (IOException e) {
+            // expected
+        }
+
+        // Then
+        assertThat(RefAdvertisementCache.get(gitDir, UPLOAD_PACK, loader("refs"))).isEqualTo("refs".getBytes());
+    }
+
+    private Callable<byte[]> loader(final String advertisement) {
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                loadCount.incrementAndGet();
+                return advertisement.getBytes();
+            }
+        };
+    }
+}
@@ -0,0 +1,160 @@
+package playRepository;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RepositoryArchiveTest {
+    private Repository repository;
+
+    @Before
+    public void before() throws Exception {
+        GitRepository.setRepoPrefix("resources/test/repo/git/");
+        repository = new RepositoryBuilder()
+                .setGitDir(new File(GitRepository.getGitDirectory("yobi", "archive"))).setBare().build();
+        repository.create(true);
+    }
+
+    @After
+    public void after() {
+        RepositoryArchive.invalidate(repository);
+        repository.close();
+        support.Files.rm_rf(new File(GitRepository.getRepoPrefix()));
+    }
+
+    @Test
+    public void writeZip() throws Exception {
+        // Given
+        RevCommit commit = commit("README", "hello", "src/Main.java", "class Main {}");
+
+        // When
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RepositoryArchive.write(repository, commit, "archive-master/", RepositoryArchive.Format.ZIP, output);
+
+        // Then
+        ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(output.toByteArray()));
+        ZipEntry entry = zip.getNextEntry();
+        assertThat(entry.getName()).isEqualTo("archive-master/README");
+        assertThat(IOUtils.toString(zip, "UTF-8")).isEqualTo("hello");
+        entry = zip.getNextEntry();
+        assertThat(entry.getName()).isEqualTo("archive-master/src/Main.java");
+        assertThat(IOUtils.toString(zip, "UTF-8")).isEqualTo("class Main {}");
+        assertThat(zip.getNextEntry()).isNull();
+    }
+
+    @Test
+    public void writeTarGz() throws Exception {
+        // Given
+        String longPath = "src/very/long/path/to/a/file/that/does/not/fit/in/the/one/hundred/bytes/"
+                + "name/field/of/tar.txt";
+        RevCommit commit = commit("README", "hello", longPath, "long");
+
+        // When
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RepositoryArchive.write(repository, commit, "archive-master/", RepositoryArchive.Format.TAR_GZ, output);
+
+        // Then
+        InputStream tar = new GZIPInputStream(new ByteArrayInputStream(output.toByteArray()));
+        byte[] header = new byte[512];
+        IOUtils.readFully(tar, header);
+        assertThat(name(header)).isEqualTo("archive-master/README");
+        assertThat((char) header[156]).isEqualTo('0');
+        assertThat(new String(header, 257, 5, "US-ASCII")).isEqualTo("ustar");
+        byte[] block = new byte[512];
+        IOUtils.readFully(tar, block);
+        assertThat(new String(block, 0, 5, "UTF-8")).isEqualTo("hello");
+
+        IOUtils.readFully(tar, header);
+        assertThat((char) header[156]).isEqualTo('x');
+        IOUtils.readFully(tar, block);
+        assertThat(new String(block, "UTF-8")).contains(" path=archive-master/" + longPath + "\n");
+    }
+
+    @Test
+    public void getCachedFile() throws Exception {
+        // Given
+        RevCommit commit = commit("LICENSE", "Apache", "README", "hello");
+        RepositoryArchive.Format format = RepositoryArchive.Format.TAR_GZ;
+        assertThat(RepositoryArchive.getCachedFile(repository, commit, "archive-v1/", format)).isNull();
+
+        // When
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RepositoryArchive.send(repository, commit, "archive-v1/", format, output);
+        File cached = RepositoryArchive.getCachedFile(repository, commit, "archive-v1/", format);
+
+        // Then
+        assertThat(cached).isNotNull();
+        assertThat(FileUtils.readFileToByteArray(cached)).isEqualTo(output.toByteArray());
+        assertThat(RepositoryArchive.getCachedFile(repository, commit, "archive-v2/", format)).isNull();
+        assertThat(RepositoryArchive.getCachedFile(repository, commit, "archive-v1/",
+                RepositoryArchive.Format.ZIP)).isNull();
+    }
+
+    @Test
+    public void formatFromFileName() {
+        assertThat(RepositoryArchive.Format.fromFileName("v1.0.zip")).isEqualTo(RepositoryArchive.Format.ZIP);
+        assertThat(RepositoryArchive.Format.fromFileName("v1.0.tar.gz"))
+                .isEqualTo(RepositoryArchive.Format.TAR_GZ);
+        assertThat(RepositoryArchive.Format.fromFileName("v1.0")).isNull();
+    }
+
+    private static String name(byte[] header) throws Exception {
+        int length = 0;
+        while (length < 100 && header[length] != 0) {
+            length++;
+        }
+        return new String(header, 0, length, "UTF-8");
+    }
+
+    private RevCommit commit(String... pathsAndContents) throws Exception {
+        ObjectInserter inserter = repository.newObjectInserter();
+        try {
+            DirCache index = DirCache.newInCore();
+            DirCacheBuilder builder = index.builder();
+            for (int i = 0; i < pathsAndContents.length; i += 2) {
+                DirCacheEntry entry = new DirCacheEntry(pathsAndContents[i]);
+                entry.setFileMode(FileMode.REGULAR_FILE);
+                entry.setObjectId(inserter.insert(Constants.OBJ_BLOB, Constants.encode(pathsAndContents[i + 1])));
+                builder.add(entry);
+            }
+            builder.finish();
+            ObjectId treeId = index.writeTree(inserter);
+
+            CommitBuilder commit = new CommitBuilder();
+            commit.setTreeId(treeId);
+            PersonIdent ident = new PersonIdent("yobi", "yobi@yobi.io");
+            commit.setAuthor(ident);
+            commit.setCommitter(ident);
+            commit.setMessage("archive");
+            ObjectId commitId = inserter.insert(commit);
+            inserter.flush();
+
+            RevWalk revWalk = new RevWalk(repository);
+            try {
+                return revWalk.parseCommit(commitId);
+            } finally {
+                revWalk.release();
+            }
+        } finally {
+            inserter.release();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package playRepository;
+
+import org.eclipse.jgit.lib.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RepositoryMaintenanceTest {
+    private File root;
+    private File gitDir;
+    private Repository repository;
+
+    @Before
+    public void before() throws Exception {
+        GitRepository.setRepoPrefix("resources/test/repo/git/");
+        root = new File(GitRepository.getRepoPrefix());
+        gitDir = new File(GitRepository.getGitDirectory("yobi", "maintenance"));
+        repository = new RepositoryBuilder().setGitDir(gitDir).setBare().build();
+        repository.create(true);
+    }
+
+    @After
+    public void after() {
+        repository.close();
+        support.Files.rm_rf(root);
+    }
+
+    @Test
+    public void run() throws Exception {
+        // Given
+        for (int i = 0; i < 10; i++) {
+            commit("README", "version " + i);
+        }
+        assertThat(RepositoryMaintenance.countPacks(gitDir)).isEqualTo(0);
+
+        // When
+        RepositoryMaintenance.Stats stats = RepositoryMaintenance.run(gitDir);
+
+        // Then
+        assertThat(stats.getName()).isEqualTo("yobi/maintenance");
+        assertThat(stats.getPacksAfter()).isEqualTo(1);
+        assertThat(stats.getLooseObjectsAfter()).isEqualTo(0);
+        assertThat(stats.getPackedObjects()).isEqualTo(30);
+        assertThat(stats.getLastError()).isNull();
+        assertThat(RepositoryMaintenance.countPacks(gitDir)).isEqualTo(1);
+        assertThat(repository.resolve("refs/heads/master")).isNotNull();
+    }
+
+    @Test
+    public void runCountsRuns() throws Exception {
+        // Given
+        commit("README", "hello");
+        RepositoryMaintenance.Stats first = RepositoryMaintenance.run(gitDir);
+
+        // When
+        RepositoryMaintenance.Stats second = RepositoryMaintenance.run(gitDir);
+
+        // Then
+        assertThat(second.getRunCount()).isEqualTo(first.getRunCount() + 1);
+        assertThat(RepositoryMaintenance.getStats().get(0).getRunCount()).isEqualTo(second.getRunCount());
+    }
+
+    @Test
+    public void findCandidates() throws Exception {
+        // Given
+        commit("README", "hello");
+        new File(root, "yobi/notRepository").mkdirs();
+
+        // When
+        List<File> all = RepositoryMaintenance.findCandidates(root, -1, 50);
+        List<File> none = RepositoryMaintenance.findCandidates(root, 6700, 50);
+
+        // Then
+        assertThat(all).containsOnly(gitDir.getAbsoluteFile());
+        assertThat(none).isEmpty();
+    }
+
+    @Test
+    public void findCandidatesSkipsPushingRepository() throws Exception {
+        // Given
+        commit("README", "hello");
+        RepositoryMaintenance.beginPush(gitDir);
+
+        try {
+            // When
+            List<File> candidates = RepositoryMaintenance.findCandidates(root, -1, 50);
+
+            // Then
+            assertThat(candidates).isEmpty();
+        } finally {
+            RepositoryMaintenance.endPush(gitDir);
+        }
+        assertThat(RepositoryMaintenance.isPushing(gitDir)).isFalse();
+    }
+
+    private void commit(String path, String contents) throws Exception {
+        ObjectInserter inserter = repository.newObjectInserter();
+        try {
+            ObjectId blob = inserter.insert(Constants.OBJ_BLOB, Constants.encode(contents));
+            TreeFormatter tree = new TreeFormatter();
+            tree.append(path, FileMode.REGULAR_FILE, blob);
+            ObjectId treeId = inserter.insert(tree);
+
+            CommitBuilder commit = new CommitBuilder();
+            commit.setTreeId(treeId);
+            ObjectId parent = repository.resolve("refs/heads/master");
+            if (parent != null) {
+                commit.setParentId(parent);
+            }
+            PersonIdent ident = new PersonIdent("yobi", "yobi@yobi.io");
+            commit.setAuthor(ident);
+            commit.setCommitter(ident);
+            commit.setMessage(contents);
+            ObjectId commitId = inserter.insert(commit);
+            inserter.flush();
+
+            RefUpdate update = repository.updateRef("refs/heads/master");
+            update.setNewObjectId(commitId);
+            update.forceUpdate();
+        } finally {
+            inserter.release();
+        }
+    }
+}
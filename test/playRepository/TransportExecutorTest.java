@@ -0,0 +1,89 @@
+package playRepository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class TransportExecutorTest {
+    private TransportExecutor executor;
+    private CountDownLatch release;
+
+    @Before
+    public void before() {
+        executor = new TransportExecutor("test", 1, 1);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void after() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void rejectWhenThreadsAndQueueAreFull() throws Exception {
+        // Given
+        final CountDownLatch started = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                await(release);
+            }
+        });
+        started.await(10, TimeUnit.SECONDS);
+        executor.execute(blocking());
+
+        // When
+        try {
+            executor.execute(blocking());
+            fail("The third task should be rejected");
+        } catch (TransportExecutor.OverloadedException e) {
+            // Then
+            assertThat(executor.getActiveCount()).isEqualTo(1);
+            assertThat(executor.getQueuedCount()).isEqualTo(1);
+            assertThat(executor.getRejectedCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void acceptAfterTasksAreDone() throws Exception {
+        // Given
+        executor.execute(blocking());
+        executor.execute(blocking());
+        release.countDown();
+
+        // When
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executor.getCompletedCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        executor.execute(blocking());
+
+        // Then
+        assertThat(executor.getRejectedCount()).isEqualTo(0);
+    }
+
+    private Runnable blocking() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                await(release);
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
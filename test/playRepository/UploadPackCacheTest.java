@@ -0,0 +1,114 @@
+package playRepository;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.eclipse.jgit.transport.PacketLineOut;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import support.Git;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class UploadPackCacheTest {
+    private Repository repository;
+    private String wcPath;
+    private File cacheDirectory;
+
+    @Before
+    public void before() throws Exception {
+        GitRepository.setRepoPrefix("resources/test/repo/git/");
+        wcPath = GitRepository.getRepoPrefix() + "yobi/uploadPackCache";
+        repository = new RepositoryBuilder().setGitDir(new File(wcPath + "/.git")).build();
+        repository.create(false);
+        cacheDirectory = new File(repository.getDirectory(), "yobi/upload-packs");
+    }
+
+    @After
+    public void after() {
+        UploadPackCache.invalidate(repository);
+        repository.close();
+        support.Files.rm_rf(new File(GitRepository.getRepoPrefix()));
+    }
+
+    @Test
+    public void isCacheable() throws Exception {
+        ObjectId id = Git.commit(repository, wcPath, "README", "hello", "init");
+
+        assertThat(UploadPackCache.isCacheable(request(id, null, true))).isTrue();
+        assertThat(UploadPackCache.isCacheable(request(id, id, true))).isFalse();
+        assertThat(UploadPackCache.isCacheable(request(id, null, false))).isFalse();
+        assertThat(UploadPackCache.isCacheable("not a pkt-line".getBytes())).isFalse();
+    }
+
+    @Test
+    public void uploadSendsCachedPack() throws Exception {
+        // Given
+        ObjectId id = Git.commit(repository, wcPath, "README", "hello", "init");
+        byte[] request = request(id, null, true);
+        long hitCount = UploadPackCache.getHitCount();
+
+        // When
+        byte[] first = upload(request);
+        byte[] second = upload(request);
+
+        // Then
+        assertThat(first.length).isGreaterThan(0);
+        assertThat(second).isEqualTo(first);
+        assertThat(cacheDirectory.list()).hasSize(1);
+        assertThat(UploadPackCache.getHitCount()).isEqualTo(hitCount + 1);
+    }
+
+    @Test
+    public void uploadDoesNotCacheFetchWithHaves() throws Exception {
+        // Given
+        ObjectId first = Git.commit(repository, wcPath, "README", "hello", "first");
+        ObjectId second = Git.commit(repository, wcPath, "README", "world", "second");
+
+        // When
+        byte[] response = upload(request(second, first, true));
+
+        // Then
+        assertThat(response.length).isGreaterThan(0);
+        assertThat(cacheDirectory.exists()).isFalse();
+    }
+
+    @Test
+    public void invalidate() throws Exception {
+        // Given
+        ObjectId id = Git.commit(repository, wcPath, "README", "hello", "init");
+        upload(request(id, null, true));
+
+        // When
+        UploadPackCache.invalidate(repository);
+
+        // Then
+        assertThat(cacheDirectory.list()).isEmpty();
+    }
+
+    private byte[] upload(byte[] request) throws IOException {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        UploadPackCache.upload(repository, new ByteArrayInputStream(request), response);
+        return response.toByteArray();
+    }
+
+    private byte[] request(ObjectId want, ObjectId have, boolean done) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PacketLineOut packetLineOut = new PacketLineOut(out);
+        packetLineOut.writeString("want " + want.name() + " side-band-64k ofs-delta\n");
+        packetLineOut.end();
+        if (have != null) {
+            packetLineOut.writeString("have " + have.name() + "\n");
+        }
+        if (done) {
+            packetLineOut.writeString("done\n");
+        }
+        return out.toByteArray();
+    }
+}
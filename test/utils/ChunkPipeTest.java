@@ -0,0 +1,145 @@
+package utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class ChunkPipeTest {
+
+    @Test
+    public void readWhatIsWritten() throws Exception {
+        // Given
+        final ChunkPipe pipe = new ChunkPipe(1024, 2);
+        final byte[] data = new byte[10 * 1024 + 7];
+        new Random(1).nextBytes(data);
+
+        // When
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = pipe.sink();
+                    out.write(data, 0, 100);
+                    out.flush();
+                    out.write(data, 100, data.length - 100);
+                    out.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        writer.start();
+        byte[] read = readAll(pipe.source());
+        writer.join();
+
+        // Then
+        assertThat(read).isEqualTo(data);
+    }
+
+    @Test
+    public void writeFailsAfterReaderIsClosed() throws Exception {
+        // Given
+        final ChunkPipe pipe = new ChunkPipe(16, 1);
+        final AtomicReference<IOException> error = new AtomicReference<>();
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = pipe.sink();
+                    for (int i = 0; i < 1000; i++) {
+                        out.write(new byte[16]);
+                    }
+                    out.close();
+                } catch (IOException e) {
+                    error.set(e);
+                }
+            }
+        };
+        writer.start();
+
+        // When
+        pipe.source().close();
+        writer.join(10000);
+
+        // Then
+        assertThat(writer.isAlive()).isFalse();
+        assertThat(error.get()).isNotNull();
+    }
+
+    @Test
+    public void readFailsAfterClosed() throws Exception {
+        // Given
+        ChunkPipe pipe = new ChunkPipe();
+        pipe.source().close();
+
+        // When
+        try {
+            pipe.source().read();
+            fail("read() should fail after close()");
+        } catch (IOException e) {
+            // Then
+            assertThat(e.getMessage()).contains("closed");
+        }
+    }
+
+    @Test
+    public void writeTimesOutWithoutReader() throws Exception {
+        // Given
+        ChunkPipe pipe = new ChunkPipe(16, 1, 2000);
+        OutputStream out = pipe.sink();
+        out.write(new byte[16]);
+
+        // When
+        try {
+            out.write(new byte[16]);
+            fail("write() should fail if nobody reads");
+        } catch (IOException e) {
+            // Then
+            assertThat(e.getMessage()).contains("Timed out");
+        }
+    }
+
+    @Test
+    public void abortStopsWaitingReader() throws Exception {
+        // Given
+        final ChunkPipe pipe = new ChunkPipe();
+        final AtomicReference<IOException> error = new AtomicReference<>();
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    pipe.source().read();
+                } catch (IOException e) {
+                    error.set(e);
+                }
+            }
+        };
+        reader.start();
+
+        // When
+        pipe.abort();
+        reader.join(10000);
+
+        // Then
+        assertThat(reader.isAlive()).isFalse();
+        assertThat(error.get()).isNotNull();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[300];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -50,4 +50,25 @@ public class HttpUtilTest {
         }
     }
 
+    @Test
+    public void matchesETag() {
+        assertThat(HttpUtil.matchesETag(null, "\"abc\"")).isFalse();
+        assertThat(HttpUtil.matchesETag("\"abc\"", "\"abc\"")).isTrue();
+        assertThat(HttpUtil.matchesETag("\"xyz\", W/\"abc\"", "\"abc\"")).isTrue();
+        assertThat(HttpUtil.matchesETag("*", "\"abc\"")).isTrue();
+        assertThat(HttpUtil.matchesETag("\"xyz\"", "\"abc\"")).isFalse();
+    }
+
+    @Test
+    public void parseRange() {
+        assertThat(HttpUtil.parseRange(null, 100)).isNull();
+        assertThat(HttpUtil.parseRange("bytes=0-9", 100)).isEqualTo(new long[]{0, 9});
+        assertThat(HttpUtil.parseRange("bytes=90-", 100)).isEqualTo(new long[]{90, 99});
+        assertThat(HttpUtil.parseRange("bytes=-10", 100)).isEqualTo(new long[]{90, 99});
+        assertThat(HttpUtil.parseRange("bytes=50-200", 100)).isEqualTo(new long[]{50, 99});
+        assertThat(HttpUtil.parseRange("bytes=100-", 100)).isEmpty();
+        assertThat(HttpUtil.parseRange("bytes=0-1,5-6", 100)).isNull();
+        assertThat(HttpUtil.parseRange("bytes=a-b", 100)).isNull();
+    }
+
 }